@@ -68,6 +68,8 @@ public class DefinitionsHelper {
     public static final String EXTRA_LIST_ID = "de.azapps.mirakel.EXTRA_LIST_ID";
     public static final String EXTRA_TASK = "de.azapps.mirakel.EXTRA_TASK";
     public static final String EXTRA_TASK_REMINDER = "de.azapps.mirakel.reminder.EXTRA_TASK";
+    public static final String EXTRA_TASK_ID = "de.azapps.mirakel.reminder.EXTRA_TASK_ID";
+    public static final String EXTRA_TASK_VERSION = "de.azapps.mirakel.reminder.EXTRA_TASK_VERSION";
     public static final String SHOW_TASK = "de.azapps.mirakel.SHOW_TASK";
     public static final String SHOW_TASK_REMINDER = "de.azapps.mirakel.reminder.SHOW_TASK";
     public static final String SHOW_LIST = "de.azapps.mirakel.SHOW_LIST";
@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.azapps.mirakel.model.generic.IGenericElementInterface;
+import de.azapps.mirakel.model.query_builder.CursorGetter;
 
 /**
  * An Extension for the CursorAdapter to support selecting multiple items at once
@@ -50,6 +51,11 @@ public abstract class
     private final MultiSelectCallbacks<T> multiSelectCallbacks;
     @Nullable
     private final OnItemClickedListener<T> itemClickListener;
+    // one getter per cursor, so the column indices are only looked up once and not for every row
+    @Nullable
+    private CursorGetter getter;
+    @Nullable
+    private Cursor getterCursor;
 
     /**
      *
@@ -200,6 +206,26 @@ public abstract class
         return true;
     }
 
+    /**
+     * @return the getter for the rows of the cursor, it is reused until the cursor is swapped
+     */
+    @NonNull
+    public CursorGetter getCursorGetter(@NonNull final Cursor cursor) {
+        if ((getter == null) || (getterCursor != cursor)) {
+            getter = CursorGetter.unsafeGetter(cursor);
+            getterCursor = cursor;
+        }
+        return getter;
+    }
+
+    @Nullable
+    @Override
+    public Cursor swapCursor(final Cursor newCursor) {
+        getter = null;
+        getterCursor = null;
+        return super.swapCursor(newCursor);
+    }
+
     /**
      * Do not override this unless you know exactly what you are doing
      * @param position
@@ -161,6 +161,20 @@ public class MirakelModelPreferences extends MirakelPreferences {
         editor.commit();
     }
 
+    /**
+     * Write ahead logging lets the UI query the database while a sync is writing. The setting is
+     * applied the next time the database is opened.
+     */
+    public static boolean useWriteAheadLogging() {
+        return settings.getBoolean("writeAheadLogging", false);
+    }
+
+    public static void setUseWriteAheadLogging(final boolean wal) {
+        final Editor editor = getEditor();
+        editor.putBoolean("writeAheadLogging", wal);
+        editor.commit();
+    }
+
     public static String getDBName() {
         String db_name = "mirakel.db";
         if (MirakelCommonPreferences.isDemoMode()) {
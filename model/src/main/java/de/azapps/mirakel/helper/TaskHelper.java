@@ -33,6 +33,7 @@ import de.azapps.material_elements.utils.ThemeManager;
 import de.azapps.mirakel.DefinitionsHelper;
 import de.azapps.mirakel.model.R;
 import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakel.reminders.ReminderPayload;
 
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.fromNullable;
@@ -44,6 +45,11 @@ public final class TaskHelper {
         if (intent == null) {
             return absent();
         }
+        // reminders only pass the id, the task is loaded when it is needed
+        final Optional<ReminderPayload> payload = ReminderPayload.fromIntent(intent);
+        if (payload.isPresent()) {
+            return payload.get().resolve();
+        }
         final Bundle b = intent.getBundleExtra(DefinitionsHelper.BUNDLE_WRAPPER);
         if (b != null) {
             return fromNullable((Task) b.getParcelable(DefinitionsHelper.EXTRA_TASK));
@@ -24,14 +24,18 @@ import android.accounts.AccountManager;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.annotation.TargetApi;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.graphics.Color;
 import android.net.Uri;
+import android.os.Build;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
+import android.util.Pair;
 import android.util.SparseIntArray;
 
 import com.google.common.base.Function;
@@ -92,7 +96,7 @@ import static com.google.common.base.Optional.of;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
-    public static final int DATABASE_VERSION = 58;
+    public static final int DATABASE_VERSION = 64;
 
     private static final String TAG = "DatabaseHelper";
     public static final String CREATED_AT = "created_at";
@@ -122,6 +126,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     private final Context context;
+    private volatile boolean writeAheadLogging;
 
     protected static void createTasksTable(final SQLiteDatabase db) {
         db.execSQL("CREATE TABLE tasks (_id"
@@ -164,6 +169,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 String path = databaseHelperSingleton.getWritableDatabase().getPath();
                 databaseHelperSingleton.close();
                 new File(path).delete();
+                new File(path + "-wal").delete();
+                new File(path + "-shm").delete();
             }
             databaseHelperSingleton = null;
         }
@@ -379,6 +386,51 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                    + ')');
     }
 
+    @Override
+    public void onOpen(final SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            writeAheadLogging = setJournalMode(db, MirakelModelPreferences.useWriteAheadLogging());
+        }
+    }
+
+    /**
+     * @return true if the database runs in WAL mode. In this case the framework keeps a pool of
+     * reader connections, so queries are not blocked by a running write transaction.
+     */
+    public boolean isWriteAheadLogging() {
+        return writeAheadLogging;
+    }
+
+    /**
+     * Switches between write ahead logging and the rollback journal. This must not happen while
+     * a transaction is running, so it is only done when the database is opened. The content of
+     * the WAL file is checkpointed into the database when WAL gets disabled.
+     *
+     * @return true if the database is in WAL mode afterwards
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static boolean setJournalMode(final SQLiteDatabase db, final boolean wal) {
+        final boolean isWal = "wal".equalsIgnoreCase(DatabaseUtils.stringForQuery(db,
+                              "PRAGMA journal_mode", null));
+        if (wal == isWal) {
+            return isWal;
+        }
+        if (wal) {
+            if (!db.enableWriteAheadLogging()) {
+                Log.w(TAG, "Cannot enable write ahead logging");
+                return false;
+            }
+            return true;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.disableWriteAheadLogging();
+        } else {
+            DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=DELETE", null);
+        }
+        return false;
+    }
+
     @Override
     public void onDowngrade(final SQLiteDatabase db, final int oldVersion,
                             final int newVersion) {
@@ -1019,6 +1071,19 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
             db.execSQL("UPDATE recurring SET start_date=start_date*1000 WHERE start_date is not null");
             db.execSQL("UPDATE recurring SET end_date=end_date*1000 WHERE end_date is not null;");
+        case 58:
+            createIndexes(db);
+        case 59:
+            createListTaskCounts(db);
+        case 60:
+            createSearchIndex(db);
+        case 61:
+            // the last remote version of the task, written and compared only by the sync
+            db.execSQL("ALTER TABLE tasks ADD COLUMN sync_fingerprint TEXT");
+        case 62:
+            createSyncMetricsTable(db);
+        case 63:
+            createCaldavInstances(db);
 
         default:
             break;
@@ -1767,6 +1832,174 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("DROP TABLE caldav_extra;");
     }
 
+    /**
+     * Indexes for the access paths used by the list screens, the tag lookups and the
+     * recurrence/subtask joins. The columns are ordered equality columns first, so that
+     * the most common queries can be answered from the index alone.
+     */
+    private static void createIndexes(final SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS tasks_list_idx ON tasks "
+                   + "(list_id, is_shown_recurring, done, sync_state);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS tasks_uuid_idx ON tasks (uuid);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS task_tag_task_idx ON task_tag (task_id, tag_id);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS task_tag_tag_idx ON task_tag (tag_id, task_id);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS recurring_tw_mask_parent_idx ON recurring_tw_mask "
+                   + "(parent, offsetCount, child);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS recurring_tw_mask_child_idx ON recurring_tw_mask "
+                   + "(child, parent);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS subtasks_parent_idx ON subtasks (parent_id, child_id);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS subtasks_child_idx ON subtasks (child_id, parent_id);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS files_task_idx ON files (task_id);");
+    }
+
+    /**
+     * A task is counted for its list if it is neither done, deleted nor a hidden recurrence.
+     *
+     * @return 1 if the task row (e.g. new or old in a trigger) is counted, else 0
+     */
+    private static String isCountedTask(final String row) {
+        return "(CASE WHEN " + row + ".sync_state != " + SYNC_STATE.DELETE + " AND " + row
+               + ".is_shown_recurring = 1 AND " + row + ".done = 0 THEN 1 ELSE 0 END)";
+    }
+
+    private static String countTasksOfList(final String listId) {
+        return "(SELECT COUNT(*) FROM tasks WHERE tasks.list_id = " + listId + " AND "
+               + isCountedTask("tasks") + " = 1)";
+    }
+
+    /**
+     * Keeps the number of open tasks per list in list_task_count. The table is maintained by
+     * triggers, so list_with_count does not have to group the whole tasks table any more.
+     */
+    private static void createListTaskCounts(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE list_task_count (list_id INTEGER PRIMARY KEY, "
+                   + "task_count INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("INSERT INTO list_task_count (list_id, task_count) SELECT lists._id, "
+                   + countTasksOfList("lists._id") + " FROM lists");
+        db.execSQL("CREATE TRIGGER list_task_count_list_insert AFTER INSERT ON lists BEGIN "
+                   + "INSERT OR REPLACE INTO list_task_count (list_id, task_count) VALUES (new._id, "
+                   + countTasksOfList("new._id") + "); END");
+        db.execSQL("CREATE TRIGGER list_task_count_list_delete AFTER DELETE ON lists BEGIN "
+                   + "DELETE FROM list_task_count WHERE list_id = old._id; END");
+        db.execSQL("CREATE TRIGGER list_task_count_task_insert AFTER INSERT ON tasks WHEN "
+                   + isCountedTask("new") + " = 1 BEGIN "
+                   + "UPDATE list_task_count SET task_count = task_count + 1 "
+                   + "WHERE list_id = new.list_id; END");
+        db.execSQL("CREATE TRIGGER list_task_count_task_delete AFTER DELETE ON tasks WHEN "
+                   + isCountedTask("old") + " = 1 BEGIN "
+                   + "UPDATE list_task_count SET task_count = task_count - 1 "
+                   + "WHERE list_id = old.list_id; END");
+        db.execSQL("CREATE TRIGGER list_task_count_task_update AFTER UPDATE OF "
+                   + "list_id, done, sync_state, is_shown_recurring ON tasks WHEN "
+                   + "old.list_id IS NOT new.list_id OR "
+                   + isCountedTask("old") + " != " + isCountedTask("new") + " BEGIN "
+                   + "UPDATE list_task_count SET task_count = task_count - " + isCountedTask("old")
+                   + " WHERE list_id = old.list_id; "
+                   + "UPDATE list_task_count SET task_count = task_count + " + isCountedTask("new")
+                   + " WHERE list_id = new.list_id; END");
+        db.execSQL("DROP VIEW IF EXISTS list_with_count");
+        db.execSQL("CREATE VIEW list_with_count AS " +
+                   "SELECT lists._id AS _id, lists.name AS name, sort_by, " +
+                   "lists.created_at AS created_at, lists.updated_at updated_at, " +
+                   "lists.sync_state AS sync_state, lft, rgt,color, account_id, " +
+                   "icon_path, is_special,whereQuery,def_list,def_date,active, " +
+                   "IFNULL(list_task_count.task_count, 0) AS task_count " +
+                   "FROM lists " +
+                   "LEFT JOIN list_task_count ON list_task_count.list_id = lists._id " +
+                   "ORDER BY lft ASC;");
+    }
+
+    private static String tagsOfTask(final String taskId) {
+        return "(SELECT group_concat(tag.name, ' ') FROM task_tag INNER JOIN tag ON "
+               + "tag._id = task_tag.tag_id WHERE task_tag.task_id = " + taskId + ")";
+    }
+
+    /**
+     * Full text indexes over the names, contents and tags of the tasks and over the tag names.
+     * The docids are the ids of the tasks and tags, the triggers keep both indexes in sync.
+     */
+    private static void createSearchIndex(final SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE task_search USING fts4(name, content, tags)");
+        db.execSQL("CREATE VIRTUAL TABLE tag_search USING fts4(name)");
+        db.execSQL("INSERT INTO task_search (docid, name, content, tags) SELECT _id, name, content, "
+                   + tagsOfTask("tasks._id") + " FROM tasks");
+        db.execSQL("INSERT INTO tag_search (docid, name) SELECT _id, name FROM tag");
+        db.execSQL("CREATE TRIGGER task_search_insert AFTER INSERT ON tasks BEGIN "
+                   + "INSERT INTO task_search (docid, name, content, tags) "
+                   + "VALUES (new._id, new.name, new.content, ''); END");
+        db.execSQL("CREATE TRIGGER task_search_update AFTER UPDATE OF name, content ON tasks BEGIN "
+                   + "UPDATE task_search SET name = new.name, content = new.content "
+                   + "WHERE docid = new._id; END");
+        db.execSQL("CREATE TRIGGER task_search_delete AFTER DELETE ON tasks BEGIN "
+                   + "DELETE FROM task_search WHERE docid = old._id; END");
+        db.execSQL("CREATE TRIGGER task_search_tag_insert AFTER INSERT ON task_tag BEGIN "
+                   + "UPDATE task_search SET tags = " + tagsOfTask("new.task_id")
+                   + " WHERE docid = new.task_id; END");
+        db.execSQL("CREATE TRIGGER task_search_tag_update AFTER UPDATE ON task_tag BEGIN "
+                   + "UPDATE task_search SET tags = " + tagsOfTask("old.task_id")
+                   + " WHERE docid = old.task_id; "
+                   + "UPDATE task_search SET tags = " + tagsOfTask("new.task_id")
+                   + " WHERE docid = new.task_id; END");
+        db.execSQL("CREATE TRIGGER task_search_tag_delete AFTER DELETE ON task_tag BEGIN "
+                   + "UPDATE task_search SET tags = " + tagsOfTask("old.task_id")
+                   + " WHERE docid = old.task_id; END");
+        db.execSQL("CREATE TRIGGER tag_search_insert AFTER INSERT ON tag BEGIN "
+                   + "INSERT INTO tag_search (docid, name) VALUES (new._id, new.name); END");
+        db.execSQL("CREATE TRIGGER tag_search_update AFTER UPDATE OF name ON tag BEGIN "
+                   + "UPDATE tag_search SET name = new.name WHERE docid = new._id; "
+                   + "UPDATE task_search SET tags = " + tagsOfTask("task_search.docid")
+                   + " WHERE docid IN (SELECT task_id FROM task_tag WHERE tag_id = new._id); END");
+        db.execSQL("CREATE TRIGGER tag_search_delete AFTER DELETE ON tag BEGIN "
+                   + "DELETE FROM tag_search WHERE docid = old._id; "
+                   + "UPDATE task_search SET tags = " + tagsOfTask("task_search.docid")
+                   + " WHERE docid IN (SELECT task_id FROM task_tag WHERE tag_id = old._id); END");
+    }
+
+    /**
+     * Recounts the open tasks of all lists and compares the result with the counters maintained
+     * by the triggers.
+     *
+     * @param repair if true the drifted counters are overwritten with the recounted values
+     * @return list id -> (stored count, actual count) for every list whose counter drifted
+     */
+    @NonNull
+    public Map<Long, Pair<Long, Long>> checkListTaskCounts(final boolean repair) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final Map<Long, Pair<Long, Long>> drift = new HashMap<>();
+        final Cursor c = db.rawQuery("SELECT lists._id, IFNULL(list_task_count.task_count, -1), "
+                                     + countTasksOfList("lists._id") + " FROM lists "
+                                     + "LEFT JOIN list_task_count ON list_task_count.list_id = lists._id",
+                                     null);
+        try {
+            while (c.moveToNext()) {
+                if (c.getLong(1) != c.getLong(2)) {
+                    drift.put(c.getLong(0), new Pair<>(c.getLong(1), c.getLong(2)));
+                }
+            }
+        } finally {
+            c.close();
+        }
+        if (!drift.isEmpty()) {
+            Log.w(TAG, "task counts drifted: " + drift);
+            if (repair) {
+                db.beginTransaction();
+                try {
+                    for (final Entry<Long, Pair<Long, Long>> list : drift.entrySet()) {
+                        final ContentValues values = new ContentValues();
+                        values.put("list_id", list.getKey());
+                        values.put("task_count", list.getValue().second);
+                        db.insertWithOnConflict("list_task_count", null, values,
+                                                SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        }
+        return drift;
+    }
+
     private static void createTableRecurrenceTW(final SQLiteDatabase db) {
         db.execSQL("CREATE TABLE "
                    + "recurring_tw_mask"
@@ -1786,6 +2019,67 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                    + "ON DELETE CASCADE ON UPDATE CASCADE ,offset INTEGER,offsetCount INTEGER)");
     }
 
+    /**
+     * The measurements of the last syncs, shown in the debug menu
+     */
+    private static void createSyncMetricsTable(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE sync_metrics (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                   + "account TEXT NOT NULL, started_at INTEGER NOT NULL, result TEXT, "
+                   + "bytes_sent INTEGER NOT NULL DEFAULT 0, "
+                   + "bytes_received INTEGER NOT NULL DEFAULT 0, "
+                   + "setup_time INTEGER NOT NULL DEFAULT 0, "
+                   + "connect_time INTEGER NOT NULL DEFAULT 0, "
+                   + "handshake_time INTEGER NOT NULL DEFAULT 0, "
+                   + "transfer_time INTEGER NOT NULL DEFAULT 0, "
+                   + "parse_time INTEGER NOT NULL DEFAULT 0, "
+                   + "apply_time INTEGER NOT NULL DEFAULT 0, "
+                   + "total_time INTEGER NOT NULL DEFAULT 0, "
+                   + "inserted INTEGER NOT NULL DEFAULT 0, updated INTEGER NOT NULL DEFAULT 0, "
+                   + "deleted INTEGER NOT NULL DEFAULT 0, skipped INTEGER NOT NULL DEFAULT 0, "
+                   + "transactions INTEGER NOT NULL DEFAULT 0, "
+                   + "notifications INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    /**
+     * The times of the instances of the caldav tasks, everything else is read from caldav_tasks.
+     * Instances of recurring tasks have their occurrence in instance_original_time, the first
+     * instance and the instance of a single task have none.
+     */
+    private static void createCaldavInstances(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE caldav_instance_data (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                   + "task_id INTEGER NOT NULL, instance_start INTEGER, instance_due INTEGER, "
+                   + "instance_start_sorting INTEGER, instance_due_sorting INTEGER, "
+                   + "instance_duration INTEGER, instance_original_time INTEGER)");
+        db.execSQL("CREATE INDEX caldav_instance_data_task ON caldav_instance_data "
+                   + "(task_id, instance_original_time)");
+        db.execSQL("CREATE INDEX caldav_instance_data_time ON caldav_instance_data "
+                   + "(instance_original_time)");
+        db.execSQL("CREATE TRIGGER caldav_instance_data_cleanup AFTER DELETE ON tasks\n" +
+                   "BEGIN\n" +
+                   "    DELETE FROM caldav_instance_data WHERE task_id = old._id;\n" +
+                   "END;");
+        db.execSQL("CREATE VIEW caldav_instances AS SELECT \n" +
+                   "i._id,\n" +
+                   "i.task_id,\n" +
+                   "i.instance_start,\n" +
+                   "i.instance_due,\n" +
+                   "i.instance_start_sorting,\n" +
+                   "i.instance_due_sorting,\n" +
+                   "i.instance_duration,\n" +
+                   "t._sync_id, t.sync_version, t._dirty, t.sync1, t.sync2, t.sync3, t.sync4,\n" +
+                   "t.sync5, t.sync6, t.sync7, t.sync8, t._uid, t._deleted, t.list_id, t.title,\n" +
+                   "t.location, t.geo, t.description, t.url, t.organizer, t.priority, t.class,\n" +
+                   "t.completed, t.completed_is_allday, t.percent_complete, t.status, t.is_new,\n" +
+                   "t.is_closed, t.task_color, t.dtstart, t.is_allday, t.created, t.last_modified,\n" +
+                   "t.tz, t.due, t.duration, t.rdate, t.exdate, t.rrule,\n" +
+                   "t.original_instance_sync_id, t.original_instance_id, t.original_instance_time,\n" +
+                   "t.original_instance_allday, t.parent_id, t.sorting, t.has_alarms,\n" +
+                   "t.account_name, t.account_type, t.list_name, t.list_color, t.list_owner,\n" +
+                   "t.list_access_level, t.visible\n" +
+                   "FROM caldav_instance_data AS i\n" +
+                   "INNER JOIN caldav_tasks AS t ON t._id = i.task_id;");
+    }
+
     private static void createCalDavExtraTable(final SQLiteDatabase db) {
         db.execSQL("CREATE TABLE caldav_extra(_id INTEGER PRIMARY KEY,"
                    + "ETAG TEXT,SYNC_ID TEXT DEFAULT NULL, "
@@ -30,6 +30,7 @@ import android.support.annotation.NonNull;
 import com.google.common.base.Optional;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import de.azapps.tools.Log;
@@ -48,6 +49,8 @@ public class MirakelContentObserver extends ContentObserver {
     private static final String TAG = "MirakelContentObserver";
     @NonNull
     private Map<Uri, ObserverCallBack> doWhat;
+    // whether a change of a single row is passed to the callback of its table
+    private final boolean routeRowsToTable;
 
     public MirakelContentObserver(final @NonNull  Handler h, final @NonNull Context ctx,
                                   final @NonNull Map<Uri, ObserverCallBack> doOnChange) {
@@ -57,15 +60,27 @@ public class MirakelContentObserver extends ContentObserver {
             resolver.registerContentObserver(u, true, this);
         }
         doWhat = doOnChange;
+        routeRowsToTable = false;
     }
 
     public MirakelContentObserver(final @NonNull Handler h, final @NonNull Context ctx,
                                   final @NonNull Uri uri, final @NonNull ObserverCallBack doOnChange) {
+        this(h, ctx, uri, doOnChange, false);
+    }
+
+    /**
+     * @param routeRowsToTable if true a change of a single row of uri calls
+     *                         {@link ObserverCallBack#handleChange(long)} with the id of the row
+     */
+    public MirakelContentObserver(final @NonNull Handler h, final @NonNull Context ctx,
+                                  final @NonNull Uri uri, final @NonNull ObserverCallBack doOnChange,
+                                  final boolean routeRowsToTable) {
         super(h);
         final ContentResolver resolver = ctx.getContentResolver();
         resolver.registerContentObserver(uri, true, this);
         doWhat = new HashMap<>(1);
         doWhat.put(uri, doOnChange);
+        this.routeRowsToTable = routeRowsToTable;
     }
 
     public void unregister(final @NonNull Context ctx) {
@@ -99,16 +114,28 @@ public class MirakelContentObserver extends ContentObserver {
                 Log.d(TAG, "uri claims to be hierarchical but is not, no problem, eat it", e);
             }
         }
-        if (doWhat.containsKey(uri)) {
-            final ObserverCallBack doSomething = doWhat.get(uri);
+        final Uri registered = (routeRowsToTable && id.isPresent() && !doWhat.containsKey(uri)) ?
+                               getParent(uri) : uri;
+        if (doWhat.containsKey(registered)) {
+            final ObserverCallBack doSomething = doWhat.get(registered);
             if (id.isPresent() && (doSomething != null)) {
                 doSomething.handleChange(id.get());
-            } else {
-                doWhat.get(uri).handleChange();
+            } else if (doSomething != null) {
+                doSomething.handleChange();
             }
         } else {
             Log.wtf(TAG, "no callback found for this uri: " + uri.toString());
         }
     }
 
+    @NonNull
+    private static Uri getParent(final @NonNull Uri uri) {
+        final List<String> segments = uri.getPathSegments();
+        final Uri.Builder parent = uri.buildUpon().path(null);
+        for (int i = 0; i < (segments.size() - 1); i++) {
+            parent.appendPath(segments.get(i));
+        }
+        return parent.build();
+    }
+
 }
@@ -38,6 +38,7 @@ import java.util.List;
 
 import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
 import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.generic.ModelCache;
 import de.azapps.mirakel.model.R;
 import de.azapps.mirakel.model.list.ListMirakel;
 import de.azapps.mirakel.model.query_builder.Cursor2List;
@@ -54,6 +55,27 @@ public class AccountMirakel extends AccountBase {
                 ACCOUNT_TYPES.LOCAL.toInt(), ACCOUNT_TYPES.TASKWARRIOR.toInt()));
     private static final CursorWrapper.CursorConverter<List<AccountMirakel>> LIST_FROM_CURSOR = new
     Cursor2List<>(AccountMirakel.class);
+    private static final ModelCache<AccountMirakel> CACHE = new ModelCache<>(32,
+    new ModelCache.Loader<AccountMirakel>() {
+        @NonNull
+        @Override
+        public Optional<AccountMirakel> load(final long id) {
+            return new MirakelQueryBuilder(context).get(AccountMirakel.class, id);
+        }
+
+        @NonNull
+        @Override
+        public List<AccountMirakel> loadAll() {
+            return new MirakelQueryBuilder(context).getList(AccountMirakel.class);
+        }
+
+        @NonNull
+        @Override
+        public AccountMirakel copy(@NonNull final AccountMirakel account) {
+            return new AccountMirakel((int) account.getId(), account.getName(), account.getType(),
+                                      account.isEnabled(), account.getSyncKey());
+        }
+    });
 
     public enum ACCOUNT_TYPES {
         ALL, CALDAV, LOCAL, TASKWARRIOR;
@@ -188,7 +210,15 @@ public class AccountMirakel extends AccountBase {
     }
 
     public static Optional<AccountMirakel> get(final long id) {
-        return new MirakelQueryBuilder(context).get(AccountMirakel.class, id);
+        return CACHE.get(id);
+    }
+
+    public static void invalidateCache() {
+        CACHE.invalidate();
+    }
+
+    public static void observeCache() {
+        CACHE.observe(context, MirakelInternalContentProvider.ACCOUNT_CHANGED_URI);
     }
 
     public static long countRemoteAccounts() {
@@ -33,12 +33,14 @@ import com.google.common.base.Optional;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 
 import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
 import de.azapps.mirakel.model.R;
 import de.azapps.mirakel.model.query_builder.Cursor2List;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorReadPlan;
 import de.azapps.mirakel.model.query_builder.CursorWrapper;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
@@ -56,6 +58,11 @@ public class FileMirakel extends FileBase {
     private static final CursorWrapper.CursorConverter<List<FileMirakel>> LIST_FROM_CURSOR = new
     Cursor2List<>(FileMirakel.class);
     public static final String[] allColumns = { ID, NAME, TASK, PATH };
+    private static final CursorReadPlan READ_PLAN = new CursorReadPlan(allColumns);
+    private static final int COLUMN_ID = READ_PLAN.indexOf(ID);
+    private static final int COLUMN_NAME = READ_PLAN.indexOf(NAME);
+    private static final int COLUMN_TASK = READ_PLAN.indexOf(TASK);
+    private static final int COLUMN_PATH = READ_PLAN.indexOf(PATH);
     public static final String cacheDirPath = FileUtils.getMirakelDir()
             + "image_cache";
     public static final File fileCacheDir = new File(cacheDirPath);
@@ -81,12 +88,23 @@ public class FileMirakel extends FileBase {
 
 
     public FileMirakel(final CursorGetter c) {
-        super(c.getInt(ID), c.getString(NAME), Task.get(c.getLong(TASK)).orNull(),
-              Uri.parse(c.getString(PATH)));
+        this(c, c.resolve(READ_PLAN));
+    }
+
+    private FileMirakel(final @NonNull CursorGetter c, final @NonNull int[] columns) {
+        super(c.getInt(columns[COLUMN_ID]), c.getString(columns[COLUMN_NAME]),
+              Task.get(c.getLong(columns[COLUMN_TASK])).orNull(),
+              Uri.parse(c.getString(columns[COLUMN_PATH])));
     }
 
     private FileMirakel(final @NonNull CursorGetter c, final @NonNull Task t) {
-        super(c.getInt(ID), c.getString(NAME), t, Uri.parse(c.getString(PATH)));
+        this(c, c.resolve(READ_PLAN), t);
+    }
+
+    private FileMirakel(final @NonNull CursorGetter c, final @NonNull int[] columns,
+                        final @NonNull Task t) {
+        super(c.getInt(columns[COLUMN_ID]), c.getString(columns[COLUMN_NAME]), t,
+              Uri.parse(c.getString(columns[COLUMN_PATH])));
     }
 
     // Static Methods
@@ -110,6 +128,18 @@ public class FileMirakel extends FileBase {
         });
     }
 
+    /**
+     * Removes the cached previews of files which were deleted from the database
+     */
+    public static void destroyPreviews(@NonNull final Collection<Long> fileIds) {
+        for (final long id : fileIds) {
+            final File preview = new File(fileCacheDir, id + ".png");
+            if (preview.exists()) {
+                preview.delete();
+            }
+        }
+    }
+
     /**
      * Get a Task by id
      *
@@ -26,7 +26,13 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import de.azapps.mirakel.DefinitionsHelper;
+import de.azapps.mirakel.model.account.AccountMirakel;
+import de.azapps.mirakel.model.list.ListMirakel;
 import de.azapps.tools.Log;
 
 
@@ -66,6 +72,8 @@ abstract public class ModelBase implements IGenericElementInterface {
             return;
         }
         context = ctx;
+        ListMirakel.observeCache();
+        AccountMirakel.observeCache();
     }
 
     public long getId() {
@@ -126,6 +134,15 @@ abstract public class ModelBase implements IGenericElementInterface {
 
     protected abstract Uri getUri();
 
+    @NonNull
+    public static List<Long> getIds(@NonNull final Collection<? extends ModelBase> models) {
+        final List<Long> ids = new ArrayList<>(models.size());
+        for (final ModelBase model : models) {
+            ids.add(model.getId());
+        }
+        return ids;
+    }
+
     public void destroy() {
         delete(getUri(), ID + "=?", new String[] {String.valueOf(getId())});
     }
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package de.azapps.mirakel.model.generic;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+
+import com.google.common.base.Optional;
+
+import java.util.List;
+
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
+
+import static com.google.common.base.Optional.of;
+
+/**
+ * Process wide cache for models which are read very often but changed rarely
+ * (e.g. lists and accounts). Hydrating a task needs its list, without this cache every
+ * row would cause an extra query for the same handful of lists.
+ *
+ * On the first miss the whole table is loaded with one query. The callers get copies, so
+ * changing a model without saving it does not leak into the other callers. The content is
+ * dropped after every committed write to the table, either directly by the content provider
+ * (if it runs in this process) or through the notifications of the observed uris.
+ */
+public class ModelCache<T extends ModelBase> {
+
+    public interface Loader<T> {
+        @NonNull
+        Optional<T> load(long id);
+
+        @NonNull
+        List<T> loadAll();
+
+        @NonNull
+        T copy(@NonNull T model);
+    }
+
+    @NonNull
+    private final LruCache<Long, T> cache;
+    @NonNull
+    private final Loader<T> loader;
+    private boolean isWarm = false;
+    private boolean isObserving = false;
+
+    public ModelCache(final int maxSize, @NonNull final Loader<T> loader) {
+        this.cache = new LruCache<>(maxSize);
+        this.loader = loader;
+    }
+
+    @NonNull
+    public synchronized Optional<T> get(final long id) {
+        final T cached = cache.get(id);
+        if (cached != null) {
+            return of(loader.copy(cached));
+        }
+        if (!isWarm) {
+            isWarm = true;
+            for (final T model : loader.loadAll()) {
+                cache.put(model.getId(), model);
+            }
+            final T loaded = cache.get(id);
+            if (loaded != null) {
+                return of(loader.copy(loaded));
+            }
+        }
+        final Optional<T> loaded = loader.load(id);
+        if (loaded.isPresent()) {
+            cache.put(id, loader.copy(loaded.get()));
+        }
+        return loaded;
+    }
+
+    /**
+     * Replaces the cached model with a copy of a freshly loaded one
+     *
+     * @return the model
+     */
+    @NonNull
+    public synchronized T put(@NonNull final T model) {
+        cache.put(model.getId(), loader.copy(model));
+        return model;
+    }
+
+    public synchronized void invalidate() {
+        cache.evictAll();
+        isWarm = false;
+    }
+
+    /**
+     * Drop the cache whenever one of the uris is notified. This is needed for processes
+     * which do not host the content provider (e.g. the sync process). Observe the uris of
+     * {@link MirakelInternalContentProvider#LIST_CHANGED_URI} and friends, the uris of the
+     * tables are also notified if only a task changed.
+     */
+    public synchronized void observe(@NonNull final Context ctx, @NonNull final Uri... uris) {
+        if (isObserving) {
+            return;
+        }
+        isObserving = true;
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(final boolean selfChange) {
+                // the provider already dropped the cache if it lives in this process
+                if (!MirakelInternalContentProvider.isLocal()) {
+                    invalidate();
+                }
+            }
+        };
+        for (final Uri uri : uris) {
+            ctx.getContentResolver().registerContentObserver(uri, true, observer);
+        }
+    }
+}
@@ -31,6 +31,9 @@ import org.joda.time.DateTime;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -43,9 +46,12 @@ import de.azapps.mirakel.model.DatabaseHelper;
 import de.azapps.mirakel.model.R;
 import de.azapps.mirakel.model.account.AccountMirakel;
 import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.generic.ModelCache;
+import de.azapps.mirakel.model.generic.ModelFactory;
 import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
 import de.azapps.mirakel.model.query_builder.Cursor2List;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorReadPlan;
 import de.azapps.mirakel.model.query_builder.CursorWrapper;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
@@ -66,8 +72,44 @@ public class ListMirakel extends ListBase implements ListMirakelInterface {
      * This is used by the Spinner in the MirakelActivity to identify the All Accounts selection
      */
     public static final int ALL_ACCOUNTS_ID = 0;
+    private static final ModelCache<ListMirakel> CACHE = new ModelCache<>(256,
+    new ModelCache.Loader<ListMirakel>() {
+        @NonNull
+        @Override
+        public Optional<ListMirakel> load(final long id) {
+            return new MirakelQueryBuilder(context).get(ListMirakel.class, id);
+        }
+
+        @NonNull
+        @Override
+        public List<ListMirakel> loadAll() {
+            return new MirakelQueryBuilder(context).select(allColumns).query(URI)
+            .doWithCursor(new Cursor2List<>(new CursorWrapper.CursorConverter<ListMirakel>() {
+                @Override
+                public ListMirakel convert(@NonNull final CursorGetter getter) {
+                    return ModelFactory.createModel(getter, ListMirakel.class);
+                }
+            }));
+        }
+
+        @NonNull
+        @Override
+        public ListMirakel copy(@NonNull final ListMirakel list) {
+            return new ListMirakel(list);
+        }
+    });
     private static final CursorWrapper.CursorConverter<List<ListMirakel>> LIST_FROM_CURSOR = new
-    Cursor2List<>(ListMirakel.class);
+    Cursor2List<>(new CursorWrapper.CursorConverter<ListMirakel>() {
+        @Override
+        public ListMirakel convert(@NonNull final CursorGetter getter) {
+            final ListMirakel list = new ListMirakel(getter);
+            if (list.isSpecial()) {
+                // special lists are created by the ModelFactory, do not replace them
+                return list;
+            }
+            return CACHE.put(list);
+        }
+    });
 
     public static class ListAlreadyExistsException extends Exception {
         public ListAlreadyExistsException(String detailMessage) {
@@ -82,6 +124,22 @@ public class ListMirakel extends ListBase implements ListMirakelInterface {
                                                SpecialList.ACTIVE, SpecialList.DEFAULT_DUE, SpecialList.DEFAULT_LIST
                                               };
 
+    private static final CursorReadPlan READ_PLAN = new CursorReadPlan(ModelBase.ID, ModelBase.NAME,
+            SORT_BY_FIELD, DatabaseHelper.CREATED_AT, DatabaseHelper.UPDATED_AT,
+            DatabaseHelper.SYNC_STATE_FIELD, LFT, RGT, COLOR, ACCOUNT_ID, ICON_PATH, IS_SPECIAL);
+    private static final int COLUMN_ID = READ_PLAN.indexOf(ModelBase.ID);
+    private static final int COLUMN_NAME = READ_PLAN.indexOf(ModelBase.NAME);
+    private static final int COLUMN_SORT_BY = READ_PLAN.indexOf(SORT_BY_FIELD);
+    private static final int COLUMN_CREATED_AT = READ_PLAN.indexOf(DatabaseHelper.CREATED_AT);
+    private static final int COLUMN_UPDATED_AT = READ_PLAN.indexOf(DatabaseHelper.UPDATED_AT);
+    private static final int COLUMN_SYNC_STATE = READ_PLAN.indexOf(DatabaseHelper.SYNC_STATE_FIELD);
+    private static final int COLUMN_LFT = READ_PLAN.indexOf(LFT);
+    private static final int COLUMN_RGT = READ_PLAN.indexOf(RGT);
+    private static final int COLUMN_COLOR = READ_PLAN.indexOf(COLOR);
+    private static final int COLUMN_ACCOUNT_ID = READ_PLAN.indexOf(ACCOUNT_ID);
+    private static final int COLUMN_ICON_PATH = READ_PLAN.indexOf(ICON_PATH);
+    private static final int COLUMN_IS_SPECIAL = READ_PLAN.indexOf(IS_SPECIAL);
+
     public enum SORT_BY {
         OPT, DUE, PRIO, ID, REVERT_DEFAULT;
 
@@ -254,18 +312,34 @@ public class ListMirakel extends ListBase implements ListMirakelInterface {
      * @param c cursor
      */
     public ListMirakel(final @NonNull CursorGetter c) {
-        super(c.getLong(ID), c.getString(NAME),
-              SORT_BY.fromShort(c.getShort(SORT_BY_FIELD)),
-              c.getDateTime(DatabaseHelper.CREATED_AT),
-              c.getDateTime(DatabaseHelper.UPDATED_AT),
-              SYNC_STATE.valueOf(c.getShort(DatabaseHelper.SYNC_STATE_FIELD)),
-              c.getInt(LFT), c.getInt(RGT), c.getInt(COLOR),
-              c.getInt(ACCOUNT_ID),
-              FileUtils.parsePath(c.getString(ICON_PATH)),
-              c.getBoolean(IS_SPECIAL));
+        this(c, c.resolve(READ_PLAN));
+    }
+
+    private ListMirakel(final @NonNull CursorGetter c, final @NonNull int[] columns) {
+        super(c.getLong(columns[COLUMN_ID]), c.getString(columns[COLUMN_NAME]),
+              SORT_BY.fromShort(c.getShort(columns[COLUMN_SORT_BY])),
+              c.getDateTime(columns[COLUMN_CREATED_AT]),
+              c.getDateTime(columns[COLUMN_UPDATED_AT]),
+              SYNC_STATE.valueOf(c.getShort(columns[COLUMN_SYNC_STATE])),
+              c.getInt(columns[COLUMN_LFT]), c.getInt(columns[COLUMN_RGT]),
+              c.getInt(columns[COLUMN_COLOR]),
+              c.getInt(columns[COLUMN_ACCOUNT_ID]),
+              FileUtils.parsePath(c.getString(columns[COLUMN_ICON_PATH])),
+              c.getBoolean(columns[COLUMN_IS_SPECIAL]));
     }
 
 
+    /**
+     * Copy a list
+     *
+     * @param other the list to copy
+     */
+    public ListMirakel(final @NonNull ListMirakel other) {
+        super(other.getId(), other.getName(), other.sortBy, other.createdAt, other.updatedAt,
+              other.syncState, other.lft, other.rgt, other.color, (int) other.accountID,
+              other.iconPath, other.isSpecial);
+    }
+
     protected ListMirakel(final long id, @NonNull final String name, @NonNull final SORT_BY sortBy,
                           @NonNull final DateTime createdAt, @NonNull final DateTime updatedAt,
                           @NonNull final SYNC_STATE syncState, final int lft, final int rgt,
@@ -310,9 +384,25 @@ public class ListMirakel extends ListBase implements ListMirakelInterface {
         }
     }
 
+    /**
+     * Get a list by id. The lists are cached, so this does not hit the database
+     * for every call.
+     *
+     * @param listId id of the list
+     * @return the list
+     */
     @NonNull
     public static Optional<ListMirakel> get(final long listId) {
-        return new MirakelQueryBuilder(context).get(ListMirakel.class, listId);
+        return CACHE.get(listId);
+    }
+
+    public static void invalidateCache() {
+        CACHE.invalidate();
+    }
+
+    public static void observeCache() {
+        CACHE.observe(context, MirakelInternalContentProvider.LIST_CHANGED_URI,
+                      MirakelInternalContentProvider.ACCOUNT_CHANGED_URI);
     }
 
     public static void setDefaultAccount(@NonNull final AccountMirakel account) {
@@ -503,6 +593,29 @@ public class ListMirakel extends ListBase implements ListMirakelInterface {
         destroy(false);
     }
 
+    /**
+     * Delete all lists in one transaction
+     */
+    public static void destroyAll(@NonNull final Collection<ListMirakel> lists) {
+        final List<ListMirakel> sorted = new ArrayList<>(lists);
+        // Start with the last list, so the lft of the other lists is not changed by the delete
+        Collections.sort(sorted, new Comparator<ListMirakel>() {
+            @Override
+            public int compare(final ListMirakel lhs, final ListMirakel rhs) {
+                return rhs.getLft() - lhs.getLft();
+            }
+        });
+        MirakelInternalContentProvider.withTransaction(new
+        MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                for (final ListMirakel list : sorted) {
+                    list.destroy();
+                }
+            }
+        });
+    }
+
     /**
      * Delete a List from the Database
      *
@@ -30,9 +30,11 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.Build;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.text.format.Time;
 
 import org.dmfs.provider.tasks.Duration;
+import org.dmfs.provider.tasks.RecurrenceSet;
 import org.dmfs.provider.tasks.TaskContract;
 import org.dmfs.provider.tasks.TaskContract.Alarms;
 import org.dmfs.provider.tasks.TaskContract.Categories;
@@ -53,12 +55,18 @@ import org.dmfs.provider.tasks.handler.PropertyHandlerFactory;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.azapps.mirakel.model.DatabaseHelper;
 import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.list.ListMirakel;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
 import de.azapps.mirakel.model.tags.Tag;
@@ -82,6 +90,30 @@ public class MirakelContentProvider extends SQLiteContentProvider {
     private static final UriMatcher uriMatcher;
 
     private static final String[] TASK_ID_PROJECTION = { Tasks._ID };
+    /**
+     * The columns which define the instances of a task, the id has to be the first one
+     */
+    private static final String[] TASK_TIMES_PROJECTION = { Tasks._ID, Tasks.DTSTART, Tasks.DUE, Tasks.DURATION, Tasks.TZ,
+                                                            Tasks.IS_ALLDAY, Tasks.RRULE, Tasks.RDATE, Tasks.EXDATE
+                                                          };
+
+    /**
+     * The occurrence of an instance of a recurring task, only used internally to find the last instance
+     */
+    private static final String INSTANCE_ORIGINAL_TIME = "instance_original_time";
+    private static final long INSTANCE_WINDOW_AHEAD = 90 * DateUtils.DAY_IN_MILLIS;
+    private static final long INSTANCE_WINDOW_BEHIND = DateUtils.DAY_IN_MILLIS;
+    private static final int MAX_INSTANCES_PER_EXPANSION = 500;
+    /**
+     * {@link #TASK_TIMES_PROJECTION} and the occurrence of the last stored instance of the task
+     */
+    private static final String[] TASK_EXPANSION_PROJECTION = Arrays.copyOf(TASK_TIMES_PROJECTION,
+            TASK_TIMES_PROJECTION.length + 1);
+    static {
+        TASK_EXPANSION_PROJECTION[TASK_TIMES_PROJECTION.length] = "(SELECT MAX(" + INSTANCE_ORIGINAL_TIME + ") FROM "
+                + MirakelInternalContentProvider.CALDAV_INSTANCE_DATA + " WHERE " + Instances.TASK_ID + "=caldav_tasks."
+                + Tasks._ID + ")";
+    }
     private static final String[] TASK_SYNC_ID_PROJECTION = { Tasks._SYNC_ID };
     private static final String[] TASKLIST_ID_PROJECTION = { TaskLists._ID };
 
@@ -112,6 +144,17 @@ public class MirakelContentProvider extends SQLiteContentProvider {
      */
     private DatabaseHelper mDBHelper;
 
+    /**
+     * The time at which the stored instances of some recurring task stop covering the window. The window is only
+     * extended after this time, so most queries do not have to look at the recurring tasks at all.
+     */
+    private final AtomicLong instancesValidUntil = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicBoolean instanceExtensionPending = new AtomicBoolean(false);
+    /**
+     * Extends the window off the query path, the readers get notified about the new instances
+     */
+    private final ExecutorService instanceExecutor = Executors.newSingleThreadExecutor();
+
 
     /**
      * Return true if the caller is a sync adapter (i.e. if the Uri contains the query parameter {@link TaskContract#CALLER_IS_SYNCADAPTER} and its value is
@@ -383,6 +426,7 @@ public class MirakelContentProvider extends SQLiteContentProvider {
             }
             break;
         case INSTANCES:
+            scheduleInstanceWindow();
             if (shouldLoadProperties(uri)) {
 // extended properties were requested, therefore change to instance view that includes these properties
                 newUri = CaldavDatabaseHelper.getInstancesUri(true);
@@ -400,6 +444,7 @@ public class MirakelContentProvider extends SQLiteContentProvider {
             }
             break;
         case INSTANCE_ID:
+            scheduleInstanceWindow();
             if (shouldLoadProperties(uri)) {
 // extended properties were requested, therefore change to instance view that includes these properties
                 newUri = CaldavDatabaseHelper.getInstancesUri(true);
@@ -623,8 +668,7 @@ public class MirakelContentProvider extends SQLiteContentProvider {
                 values.put(TaskColumns.LAST_MODIFIED, System.currentTimeMillis());
             }
             count = db.update(CaldavDatabaseHelper.getTasksUri(false), values, newSelection, selectionArgs);
-            String taskSelection = updateSelection(selectTaskId(uri), selection).toString();
-            updateInstancesOfOneTask(db, getId(uri), values, taskSelection, selectionArgs);
+            updateInstancesOfOneTask(db, getId(uri), values);
             break;
         case PROPERTY_ID:
             if (!values.containsKey(Properties.PROPERTY_ID)) {
@@ -737,7 +781,8 @@ public class MirakelContentProvider extends SQLiteContentProvider {
     /**
      * Creates new instances for the given task {@link ContentValues}.
      * <p>
-     * TODO: expand recurrence
+     * Recurring tasks are expanded up to {@link #INSTANCE_WINDOW_AHEAD} after now, later instances are added by {@link #extendInstanceWindow()}
+     * when time advances.
      * </p>
      *
      * @param uri
@@ -749,27 +794,245 @@ public class MirakelContentProvider extends SQLiteContentProvider {
      */
     private void createInstances(ContentResolver db, Uri uri, ContentValues values,
                                  Uri taskUri) {
+        createInstances(db, getId(taskUri), values);
+        postNotifyUri(Instances.CONTENT_URI);
+    }
+
+
+    private void createInstances(ContentResolver db, String taskId, ContentValues values) {
         ContentValues instanceValues = setInstanceTimes(values);
 // set rowID of current Task
-        instanceValues.put(Instances.TASK_ID, getId(taskUri));
+        instanceValues.put(Instances.TASK_ID, taskId);
+        RecurrenceSet recurrence = getRecurrenceSet(values, instanceValues);
+        if (recurrence == null || !recurrence.isRecurring()) {
+            addSortingValues(instanceValues, values);
+            db.insert(CaldavDatabaseHelper.getInstanceDataUri(), instanceValues);
+            return;
+        }
+// the first instance is the task itself, it never leaves the window
+        long first = getInstanceAnchor(instanceValues);
+        if (!recurrence.isExcluded(first)) {
+            ContentValues firstValues = new ContentValues(instanceValues);
+            addSortingValues(firstValues, values);
+            db.insert(CaldavDatabaseHelper.getInstanceDataUri(), firstValues);
+        }
+        long now = System.currentTimeMillis();
+        expandInstances(db, instanceValues, values, recurrence, Math.max(now, first + 1),
+                        now + INSTANCE_WINDOW_AHEAD);
+    }
+
+
+    /**
+     * Inserts the instances of a recurring task in the given range, at most {@link #MAX_INSTANCES_PER_EXPANSION}, and
+     * records when the window passes the inserted instances.
+     *
+     * @param instanceValues
+     * The times of the first instance.
+     * @return the number of inserted instances.
+     */
+    private int expandInstances(ContentResolver db, ContentValues instanceValues, ContentValues values,
+                                RecurrenceSet recurrence, long from, long to) {
+        if (from >= to) {
+            invalidateInstancesAt(to);
+            return 0;
+        }
+        long first = getInstanceAnchor(instanceValues);
+        Long start = instanceValues.getAsLong(Instances.INSTANCE_START);
+        Long due = instanceValues.getAsLong(Instances.INSTANCE_DUE);
+// look one window further, so we know when the next instance enters the window
+        List<Long> instances = recurrence.getInstances(from, to + INSTANCE_WINDOW_AHEAD,
+                               MAX_INSTANCES_PER_EXPANSION + 1);
+        int count = 0;
+        long middle = from;
+        long next = Long.MAX_VALUE;
+        for (long instance : instances) {
+            if (instance >= to || count == MAX_INSTANCES_PER_EXPANSION) {
+                next = instance;
+                break;
+            }
+            if (count == MAX_INSTANCES_PER_EXPANSION / 2) {
+                middle = instance;
+            }
+            count++;
+            ContentValues v = new ContentValues(instanceValues);
+            long shift = instance - first;
+            if (start != null) {
+                v.put(Instances.INSTANCE_START, start + shift);
+            }
+            if (due != null) {
+                v.put(Instances.INSTANCE_DUE, due + shift);
+            }
+            v.put(INSTANCE_ORIGINAL_TIME, instance);
+            addSortingValues(v, values);
+            db.insert(CaldavDatabaseHelper.getInstanceDataUri(), v);
+        }
+        if (next == Long.MAX_VALUE) {
+// nothing within the next window, check again when the window reached its end
+            invalidateInstancesAt(to);
+        } else if (next < to) {
+// the limit was hit, extend before the stored instances run out
+            invalidateInstancesAt(middle);
+        } else {
+            invalidateInstancesAt(next - INSTANCE_WINDOW_AHEAD);
+        }
+        return count;
+    }
+
+
+    private void invalidateInstancesAt(long time) {
+        long current;
+        do {
+            current = instancesValidUntil.get();
+            if (current <= time) {
+                return;
+            }
+        } while (!instancesValidUntil.compareAndSet(current, time));
+    }
+
+
+    /**
+     * @return the {@link RecurrenceSet} of the task or <code>null</code> if the task has no start and no due date.
+     */
+    private RecurrenceSet getRecurrenceSet(ContentValues values, ContentValues instanceValues) {
+        String rrule = values.getAsString(Tasks.RRULE);
+        String rdate = values.getAsString(Tasks.RDATE);
+        if ((rrule == null && rdate == null) || (instanceValues.getAsLong(Instances.INSTANCE_START) == null
+                && instanceValues.getAsLong(Instances.INSTANCE_DUE) == null)) {
+            return null;
+        }
+        Integer allday = values.getAsInteger(Tasks.IS_ALLDAY);
+        return new RecurrenceSet(getInstanceAnchor(instanceValues), values.getAsString(Tasks.TZ),
+                                 allday != null && allday > 0, rrule, rdate, values.getAsString(Tasks.EXDATE));
+    }
+
+
+    /**
+     * The recurrence starts at DTSTART, tasks without start recur from their due date.
+     */
+    private static long getInstanceAnchor(ContentValues instanceValues) {
+        Long start = instanceValues.getAsLong(Instances.INSTANCE_START);
+        return start != null ? start : instanceValues.getAsLong(Instances.INSTANCE_DUE);
+    }
+
+
+    /**
+     * Calculate sorting values for start and due times. If start or due values are non-null and non-allday we add the time zone offset to UTC. That ensures
+     * allday events (which are always in UTC) are sorted properly, independent of any time zone.
+     */
+    private static void addSortingValues(ContentValues instanceValues, ContentValues values) {
         String tz = values.getAsString(Instances.TZ);
-        boolean allday = values.getAsInteger(Tasks.IS_ALLDAY) != null &&
-                         values.getAsInteger(Tasks.IS_ALLDAY) > 0;
-// add start sorting if start value is present
+        Integer allday = values.getAsInteger(Tasks.IS_ALLDAY);
+        boolean utc = tz == null || (allday != null && allday > 0);
         Long instanceStart = instanceValues.getAsLong(Instances.INSTANCE_START);
         if (instanceStart != null) {
-            instanceValues
-            .put(Instances.INSTANCE_START_SORTING, instanceStart + (tz == null ||
-                    allday ? 0 : TimeZone.getTimeZone(tz).getOffset(instanceStart)));
+            instanceValues.put(Instances.INSTANCE_START_SORTING, instanceStart
+                               + (utc ? 0 : TimeZone.getTimeZone(tz).getOffset(instanceStart)));
+        } else if (values.containsKey(Tasks.DTSTART)) {
+// dtstart must have been set to null, so remove sorting value
+            instanceValues.putNull(Instances.INSTANCE_START_SORTING);
         }
-// add due sorting if due value is present
         Long instanceDue = instanceValues.getAsLong(Instances.INSTANCE_DUE);
         if (instanceDue != null) {
-            instanceValues.put(Instances.INSTANCE_DUE_SORTING, instanceDue + (tz == null ||
-                               allday ? 0 : TimeZone.getTimeZone(tz).getOffset(instanceDue)));
+            instanceValues.put(Instances.INSTANCE_DUE_SORTING, instanceDue
+                               + (utc ? 0 : TimeZone.getTimeZone(tz).getOffset(instanceDue)));
+        } else if (values.containsKey(Tasks.DUE)) {
+// due must have been set to null, so remove sorting value
+            instanceValues.putNull(Instances.INSTANCE_DUE_SORTING);
         }
-        db.insert(CaldavDatabaseHelper.getInstancesUri(false), instanceValues);
-        postNotifyUri(Instances.CONTENT_URI);
+    }
+
+
+    /**
+     * Extends the window of the instances on the worker thread, if the stored instances of some recurring task do not
+     * cover it anymore. Queries never write, they see the new instances through the notification.
+     */
+    private void scheduleInstanceWindow() {
+        if (System.currentTimeMillis() < instancesValidUntil.get()
+            || !instanceExtensionPending.compareAndSet(false, true)) {
+            return;
+        }
+        instanceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    extendInstanceWindow();
+                } finally {
+                    instanceExtensionPending.set(false);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Moves the window of the recurring instances forward. Instances which are older than {@link #INSTANCE_WINDOW_BEHIND} are removed, every recurring
+     * task gets the instances from its last instance (or now, if that is in the past) up to {@link #INSTANCE_WINDOW_AHEAD} after now, at most
+     * {@link #MAX_INSTANCES_PER_EXPANSION} at once. The last instances of all tasks are read with the tasks, so the cost depends on the number of new
+     * instances, not on the size of the window.
+     */
+    private void extendInstanceWindow() {
+        final ContentResolver db = CaldavDatabaseHelper.getContentProvider(getContext());
+        final long now = System.currentTimeMillis();
+// the expansions below lower it, the old instances are removed at least once a day
+        instancesValidUntil.set(now + INSTANCE_WINDOW_BEHIND);
+        final int[] changed = {0};
+        MirakelInternalContentProvider.withTransaction(new MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                changed[0] += db.delete(CaldavDatabaseHelper.getInstanceDataUri(), INSTANCE_ORIGINAL_TIME + "<?",
+                                        new String[] {String.valueOf(now - INSTANCE_WINDOW_BEHIND)});
+                Cursor tasks = db.query(CaldavDatabaseHelper.getTasksUri(false), TASK_EXPANSION_PROJECTION,
+                                        "(" + Tasks.RRULE + " IS NOT NULL OR " + Tasks.RDATE + " IS NOT NULL) AND " + Tasks._DELETED
+                                        + "=0", null, null);
+                if (tasks == null) {
+                    return;
+                }
+                try {
+                    int lastInstance = TASK_TIMES_PROJECTION.length;
+                    while (tasks.moveToNext()) {
+                        ContentValues values = readTaskTimes(tasks);
+                        ContentValues instanceValues = setInstanceTimes(values);
+                        instanceValues.put(Instances.TASK_ID, tasks.getString(0));
+                        RecurrenceSet recurrence = getRecurrenceSet(values, instanceValues);
+                        if (recurrence == null || !recurrence.isRecurring()) {
+                            continue;
+                        }
+                        long from = Math.max(now, getInstanceAnchor(instanceValues) + 1);
+                        if (!tasks.isNull(lastInstance)) {
+                            from = Math.max(from, tasks.getLong(lastInstance) + 1);
+                        }
+                        changed[0] += expandInstances(db, instanceValues, values, recurrence, from,
+                                                      now + INSTANCE_WINDOW_AHEAD);
+                    }
+                } finally {
+                    tasks.close();
+                }
+            }
+        });
+        if (changed[0] > 0) {
+            getContext().getContentResolver().notifyChange(Instances.CONTENT_URI, null);
+        }
+    }
+
+
+    /**
+     * Reads the columns of {@link #TASK_TIMES_PROJECTION} into {@link ContentValues} like the ones passed to insert.
+     */
+    private static ContentValues readTaskTimes(Cursor cursor) {
+        ContentValues values = new ContentValues();
+        for (int i = 1; i < TASK_TIMES_PROJECTION.length; i++) {
+            String column = TASK_TIMES_PROJECTION[i];
+            if (cursor.isNull(i)) {
+                values.putNull(column);
+            } else if (Tasks.DTSTART.equals(column) || Tasks.DUE.equals(column)) {
+                values.put(column, cursor.getLong(i));
+            } else if (Tasks.IS_ALLDAY.equals(column)) {
+                values.put(column, cursor.getInt(i));
+            } else {
+                values.put(column, cursor.getString(i));
+            }
+        }
+        return values;
     }
 
 
@@ -802,14 +1065,15 @@ public class MirakelContentProvider extends SQLiteContentProvider {
     private void updateInstancesOfAllTasks(ContentResolver db, ContentValues values,
                                            String selection, String[] selectionArgs) {
         Log.i("UPDATE_INSTANCE", "In updateInstanceOfAllTask");
+        if (!changesInstances(values)) {
+            return;
+        }
         Cursor cursor = db.query(CaldavDatabaseHelper.getTasksUri(false), TASK_ID_PROJECTION, selection,
                                  selectionArgs, null);
         if (cursor != null) {
             try {
                 while (cursor.moveToNext()) {
-                    String taskId = cursor.getString(0);
-                    String taskSelection = updateSelection(selectTaskId(taskId), selection).toString();
-                    updateInstancesOfOneTask(db, taskId, values, taskSelection, selectionArgs);
+                    updateInstancesOfOneTask(db, cursor.getString(0), values);
                 }
             } finally {
                 cursor.close();
@@ -818,53 +1082,42 @@ public class MirakelContentProvider extends SQLiteContentProvider {
     }
 
 
-    private void updateInstancesOfOneTask(ContentResolver db, String task_id,
-                                          ContentValues values, String selection, String[] selectionArgs) {
-// check if either one of the following has been updated: DTSTART, DUE, DURATION, RRULE, RDATE, EXDATE
-// right now we only update DTSTART, DUE and DURATION
-        /*
-        * DTSTART, DUE, DURATION, RRULE, RDATE, EXDATE in values? => update recurrence set
-        *
-        * DTSTART, DUE, DURATION => update values (in this very instance)
-        *
-        * All values must be given! DTSTART + DURATION -> DUE must be omitted DSTART + DUE -> DURATION must be omitted
-        */
+    /**
+     * Expands the instances of one task again, if the new values change its times or its recurrence. Everything else is read from the task by the
+     * instances view, so other changes do not touch the instances.
+     */
+    private void updateInstancesOfOneTask(ContentResolver db, String task_id, ContentValues values) {
         Log.i("UPDATE_INSTANCE", "In updateInstanceOfOneTask");
-        ContentValues instanceValues = setInstanceTimes(values);
-        instanceValues.put(Instances.TASK_ID, task_id);
-        if (values.getAsString(Tasks.RRULE) != null || values.getAsString(Tasks.RDATE) != null ||
-            values.getAsString(Tasks.EXDATE) != null) {
-// TODO: update recurrence table
+        if (!changesInstances(values)) {
+            return;
         }
-        /*
-        * Calculate sorting values for start and due times. If start or due values are non-null and non-allday we add the time zone offset to UTC. That ensures
-        * allday events (which are always in UTC) are sorted properly, independent of any time zone.
-        */
-        String tz = values.getAsString(Instances.TZ);
-        Integer allday = values.getAsInteger(Tasks.IS_ALLDAY);
-        Long instanceStart = instanceValues.getAsLong(Instances.INSTANCE_START);
-        if (instanceStart != null) {
-            instanceValues.put(Instances.INSTANCE_START_SORTING, instanceStart
-                               + (tz == null || (allday != null &&
-                                                 allday > 0) ? 0 : TimeZone.getTimeZone(tz).getOffset(instanceStart)));
-        } else if (values.containsKey(Tasks.DTSTART)) {
-// dtstart must have been set to null, so remove sorting value
-            instanceValues.putNull(Instances.INSTANCE_START_SORTING);
+        Cursor cursor = db.query(CaldavDatabaseHelper.getTasksUri(false), TASK_TIMES_PROJECTION, TASK_ID_SELECTION,
+                                 new String[] {task_id}, null);
+        if (cursor == null) {
+            return;
         }
-        Long instanceDue = instanceValues.getAsLong(Instances.INSTANCE_DUE);
-        if (instanceDue != null) {
-            instanceValues.put(Instances.INSTANCE_DUE_SORTING, instanceDue
-                               + (tz == null || (allday != null &&
-                                                 allday > 0) ? 0 : TimeZone.getTimeZone(tz).getOffset(instanceDue)));
-        } else if (values.containsKey(Tasks.DUE)) {
-// due must have been set to null, so remove sorting value
-            instanceValues.putNull(Instances.INSTANCE_DUE_SORTING);
+        try {
+            db.delete(CaldavDatabaseHelper.getInstanceDataUri(), Instances.TASK_ID + "=?", new String[] {task_id});
+            if (cursor.moveToFirst()) {
+                createInstances(db, task_id, readTaskTimes(cursor));
+            }
+        } finally {
+            cursor.close();
         }
-        db.update(CaldavDatabaseHelper.getInstancesUri(false), instanceValues, selection, selectionArgs);
         postNotifyUri(Instances.CONTENT_URI);
     }
 
 
+    private static boolean changesInstances(ContentValues values) {
+        for (String column : TASK_TIMES_PROJECTION) {
+            if (values.containsKey(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
     /**
      * Validate the given task list values.
      *
@@ -1187,6 +1440,10 @@ public class MirakelContentProvider extends SQLiteContentProvider {
 
     @Override
     protected void onEndTransaction(boolean callerIsSyncAdapter) {
+        // task lists are written through the caldav views, so the cached lists may be outdated
+        ListMirakel.invalidateCache();
+        // changes done through the internal provider inside this transaction
+        MirakelInternalContentProvider.flushNotifications();
         super.onEndTransaction(callerIsSyncAdapter);
     };
 
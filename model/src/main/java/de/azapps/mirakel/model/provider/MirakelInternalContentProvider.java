@@ -24,30 +24,45 @@ import android.accounts.AccountManager;
 import android.accounts.OnAccountsUpdateListener;
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.Build;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ConcurrentHashMultiset;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multiset;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.azapps.mirakel.DefinitionsHelper;
 import de.azapps.mirakel.model.DatabaseHelper;
@@ -70,6 +85,10 @@ public class MirakelInternalContentProvider extends ContentProvider implements
         abstract void exec();
     }
 
+    public interface SQLTransaction {
+        void exec(@NonNull SQLiteDatabase db);
+    }
+
     public static class DataBaseLockedException extends RuntimeException {
         public DataBaseLockedException(final String message) {
             super(message);
@@ -107,9 +126,21 @@ public class MirakelInternalContentProvider extends ContentProvider implements
 
     public static final String CALDAV_INSTANCE_PROPERTIES = "caldav_instance_properties";
     public static final String CALDAV_INSTANCES = "caldav_instances";
+    public static final String CALDAV_INSTANCE_DATA = "caldav_instance_data";
 
     // Uris
-    public static final Uri AUTOCOMPLETE_URI = getUri("autocomplete_helper");
+    public static final String AUTOCOMPLETE = "autocomplete_helper";
+    public static final String TASK_SEARCH = "task_search";
+    public static final String TAG_SEARCH = "tag_search";
+    public static final String SYNC_METRICS = "sync_metrics";
+
+    /**
+     * Query parameter with a full text MATCH expression, see {@link #getSearchUri(Uri, String)}
+     */
+    public static final String SEARCH_PARAMETER = "match";
+
+    public static final Uri AUTOCOMPLETE_URI = getUri(AUTOCOMPLETE);
+    public static final Uri TASK_SEARCH_URI = getUri(TASK_SEARCH);
     public static final Uri TASK_URI = getUri(Task.TABLE);
     public static final Uri TASK_SUBTASK_URI = getUri(TASK_SUBTASK_JOIN);
     public static final Uri TASK_TAG_JOIN_URI = getUri(TASK_TAG_JOIN);
@@ -121,6 +152,7 @@ public class MirakelInternalContentProvider extends ContentProvider implements
     public static final Uri CALDAV_TASKS_URI = getUri("caldav_tasks");
     public static final Uri CALDAV_TASKS_PROPERTY_URI = getUri("caldav_task_properties");
     public static final Uri CALDAV_INSTANCES_URI = getUri(CALDAV_INSTANCES);
+    public static final Uri CALDAV_INSTANCE_DATA_URI = getUri(CALDAV_INSTANCE_DATA);
     public static final Uri CALDAV_INSTANCE_PROPERTIES_URI = getUri(CALDAV_INSTANCE_PROPERTIES);
     public static final Uri CALDAV_PROPERTIES_URI = getUri("caldav_property_view");
     public static final Uri CALDAV_CATEGORIES_URI = getUri("caldav_categories");
@@ -129,13 +161,20 @@ public class MirakelInternalContentProvider extends ContentProvider implements
     public static final Uri FILE_URI = getUri(FileMirakel.TABLE);
     public static final Uri RECURRING_TW_URI = getUri(Recurring.TW_TABLE);
     public static final Uri TASK_RECURRING_TW_PARENT_URI = getUri(TASK_RECURRING_TW_PARENT_JOIN);
-    public static final Uri TASK_RECURRING_TW_CHILD_URI = getUri(TASK_RECURRING_TW_PARENT_JOIN);
+    public static final Uri TASK_RECURRING_TW_CHILD_URI = getUri(TASK_RECURRING_TW_CHILD_JOIN);
     public static final Uri ACCOUNT_URI = getUri(AccountMirakel.TABLE);
     public static final Uri RECURRING_URI = getUri(Recurring.TABLE);
+    // only notified after committed writes of lists or accounts, unlike the uris of the tables
+    // which are notified for task changes as well. Used by the model caches of other processes.
+    public static final Uri LIST_CHANGED_URI = Uri.parse("content://"
+            + DefinitionsHelper.AUTHORITY_INTERNAL + "/changed/lists");
+    public static final Uri ACCOUNT_CHANGED_URI = Uri.parse("content://"
+            + DefinitionsHelper.AUTHORITY_INTERNAL + "/changed/accounts");
     public static final Uri SEMANTIC_URI = getUri(Semantic.TABLE);
     public static final Uri SPECIAL_LISTS_URI = getUri(SpecialList.TABLE);
     public static final Uri LISTS_SORT_URI = getUri(LISTS_SORT_JOIN);
     public static final Uri LIST_WITH_COUNT_URI = getUri(LIST_WITH_COUNT);
+    public static final Uri SYNC_METRICS_URI = getUri(SYNC_METRICS);
 
     public static final Uri UPDATE_LIST_ORDER_URI = getUri(UPDATE_LIST_ORDER_JOIN);
     public static final Uri UPDATE_LIST_MOVE_DOWN_URI = getUri(UPDATE_LIST_MOVE_DOWN);
@@ -149,6 +188,17 @@ public class MirakelInternalContentProvider extends ContentProvider implements
         views.put("caldav_tasks", Task.TABLE);
     }
 
+    // The MATCH has to be inside the union, otherwise SQLite would build the whole union first
+    private static final String AUTOCOMPLETE_SEARCH = "(SELECT 'task' || tasks._id AS _id, "
+            + "tasks._id AS obj_id, tasks.name AS name, - tasks.done * 5 AS score, 'task' AS type, "
+            + "0 AS color, tasks.done AS done FROM " + TASK_SEARCH + " INNER JOIN tasks ON tasks._id = "
+            + TASK_SEARCH + ".docid WHERE " + TASK_SEARCH + " MATCH ? AND tasks.sync_state != "
+            + DefinitionsHelper.SYNC_STATE.DELETE + " AND tasks.is_shown_recurring = 1 "
+            + "UNION ALL SELECT 'tag' || tag._id AS _id, tag._id AS obj_id, tag.name AS name, "
+            + "3 AS score, 'tag' AS type, tag.color AS color, 0 AS done FROM " + TAG_SEARCH
+            + " INNER JOIN tag ON tag._id = " + TAG_SEARCH + ".docid WHERE " + TAG_SEARCH
+            + " MATCH ? AND EXISTS (SELECT 1 FROM task_tag WHERE task_tag.tag_id = tag._id))";
+
     private static final ListMultimap<Uri, Uri> notifyUris = ArrayListMultimap.create();
 
     static {
@@ -168,23 +218,67 @@ public class MirakelInternalContentProvider extends ContentProvider implements
     private static final List<String> BLACKLISTED_FOR_MODIFICATIONS = Arrays
             .asList("", TASK_RECURRING_TW_CHILD_JOIN, TASK_RECURRING_TW_PARENT_JOIN, TASK_SUBTASK_JOIN,
                     TASK_TAG_JOIN, TASK_VIEW_TAG_JOIN,
-                    LISTS_SORT_JOIN);
+                    LISTS_SORT_JOIN, TASK_SEARCH);
     private static final List<String> BLACKLISTED_FOR_DELETION = Arrays
             .asList("", TASK_RECURRING_TW_CHILD_JOIN, TASK_RECURRING_TW_PARENT_JOIN, TASK_SUBTASK_JOIN,
                     TASK_TAG_JOIN, TASK_VIEW_TAG_JOIN,
                     LISTS_SORT_JOIN, UPDATE_LIST_MOVE_DOWN, UPDATE_LIST_MOVE_UP, UPDATE_LIST_ORDER_JOIN,
-                    UPDATE_LIST_FIX_RGT);
+                    UPDATE_LIST_FIX_RGT, TASK_SEARCH);
 
     private static final List<String> BLACKLISTED_FOR_QUERY = Arrays.asList(UPDATE_LIST_MOVE_DOWN,
             UPDATE_LIST_MOVE_UP, UPDATE_LIST_ORDER_JOIN, UPDATE_LIST_FIX_RGT);
-    private static final List<String> IGNORED = Arrays.asList(CALDAV_INSTANCE_PROPERTIES,
-            CALDAV_INSTANCES);
+    private static final List<String> IGNORED = Collections.singletonList(CALDAV_INSTANCE_PROPERTIES);
 
     @Nullable
     private static DatabaseHelper dbHelper;
     @Nullable
     private static SQLiteDatabase database;
 
+    /**
+     * Number of written rows after which the WAL file is checkpointed into the database, once
+     * the outermost transaction is finished. SQLite checkpoints on its own as well, but these
+     * checkpoints never complete while the UI keeps reading during a long sync.
+     */
+    private static final int CHECKPOINT_INTERVAL = 1000;
+    private static final AtomicInteger writesSinceCheckpoint = new AtomicInteger();
+
+    /**
+     * Default number of operations of a batch after which other threads get the chance to access
+     * the database.
+     */
+    public static final int DEFAULT_OPERATIONS_PER_YIELD_POINT = 500;
+    private static volatile int operationsPerYieldPoint = DEFAULT_OPERATIONS_PER_YIELD_POINT;
+
+    @Nullable
+    private static ContentResolver contentResolver;
+    /**
+     * What the running transaction of a thread changed. The observers are notified and the
+     * caches are dropped after the commit, so nobody sees rows which may be rolled back.
+     */
+    private static final class PendingChanges {
+        final Set<Uri> notifications = new LinkedHashSet<>();
+        final Set<String> tables = new HashSet<>();
+    }
+
+    private static final ThreadLocal<PendingChanges> pendingChanges = new
+    ThreadLocal<PendingChanges>() {
+        @Override
+        protected PendingChanges initialValue() {
+            return new PendingChanges();
+        }
+    };
+    // URIs waiting for the end of the debounce window
+    private static final Set<Uri> delayedNotifications = new LinkedHashSet<>();
+    private static volatile long notificationDelay;
+    @Nullable
+    private static ScheduledExecutorService notificationExecutor;
+    private static final AtomicLong sentNotifications = new AtomicLong();
+    // only counted per uri after the tests asked for it, row uris would fill it up forever
+    @Nullable
+    private static volatile Multiset<Uri> sentNotificationsPerUri;
+    private static final AtomicLong coalescedNotifications = new AtomicLong();
+    private static final AtomicLong committedTransactions = new AtomicLong();
+
     private static SQLiteDatabase getReadableDatabase() {
         if (database == null && dbHelper != null) {
             return dbHelper.getReadableDatabase();
@@ -196,6 +290,61 @@ public class MirakelInternalContentProvider extends ContentProvider implements
     public static void reset() {
         database = null;
         dbHelper = null;
+        pendingChanges.get().notifications.clear();
+        pendingChanges.get().tables.clear();
+        synchronized (delayedNotifications) {
+            delayedNotifications.clear();
+        }
+        notificationDelay = 0L;
+        operationsPerYieldPoint = DEFAULT_OPERATIONS_PER_YIELD_POINT;
+        resetNotificationCounters();
+        committedTransactions.set(0L);
+        AccountMirakel.invalidateCache();
+        ListMirakel.invalidateCache();
+    }
+
+    /**
+     * @return true if the provider lives in this process. In this case the model caches
+     * are dropped after each committed write.
+     */
+    public static boolean isLocal() {
+        return (database != null) || (dbHelper != null);
+    }
+
+    private static void invalidateCaches(final String table, final boolean inTransaction) {
+        if (inTransaction) {
+            pendingChanges.get().tables.add(table);
+        } else {
+            invalidateCaches(table);
+        }
+    }
+
+    private static void invalidateCaches(final String table) {
+        switch (table) {
+        case AccountMirakel.TABLE:
+            AccountMirakel.invalidateCache();
+            // lists keep a reference to their account
+            ListMirakel.invalidateCache();
+            notifyCaches(ACCOUNT_CHANGED_URI);
+            break;
+        case ListMirakel.TABLE:
+        case "caldav_lists":
+        case UPDATE_LIST_ORDER_JOIN:
+        case UPDATE_LIST_MOVE_DOWN:
+        case UPDATE_LIST_MOVE_UP:
+        case UPDATE_LIST_FIX_RGT:
+            ListMirakel.invalidateCache();
+            notifyCaches(LIST_CHANGED_URI);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static void notifyCaches(final Uri uri) {
+        if (contentResolver != null) {
+            contentResolver.notifyChange(uri, null);
+        }
     }
 
     private static SQLiteDatabase getWritableDatabase() {
@@ -205,7 +354,235 @@ public class MirakelInternalContentProvider extends ContentProvider implements
         return database;
     }
 
-    private Set<Uri> transformUriForNotify(final Uri u, Set<Uri> startset) {
+    private static boolean isWriteAheadLogging() {
+        return (database == null) && (dbHelper != null) && dbHelper.isWriteAheadLogging();
+    }
+
+    private static void onWrite(final SQLiteDatabase db, final boolean locked, final int rows) {
+        writesSinceCheckpoint.addAndGet(Math.max(rows, 1));
+        if (!locked) {
+            committedTransactions.incrementAndGet();
+            checkpointIfNeeded(db);
+        }
+    }
+
+    private static void checkpointIfNeeded(final SQLiteDatabase db) {
+        if ((writesSinceCheckpoint.get() >= CHECKPOINT_INTERVAL) && isWriteAheadLogging()) {
+            checkpoint(db);
+        }
+    }
+
+    /**
+     * Copies the content of the WAL file back into the database without waiting for readers.
+     * Does nothing if the database does not use write ahead logging.
+     */
+    public static void checkpoint() {
+        if (isWriteAheadLogging()) {
+            checkpoint(getWritableDatabase());
+        }
+    }
+
+    private static void checkpoint(final SQLiteDatabase db) {
+        if (db.inTransaction()) {
+            return;
+        }
+        writesSinceCheckpoint.set(0);
+        final Cursor c = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            if (c.moveToFirst()) {
+                Log.d(TAG, "checkpoint: busy " + c.getInt(0) + ", wal pages " + c.getInt(1)
+                      + ", checkpointed " + c.getInt(2));
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Notifications for changes inside a transaction are collected and sent once after the
+     * outermost transaction has been committed. With a delay > 0 the notifications are held back
+     * for this time and all changes in this window are sent together.
+     *
+     * @param millis the debounce window, 0 to notify directly
+     */
+    public static void setNotificationDelay(final long millis) {
+        notificationDelay = millis;
+        if (millis <= 0L) {
+            sendDelayedNotifications();
+        }
+    }
+
+    /**
+     * @return how often a change of this URI was sent to the content resolver since the last
+     * call of {@link #resetNotificationCounters()}
+     */
+    @VisibleForTesting
+    public static int getNotificationCount(final Uri uri) {
+        final Multiset<Uri> perUri = sentNotificationsPerUri;
+        return (perUri == null) ? 0 : perUri.count(uri);
+    }
+
+    /**
+     * @return how many notifications were dropped because the URI was already pending
+     */
+    @VisibleForTesting
+    public static long getCoalescedNotificationCount() {
+        return coalescedNotifications.get();
+    }
+
+    /**
+     * @return how many notifications were sent to the content resolver since the start of the
+     * process, for all URIs
+     */
+    public static long getNotificationCount() {
+        return sentNotifications.get();
+    }
+
+    /**
+     * @return how many transactions were committed by this provider since the start of the
+     * process. Writes which run inside a transaction of the caller are not counted on their own.
+     */
+    public static long getTransactionCount() {
+        return committedTransactions.get();
+    }
+
+    /**
+     * Resets the counters and starts to count the notifications per uri
+     */
+    @VisibleForTesting
+    public static void resetNotificationCounters() {
+        sentNotifications.set(0L);
+        sentNotificationsPerUri = ConcurrentHashMultiset.create();
+        coalescedNotifications.set(0L);
+    }
+
+    private static void notifyChange(final Set<Uri> uris, final boolean inTransaction) {
+        if (inTransaction) {
+            final Set<Uri> pending = pendingChanges.get().notifications;
+            for (final Uri uri : uris) {
+                if (!pending.add(uri)) {
+                    coalescedNotifications.incrementAndGet();
+                }
+            }
+        } else {
+            sendNotifications(uris);
+        }
+    }
+
+    /**
+     * Drops the caches of the tables written and sends the notifications collected by the
+     * transaction of this thread. Must be called after transactions which were not started by
+     * this provider, e.g. the one of the caldav provider.
+     */
+    public static void flushNotifications() {
+        final PendingChanges changes = pendingChanges.get();
+        invalidatePendingCaches(changes);
+        if (changes.notifications.isEmpty()) {
+            return;
+        }
+        final List<Uri> uris = new ArrayList<>(changes.notifications);
+        changes.notifications.clear();
+        sendNotifications(uris);
+    }
+
+    private static void discardNotifications() {
+        final PendingChanges changes = pendingChanges.get();
+        changes.notifications.clear();
+        // a read inside the transaction may have cached rows which are gone now
+        invalidatePendingCaches(changes);
+    }
+
+    private static void invalidatePendingCaches(final PendingChanges changes) {
+        if (changes.tables.isEmpty()) {
+            return;
+        }
+        final List<String> tables = new ArrayList<>(changes.tables);
+        changes.tables.clear();
+        for (final String table : tables) {
+            invalidateCaches(table);
+        }
+    }
+
+    /**
+     * Replaces the notifications for single rows by one for the whole table. Observers of a row
+     * are notified about changes of their parent as well, so nothing gets lost here, but a batch
+     * of thousands of inserts does not wake up the UI thousands of times.
+     */
+    private static void collapseNotifications() {
+        final Set<Uri> pending = pendingChanges.get().notifications;
+        if (pending.isEmpty()) {
+            return;
+        }
+        final Set<Uri> collapsed = new LinkedHashSet<>();
+        for (final Uri uri : pending) {
+            final List<String> segments = uri.getPathSegments();
+            if ((segments.size() == 2) && TextUtils.isDigitsOnly(segments.get(1))) {
+                if (!collapsed.add(uri.buildUpon().path(segments.get(0)).build())) {
+                    coalescedNotifications.incrementAndGet();
+                }
+            } else {
+                collapsed.add(uri);
+            }
+        }
+        pending.clear();
+        pending.addAll(collapsed);
+    }
+
+    private static void sendNotifications(final Collection<Uri> uris) {
+        if (uris.isEmpty()) {
+            return;
+        }
+        final long delay = notificationDelay;
+        if (delay <= 0L) {
+            for (final Uri uri : uris) {
+                sendNotification(uri);
+            }
+            return;
+        }
+        synchronized (delayedNotifications) {
+            final boolean scheduled = !delayedNotifications.isEmpty();
+            for (final Uri uri : uris) {
+                if (!delayedNotifications.add(uri)) {
+                    coalescedNotifications.incrementAndGet();
+                }
+            }
+            if (!scheduled) {
+                if (notificationExecutor == null) {
+                    notificationExecutor = Executors.newSingleThreadScheduledExecutor();
+                }
+                notificationExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendDelayedNotifications();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static void sendDelayedNotifications() {
+        final List<Uri> uris;
+        synchronized (delayedNotifications) {
+            uris = new ArrayList<>(delayedNotifications);
+            delayedNotifications.clear();
+        }
+        for (final Uri uri : uris) {
+            sendNotification(uri);
+        }
+    }
+
+    private static void sendNotification(final Uri uri) {
+        if (contentResolver != null) {
+            contentResolver.notifyChange(uri, null);
+            sentNotifications.incrementAndGet();
+            final Multiset<Uri> perUri = sentNotificationsPerUri;
+            if (perUri != null) {
+                perUri.add(uri);
+            }
+        }
+    }
+
+    private static Set<Uri> transformUriForNotify(final Uri u, Set<Uri> startset) {
         if (notifyUris.containsKey(u)) {
             for (Uri u1 : notifyUris.get(u)) {
                 if (!startset.contains(u1)) {
@@ -240,9 +617,9 @@ public class MirakelInternalContentProvider extends ContentProvider implements
             db.setTransactionSuccessful();
             db.endTransaction();
         }
-        for (Uri notify : transformUriForNotify(uri, new HashSet<Uri>())) {
-            this.getContext().getContentResolver().notifyChange(notify, null);
-        }
+        onWrite(db, locked, u);
+        invalidateCaches(table, locked);
+        notifyChange(transformUriForNotify(uri, new HashSet<Uri>()), locked);
         return u;
     }
 
@@ -286,10 +663,14 @@ public class MirakelInternalContentProvider extends ContentProvider implements
             db.setTransactionSuccessful();
             db.endTransaction();
         }
-        for (Uri notify : transformUriForNotify(uri, new HashSet<Uri>())) {
-            notify = ContentUris.withAppendedId(notify, ContentUris.parseId(u));
-            this.getContext().getContentResolver().notifyChange(notify, null);
+        onWrite(db, locked, 1);
+        invalidateCaches(table, locked);
+        final long id = ContentUris.parseId(u);
+        final Set<Uri> notify = new LinkedHashSet<>();
+        for (final Uri notifyUri : transformUriForNotify(uri, new HashSet<Uri>())) {
+            notify.add(ContentUris.withAppendedId(notifyUri, id));
         }
+        notifyChange(notify, locked);
         return u;
     }
 
@@ -302,6 +683,7 @@ public class MirakelInternalContentProvider extends ContentProvider implements
 
     @Override
     public boolean onCreate() {
+        contentResolver = getContext().getContentResolver();
         if (database == null) {
             dbHelper = DatabaseHelper.getDatabaseHelper(getContext());
         }
@@ -320,19 +702,8 @@ public class MirakelInternalContentProvider extends ContentProvider implements
         return true;
     }
 
-    @Override
-    public Cursor query(final Uri uri, final String[] projection,
-                        final String selection, final String[] selectionArgs,
-                        final String sortOrder) {
-        final String table = getTableName(uri);
+    private static SQLiteQueryBuilder getQueryBuilder(final String table) {
         final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        String groupBy = null;
-        if (BLACKLISTED_FOR_QUERY.contains(table)) {
-            throw new IllegalArgumentException(table
-                                               + " is blacklisted for query");
-        } else if (IGNORED.contains(table)) {
-            return new MatrixCursor(new String[0]);
-        }
         switch (table) {
         case TASK_SUBTASK_JOIN:
             builder.setTables(Task.TABLE + " INNER JOIN " + Task.SUBTASK_TABLE
@@ -366,11 +737,50 @@ public class MirakelInternalContentProvider extends ContentProvider implements
         case LISTS_SORT_JOIN:
             builder.setTables(ListMirakel.TABLE + " AS n, " + ListMirakel.TABLE
                               + " AS p ");
-            groupBy = "n." + ListMirakel.LFT;
             break;
         default:
             builder.setTables(table);
         }
+        return builder;
+    }
+
+    @Nullable
+    private static String getGroupBy(final String table) {
+        if (LISTS_SORT_JOIN.equals(table)) {
+            return "n." + ListMirakel.LFT;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the sql statement which {@link #query(Uri, String[], String, String[], String)}
+     * would execute for the given arguments. Used to inspect the query plans.
+     */
+    @VisibleForTesting
+    public static String buildQuery(final Uri uri, final String[] projection,
+                                    final String selection, final String sortOrder) {
+        final String table = getTableName(uri);
+        return getQueryBuilder(table).buildQuery(projection, selection, getGroupBy(table), null,
+                sortOrder, null);
+    }
+
+    @Override
+    public Cursor query(final Uri uri, final String[] projection,
+                        final String selection, final String[] selectionArgs,
+                        final String sortOrder) {
+        final String table = getTableName(uri);
+        if (BLACKLISTED_FOR_QUERY.contains(table)) {
+            throw new IllegalArgumentException(table
+                                               + " is blacklisted for query");
+        } else if (IGNORED.contains(table)) {
+            return new MatrixCursor(new String[0]);
+        }
+        final String match = uri.getQueryParameter(SEARCH_PARAMETER);
+        if ((match != null) && AUTOCOMPLETE.equals(table)) {
+            return queryAutocomplete(match, projection, selection, selectionArgs, sortOrder);
+        }
+        final SQLiteQueryBuilder builder = getQueryBuilder(table);
+        final String groupBy = getGroupBy(table);
         final Cursor c = builder.query(getReadableDatabase(), projection,
                                        selection, selectionArgs, groupBy, null, sortOrder);
         if (c == null) {
@@ -383,6 +793,31 @@ public class MirakelInternalContentProvider extends ContentProvider implements
         return c;
     }
 
+    /**
+     * Adds a full text MATCH expression to the uri. Currently this is only supported for
+     * {@link #AUTOCOMPLETE_URI}, where it replaces the LIKE scan over the autocomplete view.
+     */
+    @NonNull
+    public static Uri getSearchUri(@NonNull final Uri uri, @NonNull final String match) {
+        return uri.buildUpon().appendQueryParameter(SEARCH_PARAMETER, match).build();
+    }
+
+    private Cursor queryAutocomplete(final String match, final String[] projection,
+                                     final String selection, final String[] selectionArgs, final String sortOrder) {
+        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(AUTOCOMPLETE_SEARCH);
+        final String query = builder.buildQuery(projection, selection, null, null, sortOrder, null);
+        final List<String> args = new ArrayList<>();
+        args.add(match);
+        args.add(match);
+        if (selectionArgs != null) {
+            args.addAll(Arrays.asList(selectionArgs));
+        }
+        final Cursor c = getReadableDatabase().rawQuery(query, args.toArray(new String[args.size()]));
+        c.setNotificationUri(getContext().getContentResolver(), TASK_URI);
+        return c;
+    }
+
     @Override
     public int update(final Uri uri, final ContentValues values,
                       final String selection, final String[] selectionArgs) {
@@ -432,27 +867,170 @@ public class MirakelInternalContentProvider extends ContentProvider implements
             db.execSQL("UPDATE " + update_table + " SET rgt=lft+1;");
             break;
         default:
-            u = db.update(table, values, selection, selectionArgs);
+            if ((selectionArgs != null) && (selectionArgs.length > 0) && (values.size() > 0)) {
+                u = updateWithStatement(db, table, values, selection, selectionArgs);
+            } else {
+                u = db.update(table, values, selection, selectionArgs);
+            }
         }
         if (!locked) {
             db.setTransactionSuccessful();
             db.endTransaction();
         }
-        for (Uri notify : transformUriForNotify(uri, new HashSet<Uri>())) {
-            this.getContext().getContentResolver().notifyChange(notify, null);
-        }
+        onWrite(db, locked, u);
+        invalidateCaches(table, locked);
+        notifyChange(transformUriForNotify(uri, new HashSet<Uri>()), locked);
         return u;
     }
 
+    /**
+     * Sets after how many operations {@link #applyBatch(ArrayList)} and
+     * {@link #bulkInsert(Uri, ContentValues[])} let other threads access the database. A yield
+     * commits the work done so far, so batches longer than this are not atomic anymore.
+     *
+     * @param operations the number of operations between two yield points, 0 to yield only at
+     *                   operations which allow it explicitly
+     */
+    public static void setOperationsPerYieldPoint(final int operations) {
+        operationsPerYieldPoint = Math.max(operations, 0);
+    }
+
+    private static boolean isYieldPoint(final int sinceYield) {
+        final int interval = operationsPerYieldPoint;
+        return (interval > 0) && (sinceYield >= interval);
+    }
+
+    /**
+     * Applies all operations in one transaction and notifies the observers once at the end.
+     * If this is called inside of a running transaction, the batch becomes part of it and
+     * does not yield.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull final ArrayList<ContentProviderOperation>
+            operations) throws OperationApplicationException {
+        final SQLiteDatabase db = getWritableDatabase();
+        final boolean locked = db.inTransaction();
+        if (!locked) {
+            db.beginTransaction();
+        }
+        boolean successful = false;
+        boolean yielded = false;
+        try {
+            final int numOperations = operations.size();
+            final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+            int sinceYield = 0;
+            for (int i = 0; i < numOperations; i++) {
+                final ContentProviderOperation operation = operations.get(i);
+                if (!locked && (i > 0) && (operation.isYieldAllowed() || isYieldPoint(sinceYield))) {
+                    sinceYield = 0;
+                    yielded |= db.yieldIfContendedSafely();
+                }
+                results[i] = operation.apply(this, results, i);
+                sinceYield++;
+            }
+            if (!locked) {
+                db.setTransactionSuccessful();
+            }
+            successful = true;
+            return results;
+        } finally {
+            if (!locked) {
+                endBatch(db, successful, yielded);
+            }
+        }
+    }
+
+    @Override
+    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] values) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final boolean locked = db.inTransaction();
+        if (!locked) {
+            db.beginTransaction();
+        }
+        boolean successful = false;
+        boolean yielded = false;
+        try {
+            int sinceYield = 0;
+            for (final ContentValues value : values) {
+                if (!locked && isYieldPoint(sinceYield)) {
+                    sinceYield = 0;
+                    yielded |= db.yieldIfContendedSafely();
+                }
+                insert(uri, value);
+                sinceYield++;
+            }
+            if (!locked) {
+                db.setTransactionSuccessful();
+            }
+            successful = true;
+            return values.length;
+        } finally {
+            if (!locked) {
+                endBatch(db, successful, yielded);
+            }
+        }
+    }
+
+    private static void endBatch(final SQLiteDatabase db, final boolean successful,
+                                 final boolean yielded) {
+        db.endTransaction();
+        if (successful) {
+            committedTransactions.incrementAndGet();
+        }
+        // a yield commits everything before it, so the observers have to know about it anyway
+        if (successful || yielded) {
+            collapseNotifications();
+            flushNotifications();
+        } else {
+            discardNotifications();
+        }
+        checkpointIfNeeded(db);
+    }
+
+    /**
+     * Updates with the columns in a fixed order. The SQL is the same for every update of the same
+     * columns, so SQLiteDatabase finds the compiled statement in the statement cache of the
+     * connection. This is only done for parametrized selections, otherwise every update of a
+     * single row would end up with its own statement.
+     */
+    private static int updateWithStatement(final SQLiteDatabase db, final String table,
+                                           final ContentValues values, final String selection, final String[] selectionArgs) {
+        final List<String> columns = new ArrayList<>(values.keySet());
+        Collections.sort(columns);
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append((i > 0) ? ", " : "").append(columns.get(i)).append("=?");
+        }
+        if (!TextUtils.isEmpty(selection)) {
+            sql.append(" WHERE ").append(selection);
+        }
+        final SQLiteStatement statement = db.compileStatement(sql.toString());
+        try {
+            int index = 1;
+            for (final String column : columns) {
+                DatabaseUtils.bindObjectToProgram(statement, index++, values.get(column));
+            }
+            for (final String arg : selectionArgs) {
+                statement.bindString(index++, arg);
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     public static void withTransaction(final DBTransaction what) {
         if (what != null) {
             final SQLiteDatabase db = getWritableDatabase();
             if (!db.inTransaction()) {
                 db.beginTransaction();
+                boolean successful = false;
                 try {
                     what.exec();
                     db.setTransactionSuccessful();
+                    successful = true;
                 } catch (final Exception e) {
                     Log.w(TAG,
                           "an exception was raised while executing database transaction",
@@ -467,7 +1045,13 @@ public class MirakelInternalContentProvider extends ContentProvider implements
                     }
                 } finally {
                     db.endTransaction();
+                    if (!successful) {
+                        discardNotifications();
+                    }
                 }
+                committedTransactions.incrementAndGet();
+                flushNotifications();
+                checkpointIfNeeded(db);
             } else {
                 what.exec();
             }
@@ -475,6 +1059,37 @@ public class MirakelInternalContentProvider extends ContentProvider implements
     }
 
 
+    /**
+     * Runs raw statements in one transaction, for set based changes which can not be expressed
+     * as operations on single rows. All statements use the same connection, so temporary tables
+     * created here are visible to the following statements.
+     *
+     * @param changed the uris whose observers are notified after the commit
+     */
+    public static void withDatabase(@NonNull final SQLTransaction what, @NonNull final Uri... changed) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final boolean locked = db.inTransaction();
+        if (!locked) {
+            db.beginTransaction();
+        }
+        try {
+            what.exec(db);
+            if (!locked) {
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            if (!locked) {
+                db.endTransaction();
+            }
+        }
+        onWrite(db, locked, changed.length);
+        final Set<Uri> notify = new HashSet<>();
+        for (final Uri uri : changed) {
+            transformUriForNotify(uri, notify);
+        }
+        notifyChange(notify, locked);
+    }
+
     @Override
     public void onAccountsUpdated(final Account[] accounts) {
         AccountMirakel.update(accounts);
@@ -21,11 +21,15 @@ package de.azapps.mirakel.model.query_builder;
 import android.content.Context;
 import android.database.Cursor;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.google.common.base.Optional;
 
 import org.joda.time.DateTime;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import de.azapps.mirakel.model.generic.ModelBase;
 
 import static com.google.common.base.Optional.absent;
@@ -42,10 +46,44 @@ public class CursorGetter {
     @NonNull
     private final Cursor cursor;
 
+    // Resolved indices for the read plans used on this cursor, the last one is kept separately
+    // because nearly every cursor is read with a single plan
+    @Nullable
+    private CursorReadPlan lastPlan;
+    private int[] lastIndices;
+    @Nullable
+    private Map<CursorReadPlan, int[]> resolvedPlans;
+
     CursorGetter(final @NonNull Cursor c) {
         cursor = c;
     }
 
+    /**
+     * Resolves the columns of the plan against this cursor. The result is computed once per
+     * cursor and plan, so this is cheap to call for every row.
+     *
+     * @return the column indices in the order of the plan, -1 for missing columns
+     */
+    @NonNull
+    public int[] resolve(final @NonNull CursorReadPlan plan) {
+        if (plan == lastPlan) {
+            return lastIndices;
+        }
+        if (lastPlan != null) {
+            if (resolvedPlans == null) {
+                resolvedPlans = new IdentityHashMap<>(2);
+            }
+            resolvedPlans.put(lastPlan, lastIndices);
+        }
+        int[] indices = (resolvedPlans == null) ? null : resolvedPlans.get(plan);
+        if (indices == null) {
+            indices = plan.resolve(cursor);
+        }
+        lastPlan = plan;
+        lastIndices = indices;
+        return indices;
+    }
+
     public int getColumnIndex(final String column) {
         return cursor.getColumnIndex(column);
     }
@@ -112,6 +150,18 @@ public class CursorGetter {
     }
 
 
+    public boolean isNull(final int index) {
+        return cursor.isNull(index);
+    }
+
+    public boolean getBoolean(final int index) {
+        return 1 == cursor.getShort(index);
+    }
+
+    public String getString(final int index) {
+        return cursor.getString(index);
+    }
+
     public int getInt(final int index) {
         return cursor.getInt(index);
     }
@@ -120,6 +170,28 @@ public class CursorGetter {
         return cursor.getLong(index);
     }
 
+    public short getShort(final int index) {
+        return cursor.getShort(index);
+    }
+
+    @NonNull
+    public DateTime getDateTime(final int index) {
+        return new DateTime(cursor.getLong(index));
+    }
+
+    /**
+     * Like {@link #getOptional(String, Class)} for dates but without the class dispatch
+     *
+     * @return null if the field is NULL
+     */
+    @Nullable
+    public DateTime getDateTimeOrNull(final int index) {
+        if (cursor.isNull(index)) {
+            return null;
+        }
+        return new DateTime(cursor.getLong(index));
+    }
+
     public static CursorGetter unsafeGetter(final @NonNull Cursor c) {
         return new CursorGetter(c);
     }
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.query_builder;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A fixed set of columns which is resolved to column indices once per cursor.
+ *
+ * Models keep one static plan next to their column definitions, look up the position of each
+ * column with {@link #indexOf(String)} and read rows through {@link CursorGetter#resolve} and the
+ * index based getters of {@link CursorGetter}. This avoids the getColumnIndex() string lookup for
+ * every field of every row.
+ */
+public final class CursorReadPlan {
+
+    @NonNull
+    private final String[] columns;
+
+    public CursorReadPlan(final @NonNull String... columns) {
+        this.columns = columns.clone();
+    }
+
+    public int size() {
+        return columns.length;
+    }
+
+    /**
+     * @return the position of the column in the array returned by {@link CursorGetter#resolve}
+     */
+    public int indexOf(final @NonNull String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(column + " is not part of " + Arrays.toString(columns));
+    }
+
+    @NonNull
+    int[] resolve(final @NonNull Cursor cursor) {
+        final int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indices[i] = cursor.getColumnIndex(columns[i]);
+        }
+        return indices;
+    }
+}
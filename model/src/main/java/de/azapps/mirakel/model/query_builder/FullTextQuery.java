@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.query_builder;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Optional;
+
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+
+/**
+ * Builds MATCH expressions for the full text search tables (task_search and tag_search).
+ */
+public final class FullTextQuery {
+
+    // The simple tokenizer of SQLite splits at everything which is not a letter or a digit
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private FullTextQuery() {
+    }
+
+    /**
+     * Every word of the input has to be the beginning of a word in the indexed text.
+     *
+     * @param column restrict the search to this column, null to search all columns
+     * @return the MATCH expression or absent if the input contains no word at all
+     */
+    @NonNull
+    public static Optional<String> prefixQuery(@NonNull final String input,
+            @Nullable final String column) {
+        final StringBuilder query = new StringBuilder();
+        for (final String word : SEPARATORS.split(input)) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            if (column != null) {
+                query.append(column).append(':');
+            }
+            // AND, OR, NOT and NEAR are only operators in upper case
+            appendLowerCaseAscii(query, word);
+            query.append('*');
+        }
+        if (query.length() == 0) {
+            return absent();
+        }
+        return of(query.toString());
+    }
+
+    private static void appendLowerCaseAscii(final StringBuilder builder, final String word) {
+        for (int i = 0; i < word.length(); i++) {
+            final char c = word.charAt(i);
+            builder.append(((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+}
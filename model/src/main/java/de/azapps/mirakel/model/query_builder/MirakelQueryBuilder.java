@@ -25,6 +25,7 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 
 import com.google.common.base.Optional;
@@ -271,6 +272,19 @@ public class MirakelQueryBuilder {
         return query.toString();
     }
 
+    /**
+     * Builds the query in the same way as the MirakelInternalContentProvider
+     * does it when executing {@link #query(Uri)}
+     *
+     * @return the sql the provider would run for uri, with ? for the selection arguments
+     */
+    @VisibleForTesting
+    public String getProviderQuery(final Uri uri) {
+        return MirakelInternalContentProvider.buildQuery(uri,
+                this.projection.toArray(new String[this.projection.size()]),
+                this.selection.toString(), this.sortOrder.toString());
+    }
+
     public String toString(final Uri u) {
         String query = getQuery(u);
         for (final String proj : selectionArgs) {
@@ -535,7 +549,7 @@ public class MirakelQueryBuilder {
                                        Operation.NOT_LT, Operation.NOT_LE, Operation.NOT_IN);
 
     public enum Operation {
-        EQ, LIKE, GT, GE, LT, LE, IN, NOT_EQ, NOT_LIKE, NOT_GT, NOT_GE, NOT_LT, NOT_LE, NOT_IN;
+        EQ, LIKE, GT, GE, LT, LE, IN, NOT_EQ, NOT_LIKE, NOT_GT, NOT_GE, NOT_LT, NOT_LE, NOT_IN, MATCH;
 
         @Override
         public String toString() {
@@ -561,6 +575,8 @@ public class MirakelQueryBuilder {
             case IN:
             case NOT_IN:
                 return "IN";
+            case MATCH:
+                return "MATCH";
             default:
                 throw new IllegalArgumentException("Unknown Operation "
                 + super.toString());
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package de.azapps.mirakel.model.recurring;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.Period;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+
+/**
+ * The occurrences of a recurrence, starting at an anchor (usually the due date of the first
+ * task). The k-th occurrence is computed directly instead of adding the interval k times:
+ *
+ * <ul>
+ * <li>without weekdays it is anchor + k * interval, so a monthly series starting on the 31st
+ * stays on the last day of the month instead of drifting to the 28th</li>
+ * <li>with weekdays it is the k-th day of the mask after the anchor, at the time of the anchor</li>
+ * </ul>
+ *
+ * Occurrences before the start date are skipped, occurrences after the end date do not exist.
+ * Index 0 is the first occurrence which is not before the start date.
+ */
+public class Occurrences {
+
+    private static final long MILLIS_PER_MONTH = 2629746000L; // 365.2425 days / 12
+
+    @NonNull
+    private final Period interval;
+    // the days after the anchor (1..7) of the weekdays, ascending
+    @NonNull
+    private final int[] weekdayOffsets;
+    @NonNull
+    private final DateTime anchor;
+    @NonNull
+    private final Optional<DateTime> endDate;
+    // the length of the interval, only exact if the interval has no calendar fields
+    private final long intervalMillis;
+    private final boolean exactInterval;
+    // the raw index of the first occurrence after the start date
+    private final long first;
+
+    /**
+     * @param weekdays the {@link DateTimeConstants} days of the week, if not empty the interval
+     *                 is ignored
+     */
+    public Occurrences(final @NonNull Period interval, final @NonNull Collection<Integer> weekdays,
+                       final @NonNull Optional<DateTime> startDate,
+                       final @NonNull Optional<DateTime> endDate, final @NonNull DateTime anchor) {
+        this.interval = interval;
+        this.anchor = anchor;
+        this.endDate = endDate;
+        this.weekdayOffsets = new int[weekdays.size()];
+        int i = 0;
+        for (final Integer day : weekdays) {
+            final int offset = ((day - anchor.getDayOfWeek()) + 7) % 7;
+            weekdayOffsets[i++] = (offset == 0) ? 7 : offset;
+        }
+        Arrays.sort(weekdayOffsets);
+        exactInterval = (interval.getYears() == 0) && (interval.getMonths() == 0)
+                        && (interval.getWeeks() == 0) && (interval.getDays() == 0);
+        intervalMillis = (((interval.getYears() * 12L) + interval.getMonths()) * MILLIS_PER_MONTH)
+                         + (interval.getWeeks() * (long) DateTimeConstants.MILLIS_PER_WEEK)
+                         + (interval.getDays() * (long) DateTimeConstants.MILLIS_PER_DAY)
+                         + (interval.getHours() * (long) DateTimeConstants.MILLIS_PER_HOUR)
+                         + (interval.getMinutes() * (long) DateTimeConstants.MILLIS_PER_MINUTE)
+                         + (interval.getSeconds() * (long) DateTimeConstants.MILLIS_PER_SECOND)
+                         + interval.getMillis();
+        first = startDate.isPresent() ? rawCeiling(startDate.get()) : 0L;
+    }
+
+    public Occurrences(final @NonNull Recurring recurring, final @NonNull DateTime anchor) {
+        this(recurring.getInterval(), recurring.getWeekdays(), recurring.getStartDate(),
+             recurring.getEndDate(), anchor);
+    }
+
+    /**
+     * @return false if there is only the anchor
+     */
+    public boolean isRepeating() {
+        return (weekdayOffsets.length > 0) || (intervalMillis > 0L);
+    }
+
+    /**
+     * @return the occurrence with the index k, absent if it is after the end date
+     */
+    @NonNull
+    public Optional<DateTime> get(final long k) {
+        if (k < 0L) {
+            return absent();
+        }
+        final long raw = first + k;
+        if ((raw > 0L) && !isRepeating()) {
+            return absent();
+        }
+        final DateTime occurrence = raw(raw);
+        if (endDate.isPresent() && occurrence.isAfter(endDate.get())) {
+            return absent();
+        }
+        return of(occurrence);
+    }
+
+    /**
+     * @return the index of the first occurrence at or after the time, it may be after the end date
+     */
+    public long indexOf(final @NonNull DateTime time) {
+        if (!isRepeating()) {
+            return anchor.isBefore(time) ? 1L : 0L;
+        }
+        return Math.max(0L, rawCeiling(time) - first);
+    }
+
+    /**
+     * @return the first occurrence after the time
+     */
+    @NonNull
+    public Optional<DateTime> next(final @NonNull DateTime after) {
+        return get(indexOf(after.plusMillis(1)));
+    }
+
+    /**
+     * The occurrences from (inclusive) to (exclusive), they are computed while iterating
+     */
+    @NonNull
+    public Iterable<DateTime> between(final @NonNull DateTime from, final @NonNull DateTime to) {
+        return new Iterable<DateTime>() {
+            @Override
+            public Iterator<DateTime> iterator() {
+                return new Iterator<DateTime>() {
+                    private long k = indexOf(from);
+                    @NonNull
+                    private Optional<DateTime> next = get(k);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next.isPresent() && next.get().isBefore(to);
+                    }
+
+                    @Override
+                    public DateTime next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        final DateTime current = next.get();
+                        next = get(++k);
+                        return current;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private DateTime raw(final long k) {
+        if (k == 0L) {
+            return anchor;
+        }
+        if (weekdayOffsets.length > 0) {
+            final long weeks = (k - 1L) / weekdayOffsets.length;
+            final int offset = weekdayOffsets[(int) ((k - 1L) % weekdayOffsets.length)];
+            return anchor.plusDays((int) ((weeks * 7L) + offset));
+        }
+        if (exactInterval) {
+            return anchor.plus(k * intervalMillis);
+        }
+        return anchor.plus(interval.multipliedBy((int) k));
+    }
+
+    /**
+     * The raw index is guessed from the length of the interval and corrected by a few steps,
+     * the guess is off only by calendar effects (month lengths, DST)
+     */
+    private long rawCeiling(final @NonNull DateTime time) {
+        if (!time.isAfter(anchor) || !isRepeating()) {
+            return 0L;
+        }
+        final long diff = time.getMillis() - anchor.getMillis();
+        long k;
+        if (weekdayOffsets.length > 0) {
+            k = (diff / DateTimeConstants.MILLIS_PER_WEEK) * weekdayOffsets.length;
+        } else {
+            k = diff / intervalMillis;
+        }
+        while ((k > 0L) && !raw(k - 1L).isBefore(time)) {
+            k--;
+        }
+        while (raw(k).isBefore(time)) {
+            k++;
+        }
+        return k;
+    }
+}
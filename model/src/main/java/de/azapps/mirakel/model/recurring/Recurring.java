@@ -281,30 +281,30 @@ public class Recurring extends RecurringBase {
         if (weekdays.isEmpty()) {
             if ((!getStartDate().isPresent() || now.isAfter(getStartDate().get()))
                 && (!getEndDate().isPresent() || now.isBefore(getEndDate().get()))) {
-                do {
-                    c = c.plus(recurringInterval);
-                } while (c.isBefore(now) && !onlyOnce);
+                // the first step which is not in the past, at least one
+                final Occurrences steps = new Occurrences(recurringInterval, weekdays,
+                        Optional.<DateTime>absent(), Optional.<DateTime>absent(), c);
+                c = steps.get(onlyOnce ? 1L : Math.max(1L, steps.indexOf(now))).or(c);
             }
         } else {
-            int diff = 8;
             if (c.isBefore(now)) {
                 c = now;
             }
-            c = c.plusDays(1);
-            for (final Integer day : weekdays) {
-                int local_diff = day - c.getDayOfWeek();
-                if (local_diff < 0) {
-                    local_diff += 7;
-                }
-                if (diff > local_diff) {
-                    diff = local_diff;
-                }
-            }
-            c = c.plusDays(diff);
+            // the next day in the mask after c
+            c = new Occurrences(recurringInterval, weekdays, Optional.<DateTime>absent(),
+                                Optional.<DateTime>absent(), c).get(1L).get();
         }
         return of(c);
     }
 
+    /**
+     * @param anchor the first occurrence, usually the due date of the first task
+     */
+    @NonNull
+    public Occurrences getOccurrences(final @NonNull DateTime anchor) {
+        return new Occurrences(this, anchor);
+    }
+
     public static List<Pair<Integer, String>> getForDialog(final boolean isDue) {
         final MirakelQueryBuilder qb = new MirakelQueryBuilder(context).and(TEMPORARY,
                 Operation.EQ, false);
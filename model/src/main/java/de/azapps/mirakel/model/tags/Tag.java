@@ -27,9 +27,11 @@ import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 
 import com.google.common.base.Optional;
 
+import java.util.Collection;
 import java.util.List;
 
 import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
@@ -37,6 +39,7 @@ import de.azapps.mirakel.model.generic.ModelBase;
 import de.azapps.mirakel.model.R;
 import de.azapps.mirakel.model.query_builder.Cursor2List;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorReadPlan;
 import de.azapps.mirakel.model.query_builder.CursorWrapper;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
@@ -50,6 +53,11 @@ public class Tag extends TagBase {
     public static final String[] allColumns = {ModelBase.ID, ModelBase.NAME, DARK_TEXT,
                                                BACKGROUND_COLOR
                                               };
+    private static final CursorReadPlan READ_PLAN = new CursorReadPlan(allColumns);
+    private static final int COLUMN_ID = READ_PLAN.indexOf(ModelBase.ID);
+    private static final int COLUMN_NAME = READ_PLAN.indexOf(ModelBase.NAME);
+    private static final int COLUMN_DARK_TEXT = READ_PLAN.indexOf(DARK_TEXT);
+    private static final int COLUMN_BACKGROUND_COLOR = READ_PLAN.indexOf(BACKGROUND_COLOR);
     public static final Uri URI = MirakelInternalContentProvider.TAG_URI;
 
     public Tag(final long id, final String name, final int backColor, final boolean isDarkBackground) {
@@ -57,8 +65,12 @@ public class Tag extends TagBase {
     }
 
     public Tag(final @NonNull CursorGetter c) {
-        super(c.getLong(ID), c.getString(NAME),
-              c.getInt(BACKGROUND_COLOR), c.getBoolean(DARK_TEXT) );
+        this(c, c.resolve(READ_PLAN));
+    }
+
+    private Tag(final @NonNull CursorGetter c, final @NonNull int[] columns) {
+        super(c.getLong(columns[COLUMN_ID]), c.getString(columns[COLUMN_NAME]),
+              c.getInt(columns[COLUMN_BACKGROUND_COLOR]), c.getBoolean(columns[COLUMN_DARK_TEXT]));
     }
 
 
@@ -106,6 +118,16 @@ public class Tag extends TagBase {
                + TAG_CONNECTION_TABLE + ".task_id=?";
     }
 
+    /**
+     * Delete all tags with one statement
+     */
+    public static void destroyAll(@NonNull final Collection<Tag> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        delete(URI, ModelBase.ID + " IN (" + TextUtils.join(",", getIds(tags)) + ')', null);
+    }
+
     @NonNull
     public static Tag newTag(final String name) {
         return newTag(name, true, getNextColor(count(), context));
@@ -21,20 +21,28 @@ package de.azapps.mirakel.model.task;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
 import android.util.Pair;
 
 import com.google.common.base.Optional;
 
 import org.joda.time.DateTime;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import de.azapps.mirakel.DefinitionsHelper;
 import de.azapps.mirakel.DefinitionsHelper.NoSuchListException;
 import de.azapps.mirakel.DefinitionsHelper.SYNC_STATE;
 import de.azapps.mirakel.helper.error.ErrorReporter;
@@ -46,13 +54,16 @@ import de.azapps.mirakel.model.file.FileMirakel;
 import de.azapps.mirakel.model.generic.ModelBase;
 import de.azapps.mirakel.model.list.ListMirakel;
 import de.azapps.mirakel.model.list.ListMirakel.SORT_BY;
+import de.azapps.mirakel.model.list.SpecialList;
 import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
 import de.azapps.mirakel.model.query_builder.Cursor2List;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorReadPlan;
 import de.azapps.mirakel.model.query_builder.CursorWrapper;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Sorting;
+import de.azapps.mirakel.model.recurring.Occurrences;
 import de.azapps.mirakel.model.recurring.Recurring;
 import de.azapps.mirakel.model.tags.Tag;
 import de.azapps.tools.Log;
@@ -71,6 +82,28 @@ public class Task extends TaskBase {
                                                TaskBase.RECURRING, TaskBase.RECURRING_REMINDER, TaskBase.PROGRESS,
                                                TaskBase.RECURRING_SHOWN
                                               };
+
+    private static final CursorReadPlan READ_PLAN = new CursorReadPlan(allColumns);
+    private static final int COLUMN_ID = READ_PLAN.indexOf(ModelBase.ID);
+    private static final int COLUMN_UUID = READ_PLAN.indexOf(TaskBase.UUID);
+    private static final int COLUMN_LIST_ID = READ_PLAN.indexOf(TaskBase.LIST_ID);
+    private static final int COLUMN_NAME = READ_PLAN.indexOf(ModelBase.NAME);
+    private static final int COLUMN_CONTENT = READ_PLAN.indexOf(TaskBase.CONTENT);
+    private static final int COLUMN_DONE = READ_PLAN.indexOf(TaskBase.DONE);
+    private static final int COLUMN_DUE = READ_PLAN.indexOf(TaskBase.DUE);
+    private static final int COLUMN_REMINDER = READ_PLAN.indexOf(TaskBase.REMINDER);
+    private static final int COLUMN_PRIORITY = READ_PLAN.indexOf(TaskBase.PRIORITY);
+    private static final int COLUMN_CREATED_AT = READ_PLAN.indexOf(DatabaseHelper.CREATED_AT);
+    private static final int COLUMN_UPDATED_AT = READ_PLAN.indexOf(DatabaseHelper.UPDATED_AT);
+    private static final int COLUMN_SYNC_STATE = READ_PLAN.indexOf(DatabaseHelper.SYNC_STATE_FIELD);
+    private static final int COLUMN_ADDITIONAL_ENTRIES = READ_PLAN.indexOf(
+                TaskBase.ADDITIONAL_ENTRIES);
+    private static final int COLUMN_RECURRING = READ_PLAN.indexOf(TaskBase.RECURRING);
+    private static final int COLUMN_RECURRING_REMINDER = READ_PLAN.indexOf(
+                TaskBase.RECURRING_REMINDER);
+    private static final int COLUMN_PROGRESS = READ_PLAN.indexOf(TaskBase.PROGRESS);
+    private static final int COLUMN_RECURRING_SHOWN = READ_PLAN.indexOf(TaskBase.RECURRING_SHOWN);
+
     private static final CursorWrapper.CursorConverter<List<Task>> LIST_FROM_CURSOR = new
     Cursor2List<>(Task.class);
     public static final String BASIC_FILTER_DISPLAY_TASKS = " NOT "
@@ -138,24 +171,27 @@ public class Task extends TaskBase {
         if (cursor.isAfterLast()) {
             throw new IllegalArgumentException("cursor out of bounds");
         }
-        setDue(cursor.getOptional(DUE, DateTime.class));
-        setReminder(cursor.getOptional(REMINDER, DateTime.class));
-        createdAt = cursor.getDateTime(DatabaseHelper.CREATED_AT);
-        updatedAt = cursor.getDateTime(DatabaseHelper.UPDATED_AT);
-        setId(cursor.getLong(ID));
-        setUUID(cursor.getString(UUID));
-        this.list = ListMirakel.get(cursor.getLong(LIST_ID)).get();
-        setName(cursor.getString(NAME));
-        final String content = cursor.getString(CONTENT);
+        final int[] columns = cursor.resolve(READ_PLAN);
+        setDue(fromNullable(cursor.getDateTimeOrNull(columns[COLUMN_DUE])));
+        setReminder(fromNullable(cursor.getDateTimeOrNull(columns[COLUMN_REMINDER])));
+        createdAt = cursor.getDateTime(columns[COLUMN_CREATED_AT]);
+        updatedAt = cursor.getDateTime(columns[COLUMN_UPDATED_AT]);
+        setId(cursor.getLong(columns[COLUMN_ID]));
+        setUUID(cursor.getString(columns[COLUMN_UUID]));
+        this.list = ListMirakel.get(cursor.getLong(columns[COLUMN_LIST_ID])).get();
+        setName(cursor.getString(columns[COLUMN_NAME]));
+        final String content = cursor.getString(columns[COLUMN_CONTENT]);
         setContent((content == null) ? "" : content); // keep that!
-        setDone(cursor.getBoolean(DONE));
-        setPriority(cursor.getInt(PRIORITY));
-        setSyncState(SYNC_STATE.valueOf(cursor.getShort(DatabaseHelper.SYNC_STATE_FIELD)));
-        setAdditionalEntries(cursor.getString(ADDITIONAL_ENTRIES));
-        setRecurrence(cursor.getLong(RECURRING));
-        setRecurringReminder(cursor.getLong(RECURRING_REMINDER));
-        setProgress(cursor.getInt(PROGRESS));
-        setIsRecurringShown(cursor.getBoolean(RECURRING_SHOWN));
+        setDone(cursor.getBoolean(columns[COLUMN_DONE]));
+        setPriority(cursor.getInt(columns[COLUMN_PRIORITY]));
+        setSyncState(SYNC_STATE.valueOf(cursor.getShort(columns[COLUMN_SYNC_STATE])));
+        setAdditionalEntries(cursor.getString(columns[COLUMN_ADDITIONAL_ENTRIES]));
+        setRecurrence(cursor.getLong(columns[COLUMN_RECURRING]));
+        setRecurringReminder(cursor.getLong(columns[COLUMN_RECURRING_REMINDER]));
+        setProgress(cursor.getInt(columns[COLUMN_PROGRESS]));
+        setIsRecurringShown(cursor.getBoolean(columns[COLUMN_RECURRING_SHOWN]));
+        // the values are the ones from the database, nothing is edited yet
+        clearEdited();
     }
 
     public Task(@NonNull final String name, @NonNull final ListMirakel listMirakel) {
@@ -512,6 +548,271 @@ public class Task extends TaskBase {
                + " or child_id=" + id, null);
     }
 
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    // Bulk operations
+    //
+    // These work like calling the setter and save() on every task, but they run in one
+    // transaction and use one statement for all tasks where possible.
+
+    /**
+     * Saves all tasks in one transaction
+     */
+    public static void saveAll(@NonNull final Collection<Task> tasks) {
+        MirakelInternalContentProvider.withTransaction(new
+        MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                for (final Task task : tasks) {
+                    task.save();
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete the tasks, see {@link #destroy()}
+     */
+    public static void destroyAll(@NonNull final Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final List<Long> files = new ArrayList<>(0);
+        MirakelInternalContentProvider.withTransaction(new
+        MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                final String idList = joinIds(ids);
+                // the tasks which were never synced can be deleted directly
+                final List<Long> added = queryIds(URI, ModelBase.ID, ModelBase.ID + " IN (" + idList
+                                                  + ") AND " + DatabaseHelper.SYNC_STATE_FIELD + '=' + SYNC_STATE.ADD.toInt());
+                final List<Long> synced = new ArrayList<>(ids);
+                synced.removeAll(added);
+                // update the masters if a child changed
+                final ContentValues masterValues = new ContentValues();
+                masterValues.put(DatabaseHelper.SYNC_STATE_FIELD, SYNC_STATE.NEED_SYNC.toInt());
+                update(URI, masterValues, ModelBase.ID + " IN (SELECT parent FROM " + Recurring.TW_TABLE
+                       + " WHERE child IN (" + idList + "))", null);
+                final String fileWhere = "task_id IN (" + idList + ") OR task_id IN (SELECT child FROM "
+                                         + Recurring.TW_TABLE + " WHERE parent IN (" + idList + "))";
+                files.addAll(queryIds(FileMirakel.URI, ModelBase.ID, fileWhere));
+                delete(MirakelInternalContentProvider.FILE_URI, fileWhere, null);
+                if (!synced.isEmpty()) {
+                    final ContentValues values = new ContentValues();
+                    values.put(DatabaseHelper.SYNC_STATE_FIELD, SYNC_STATE.DELETE.toInt());
+                    update(URI, values, getWhereWithRecurringChildren(joinIds(synced)), null);
+                }
+                if (!added.isEmpty()) {
+                    final String addedList = joinIds(added);
+                    // the recurring children are deleted with their master, like in destroy()
+                    final String deletedList = joinIds(queryIds(URI, ModelBase.ID,
+                                                       getWhereWithRecurringChildren(addedList)));
+                    delete(URI, getWhereWithRecurringChildren(addedList), null);
+                    delete(MirakelInternalContentProvider.RECURRING_TW_URI, "parent IN (" + addedList + ')',
+                           null);
+                    delete(MirakelInternalContentProvider.SUBTASK_URI, "parent_id IN (" + deletedList
+                           + ") OR child_id IN (" + deletedList + ')', null);
+                }
+            }
+        });
+        // only remove the previews once the files are really gone
+        FileMirakel.destroyPreviews(files);
+    }
+
+    /**
+     * Move the tasks to the list, see {@link #setList(ListMirakel, boolean)} with
+     * removeNoListFlag = true
+     */
+    public static void moveAll(@NonNull final Collection<Long> ids, @NonNull final ListMirakel list) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final ListMirakel target;
+        if (list.isSpecial()) {
+            final Optional<SpecialList> specialList = list.toSpecial();
+            if (!specialList.isPresent()) {
+                ErrorReporter.report(ErrorType.LIST_VANISHED);
+                return;
+            }
+            target = specialList.get().getDefaultList();
+        } else {
+            target = list;
+        }
+        MirakelInternalContentProvider.withTransaction(new
+        MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                // removing the no project flag has to touch the additional entries of the task
+                final List<Task> flagged = new MirakelQueryBuilder(context)
+                .and(ModelBase.ID + " IN (" + joinIds(ids) + ") AND " + ADDITIONAL_ENTRIES + " LIKE "
+                     + DatabaseUtils.sqlEscapeString("%\"" + DefinitionsHelper.TW_NO_PROJECT + "\"%"))
+                .getList(Task.class);
+                final List<Long> remaining = new ArrayList<>(ids);
+                for (final Task task : flagged) {
+                    task.setList(target, true);
+                    task.save();
+                    remaining.remove(task.getId());
+                }
+                final ContentValues values = new ContentValues();
+                values.put(LIST_ID, target.getId());
+                updateAll(remaining, values, LIST_ID + "!=" + target.getId());
+            }
+        });
+    }
+
+    /**
+     * Set the priority of all tasks, see {@link #setPriority(int)}
+     */
+    public static void setPriorityAll(@NonNull final Collection<Long> ids, final int priority) {
+        if ((priority > 2) || (priority < -2)) {
+            throw new IllegalArgumentException(
+                "Priority is not in Range [-2,2]");
+        }
+        MirakelInternalContentProvider.withTransaction(new
+        MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                final ContentValues values = new ContentValues();
+                values.put(PRIORITY, priority);
+                updateAll(ids, values, PRIORITY + "!=" + priority);
+            }
+        });
+    }
+
+    /**
+     * Set the due of all tasks, see {@link #setDue(Optional)}
+     */
+    public static void setDueAll(@NonNull final Collection<Long> ids,
+                                 @NonNull final Optional<DateTime> due) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        MirakelInternalContentProvider.withTransaction(new
+        MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                final List<Long> remaining = new ArrayList<>(ids);
+                if (!due.isPresent()) {
+                    // removing the due also removes the recurrence, which is done by save()
+                    final List<Task> recurring = new MirakelQueryBuilder(context)
+                    .and(ModelBase.ID + " IN (" + joinIds(ids) + ") AND " + RECURRING + "!=-1")
+                    .getList(Task.class);
+                    for (final Task task : recurring) {
+                        task.setDue(due);
+                        task.save();
+                        remaining.remove(task.getId());
+                    }
+                }
+                final ContentValues values = new ContentValues();
+                values.put(DUE, due.isPresent() ? due.get().getMillis() : null);
+                updateAll(remaining, values, null);
+            }
+        });
+    }
+
+    /**
+     * Mark all tasks as done or undone, see {@link #setDone(boolean)}. Recurring tasks get
+     * their next instance and the subtasks of the other tasks are marked as done like in
+     * {@link #save()}.
+     */
+    public static void setDoneAll(@NonNull final Collection<Long> ids, final boolean done) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        MirakelInternalContentProvider.withTransaction(new
+        MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                final Set<Long> seen = new HashSet<>(ids);
+                final String doneCondition = DONE + "!=" + (done ? 1 : 0);
+                List<Long> batch = new ArrayList<>(ids);
+                while (!batch.isEmpty()) {
+                    final String batchList = joinIds(batch);
+                    final List<Long> changed = queryIds(URI, ModelBase.ID, ModelBase.ID + " IN (" + batchList
+                                                        + ") AND " + doneCondition);
+                    if (done) {
+                        // creating the next instance of a recurring task needs the recurrence
+                        final List<Task> recurring = new MirakelQueryBuilder(context)
+                        .and(ModelBase.ID + " IN (" + batchList + ") AND " + doneCondition + " AND " + RECURRING
+                             + "!=-1 AND " + DUE + " IS NOT NULL")
+                        .getList(Task.class);
+                        for (final Task task : recurring) {
+                            task.setDone(true);
+                            task.save();
+                            changed.remove(task.getId());
+                        }
+                    }
+                    if (changed.isEmpty()) {
+                        break;
+                    }
+                    final String changedList = joinIds(changed);
+                    final ContentValues values = new ContentValues();
+                    values.put(DONE, done);
+                    values.put(PROGRESS, done ? 100 : 0);
+                    updateAll(changed, values, null);
+                    if (!done) {
+                        break;
+                    }
+                    // the subtasks of tasks without recurrence are done as well
+                    batch = queryIds(MirakelInternalContentProvider.TASK_SUBTASK_URI, getQualifiedColumn(
+                                         ModelBase.ID), getQualifiedColumn(DONE) + "=0 AND " + getBasicFilter()
+                                     + " AND " + Task.SUBTASK_TABLE + ".parent_id IN (SELECT " + ModelBase.ID
+                                     + " FROM " + TABLE + " WHERE " + ModelBase.ID + " IN (" + changedList + ") AND "
+                                     + RECURRING + "=-1)");
+                    batch.removeAll(seen);
+                    seen.addAll(batch);
+                }
+            }
+        });
+    }
+
+    @NonNull
+    private static String getWhereWithRecurringChildren(@NonNull final String idList) {
+        return ModelBase.ID + " IN (" + idList + ") OR " + ModelBase.ID + " IN (SELECT child FROM "
+               + Recurring.TW_TABLE + " WHERE parent IN (" + idList + "))";
+    }
+
+    /**
+     * Writes the values to all tasks and updates the sync state like save() does
+     */
+    private static void updateAll(@NonNull final Collection<Long> ids,
+                                  @NonNull final ContentValues values, @Nullable final String condition) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String where = ModelBase.ID + " IN (" + joinIds(ids) + ')';
+        if (condition != null) {
+            where += " AND " + condition;
+        }
+        // the sync state has to be updated first, the condition may not match afterwards
+        final ContentValues syncState = new ContentValues();
+        syncState.put(DatabaseHelper.SYNC_STATE_FIELD, SYNC_STATE.NEED_SYNC.toInt());
+        update(URI, syncState, where + " AND " + DatabaseHelper.SYNC_STATE_FIELD + " NOT IN ("
+               + SYNC_STATE.ADD.toInt() + ',' + SYNC_STATE.IS_SYNCED.toInt() + ')', null);
+        values.put(DatabaseHelper.UPDATED_AT, new DateTime().getMillis());
+        update(URI, values, where, null);
+    }
+
+    @NonNull
+    private static String joinIds(@NonNull final Collection<Long> ids) {
+        return TextUtils.join(",", ids);
+    }
+
+    @NonNull
+    private static List<Long> queryIds(@NonNull final Uri uri, @NonNull final String column,
+                                       @NonNull final String selection) {
+        return new MirakelQueryBuilder(context).select(column).and(selection).query(uri)
+        .doWithCursor(new CursorWrapper.CursorConverter<List<Long>>() {
+            @Override
+            public List<Long> convert(@NonNull final CursorGetter getter) {
+                final List<Long> ids = new ArrayList<>(getter.getCount());
+                while (getter.moveToNext()) {
+                    ids.add(getter.getLong(0));
+                }
+                return ids;
+            }
+        });
+    }
+
     public String[] getDependencies() {
         return this.dependencies;
     }
@@ -633,7 +934,7 @@ public class Task extends TaskBase {
         if (updateUpdatedAt && (Task.context != null)) {
             updatedAt = new DateTime();
         }
-        final ContentValues values = getContentValues();
+        final ContentValues values = getEditedContentValues();
         final List<Tag> tags = getTags();
         MirakelInternalContentProvider
         .withTransaction(new MirakelInternalContentProvider.DBTransaction() {
@@ -662,8 +963,8 @@ public class Task extends TaskBase {
                     });
 
                 }
-                update(URI, values, ModelBase.ID + " = " + getId(),
-                       null);
+                update(URI, values, ModelBase.ID + "=?",
+                       new String[] {String.valueOf(getId())});
                 for (final Tag t : tags) {
                     saveTag(t);
                 }
@@ -702,49 +1003,61 @@ public class Task extends TaskBase {
                .query(MirakelInternalContentProvider.TASK_RECURRING_TW_CHILD_URI).doWithCursor(LIST_FROM_CURSOR);
     }
 
+    /**
+     * Moves the tasks of the recurrence of this task to the occurrences of the new recurrence,
+     * counted from the first task with a due date. All tasks are written in one transaction.
+     */
     private void updateRecurringChilds(final Recurring r) {
-        new Thread(new Runnable() {
+        final String[] select = addPrefix(allColumns, TABLE, allColumns.length + 1);
+        select[allColumns.length] = Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT;
+        final List<Pair<Task, Integer>> children = new MirakelQueryBuilder(context)
+        .select(select)
+        .and(Recurring.TW_TABLE + '.' + Recurring.PARENT,
+             Operation.IN,
+             new MirakelQueryBuilder(context).select(
+                 Recurring.PARENT).and(Recurring.CHILD,
+                                       Operation.EQ, this),
+             MirakelInternalContentProvider.RECURRING_TW_URI)
+        .sort(Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT,
+              Sorting.ASC)
+        .query(MirakelInternalContentProvider.TASK_RECURRING_TW_CHILD_URI)
+        .doWithCursor(new Cursor2List<>(new CursorWrapper.CursorConverter<Pair<Task, Integer>>() {
             @Override
-            public void run() {
-                final String[] select = addPrefix(allColumns, TABLE, allColumns.length + 1);
-                select[allColumns.length] = Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT;
-                new MirakelQueryBuilder(context)
-                .select(select)
-                .and(Recurring.TW_TABLE + '.' + Recurring.PARENT,
-                     Operation.IN,
-                     new MirakelQueryBuilder(context).select(
-                         Recurring.PARENT).and(Recurring.CHILD,
-                                               Operation.EQ, Task.this),
-                     MirakelInternalContentProvider.RECURRING_TW_URI)
-                .sort(Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT,
-                      Sorting.ASC)
-                .query(MirakelInternalContentProvider.TASK_RECURRING_TW_CHILD_URI)
-                .doWithCursor(new CursorWrapper.WithCursor() {
-                    @Override
-                    public void withOpenCursor(@NonNull final CursorGetter getter) {
-                        if (getter.moveToFirst()) {
-                            Task old = null;
-                            do {
-                                final Task child = new Task(getter);
-                                final int offset = getter.getInt(Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT);
-                                if ((offset > 0) && (old != null) && (r != null) && old.getDue().isPresent()) {
-                                    child.setDue(r.addRecurring(old.getDue()));
-                                    if (child.getId() == getId()) {
-                                        // this task:
-                                        setDue(child.getDue());
-                                    }
-                                }
-                                child.setRecurrence(getRecurrenceId());
-                                child.save(false, true);
-                                old = child;
-                            } while (getter.moveToNext());
-                        }
-                    }
-                });
+            public Pair<Task, Integer> convert(@NonNull final CursorGetter getter) {
+                return new Pair<>(new Task(getter),
+                                  getter.getInt(Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT));
             }
-        }).start();
-
-
+        }));
+        Optional<Occurrences> occurrences = Optional.absent();
+        int anchorOffset = 0;
+        final List<Task> changed = new ArrayList<>(children.size());
+        for (final Pair<Task, Integer> pair : children) {
+            final Task child = pair.first;
+            if (occurrences.isPresent()) {
+                final Optional<DateTime> due = occurrences.get().get(pair.second - anchorOffset);
+                if (due.isPresent()) {
+                    child.setDue(due);
+                }
+            } else if (child.getDue().isPresent()) {
+                occurrences = of(r.getOccurrences(child.getDue().get()));
+                anchorOffset = pair.second;
+            }
+            child.setRecurrence(getRecurrenceId());
+            if (child.getId() == getId()) {
+                // this task is saved by the caller
+                setDue(child.getDue());
+            } else {
+                changed.add(child);
+            }
+        }
+        MirakelInternalContentProvider.withTransaction(new MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                for (final Task child : changed) {
+                    child.save(false, true);
+                }
+            }
+        });
     }
 
     public void insertFirstRecurringChild() throws NoSuchListException {
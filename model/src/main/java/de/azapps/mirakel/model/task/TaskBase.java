@@ -65,9 +65,18 @@ abstract class TaskBase extends ModelBase {
     public static final String RECURRING_REMINDER = "recurring_reminder";
     public static final String REMINDER = "reminder";
     public static final String RECURRING_SHOWN = "is_shown_recurring";
+    // not part of the model, the sync stores a hash of the last remote version here
+    public static final String SYNC_FINGERPRINT = "sync_fingerprint";
     private static final String TAG = "TaskBase";
     public static final String UUID = "uuid";
 
+    // all columns written by getContentValues() besides the id and the name
+    private static final String[] VALUE_COLUMNS = {UUID, LIST_ID, CONTENT, DONE, DUE, REMINDER,
+                                                   PRIORITY, DatabaseHelper.CREATED_AT, DatabaseHelper.UPDATED_AT,
+                                                   DatabaseHelper.SYNC_STATE_FIELD, RECURRING, RECURRING_REMINDER, PROGRESS,
+                                                   RECURRING_SHOWN, ADDITIONAL_ENTRIES
+                                                  };
+
     private Map<String, String> additionalEntries = null;
     @NonNull
     protected String additionalEntriesString = "";
@@ -97,6 +106,8 @@ abstract class TaskBase extends ModelBase {
     @NonNull
     protected Optional<List<Tag>> tags = absent();
     protected boolean isStub;
+    // the map was handed out and may have been changed behind our back
+    private boolean additionalEntriesExposed;
 
     TaskBase() {
         // nothing
@@ -156,10 +167,12 @@ abstract class TaskBase extends ModelBase {
         initAdditionalEntries();
         Log.d(TaskBase.TAG, "add: " + key + ':' + value);
         this.additionalEntries.put(key, value);
+        this.edited.put(ADDITIONAL_ENTRIES, true);
     }
 
     void clearEdited() {
         this.edited.clear();
+        this.additionalEntriesExposed = false;
     }
 
     /**
@@ -170,6 +183,7 @@ abstract class TaskBase extends ModelBase {
     @Deprecated
     public Map<String, String> getAdditionalEntries() {
         initAdditionalEntries();
+        this.additionalEntriesExposed = true;
         return this.additionalEntries;
     }
 
@@ -208,7 +222,11 @@ abstract class TaskBase extends ModelBase {
     }
 
     void setIsRecurringShown(final boolean shown) {
+        if (this.isRecurringShown == shown) {
+            return;
+        }
         this.isRecurringShown = shown;
+        this.edited.put(RECURRING_SHOWN, true);
     }
 
     boolean isRecurringShown() {
@@ -245,34 +263,87 @@ abstract class TaskBase extends ModelBase {
     @NonNull
     public ContentValues getContentValues() throws NoSuchListException {
         final ContentValues cv = super.getContentValues();
-        cv.put(TaskBase.UUID, this.uuid);
-        cv.put(TaskBase.LIST_ID, this.list.getId());
-        cv.put(TaskBase.CONTENT, this.content);
-        cv.put(TaskBase.DONE, this.done);
-        if (this.due.isPresent()) {
-            cv.put(DUE, due.get().getMillis());
-        } else {
-            cv.put(TaskBase.DUE, (Long) null);
+        for (final String column : VALUE_COLUMNS) {
+            putColumn(cv, column);
         }
-        if (this.reminder.isPresent()) {
-            cv.put(TaskBase.REMINDER, reminder.get().getMillis());
-        } else {
-            cv.put(REMINDER, (Long)null);
-        }
-        cv.put(TaskBase.PRIORITY, this.priority);
-        cv.put(DatabaseHelper.CREATED_AT,
-               this.createdAt.getMillis());
-        cv.put(DatabaseHelper.UPDATED_AT,
-               this.updatedAt.getMillis());
-        cv.put(DatabaseHelper.SYNC_STATE_FIELD, this.syncState.toInt());
-        cv.put(TaskBase.RECURRING, this.recurrence);
-        cv.put(TaskBase.RECURRING_REMINDER, this.recurringReminder);
-        cv.put(TaskBase.PROGRESS, this.progress);
-        cv.put(TaskBase.RECURRING_SHOWN, this.isRecurringShown);
-        cv.put("additional_entries", getAdditionalEntriesString());
         return cv;
     }
 
+    /**
+     * Returns only the columns which were changed since the last save, plus the sync state and
+     * the update time which change on every save. The additional entries are only serialized if
+     * they were touched.
+     */
+    @NonNull
+    ContentValues getEditedContentValues() {
+        final ContentValues cv = new ContentValues();
+        for (final String column : this.edited.keySet()) {
+            putColumn(cv, column);
+        }
+        if (this.additionalEntriesExposed) {
+            putColumn(cv, ADDITIONAL_ENTRIES);
+        }
+        putColumn(cv, DatabaseHelper.SYNC_STATE_FIELD);
+        putColumn(cv, DatabaseHelper.UPDATED_AT);
+        return cv;
+    }
+
+    private void putColumn(@NonNull final ContentValues cv, @NonNull final String column) {
+        switch (column) {
+        case NAME:
+            cv.put(NAME, getName());
+            break;
+        case UUID:
+            cv.put(UUID, this.uuid);
+            break;
+        case LIST_ID:
+            cv.put(LIST_ID, this.list.getId());
+            break;
+        case CONTENT:
+            cv.put(CONTENT, this.content);
+            break;
+        case DONE:
+            cv.put(DONE, this.done);
+            break;
+        case DUE:
+            cv.put(DUE, this.due.isPresent() ? this.due.get().getMillis() : null);
+            break;
+        case REMINDER:
+            cv.put(REMINDER, this.reminder.isPresent() ? this.reminder.get().getMillis() : null);
+            break;
+        case PRIORITY:
+            cv.put(PRIORITY, this.priority);
+            break;
+        case DatabaseHelper.CREATED_AT:
+            cv.put(DatabaseHelper.CREATED_AT, this.createdAt.getMillis());
+            break;
+        case DatabaseHelper.UPDATED_AT:
+            cv.put(DatabaseHelper.UPDATED_AT, this.updatedAt.getMillis());
+            break;
+        case DatabaseHelper.SYNC_STATE_FIELD:
+            cv.put(DatabaseHelper.SYNC_STATE_FIELD, this.syncState.toInt());
+            break;
+        case RECURRING:
+            cv.put(RECURRING, this.recurrence);
+            break;
+        case RECURRING_REMINDER:
+            cv.put(RECURRING_REMINDER, this.recurringReminder);
+            break;
+        case PROGRESS:
+            cv.put(PROGRESS, this.progress);
+            break;
+        case RECURRING_SHOWN:
+            cv.put(RECURRING_SHOWN, this.isRecurringShown);
+            break;
+        case ADDITIONAL_ENTRIES:
+            cv.put(ADDITIONAL_ENTRIES, getAdditionalEntriesString());
+            break;
+        default:
+            // not a column of the task, e.g. the tags
+            break;
+        }
+    }
+
     @NonNull
     public DateTime getCreatedAt() {
         return this.createdAt;
@@ -483,7 +554,9 @@ abstract class TaskBase extends ModelBase {
             if (this.additionalEntries == null) {
                 initAdditionalEntries();
             }
-            this.additionalEntries.remove(DefinitionsHelper.TW_NO_PROJECT);
+            if (this.additionalEntries.remove(DefinitionsHelper.TW_NO_PROJECT) != null) {
+                this.edited.put(ADDITIONAL_ENTRIES, true);
+            }
         }
     }
 
@@ -573,7 +646,11 @@ abstract class TaskBase extends ModelBase {
 
 
     public void setUUID(@NonNull final String newUuid) {
+        if (this.uuid.equals(newUuid)) {
+            return;
+        }
         this.uuid = newUuid;
+        this.edited.put(UUID, true);
     }
 
     @NonNull
@@ -745,5 +822,6 @@ abstract class TaskBase extends ModelBase {
     @VisibleForTesting
     public void setCreatedAt(final @NonNull DateTime created) {
         createdAt = created;
+        this.edited.put(DatabaseHelper.CREATED_AT, true);
     }
 }
@@ -32,9 +32,11 @@ import de.azapps.mirakel.model.generic.IGenericElementInterface;
 import de.azapps.mirakel.model.generic.ModelBase;
 import de.azapps.mirakel.model.list.ListMirakel;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorReadPlan;
 import de.azapps.tools.OptionalUtils;
 
 import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.fromNullable;
 import static com.google.common.base.Optional.of;
 
 /**
@@ -57,6 +59,19 @@ public class TaskOverview extends ModelBase implements IGenericElementInterface,
     @NonNull
     private Optional<AccountMirakel> accountMirakelOptional = absent();
 
+    private static final CursorReadPlan READ_PLAN = new CursorReadPlan(ModelBase.ID,
+            ModelBase.NAME, Task.DONE, Task.PROGRESS, Task.DUE, Task.LIST_ID, "list_name",
+            "account_id", Task.PRIORITY);
+    private static final int COLUMN_ID = READ_PLAN.indexOf(ModelBase.ID);
+    private static final int COLUMN_NAME = READ_PLAN.indexOf(ModelBase.NAME);
+    private static final int COLUMN_DONE = READ_PLAN.indexOf(Task.DONE);
+    private static final int COLUMN_PROGRESS = READ_PLAN.indexOf(Task.PROGRESS);
+    private static final int COLUMN_DUE = READ_PLAN.indexOf(Task.DUE);
+    private static final int COLUMN_LIST_ID = READ_PLAN.indexOf(Task.LIST_ID);
+    private static final int COLUMN_LIST_NAME = READ_PLAN.indexOf("list_name");
+    private static final int COLUMN_ACCOUNT_ID = READ_PLAN.indexOf("account_id");
+    private static final int COLUMN_PRIORITY = READ_PLAN.indexOf(Task.PRIORITY);
+
     public TaskOverview(final Task task) {
         taskOptional = of(task);
         done = task.isDone();
@@ -68,15 +83,16 @@ public class TaskOverview extends ModelBase implements IGenericElementInterface,
     }
 
     public TaskOverview(final CursorGetter cursor) {
-        setId(cursor.getLong(ModelBase.ID));
-        setName(cursor.getString(ModelBase.NAME));
-        done = cursor.getBoolean(Task.DONE);
-        progress = cursor.getInt(Task.PROGRESS);
-        due = cursor.getOptional(Task.DUE, DateTime.class);
-        listId = cursor.getLong(Task.LIST_ID);
-        listName = cursor.getString("list_name");
-        accountId = cursor.getLong("account_id");
-        priority = cursor.getInt(Task.PRIORITY);
+        final int[] columns = cursor.resolve(READ_PLAN);
+        setId(cursor.getLong(columns[COLUMN_ID]));
+        setName(cursor.getString(columns[COLUMN_NAME]));
+        done = cursor.getBoolean(columns[COLUMN_DONE]);
+        progress = cursor.getInt(columns[COLUMN_PROGRESS]);
+        due = fromNullable(cursor.getDateTimeOrNull(columns[COLUMN_DUE]));
+        listId = cursor.getLong(columns[COLUMN_LIST_ID]);
+        listName = cursor.getString(columns[COLUMN_LIST_NAME]);
+        accountId = cursor.getLong(columns[COLUMN_ACCOUNT_ID]);
+        priority = cursor.getInt(columns[COLUMN_PRIORITY]);
     }
 
     public boolean isDone() {
@@ -19,6 +19,7 @@
 
 package de.azapps.mirakel.reminders;
 
+import android.annotation.TargetApi;
 import android.app.AlarmManager;
 import android.app.Notification;
 import android.app.NotificationManager;
@@ -28,13 +29,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.graphics.Color;
 import android.media.RingtoneManager;
-import android.net.Uri;
-import android.os.Bundle;
+import android.os.Build;
 import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
-import android.util.Pair;
 
 import com.google.common.base.Optional;
 
@@ -49,13 +48,19 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import de.azapps.mirakel.DefinitionsHelper;
 import de.azapps.mirakel.helper.DateTimeHelper;
 import de.azapps.mirakel.helper.Helpers;
 import de.azapps.mirakel.helper.MirakelCommonPreferences;
+import de.azapps.mirakel.model.DatabaseHelper;
 import de.azapps.mirakel.model.MirakelContentObserver;
 import de.azapps.mirakel.model.R;
+import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorWrapper;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.task.Task;
 import de.azapps.mirakel.services.NotificationService;
@@ -70,8 +75,6 @@ public class ReminderAlarm extends BroadcastReceiver {
     public static final String UPDATE_NOTIFICATION =
         "de.azapps.mirakel.reminders.ReminderAlarm.UPDATE_NOTIFICATION";
     public static final String REMINDER = "de.azapps.mirakel.reminders.ReminderAlarm.REMINDER";
-    public static final String REMINDER_PAYLOAD =
-        "de.azapps.mirakel.reminders.ReminderAlarm.REMINDER_PAYLOAD";
 
     @Nullable
     private static ReminderHandler handler = null;
@@ -91,6 +94,10 @@ public class ReminderAlarm extends BroadcastReceiver {
     @Override
     public void onReceive(final Context context, final Intent intent) {
         Log.d(TAG, "receive trigger");
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+            restart();
+            return;
+        }
         if (UPDATE_NOTIFICATION.equals(intent.getAction())) {
             NotificationService.updateServices(context);
             if (handler != null) {
@@ -100,40 +107,60 @@ public class ReminderAlarm extends BroadcastReceiver {
         if (!REMINDER.equals(intent.getAction())) {
             return;
         }
-        final ArrayList<Task> tasks = intent.getParcelableArrayListExtra(REMINDER_PAYLOAD);
-        if (tasks == null) {
-            return;
-        }
-        for (final Task t : tasks) {
-            if (handler != null) {
-                handler.sendNotificantion(t, true);
-            }
+        // the due reminders are taken from the scheduler, a payload of older versions is ignored
+        if (handler != null) {
+            handler.onAlarm();
         }
     }
 
-    private static void updateAlarms() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                if (handler != null) {
-                    handler.updateAllReminders();
-                }
-            }
-        }).start();
+    /**
+     * Throws away all reminders and reads them again from the database
+     */
+    public static void restart() {
+        if (handler != null) {
+            handler.rebuild();
+        }
     }
 
+    /**
+     * The one wakeup alarm of the {@link ReminderScheduler}
+     */
+    private static class SystemAlarm implements ReminderScheduler.Alarm {
+        @NonNull
+        private final AlarmManager alarmManager;
+        @NonNull
+        private final PendingIntent intent;
 
-    public static void restart() {
-        if (handler != null) {
-            handler.clear();
+        SystemAlarm(final @NonNull Context ctx, final @NonNull AlarmManager alarmManager) {
+            this.alarmManager = alarmManager;
+            final Intent reminder = new Intent(ctx, ReminderAlarm.class);
+            reminder.setAction(REMINDER);
+            intent = PendingIntent.getBroadcast(ctx, 0, reminder, PendingIntent.FLAG_UPDATE_CURRENT);
+        }
+
+        @TargetApi(Build.VERSION_CODES.KITKAT)
+        @Override
+        public void set(final long time) {
+            // there is only one alarm, so it can be exact without draining the battery
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, time, intent);
+            } else {
+                alarmManager.set(AlarmManager.RTC_WAKEUP, time, intent);
+            }
+            Log.d(TAG, "trigger next alarm on " + new Date(time).toString());
+        }
+
+        @Override
+        public void cancel() {
+            alarmManager.cancel(intent);
         }
-        updateAlarms();
     }
 
     private static class ReminderHandler implements MirakelContentObserver.ObserverCallBack {
 
+        // what the posted notifications show, so unchanged ones are not posted again
         @NonNull
-        private final Map<Long, Task> currentNotifications = new HashMap<>();
+        private final Map<Long, String> currentNotifications = new HashMap<>();
         @NonNull
         private final NotificationManager notificationManager;
         @NonNull
@@ -143,11 +170,17 @@ public class ReminderAlarm extends BroadcastReceiver {
         @NonNull
         private final Context ctx;
         @NonNull
-        private final Map<Long, Pair<ArrayList<Task>, PendingIntent>> timeToTasks = new HashMap<>();
+        private final ReminderIndex<Task> activeReminders = new ReminderIndex<>();
+        // the reminders which did not fire yet
         @NonNull
-        private final Map<Long, Pair<Long, Task>> activeReminders = new HashMap<>();
+        private final ReminderScheduler<Task> scheduler;
         @Nullable
         private DateTime now;
+        // the database is read here, so the observer callbacks do not block the main thread
+        @NonNull
+        private final ExecutorService worker = Executors.newSingleThreadExecutor();
+        @NonNull
+        private final AtomicBoolean reconcilePending = new AtomicBoolean(false);
 
 
         ReminderHandler(final @NonNull Context ctx) {
@@ -168,17 +201,89 @@ public class ReminderAlarm extends BroadcastReceiver {
                                       triggerCal.getTimeInMillis(),
                                       AlarmManager.INTERVAL_DAY, pendingIntent);
             this.ctx = ctx;
-            observer = of(new MirakelContentObserver(new Handler(ctx.getMainLooper()), ctx, Task.URI, this));
+            scheduler = new ReminderScheduler<>(ReminderScheduler.SYSTEM_CLOCK,
+                                                new SystemAlarm(ctx, alarmManager));
+            observer = of(new MirakelContentObserver(new Handler(ctx.getMainLooper()), ctx, Task.URI, this,
+                                                    true));
             if (!DefinitionsHelper.freshInstall) {
-                updateAlarms();
+                rebuild();
             }
         }
 
+        /**
+         * Drops all reminders and reads every task with a reminder again. Only needed on start,
+         * after a time zone change or if the reminder settings changed.
+         */
+        void rebuild() {
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    clear();
+                    updateAllReminders();
+                }
+            });
+        }
+
+        /**
+         * Several changes in a row are handled by one run of {@link #reconcile()}
+         */
+        private void scheduleReconcile() {
+            if (reconcilePending.compareAndSet(false, true)) {
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        reconcilePending.set(false);
+                        reconcile();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Handles a change where the provider did not tell which tasks changed, e.g. a sync or
+         * another bulk edit. Only the ids and reminders are read, and only the tasks whose
+         * reminder appeared, moved or vanished are loaded and updated in the index.
+         */
+        private synchronized void reconcile() {
+            updateNow();
+            final Map<Long, Long> reminders = Task.addBasicFiler(new MirakelQueryBuilder(ctx))
+                                              .select(Task.ID, Task.REMINDER)
+                                              .and(Task.REMINDER, MirakelQueryBuilder.Operation.NOT_EQ, (String) null)
+                                              .and(Task.DONE, MirakelQueryBuilder.Operation.EQ, false)
+                                              .query(Task.URI).doWithCursor(new CursorWrapper.CursorConverter<Map<Long, Long>>() {
+                @Override
+                public Map<Long, Long> convert(@NonNull final CursorGetter getter) {
+                    final Map<Long, Long> result = new HashMap<>(getter.getCount());
+                    while (getter.moveToNext()) {
+                        result.put(getter.getLong(Task.ID), getter.getLong(Task.REMINDER));
+                    }
+                    return result;
+                }
+            });
+            final Set<Long> vanished = activeReminders.getTaskIds();
+            vanished.removeAll(reminders.keySet());
+            for (final Long id : vanished) {
+                removeReminderFor(id);
+            }
+            int changed = 0;
+            for (final Map.Entry<Long, Long> reminder : reminders.entrySet()) {
+                final Optional<ReminderIndex.Entry<Task>> entry = activeReminders.get(reminder.getKey());
+                if (entry.isPresent() && (entry.get().getReminder() == reminder.getValue())) {
+                    continue;
+                }
+                changed++;
+                final Optional<Task> task = Task.get(reminder.getKey());
+                if (task.isPresent()) {
+                    updateReminderFor(task.get());
+                }
+            }
+            Log.d(TAG, "reconciled reminders: " + vanished.size() + " removed, " + changed + " changed");
+        }
 
         private synchronized void updateAllReminders() {
             Log.d(TAG, "update Reminders");
             updateNow();
-            final Set<Long> activeReminderTasks = new HashSet<>(activeReminders.keySet());
+            final Set<Long> activeReminderTasks = activeReminders.getTaskIds();
             final List<Task> tasksWithReminder = Task.addBasicFiler(new MirakelQueryBuilder(ctx))
                                                  .and(Task.REMINDER, MirakelQueryBuilder.Operation.NOT_EQ, (String) null)
                                                  .and(Task.DONE, MirakelQueryBuilder.Operation.EQ, false)
@@ -194,50 +299,59 @@ public class ReminderAlarm extends BroadcastReceiver {
                 }
             }
             for (final Long id : activeReminderTasks) {
-                removeReminderFor(activeReminders.get(id).second);
+                removeReminderFor(id);
             }
         }
 
 
         private synchronized void sendNotificantion(final Task task, final boolean fromReceiver) {
-            Log.d(TAG, "create reminder for: " + task.getName());
             final Optional<Class<?>> main = Helpers.getMainActivity();
             if (!main.isPresent()) {
                 return;
             }
-            final Intent openIntent = new Intent(ctx, main.get());
-
-            final Bundle withTask = new Bundle();
-            withTask.putParcelable(DefinitionsHelper.EXTRA_TASK, task);
+            final String title = ctx.getString(R.string.reminder_notification_title, task.getName());
+            final String priority = ((task.getPriority() > 0) ? ("+" + task.getPriority()) : String.valueOf(task
+                                     .getPriority()));
+            final CharSequence due;
+            if (!task.getDue().isPresent()) {
+                due = ctx.getString(R.string.no_date);
+            } else {
+                due = DateTimeHelper.formatDate(ctx, task.getDue());
+            }
+            final String listLine = ctx.getString(R.string.reminder_notification_list,
+                                                  task.getList().getName());
+            final String priorityLine = ctx.getString(R.string.reminder_notification_priority, priority);
+            final String dueLine = ctx.getString(R.string.reminder_notification_due, due);
+            final boolean persistent = MirakelCommonPreferences
+                                       .usePersistentReminders();
+            final ReminderPayload payload = ReminderPayload.of(task);
+            // the due date is relative, so it is part of what is shown. The actions only apply to
+            // the version they were posted with, so a new version is posted again as well.
+            final String shown = title + '\n' + task.getContent() + '\n' + listLine + '\n' + priorityLine
+                                 + '\n' + dueLine + '\n' + persistent + '\n' + payload.getVersion();
+            final String posted = currentNotifications.get(task.getId());
+            // the user may have swiped the notification away, so a firing reminder is always posted
+            if (!fromReceiver && shown.equals(posted)) {
+                return;
+            }
+            Log.d(TAG, "create reminder for: " + task.getName());
+            // the intents only carry the id, the receivers load the task if the user taps
+            final Intent openIntent = payload.writeTo(new Intent(ctx, main.get()));
             openIntent.setAction(DefinitionsHelper.SHOW_TASK_REMINDER);
-            openIntent.putExtra(DefinitionsHelper.EXTRA_TASK_REMINDER, task);
-            openIntent.putExtra(String.valueOf(task.getId()), task.getId());
-            openIntent
-            .setData(Uri.parse(openIntent.toUri(Intent.URI_INTENT_SCHEME)));
             final PendingIntent pOpenIntent = PendingIntent.getActivity(ctx, 0,
-                                              openIntent, 0);
-            final Intent doneIntent = new Intent(ctx, TaskService.class);
+                                              openIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+            final Intent doneIntent = payload.writeTo(new Intent(ctx, TaskService.class));
             doneIntent.setAction(TaskService.TASK_DONE);
-            doneIntent.putExtra(DefinitionsHelper.BUNDLE_WRAPPER, withTask);
-            doneIntent.putExtra(String.valueOf(task.getId()), task.getId());
-            doneIntent
-            .setData(Uri.parse(doneIntent.toUri(Intent.URI_INTENT_SCHEME)));
             final PendingIntent pDoneIntent = PendingIntent.getService(ctx, 0,
-                                              doneIntent, 0);
-            final Intent laterIntent = new Intent(ctx, TaskService.class);
+                                              doneIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+            final Intent laterIntent = payload.writeTo(new Intent(ctx, TaskService.class));
             laterIntent.setAction(TaskService.TASK_LATER);
-            laterIntent.putExtra(DefinitionsHelper.BUNDLE_WRAPPER, withTask);
-            laterIntent.putExtra(String.valueOf(task.getId()), task.getId());
-            laterIntent.setData(Uri.parse(laterIntent
-                                          .toUri(Intent.URI_INTENT_SCHEME)));
             final PendingIntent pLaterIntent = PendingIntent.getService(ctx, 0,
-                                               laterIntent, 0);
-            final boolean persistent = MirakelCommonPreferences
-                                       .usePersistentReminders();
+                                               laterIntent, PendingIntent.FLAG_UPDATE_CURRENT);
             // Build Notification
             final NotificationCompat.Builder builder = new NotificationCompat.Builder(
                 ctx)
-            .setContentTitle(ctx.getString(R.string.reminder_notification_title, task.getName()))
+            .setContentTitle(title)
             .setContentText(task.getContent())
             .setSmallIcon(R.drawable.ic_mirakel)
             .setLargeIcon(Helpers.getBitmap(R.drawable.mirakel, ctx))
@@ -253,7 +367,7 @@ public class ReminderAlarm extends BroadcastReceiver {
                 ctx.getString(R.string.reminder_notification_later),
                 pLaterIntent).setOnlyAlertOnce(true);
 
-            if (fromReceiver && !currentNotifications.containsKey(task.getId())) {
+            if (fromReceiver && (posted == null)) {
                 builder.setSound(RingtoneManager
                                  .getActualDefaultRingtoneUri(ctx, RingtoneManager.TYPE_NOTIFICATION))
                 .setLights(Color.BLUE, 1500, 300)
@@ -261,24 +375,12 @@ public class ReminderAlarm extends BroadcastReceiver {
             }
 
             final NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
-            final String priority = ((task.getPriority() > 0) ? ("+" + task.getPriority()) : String.valueOf(task
-                                     .getPriority()));
-            final CharSequence due;
-            if (!task.getDue().isPresent()) {
-                due = ctx.getString(R.string.no_date);
-            } else {
-                due = DateTimeHelper.formatDate(ctx, task.getDue());
-            }
-            inboxStyle.addLine(ctx.getString(
-                                   R.string.reminder_notification_list, task.getList()
-                                   .getName()));
-            inboxStyle.addLine(ctx.getString(
-                                   R.string.reminder_notification_priority, priority));
-            inboxStyle.addLine(ctx.getString(
-                                   R.string.reminder_notification_due, due));
+            inboxStyle.addLine(listLine);
+            inboxStyle.addLine(priorityLine);
+            inboxStyle.addLine(dueLine);
             builder.setStyle(inboxStyle);
             // Build notification
-            currentNotifications.put(task.getId(), task);
+            currentNotifications.put(task.getId(), shown);
             notificationManager.notify(DefinitionsHelper.NOTIF_REMINDER + (int) task.getId(),
                                        builder.build());
         }
@@ -293,24 +395,16 @@ public class ReminderAlarm extends BroadcastReceiver {
 
 
         private synchronized void removeReminderFor(final Task task) {
-            final Pair<Long, Task> old = activeReminders.get(task.getId());
-            if (old == null) {
+            removeReminderFor(task.getId());
+        }
+
+        private synchronized void removeReminderFor(final long taskId) {
+            final Optional<ReminderIndex.Entry<Task>> old = activeReminders.remove(taskId);
+            if (!old.isPresent()) {
                 return;
             }
-            final long oldTime = old.first;
-            final Pair<ArrayList<Task>, PendingIntent> oldPair = timeToTasks.get(oldTime);
-            if (oldPair != null) {
-                final ArrayList<Task> tasks = oldPair.first;
-                alarmManager.cancel(oldPair.second);
-                tasks.remove(old.second);
-                if (tasks.isEmpty()) {
-                    timeToTasks.remove(oldTime);
-                } else {
-                    timeToTasks.put(oldTime, new Pair<>(tasks, startAlarmFor(oldTime, tasks)));
-                }
-            }
-            activeReminders.remove(task.getId());
-            closeNotificationFor(old.second);
+            scheduler.cancel(taskId);
+            closeNotificationForTaskId(taskId);
         }
 
         private synchronized void createReminderFor(final Task t) {
@@ -318,25 +412,22 @@ public class ReminderAlarm extends BroadcastReceiver {
                 return;
             }
             final long time = getTriggerAtMillis(t.getReminder().get());
-            final ArrayList<Task> tasks;
-            if (timeToTasks.containsKey(time)) {
-                alarmManager.cancel(timeToTasks.get(time).second);
-                tasks = timeToTasks.get(time).first;
-            } else {
-                tasks = new ArrayList<>(1);
-            }
-            tasks.add(t);
-            timeToTasks.put(time, new Pair<>(tasks, startAlarmFor(time, tasks)));
-            activeReminders.put(t.getId(), new Pair<>(time, t));
+            activeReminders.put(t.getId(), t.getReminder().get().getMillis(), time, t);
+            scheduler.schedule(t.getId(), time, t);
         }
 
-        private PendingIntent getPendingIntent(final ArrayList<Task> tasks) {
-            final Intent intent = new Intent(ctx, ReminderAlarm.class);
-            intent.setAction(REMINDER);
-            intent.putParcelableArrayListExtra(REMINDER_PAYLOAD, tasks);
-            intent.setData(Uri.parse(intent.toUri(Intent.URI_INTENT_SCHEME)));
-            return PendingIntent.getBroadcast(
-                       ctx, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        /**
+         * Delivers all due reminders at once, the scheduler arms the alarm for the next one
+         */
+        void onAlarm() {
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (final ReminderIndex.Entry<Task> due : scheduler.fire()) {
+                        sendNotificantion(due.getValue(), true);
+                    }
+                }
+            });
         }
 
         private long getTriggerAtMillis(final DateTime reminder) {
@@ -351,82 +442,69 @@ public class ReminderAlarm extends BroadcastReceiver {
         }
 
         private synchronized void updateReminderFor(final Task newTask) {
-            final Pair<Long, Task> old = activeReminders.get(newTask.getId());
-            if (old == null) {
-                createReminderFor(newTask);
-                return;
-            }
-            if (!old.second.getReminder().isPresent()) {
+            final Optional<ReminderIndex.Entry<Task>> old = activeReminders.get(newTask.getId());
+            if (!old.isPresent()) {
                 createReminderFor(newTask);
                 return;
             }
             if (!newTask.getReminder().isPresent()) {
                 removeReminderFor(newTask);
-            }
-            final long oldTime = old.first;
-            final long newTime = getTriggerAtMillis(newTask.getReminder().get());
-            if (oldTime == newTime) {
                 return;
             }
-            removeReminderFor(old.second);
-            final Pair<ArrayList<Task>, PendingIntent> newPair = timeToTasks.get(newTime);
-            if (newPair != null) {
-                final ArrayList<Task> tasks = newPair.first;
-                tasks.add(newTask);
-                timeToTasks.put(newTime, new Pair<>(tasks, startAlarmFor(newTime, tasks)));
-                activeReminders.put(newTask.getId(), new Pair<>(newTime, newTask));
-            } else {
-                activeReminders.remove(newTask.getId());
-                createReminderFor(newTask);
+            if (old.get().getReminder() == newTask.getReminder().get().getMillis()) {
+                return;
             }
-        }
-
-        private PendingIntent startAlarmFor(final long time, final ArrayList<Task> tasks) {
-            final PendingIntent intent = getPendingIntent(tasks);
-            alarmManager.set(AlarmManager.RTC_WAKEUP, time, intent);
-            Log.d(TAG, "trigger new alarm on " + new Date(time).toString());
-            return intent;
+            removeReminderFor(newTask);
+            createReminderFor(newTask);
         }
 
         public synchronized void clear() {
-            final Set<Long> current = new HashSet<>(activeReminders.keySet());
-            for (final Long key : current) {
-                if (activeReminders.containsKey(key)) {
-                    removeReminderFor(activeReminders.get(key).second);
-                }
+            for (final Long id : activeReminders.getTaskIds()) {
+                removeReminderFor(id);
             }
+            scheduler.clear();
         }
 
         @Override
         public void handleChange() {
-            updateAlarms();
+            scheduleReconcile();
             NotificationService.updateServices(ctx);
             rebuildNotifications();
         }
 
         @Override
-        public synchronized void handleChange(final long id) {
-            updateNow();
+        public void handleChange(final long id) {
             NotificationService.updateServices(ctx);
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleChangeNow(id);
+                }
+            });
+        }
+
+        /**
+         * Moves the reminder of the changed task. A notification which is already shown is
+         * updated, new reminders are only posted when their alarm fires.
+         */
+        private synchronized void handleChangeNow(final long id) {
+            updateNow();
             final Optional<Task> t = Task.get(id);
             if (t.isPresent()) {
                 final Task task = t.get();
                 if (task.isDone()) {
                     removeReminderFor(task);
                 } else if (task.getReminder().isPresent()) {
-                    if (activeReminders.containsKey(task.getId())) {
-                        updateReminderFor(task);
-                    } else {
-                        createReminderFor(task);
-                    }
-                    if (!task.equals(currentNotifications.get(task.getId()))) {
+                    updateReminderFor(task);
+                    if (currentNotifications.containsKey(task.getId())) {
                         sendNotificantion(task, false);
                     }
                 } else {
                     removeReminderFor(task);
                 }
+            } else {
+                removeReminderFor(id);
             }
-
         }
 
         private void updateNow() {
@@ -439,21 +517,42 @@ public class ReminderAlarm extends BroadcastReceiver {
                 observer.get().unregister(ctx);
                 observer = absent();
             }
+            worker.shutdown();
         }
 
+        /**
+         * Posts the shown notifications again if their task changed, e.g. the relative due date
+         * after midnight. All tasks are loaded with one query on the worker thread.
+         */
         public void rebuildNotifications() {
-            final Set<Long> current = new HashSet<>(currentNotifications.keySet());
-            for (final Long e : current) {
-                final Optional<Task> task = Task.get(e);
-                if (task.isPresent()) {
-                    if (!task.get().isDone() &&
-                        task.get().getReminder().isPresent()
-                        && task.get().getReminder().get().isBefore(new DateTime())) {
-                        sendNotificantion(task.get(), false);
-                    }
-                } else {
-                    closeNotificationForTaskId(e);
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    rebuildNotificationsNow();
                 }
+            });
+        }
+
+        private synchronized void rebuildNotificationsNow() {
+            if (currentNotifications.isEmpty()) {
+                return;
+            }
+            final Set<Long> gone = new HashSet<>(currentNotifications.keySet());
+            final List<Task> tasks = new MirakelQueryBuilder(ctx)
+            .and(Task.ID, MirakelQueryBuilder.Operation.IN, new ArrayList<>(gone))
+            .and(DatabaseHelper.SYNC_STATE_FIELD, MirakelQueryBuilder.Operation.NOT_EQ,
+                 DefinitionsHelper.SYNC_STATE.DELETE.toInt())
+            .getList(Task.class);
+            final DateTime now = new DateTime();
+            for (final Task task : tasks) {
+                gone.remove(task.getId());
+                if (!task.isDone() && task.getReminder().isPresent()
+                    && task.getReminder().get().isBefore(now)) {
+                    sendNotificantion(task, false);
+                }
+            }
+            for (final Long id : gone) {
+                closeNotificationForTaskId(id);
             }
         }
     }
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package de.azapps.mirakel.reminders;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Optional;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.fromNullable;
+
+/**
+ * The reminders of the tasks, keyed by the task id and ordered by the time the reminder has to
+ * fire. Adding, moving and removing the reminder of one task is O(log n), so a change of a
+ * single task does not need to look at the other reminders.
+ *
+ * Not thread safe.
+ */
+public class ReminderIndex<T> {
+
+    public static final class Entry<T> {
+        private final long taskId;
+        private final long reminder;
+        private final long time;
+        @NonNull
+        private final T value;
+
+        Entry(final long taskId, final long reminder, final long time, final @NonNull T value) {
+            this.taskId = taskId;
+            this.reminder = reminder;
+            this.time = time;
+            this.value = value;
+        }
+
+        public long getTaskId() {
+            return taskId;
+        }
+
+        /**
+         * The reminder as it is stored in the task
+         */
+        public long getReminder() {
+            return reminder;
+        }
+
+        /**
+         * When the reminder fires, this differs from the reminder for reminders in the past
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @NonNull
+        public T getValue() {
+            return value;
+        }
+    }
+
+    private static final Comparator<Entry<?>> BY_TIME = new Comparator<Entry<?>>() {
+        @Override
+        public int compare(final Entry<?> lhs, final Entry<?> rhs) {
+            if (lhs.time != rhs.time) {
+                return (lhs.time < rhs.time) ? -1 : 1;
+            }
+            if (lhs.taskId != rhs.taskId) {
+                return (lhs.taskId < rhs.taskId) ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    private final Map<Long, Entry<T>> byTask = new HashMap<>();
+    private final TreeSet<Entry<T>> byTime = new TreeSet<>(BY_TIME);
+
+    /**
+     * Adds the reminder of the task or moves it to the new time
+     *
+     * @return the replaced entry
+     */
+    @NonNull
+    public Optional<Entry<T>> put(final long taskId, final long reminder, final long time,
+                                  final @NonNull T value) {
+        final Optional<Entry<T>> old = remove(taskId);
+        final Entry<T> entry = new Entry<>(taskId, reminder, time, value);
+        byTask.put(taskId, entry);
+        byTime.add(entry);
+        return old;
+    }
+
+    /**
+     * @return the removed entry
+     */
+    @NonNull
+    public Optional<Entry<T>> remove(final long taskId) {
+        final Entry<T> old = byTask.remove(taskId);
+        if (old != null) {
+            byTime.remove(old);
+        }
+        return fromNullable(old);
+    }
+
+    @NonNull
+    public Optional<Entry<T>> get(final long taskId) {
+        return fromNullable(byTask.get(taskId));
+    }
+
+    public boolean contains(final long taskId) {
+        return byTask.containsKey(taskId);
+    }
+
+    /**
+     * @return the reminder which fires next
+     */
+    @NonNull
+    public Optional<Entry<T>> first() {
+        if (byTime.isEmpty()) {
+            return absent();
+        }
+        return Optional.of(byTime.first());
+    }
+
+    /**
+     * @return a copy of the ids of all tasks with a reminder
+     */
+    @NonNull
+    public Set<Long> getTaskIds() {
+        return new HashSet<>(byTask.keySet());
+    }
+
+    public int size() {
+        return byTask.size();
+    }
+
+    public boolean isEmpty() {
+        return byTask.isEmpty();
+    }
+
+    public void clear() {
+        byTask.clear();
+        byTime.clear();
+    }
+}
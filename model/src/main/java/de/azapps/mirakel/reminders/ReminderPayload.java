@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package de.azapps.mirakel.reminders;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Optional;
+
+import de.azapps.mirakel.DefinitionsHelper;
+import de.azapps.mirakel.model.task.Task;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+
+/**
+ * What the intents of a reminder notification carry instead of the whole task: the id of the
+ * task and the time it was updated. The receiver loads the task only when the user taps the
+ * notification.
+ */
+public class ReminderPayload {
+
+    public static final long NO_VERSION = -1L;
+    private static final String SCHEME = "mirakel";
+    private static final String AUTHORITY = "reminder";
+
+    private final long taskId;
+    private final long version;
+
+    public ReminderPayload(final long taskId, final long version) {
+        this.taskId = taskId;
+        this.version = version;
+    }
+
+    @NonNull
+    public static ReminderPayload of(final @NonNull Task task) {
+        return new ReminderPayload(task.getId(), getVersion(task));
+    }
+
+    @NonNull
+    public static Optional<ReminderPayload> fromIntent(final @Nullable Intent intent) {
+        if ((intent == null) || !intent.hasExtra(DefinitionsHelper.EXTRA_TASK_ID)) {
+            return absent();
+        }
+        return of(new ReminderPayload(intent.getLongExtra(DefinitionsHelper.EXTRA_TASK_ID, 0L),
+                                      intent.getLongExtra(DefinitionsHelper.EXTRA_TASK_VERSION, NO_VERSION)));
+    }
+
+    private static long getVersion(final @NonNull Task task) {
+        return task.getUpdatedAt().getMillis();
+    }
+
+    /**
+     * Puts the payload into the intent. The data uri makes the pending intents of different
+     * tasks distinct, the extras are not part of the identity of a pending intent.
+     */
+    @NonNull
+    public Intent writeTo(final @NonNull Intent intent) {
+        intent.putExtra(DefinitionsHelper.EXTRA_TASK_ID, taskId);
+        intent.putExtra(DefinitionsHelper.EXTRA_TASK_VERSION, version);
+        intent.setData(getUri());
+        return intent;
+    }
+
+    @NonNull
+    public Uri getUri() {
+        return new Uri.Builder().scheme(SCHEME).authority(AUTHORITY)
+               .appendPath(String.valueOf(taskId)).build();
+    }
+
+    /**
+     * Loads the current version of the task
+     */
+    @NonNull
+    public Optional<Task> resolve() {
+        return Task.get(taskId);
+    }
+
+    /**
+     * @return false if the task changed after the notification was posted, the actions of the
+     * notification are not applied then
+     */
+    public boolean isCurrent(final @NonNull Task task) {
+        return (task.getId() == taskId) && (version != NO_VERSION) && (getVersion(task) == version);
+    }
+
+    public long getTaskId() {
+        return taskId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReminderPayload)) {
+            return false;
+        }
+        final ReminderPayload other = (ReminderPayload) o;
+        return (taskId == other.taskId) && (version == other.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * (int) (taskId ^ (taskId >>> 32))) + (int) (version ^ (version >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "ReminderPayload{" + taskId + '@' + version + '}';
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package de.azapps.mirakel.reminders;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Optional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the reminders which did not fire yet and registers only one alarm, for the earliest of
+ * them. When the alarm fires, all due reminders are delivered together and the alarm is moved to
+ * the next reminder.
+ *
+ * Reminders which fire within {@link #getCoalesceMillis()} after the alarm are delivered with it,
+ * so a bunch of reminders at nearly the same time wakes up the device only once.
+ */
+public class ReminderScheduler<T> {
+
+    public static final long DEFAULT_COALESCE_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+    public static final long NOT_ARMED = -1L;
+
+    public interface Clock {
+        long now();
+    }
+
+    /**
+     * The one system alarm, setting it again replaces the old one
+     */
+    public interface Alarm {
+        void set(long time);
+
+        void cancel();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    @NonNull
+    private final ReminderIndex<T> pending = new ReminderIndex<>();
+    @NonNull
+    private final Clock clock;
+    @NonNull
+    private final Alarm alarm;
+    private final long coalesceMillis;
+    private long armedAt = NOT_ARMED;
+
+    public ReminderScheduler(final @NonNull Clock clock, final @NonNull Alarm alarm) {
+        this(clock, alarm, DEFAULT_COALESCE_MILLIS);
+    }
+
+    public ReminderScheduler(final @NonNull Clock clock, final @NonNull Alarm alarm,
+                             final long coalesceMillis) {
+        this.clock = clock;
+        this.alarm = alarm;
+        this.coalesceMillis = coalesceMillis;
+    }
+
+    /**
+     * Adds the reminder of the task or moves it to the new time
+     */
+    public synchronized void schedule(final long taskId, final long time, final @NonNull T value) {
+        pending.put(taskId, time, time, value);
+        rearm();
+    }
+
+    public synchronized void cancel(final long taskId) {
+        if (pending.remove(taskId).isPresent()) {
+            rearm();
+        }
+    }
+
+    public synchronized void clear() {
+        pending.clear();
+        rearm();
+    }
+
+    /**
+     * Call this when the alarm went off
+     *
+     * @return the due reminders, the earliest first
+     */
+    @NonNull
+    public synchronized List<ReminderIndex.Entry<T>> fire() {
+        final long limit = clock.now() + coalesceMillis;
+        final List<ReminderIndex.Entry<T>> due = new ArrayList<>();
+        Optional<ReminderIndex.Entry<T>> next = pending.first();
+        while (next.isPresent() && (next.get().getTime() <= limit)) {
+            due.add(next.get());
+            pending.remove(next.get().getTaskId());
+            next = pending.first();
+        }
+        // the alarm is gone now
+        armedAt = NOT_ARMED;
+        rearm();
+        return due;
+    }
+
+    private void rearm() {
+        final Optional<ReminderIndex.Entry<T>> next = pending.first();
+        if (!next.isPresent()) {
+            if (armedAt != NOT_ARMED) {
+                alarm.cancel();
+                armedAt = NOT_ARMED;
+            }
+            return;
+        }
+        final long time = next.get().getTime();
+        if (time != armedAt) {
+            alarm.set(time);
+            armedAt = time;
+        }
+    }
+
+    /**
+     * @return when the alarm goes off or {@link #NOT_ARMED}
+     */
+    public synchronized long getArmedAt() {
+        return armedAt;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public long getCoalesceMillis() {
+        return coalesceMillis;
+    }
+}
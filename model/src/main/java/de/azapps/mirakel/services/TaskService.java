@@ -22,6 +22,7 @@ package de.azapps.mirakel.services;
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
+import android.support.annotation.NonNull;
 import android.widget.Toast;
 
 import com.google.common.base.Optional;
@@ -32,8 +33,12 @@ import de.azapps.mirakel.helper.MirakelCommonPreferences;
 import de.azapps.mirakel.helper.TaskHelper;
 import de.azapps.mirakel.model.R;
 import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakel.reminders.ReminderAlarm;
+import de.azapps.mirakel.reminders.ReminderPayload;
+import de.azapps.tools.Log;
 
 public class TaskService extends Service {
+    private static final String TAG = "TaskService";
     public static final String TASK_DONE = "de.azapps.mirakel.services.TaskService.TASK_DONE";
     public static final String TASK_LATER = "de.azapps.mirakel.services.TaskService.TASK_LATER";
 
@@ -47,13 +52,21 @@ public class TaskService extends Service {
         if ((intent == null) || (intent.getAction() == null)) {
             return;
         }
-        final Optional<Task> taskOptional = TaskHelper.getTaskFromIntent(intent);
+        final Optional<ReminderPayload> payload = ReminderPayload.fromIntent(intent);
+        final Optional<Task> taskOptional = payload.isPresent() ? payload.get().resolve() :
+                                            getTask(intent);
         if (!taskOptional.isPresent()) {
             return;
         }
-        //reload the task to get the current version
-        final Task task = Task.get(taskOptional.get().getId()).orNull();
-        if (task == null) {
+        final Task task = taskOptional.get();
+        if (payload.isPresent() && (payload.get().getVersion() != ReminderPayload.NO_VERSION)
+            && !payload.get().isCurrent(task)) {
+            // the task changed after the notification was posted, so the user acted on an old
+            // state: show the current one instead of overwriting the change
+            Log.i(TAG, "ignore " + intent.getAction() + " for changed task " + task.getId());
+            sendBroadcast(new Intent(this, ReminderAlarm.class)
+                          .setAction(ReminderAlarm.UPDATE_NOTIFICATION));
+            stopSelf();
             return;
         }
         switch (intent.getAction()) {
@@ -79,6 +92,16 @@ public class TaskService extends Service {
         stopSelf();
     }
 
+    @NonNull
+    private static Optional<Task> getTask(final @NonNull Intent intent) {
+        final Optional<Task> task = TaskHelper.getTaskFromIntent(intent);
+        if (!task.isPresent()) {
+            return task;
+        }
+        //reload the task to get the current version
+        return Task.get(task.get().getId());
+    }
+
     @Override
     public int onStartCommand(final Intent intent, final int flags,
                               final int startId) {
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.dmfs.provider.tasks;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.azapps.mirakel.model.recurring.Occurrences;
+import de.azapps.tools.Log;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+
+/**
+ * The recurrence set of a task as in <a href="http://tools.ietf.org/html/rfc5545#section-3.8.5">RFC 5545 Section 3.8.5</a>: the first instance, the
+ * instances of the RRULE and the RDATEs without the EXDATEs.
+ * <p>
+ * Only the rules which {@link Occurrences} can compute are supported: FREQ with INTERVAL, COUNT, UNTIL and a BYDAY list without ordinals for weekly and
+ * daily rules with an interval of one. Other rules are ignored, so the task has only its first instance and the RDATEs.
+ * </p>
+ */
+public class RecurrenceSet {
+    private static final String TAG = "RecurrenceSet";
+
+    private static final DateTimeFormatter DATE = DateTimeFormat.forPattern("yyyyMMdd").withZoneUTC();
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormat.forPattern("yyyyMMdd'T'HHmmss");
+
+    private final long start;
+    @NonNull
+    private final Optional<Occurrences> rule;
+    private final long count;
+    @NonNull
+    private final TreeSet<Long> rdates;
+    @NonNull
+    private final Set<Long> exdates;
+
+    /**
+     * @param start
+     * The first instance (DTSTART, or DUE if the task has no start) in milliseconds since the epoch.
+     * @param tz
+     * The time zone of the task, <code>null</code> for the local time zone.
+     * @param allDay
+     * Whether the task is an all-day task, all-day tasks are in UTC.
+     */
+    public RecurrenceSet(final long start, final @Nullable String tz, final boolean allDay,
+                         final @Nullable String rrule, final @Nullable String rdate,
+                         final @Nullable String exdate) {
+        this.start = start;
+        final DateTimeZone zone = allDay ? DateTimeZone.UTC : getZone(tz);
+        final DateTime anchor = new DateTime(start, zone);
+        Optional<Occurrences> parsedRule = absent();
+        long parsedCount = Long.MAX_VALUE;
+        if (rrule != null) {
+            try {
+                final Rule r = parseRule(rrule, zone);
+                parsedRule = of(new Occurrences(r.interval, r.weekdays, Optional.<DateTime>absent(),
+                                                r.until, anchor));
+                parsedCount = r.count;
+            } catch (final ParseException e) {
+                Log.w(TAG, "unsupported recurrence rule " + rrule, e);
+            }
+        }
+        rule = parsedRule;
+        count = parsedCount;
+        rdates = new TreeSet<>(parseDates(rdate, zone));
+        exdates = new HashSet<>(parseDates(exdate, zone));
+    }
+
+    @NonNull
+    private static DateTimeZone getZone(final @Nullable String tz) {
+        if (tz != null) {
+            try {
+                return DateTimeZone.forID(tz);
+            } catch (final IllegalArgumentException e) {
+                Log.w(TAG, "unknown time zone " + tz, e);
+            }
+        }
+        return DateTimeZone.getDefault();
+    }
+
+    /**
+     * @return false if the task has only its first instance
+     */
+    public boolean isRecurring() {
+        return (rule.isPresent() && rule.get().isRepeating()) || !rdates.isEmpty();
+    }
+
+    public boolean isExcluded(final long time) {
+        return exdates.contains(time);
+    }
+
+    /**
+     * The instances from (inclusive) to (exclusive), ascending and without duplicates.
+     *
+     * @param limit
+     * The maximum number of instances, so a rule which recurs every minute does not produce thousands of instances.
+     */
+    @NonNull
+    public List<Long> getInstances(final long from, final long to, final int limit) {
+        final TreeSet<Long> instances = new TreeSet<>();
+        if ((start >= from) && (start < to)) {
+            instances.add(start);
+        }
+        if (rule.isPresent()) {
+            final Occurrences occurrences = rule.get();
+            for (long k = occurrences.indexOf(new DateTime(from)); (k < count) && (instances.size() <= limit); k++) {
+                final Optional<DateTime> occurrence = occurrences.get(k);
+                if (!occurrence.isPresent() || (occurrence.get().getMillis() >= to)) {
+                    break;
+                }
+                instances.add(occurrence.get().getMillis());
+            }
+        }
+        instances.addAll(rdates.subSet(from, to));
+        instances.removeAll(exdates);
+        final List<Long> result = new ArrayList<>(Math.min(instances.size(), limit));
+        for (final Long instance : instances) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(instance);
+        }
+        return result;
+    }
+
+    private static class Rule {
+        @NonNull
+        Period interval = Period.ZERO;
+        @NonNull
+        final List<Integer> weekdays = new ArrayList<>();
+        @NonNull
+        Optional<DateTime> until = absent();
+        long count = Long.MAX_VALUE;
+    }
+
+    @NonNull
+    private static Rule parseRule(final @NonNull String rrule, final @NonNull DateTimeZone zone)
+    throws ParseException {
+        final Rule rule = new Rule();
+        String freq = null;
+        int interval = 1;
+        for (final String part : rrule.toUpperCase(Locale.US).split(";")) {
+            final int eq = part.indexOf('=');
+            if (eq < 0) {
+                throw new ParseException("invalid part " + part, 0);
+            }
+            final String name = part.substring(0, eq);
+            final String value = part.substring(eq + 1);
+            try {
+                switch (name) {
+                case "FREQ":
+                    freq = value;
+                    break;
+                case "INTERVAL":
+                    interval = Integer.parseInt(value);
+                    break;
+                case "COUNT":
+                    rule.count = Long.parseLong(value);
+                    break;
+                case "UNTIL":
+                    rule.until = of(parseDate(value, zone));
+                    break;
+                case "BYDAY":
+                    for (final String day : value.split(",")) {
+                        rule.weekdays.add(parseWeekday(day));
+                    }
+                    break;
+                case "WKST":
+                    // only matters for rules with BYDAY and an interval
+                    break;
+                default:
+                    throw new ParseException("unsupported part " + name, 0);
+                }
+            } catch (final NumberFormatException e) {
+                throw new ParseException("invalid number in " + part, 0);
+            } catch (final IllegalArgumentException e) {
+                throw new ParseException("invalid date in " + part, 0);
+            }
+        }
+        if ((freq == null) || (interval < 1)) {
+            throw new ParseException("no frequency", 0);
+        }
+        switch (freq) {
+        case "MINUTELY":
+            rule.interval = Period.minutes(interval);
+            break;
+        case "HOURLY":
+            rule.interval = Period.hours(interval);
+            break;
+        case "DAILY":
+            rule.interval = Period.days(interval);
+            break;
+        case "WEEKLY":
+            rule.interval = Period.weeks(interval);
+            break;
+        case "MONTHLY":
+            rule.interval = Period.months(interval);
+            break;
+        case "YEARLY":
+            rule.interval = Period.years(interval);
+            break;
+        default:
+            throw new ParseException("unsupported frequency " + freq, 0);
+        }
+        if (!rule.weekdays.isEmpty() && ((interval != 1) || !("WEEKLY".equals(freq) || "DAILY".equals(freq)))) {
+            throw new ParseException("BYDAY is only supported for every day or week", 0);
+        }
+        return rule;
+    }
+
+    private static int parseWeekday(final @NonNull String day) throws ParseException {
+        switch (day) {
+        case "MO":
+            return DateTimeConstants.MONDAY;
+        case "TU":
+            return DateTimeConstants.TUESDAY;
+        case "WE":
+            return DateTimeConstants.WEDNESDAY;
+        case "TH":
+            return DateTimeConstants.THURSDAY;
+        case "FR":
+            return DateTimeConstants.FRIDAY;
+        case "SA":
+            return DateTimeConstants.SATURDAY;
+        case "SU":
+            return DateTimeConstants.SUNDAY;
+        default:
+            // e.g. 1MO or -1FR
+            throw new ParseException("unsupported weekday " + day, 0);
+        }
+    }
+
+    @NonNull
+    private static List<Long> parseDates(final @Nullable String dates, final @NonNull DateTimeZone zone) {
+        final List<Long> result = new ArrayList<>();
+        if (dates == null) {
+            return result;
+        }
+        for (final String date : dates.split(",")) {
+            if (date.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                result.add(parseDate(date.trim(), zone).getMillis());
+            } catch (final IllegalArgumentException e) {
+                Log.w(TAG, "invalid date " + date, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses a DATE, a DATE-TIME in UTC or a floating DATE-TIME, which is in the time zone of the task
+     */
+    @NonNull
+    private static DateTime parseDate(final @NonNull String date, final @NonNull DateTimeZone zone) {
+        if (date.length() == 8) {
+            return DATE.parseDateTime(date);
+        } else if (date.endsWith("Z")) {
+            return DATE_TIME.withZoneUTC().parseDateTime(date.substring(0, date.length() - 1));
+        } else {
+            return DATE_TIME.withZone(zone).parseDateTime(date);
+        }
+    }
+}
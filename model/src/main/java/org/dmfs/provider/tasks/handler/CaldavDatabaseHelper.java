@@ -49,6 +49,13 @@ public class CaldavDatabaseHelper {
         }
     }
 
+    /**
+     * The table with the times of the instances, {@link #getInstancesUri(boolean)} joins it with the tasks
+     */
+    public static Uri getInstanceDataUri() {
+        return MirakelInternalContentProvider.CALDAV_INSTANCE_DATA_URI;
+    }
+
     public static Uri getPropertiesUri() {
         return MirakelInternalContentProvider.CALDAV_PROPERTIES_URI;
     }
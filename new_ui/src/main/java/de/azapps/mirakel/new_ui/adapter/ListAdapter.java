@@ -48,7 +48,6 @@ import de.azapps.mirakel.adapter.OnItemClickedListener;
 import de.azapps.mirakel.helper.MirakelModelPreferences;
 import de.azapps.mirakel.model.generic.ModelFactory;
 import de.azapps.mirakel.model.list.ListMirakel;
-import de.azapps.mirakel.model.query_builder.CursorGetter;
 import de.azapps.mirakelandroid.R;
 import de.azapps.tools.Log;
 
@@ -67,7 +66,7 @@ public class ListAdapter extends MultiSelectCursorAdapter<ListAdapter.ListViewHo
     @NonNull
     @Override
     public ListMirakel fromCursor(@NonNull final Cursor cursor) {
-        return (ListMirakel) ModelFactory.createModel(CursorGetter.unsafeGetter(cursor), ListMirakel.class);
+        return (ListMirakel) ModelFactory.createModel(getCursorGetter(cursor), ListMirakel.class);
     }
 
     @Override
@@ -46,7 +46,6 @@ import de.azapps.mirakel.adapter.OnItemClickedListener;
 import de.azapps.mirakel.helper.DateTimeHelper;
 import de.azapps.mirakel.helper.TaskHelper;
 import de.azapps.mirakel.model.list.ListMirakelInterface;
-import de.azapps.mirakel.model.query_builder.CursorGetter;
 import de.azapps.mirakel.model.task.Task;
 import de.azapps.mirakel.model.task.TaskOverview;
 import de.azapps.mirakel.new_ui.views.PriorityView;
@@ -80,7 +79,7 @@ public class TaskAdapter extends
     @NonNull
     @Override
     public TaskOverview fromCursor(@NonNull final Cursor cursor) {
-        return new TaskOverview(CursorGetter.unsafeGetter(cursor));
+        return new TaskOverview(getCursorGetter(cursor));
     }
 
     @Override
@@ -140,7 +139,7 @@ public class TaskAdapter extends
             }
         } else {
             viewHolder.viewSwitcher.setDisplayedChild(0);
-            final TaskOverview task = new TaskOverview(CursorGetter.unsafeGetter(cursor));
+            final TaskOverview task = new TaskOverview(getCursorGetter(cursor));
             viewHolder.task = task;
             viewHolder.name.setText(task.getName());
             viewHolder.name.setStrikeThrough(task.isDone());
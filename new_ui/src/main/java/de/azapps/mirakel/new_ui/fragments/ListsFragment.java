@@ -359,9 +359,7 @@ public class ListsFragment extends Fragment implements LoaderManager.LoaderCallb
                 new Thread(new Runnable() {
                     @Override
                     public void run() {
-                        for (final ListMirakel listMirakel : listsToDelete) {
-                            listMirakel.destroy();
-                        }
+                        ListMirakel.destroyAll(listsToDelete);
                         mListView.post(new Runnable() {
                             @Override
                             public void run() {
@@ -471,10 +469,11 @@ public class ListsFragment extends Fragment implements LoaderManager.LoaderCallb
             changedPosition = false;
         }
         final Cursor cursor = mAdapter.getCursor();
+        final CursorGetter getter = mAdapter.getCursorGetter(cursor);
         cursor.moveToPosition(from);
-        final ListMirakel fromList = new ListMirakel(CursorGetter.unsafeGetter(cursor));
+        final ListMirakel fromList = new ListMirakel(getter);
         cursor.moveToPosition(to);
-        final ListMirakel toList = new ListMirakel(CursorGetter.unsafeGetter(cursor));
+        final ListMirakel toList = new ListMirakel(getter);
         MirakelInternalContentProvider.withTransaction(new MirakelInternalContentProvider.DBTransaction() {
             @Override
             public void exec() {
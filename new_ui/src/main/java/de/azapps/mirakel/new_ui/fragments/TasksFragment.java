@@ -390,7 +390,7 @@ public class TasksFragment extends Fragment implements LoaderManager.LoaderCallb
         showOrHideMoveTasks();
     }
 
-    @OnLongClick({R.id.menu_delete, R.id.menu_move_task, R.id.menu_set_due, R.id.menu_set_priority, R.id.menu_set_tags})
+    @OnLongClick({R.id.menu_delete, R.id.menu_move_task, R.id.menu_set_due, R.id.menu_set_priority, R.id.menu_set_tags, R.id.menu_mark_done})
     public boolean onLongClick(final View v) {
         final int[] screenPos = new int[2];
         final Rect displayFrame = new Rect();
@@ -450,9 +450,7 @@ public class TasksFragment extends Fragment implements LoaderManager.LoaderCallb
                 new Thread(new Runnable() {
                     @Override
                     public void run() {
-                        for (final TaskOverview t : tasksToDelete) {
-                            t.destroy();
-                        }
+                        Task.destroyAll(TaskOverview.getIds(tasksToDelete));
                         mListView.post(new Runnable() {
                             @Override
                             public void run() {
@@ -501,15 +499,7 @@ public class TasksFragment extends Fragment implements LoaderManager.LoaderCallb
                         public void withOpenCursor(@NonNull CursorGetter getter) {
                             getter.moveToPosition(which);
                             final ListMirakel list = new ListMirakel(getter);
-                            for (final TaskOverview taskOverview : tasks) {
-                                taskOverview.withTask(new OptionalUtils.Procedure<Task>() {
-                                    @Override
-                                    public void apply(Task task) {
-                                        task.setList(list, true);
-                                        task.save();
-                                    }
-                                });
-                            }
+                            Task.moveAll(TaskOverview.getIds(tasks), list);
                         }
                     });
                     if (mActionMode != null) {
@@ -538,15 +528,7 @@ public class TasksFragment extends Fragment implements LoaderManager.LoaderCallb
                 super.onDateSet(picker, newDate);
                 final Optional<DateTime> due = newDate.isPresent() ? of(newDate.get().toDateTimeAtStartOfDay()) :
                                                Optional.<DateTime>absent();
-                for (final TaskOverview taskOverview : tasks) {
-                    taskOverview.withTask(new OptionalUtils.Procedure<Task>() {
-                        @Override
-                        public void apply(final Task task) {
-                            task.setDue(due);
-                            task.save();
-                        }
-                    });
-                }
+                Task.setDueAll(TaskOverview.getIds(tasks), due);
                 if (mActionMode != null) {
                     mActionMode.finish();
                 }
@@ -555,6 +537,14 @@ public class TasksFragment extends Fragment implements LoaderManager.LoaderCallb
         datePickerDialog.show(getActivity().getSupportFragmentManager(), "datepicker");
     }
 
+    @OnClick(R.id.menu_mark_done)
+    void onMarkDone() {
+        Task.setDoneAll(TaskOverview.getIds(mAdapter.getSelectedItems()), true);
+        if (mActionMode != null) {
+            mActionMode.finish();
+        }
+    }
+
     @OnClick(R.id.menu_set_priority)
     void onSetPriority() {
         final PriorityDialog dialog;
@@ -665,17 +655,7 @@ public class TasksFragment extends Fragment implements LoaderManager.LoaderCallb
 
     @Override
     public void setPriority(final @IntRange(from = -1, to = 2) int newPriority) {
-        final List<TaskOverview> tasks = mAdapter.getSelectedItems();
-        for (TaskOverview taskOverview : tasks) {
-            Optional<Task> taskOptional = taskOverview.getTask();
-            OptionalUtils.withOptional(taskOptional, new OptionalUtils.Procedure<Task>() {
-                @Override
-                public void apply(Task task) {
-                    task.setPriority(newPriority);
-                    task.save();
-                }
-            });
-        }
+        Task.setPriorityAll(TaskOverview.getIds(mAdapter.getSelectedItems()), newPriority);
         if (mActionMode != null) {
             mActionMode.finish();
         }
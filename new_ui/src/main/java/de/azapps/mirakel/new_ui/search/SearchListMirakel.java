@@ -25,6 +25,8 @@ import android.os.Parcel;
 import android.support.annotation.NonNull;
 import android.text.SpannableStringBuilder;
 
+import com.google.common.base.Optional;
+
 import java.util.List;
 
 import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
@@ -33,6 +35,7 @@ import de.azapps.mirakel.model.list.ListMirakel;
 import de.azapps.mirakel.model.list.ListMirakelInterface;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
 import de.azapps.mirakel.model.query_builder.CursorWrapper;
+import de.azapps.mirakel.model.query_builder.FullTextQuery;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.tags.Tag;
 import de.azapps.mirakel.model.task.Task;
@@ -61,8 +64,18 @@ public class SearchListMirakel implements ListMirakelInterface {
         final MirakelQueryBuilder mirakelQueryBuilder = new MirakelQueryBuilder(context);
         switch (search.getAutocompleteType()) {
         case TASK:
-            mirakelQueryBuilder.and(Task.VIEW_TABLE + '.' + Task.NAME, MirakelQueryBuilder.Operation.LIKE,
-                                    '%' + search.getName() + '%');
+            final Optional<String> match = FullTextQuery.prefixQuery(search.getName(), null);
+            if (match.isPresent()) {
+                // search in the name, the content and the tags of the tasks
+                final MirakelQueryBuilder selectByText = new MirakelQueryBuilder(context).select("docid")
+                .and(MirakelInternalContentProvider.TASK_SEARCH, MirakelQueryBuilder.Operation.MATCH,
+                     match.get());
+                mirakelQueryBuilder.and(Task.VIEW_TABLE + '.' + Task.ID, MirakelQueryBuilder.Operation.IN,
+                                        selectByText, MirakelInternalContentProvider.TASK_SEARCH_URI);
+            } else {
+                mirakelQueryBuilder.and(Task.VIEW_TABLE + '.' + Task.NAME, MirakelQueryBuilder.Operation.LIKE,
+                                        '%' + search.getName() + '%');
+            }
             break;
         case TAG:
             final MirakelQueryBuilder selectByTag = new MirakelQueryBuilder(context);
@@ -21,6 +21,7 @@ package de.azapps.mirakel.new_ui.search;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
@@ -28,9 +29,12 @@ import android.text.Spannable;
 import android.text.SpannableString;
 import android.text.SpannableStringBuilder;
 
+import com.google.common.base.Optional;
+
 import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
 import de.azapps.mirakel.model.generic.ModelBase;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.FullTextQuery;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.tags.Tag;
 import de.azapps.mirakel.model.task.Task;
@@ -134,13 +138,24 @@ public class SearchObject implements Parcelable {
         return autocompleteType;
     }
 
+    /**
+     * Tags and tasks whose names contain words starting with the words of the input. Tags come
+     * first, done tasks last and shorter names before longer ones.
+     */
     public static Cursor autocomplete(@NonNull final Context context, @NonNull final String input) {
-        MirakelQueryBuilder mirakelQueryBuilder = new MirakelQueryBuilder(context);
-        mirakelQueryBuilder.and("name", MirakelQueryBuilder.Operation.LIKE, '%' + input + '%')
-        .select(ModelBase.ID, OBJ_ID, ModelBase.NAME, TYPE, Tag.BACKGROUND_COLOR, Task.DONE,
-                "score + length(" + input.length() + ") - length(name) as score")
-        .sort("score", MirakelQueryBuilder.Sorting.DESC);
-        return mirakelQueryBuilder.query(MirakelInternalContentProvider.AUTOCOMPLETE_URI).getRawCursor();
+        final String[] projection = {ModelBase.ID, OBJ_ID, ModelBase.NAME, TYPE, Tag.BACKGROUND_COLOR, Task.DONE,
+                                     "score + " + input.length() + " - length(name) as score"
+                                    };
+        final Optional<String> match = FullTextQuery.prefixQuery(input, ModelBase.NAME);
+        if (!match.isPresent()) {
+            return new MatrixCursor(new String[] {ModelBase.ID, OBJ_ID, ModelBase.NAME, TYPE,
+                                                  Tag.BACKGROUND_COLOR, Task.DONE, SCORE
+                                                 });
+        }
+        final MirakelQueryBuilder mirakelQueryBuilder = new MirakelQueryBuilder(context)
+        .select(projection).sort(SCORE, MirakelQueryBuilder.Sorting.DESC);
+        return mirakelQueryBuilder.query(MirakelInternalContentProvider.getSearchUri(
+                                             MirakelInternalContentProvider.AUTOCOMPLETE_URI, match.get())).getRawCursor();
     }
 
 
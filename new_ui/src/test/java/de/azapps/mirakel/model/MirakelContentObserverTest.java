@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model;
+
+import android.content.ContentUris;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class MirakelContentObserverTest {
+
+    private static class RecordingCallBack implements MirakelContentObserver.ObserverCallBack {
+        private int changes = 0;
+        private final List<Long> ids = new ArrayList<>();
+
+        @Override
+        public void handleChange() {
+            changes++;
+        }
+
+        @Override
+        public void handleChange(final long id) {
+            ids.add(id);
+        }
+    }
+
+    private static MirakelContentObserver observe(final RecordingCallBack callBack,
+            final boolean routeRowsToTable) {
+        return new MirakelContentObserver(new Handler(Looper.getMainLooper()),
+                                          RuntimeEnvironment.application, Task.URI, callBack, routeRowsToTable);
+    }
+
+    @Test
+    public void testTableChange() {
+        final RecordingCallBack callBack = new RecordingCallBack();
+        final MirakelContentObserver observer = observe(callBack, false);
+        observer.onChange(false, Task.URI);
+        assertThat(callBack.changes).isEqualTo(1);
+        assertThat(callBack.ids).isEmpty();
+        observer.unregister(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void testRowChangeNotRouted() {
+        final RecordingCallBack callBack = new RecordingCallBack();
+        final MirakelContentObserver observer = observe(callBack, false);
+        observer.onChange(false, ContentUris.withAppendedId(Task.URI, 42L));
+        assertThat(callBack.changes).isEqualTo(0);
+        assertThat(callBack.ids).isEmpty();
+        observer.unregister(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void testRowChangeRoutedToTable() {
+        final RecordingCallBack callBack = new RecordingCallBack();
+        final MirakelContentObserver observer = observe(callBack, true);
+        observer.onChange(false, ContentUris.withAppendedId(Task.URI, 42L));
+        observer.onChange(false, Task.URI);
+        assertThat(callBack.ids).containsExactly(42L);
+        assertThat(callBack.changes).isEqualTo(1);
+        observer.unregister(RuntimeEnvironment.application);
+    }
+}
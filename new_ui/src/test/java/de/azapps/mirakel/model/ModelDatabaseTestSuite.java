@@ -24,9 +24,13 @@ import org.junit.runners.Suite;
 import de.azapps.mirakel.model.account.AccountMirakelTest;
 import de.azapps.mirakel.model.file.FileMirakelTest;
 import de.azapps.mirakel.model.list.ListMirakelTest;
+import de.azapps.mirakel.model.list.ListTaskCountTest;
 import de.azapps.mirakel.model.recurring.RecurringTest;
 import de.azapps.mirakel.model.semantic.SemanticTest;
 import de.azapps.mirakel.model.tags.TagTest;
+import de.azapps.mirakel.model.task.RecurringChildsTest;
+import de.azapps.mirakel.model.task.TaskBulkOperationTest;
+import de.azapps.mirakel.model.task.TaskEditedValuesTest;
 import de.azapps.mirakel.model.task.TaskTest;
 
 @RunWith(Suite.class)
@@ -34,10 +38,14 @@ import de.azapps.mirakel.model.task.TaskTest;
     AccountMirakelTest.class,
     FileMirakelTest.class,
     ListMirakelTest.class,
+    ListTaskCountTest.class,
     RecurringTest.class,
+    RecurringChildsTest.class,
     SemanticTest.class,
     TagTest.class,
-    TaskTest.class
+    TaskTest.class,
+    TaskEditedValuesTest.class,
+    TaskBulkOperationTest.class
 })
 public class ModelDatabaseTestSuite {
 }
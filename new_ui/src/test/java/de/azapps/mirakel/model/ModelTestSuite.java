@@ -18,19 +18,42 @@
  ******************************************************************************/
 package de.azapps.mirakel.model;
 
+import org.dmfs.provider.tasks.RecurrenceSetTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 import de.azapps.mirakel.model.list.meta.SpecialListConditionTest;
+import de.azapps.mirakel.model.provider.BatchOperationTest;
+import de.azapps.mirakel.model.provider.NotificationCoalescingTest;
+import de.azapps.mirakel.model.provider.WriteAheadLoggingTest;
+import de.azapps.mirakel.model.query_builder.CursorReadPlanTest;
+import de.azapps.mirakel.model.query_builder.FullTextSearchTest;
 import de.azapps.mirakel.model.query_builder.QueryBuilderTest;
+import de.azapps.mirakel.model.query_builder.QueryPlanTest;
+import de.azapps.mirakel.model.recurring.OccurrencesTest;
+import de.azapps.mirakel.reminders.ReminderIndexTest;
+import de.azapps.mirakel.reminders.ReminderPayloadTest;
+import de.azapps.mirakel.reminders.ReminderSchedulerTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     ParceableTest.class,
+    MirakelContentObserverTest.class,
+    CursorReadPlanTest.class,
+    FullTextSearchTest.class,
     QueryBuilderTest.class,
+    QueryPlanTest.class,
     SpecialListConditionTest.class,
     ModelBaseTestSuite.class,
-    ModelDatabaseTestSuite.class
+    ModelDatabaseTestSuite.class,
+    BatchOperationTest.class,
+    NotificationCoalescingTest.class,
+    WriteAheadLoggingTest.class,
+    ReminderIndexTest.class,
+    ReminderPayloadTest.class,
+    ReminderSchedulerTest.class,
+    OccurrencesTest.class,
+    RecurrenceSetTest.class
 })
 public class ModelTestSuite {
 }
@@ -20,6 +20,7 @@ package de.azapps.mirakel.model.list;
 
 
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.google.common.base.Optional;
@@ -34,6 +35,7 @@ import java.util.List;
 import java.util.Random;
 
 import de.azapps.mirakel.model.DatabaseHelper;
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
 import de.azapps.mirakelandroid.BuildConfig;
 import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
 import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
@@ -229,4 +231,36 @@ public class ListMirakelTest extends MirakelDatabaseTestCase {
         assertThat(newElems).containsExactlyElementsIn(elems);
     }
 
+    @Test
+    public void testCachedListIsNotShared() {
+        final long id = ListMirakel.all(false).get(0).getId();
+        final String name = ListMirakel.get(id).get().getName();
+        ListMirakel.get(id).get().setName(RandomHelper.getRandomString());
+        assertThat(ListMirakel.get(id).get().getName()).isEqualTo(name);
+    }
+
+    @Test
+    public void testRolledBackChangeIsNotCached() {
+        final long id = ListMirakel.all(false).get(0).getId();
+        final String name = ListMirakel.get(id).get().getName();
+        ListMirakel.invalidateCache();
+        try {
+            MirakelInternalContentProvider.withTransaction(new MirakelInternalContentProvider.DBTransaction() {
+                @Override
+                public void exec() {
+                    final ListMirakel list = ListMirakel.get(id).get();
+                    list.setName(RandomHelper.getRandomString());
+                    list.save();
+                    // loads the uncommitted row into the cache
+                    ListMirakel.get(id);
+                    throw new IllegalStateException("roll back");
+                }
+            });
+            fail("the transaction should fail");
+        } catch (final SQLException ignored) {
+            // expected
+        }
+        assertThat(ListMirakel.get(id).get().getName()).isEqualTo(name);
+    }
+
 }
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.list;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.azapps.mirakel.model.DatabaseHelper;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+import de.azapps.mirakelandroid.test.RandomHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ListTaskCountTest extends MirakelDatabaseTestCase {
+
+    private static DatabaseHelper getHelper() {
+        return DatabaseHelper.getDatabaseHelper(RuntimeEnvironment.application);
+    }
+
+    private static long getTaskCount(final ListMirakel list) {
+        final SQLiteDatabase db = getHelper().getReadableDatabase();
+        return DatabaseUtils.longForQuery(db, "SELECT task_count FROM list_with_count WHERE _id = ?",
+                                          new String[] {String.valueOf(list.getId())});
+    }
+
+    private static ListMirakel newList() {
+        return ListMirakel.safeNewList(RandomHelper.getRandomString());
+    }
+
+    @Test
+    public void testCountFollowsTasks() {
+        final ListMirakel list = newList();
+        final ListMirakel other = newList();
+        assertThat(getTaskCount(list)).isEqualTo(0L);
+        final List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(Task.newTask(RandomHelper.getRandomString(), list));
+        }
+        assertThat(getTaskCount(list)).isEqualTo(3L);
+
+        final Task done = tasks.get(0);
+        done.setDone(true);
+        done.save();
+        assertThat(getTaskCount(list)).isEqualTo(2L);
+        done.setDone(false);
+        done.save();
+        assertThat(getTaskCount(list)).isEqualTo(3L);
+
+        final Task moved = tasks.get(1);
+        moved.setList(other);
+        moved.save();
+        assertThat(getTaskCount(list)).isEqualTo(2L);
+        assertThat(getTaskCount(other)).isEqualTo(1L);
+
+        tasks.get(2).destroy();
+        assertThat(getTaskCount(list)).isEqualTo(1L);
+
+        assertThat(getHelper().checkListTaskCounts(false)).isEmpty();
+    }
+
+    @Test
+    public void testDriftIsReportedAndRepaired() {
+        final ListMirakel list = newList();
+        Task.newTask(RandomHelper.getRandomString(), list);
+        assertThat(getHelper().checkListTaskCounts(false)).isEmpty();
+        getHelper().getWritableDatabase().execSQL(
+            "UPDATE list_task_count SET task_count = 42 WHERE list_id = " + list.getId());
+        assertThat(getHelper().checkListTaskCounts(true)).hasSize(1);
+        assertThat(getTaskCount(list)).isEqualTo(1L);
+        assertThat(getHelper().checkListTaskCounts(false)).isEmpty();
+    }
+}
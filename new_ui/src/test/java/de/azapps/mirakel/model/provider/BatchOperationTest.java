@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.provider;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import de.azapps.mirakel.DefinitionsHelper;
+import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
+import de.azapps.mirakel.model.tags.Tag;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+import de.azapps.mirakelandroid.test.RandomHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class BatchOperationTest extends MirakelDatabaseTestCase {
+
+    private static final int SYNCED_TASKS = 1000;
+
+    private static ContentResolver getContentResolver() {
+        return RuntimeEnvironment.application.getContentResolver();
+    }
+
+    private static ContentValues newTaskValues() throws DefinitionsHelper.NoSuchListException {
+        final ContentValues values = new Task(RandomHelper.getRandomString(),
+                                              ListMirakel.safeFirst()).getContentValues();
+        values.remove(ModelBase.ID);
+        return values;
+    }
+
+    private static ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation>
+            operations) throws RemoteException, OperationApplicationException {
+        return getContentResolver().applyBatch(DefinitionsHelper.AUTHORITY_INTERNAL, operations);
+    }
+
+    private static long countTasks() {
+        return new MirakelQueryBuilder(RuntimeEnvironment.application).count(Task.URI);
+    }
+
+    @Test
+    public void testBackReferences() throws Exception {
+        final Tag tag = Tag.newTag(RandomHelper.getRandomString());
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(Task.URI).withValues(newTaskValues())
+                       .build());
+        operations.add(ContentProviderOperation.newInsert(
+                           MirakelInternalContentProvider.TAG_CONNECTION_URI)
+                       .withValueBackReference("task_id", 0)
+                       .withValue("tag_id", tag.getId()).build());
+        final ContentProviderResult[] results = applyBatch(operations);
+        assertThat(results).hasLength(2);
+        final Task task = Task.get(ContentUris.parseId(results[0].uri)).get();
+        assertThat(task.getTags()).hasSize(1);
+        assertThat(task.getTags().get(0).getId()).isEqualTo(tag.getId());
+    }
+
+    @Test
+    public void testFailingBatchIsRolledBack() throws Exception {
+        final long before = countTasks();
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(Task.URI).withValues(newTaskValues())
+                       .build());
+        operations.add(ContentProviderOperation.newUpdate(
+                           MirakelInternalContentProvider.TASK_SEARCH_URI)
+                       .withValue("name", RandomHelper.getRandomString()).build());
+        MirakelInternalContentProvider.resetNotificationCounters();
+        try {
+            applyBatch(operations);
+            fail("the update is blacklisted");
+        } catch (final IllegalArgumentException ignored) {
+            // expected
+        }
+        assertThat(countTasks()).isEqualTo(before);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isEqualTo(0);
+    }
+
+    @Test
+    public void testBatchNotifiesOnce() throws Exception {
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            operations.add(ContentProviderOperation.newInsert(Task.URI).withValues(newTaskValues())
+                           .build());
+        }
+        MirakelInternalContentProvider.resetNotificationCounters();
+        final ContentProviderResult[] results = applyBatch(operations);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isEqualTo(1);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.LIST_URI)).isEqualTo(1);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(ContentUris.withAppendedId(
+                       MirakelInternalContentProvider.TASK_URI,
+                       ContentUris.parseId(results[0].uri)))).isEqualTo(0);
+    }
+
+    @Test
+    public void testYieldPoints() throws Exception {
+        final long before = countTasks();
+        MirakelInternalContentProvider.setOperationsPerYieldPoint(10);
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            operations.add(ContentProviderOperation.newInsert(Task.URI).withValues(newTaskValues())
+                           .withYieldAllowed(i % 7 == 0).build());
+        }
+        applyBatch(operations);
+        assertThat(countTasks()).isEqualTo(before + 95);
+    }
+
+    @Test
+    public void testBatchInsideTransaction() throws Exception {
+        final long before = countTasks();
+        final ContentValues[] values = new ContentValues[10];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = newTaskValues();
+        }
+        MirakelInternalContentProvider.setOperationsPerYieldPoint(1);
+        MirakelInternalContentProvider.resetNotificationCounters();
+        MirakelInternalContentProvider.withTransaction(new MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                assertThat(getContentResolver().bulkInsert(Task.URI, values)).isEqualTo(10);
+                assertThat(MirakelInternalContentProvider.getNotificationCount(
+                               MirakelInternalContentProvider.TASK_URI)).isEqualTo(0);
+            }
+        });
+        assertThat(countTasks()).isEqualTo(before + 10);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isGreaterThan(0);
+    }
+
+    @Test
+    public void testBulkInsert() throws Exception {
+        final long before = countTasks();
+        final ContentValues[] values = new ContentValues[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = newTaskValues();
+        }
+        MirakelInternalContentProvider.resetNotificationCounters();
+        assertThat(getContentResolver().bulkInsert(Task.URI, values)).isEqualTo(100);
+        assertThat(countTasks()).isEqualTo(before + 100);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isEqualTo(1);
+    }
+
+    /**
+     * Single inserts commit a transaction each, a batch of the same size commits only one
+     */
+    @Test
+    public void testInitialSyncInOneTransaction() throws Exception {
+        final long before = countTasks();
+        long transactions = MirakelInternalContentProvider.getTransactionCount();
+        for (int i = 0; i < SYNCED_TASKS; i++) {
+            getContentResolver().insert(Task.URI, newTaskValues());
+        }
+        assertThat(MirakelInternalContentProvider.getTransactionCount() - transactions)
+        .isAtLeast((long) SYNCED_TASKS);
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>(SYNCED_TASKS);
+        for (int i = 0; i < SYNCED_TASKS; i++) {
+            operations.add(ContentProviderOperation.newInsert(Task.URI).withValues(newTaskValues())
+                           .build());
+        }
+        MirakelInternalContentProvider.resetNotificationCounters();
+        transactions = MirakelInternalContentProvider.getTransactionCount();
+        applyBatch(operations);
+
+        assertThat(MirakelInternalContentProvider.getTransactionCount() - transactions).isEqualTo(1L);
+        assertThat(countTasks()).isEqualTo(before + (2 * SYNCED_TASKS));
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.provider;
+
+import android.database.SQLException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.tags.Tag;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+import de.azapps.mirakelandroid.test.RandomHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class NotificationCoalescingTest extends MirakelDatabaseTestCase {
+
+    private static void saveWithTags(final Task task) {
+        for (int i = 0; i < 5; i++) {
+            task.addTag(Tag.newTag(RandomHelper.getRandomString()));
+        }
+        task.setName(RandomHelper.getRandomString());
+        task.save();
+    }
+
+    @Test
+    public void testSaveInTransactionNotifiesOnce() {
+        final Task task = Task.newTask(RandomHelper.getRandomString(), ListMirakel.safeFirst());
+        MirakelInternalContentProvider.resetNotificationCounters();
+        MirakelInternalContentProvider.withTransaction(new MirakelInternalContentProvider.DBTransaction() {
+            @Override
+            public void exec() {
+                saveWithTags(task);
+            }
+        });
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isEqualTo(1);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.LIST_URI)).isEqualTo(1);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.CALDAV_TASKS_URI)).isEqualTo(1);
+        assertThat(MirakelInternalContentProvider.getCoalescedNotificationCount()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void testSaveWithoutTransactionNotifiesEveryStatement() {
+        final Task task = Task.newTask(RandomHelper.getRandomString(), ListMirakel.safeFirst());
+        MirakelInternalContentProvider.resetNotificationCounters();
+        saveWithTags(task);
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isGreaterThan(1);
+    }
+
+    @Test
+    public void testRollbackDoesNotNotify() {
+        final Task task = Task.newTask(RandomHelper.getRandomString(), ListMirakel.safeFirst());
+        MirakelInternalContentProvider.resetNotificationCounters();
+        try {
+            MirakelInternalContentProvider.withTransaction(new MirakelInternalContentProvider.DBTransaction() {
+                @Override
+                public void exec() {
+                    saveWithTags(task);
+                    throw new IllegalStateException("rollback");
+                }
+            });
+            fail("the transaction should fail");
+        } catch (final SQLException ignored) {
+            // expected
+        }
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isEqualTo(0);
+    }
+
+    @Test
+    public void testDebounce() throws InterruptedException {
+        final Task task = Task.newTask(RandomHelper.getRandomString(), ListMirakel.safeFirst());
+        MirakelInternalContentProvider.resetNotificationCounters();
+        MirakelInternalContentProvider.setNotificationDelay(1000L);
+        try {
+            for (int i = 0; i < 3; i++) {
+                task.setName(RandomHelper.getRandomString());
+                task.save();
+            }
+            assertThat(MirakelInternalContentProvider.getNotificationCount(
+                           MirakelInternalContentProvider.TASK_URI)).isEqualTo(0);
+        } finally {
+            MirakelInternalContentProvider.setNotificationDelay(0L);
+        }
+        assertThat(MirakelInternalContentProvider.getNotificationCount(
+                       MirakelInternalContentProvider.TASK_URI)).isEqualTo(1);
+    }
+}
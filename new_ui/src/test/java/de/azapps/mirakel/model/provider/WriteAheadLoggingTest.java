@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.provider;
+
+import android.database.DatabaseUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.azapps.mirakel.helper.MirakelModelPreferences;
+import de.azapps.mirakel.model.DatabaseHelper;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class WriteAheadLoggingTest extends MirakelDatabaseTestCase {
+
+    private static final int SYNCED_TASKS = 500;
+
+    private static final long SYNC_TIMEOUT = TimeUnit.MINUTES.toNanos(1L);
+
+    private static DatabaseHelper reopen(final boolean wal) {
+        MirakelModelPreferences.setUseWriteAheadLogging(wal);
+        final DatabaseHelper helper = DatabaseHelper.getDatabaseHelper(RuntimeEnvironment.application);
+        helper.close();
+        helper.getWritableDatabase();
+        return helper;
+    }
+
+    private static String getJournalMode(final DatabaseHelper helper) {
+        return DatabaseUtils.stringForQuery(helper.getWritableDatabase(), "PRAGMA journal_mode",
+                                            null);
+    }
+
+    private static long countTasks() {
+        return new MirakelQueryBuilder(RuntimeEnvironment.application).count(Task.URI);
+    }
+
+    @Test
+    public void testSwitchJournalMode() {
+        DatabaseHelper helper = reopen(true);
+        assertThat(getJournalMode(helper).equalsIgnoreCase("wal")).isEqualTo(
+            helper.isWriteAheadLogging());
+        final long tasks = countTasks();
+        helper = reopen(false);
+        assertThat(helper.isWriteAheadLogging()).isFalse();
+        assertThat(getJournalMode(helper)).isNotEqualTo("wal");
+        assertThat(countTasks()).isEqualTo(tasks);
+        MirakelInternalContentProvider.checkpoint();
+    }
+
+    /**
+     * A background "sync" inserts a lot of tasks in one transaction while the foreground keeps
+     * querying. The readers must only ever see the state before or after the transaction, and
+     * with write ahead logging no read may wait for the whole transaction.
+     */
+    @Test
+    public void testReadersDuringSync() throws InterruptedException {
+        final boolean wal = reopen(true).isWriteAheadLogging();
+        final ListMirakel list = ListMirakel.safeFirst();
+        final long before = countTasks();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicLong syncDuration = new AtomicLong();
+        final Thread sync = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
+                try {
+                    MirakelInternalContentProvider.withTransaction(
+                    new MirakelInternalContentProvider.DBTransaction() {
+                        @Override
+                        public void exec() {
+                            for (int i = 0; i < SYNCED_TASKS; i++) {
+                                Task.newTask("sync task " + i, list);
+                            }
+                        }
+                    });
+                } catch (final Throwable e) {
+                    error.set(e);
+                }
+                syncDuration.set(System.nanoTime() - start);
+            }
+        });
+        final long deadline = System.nanoTime() + SYNC_TIMEOUT;
+        long maxLatency = 0L;
+        sync.start();
+        while (sync.isAlive() && (System.nanoTime() < deadline)) {
+            final long start = System.nanoTime();
+            assertThat(countTasks()).isIn(Arrays.asList(before, before + SYNCED_TASKS));
+            maxLatency = Math.max(maxLatency, System.nanoTime() - start);
+        }
+        // join(0) would wait forever
+        sync.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        assertThat(sync.isAlive()).isFalse();
+        assertThat(error.get()).isNull();
+        if (wal) {
+            assertThat(maxLatency).isLessThan(syncDuration.get());
+        }
+        assertThat(countTasks()).isEqualTo(before + SYNCED_TASKS);
+        MirakelInternalContentProvider.checkpoint();
+        assertThat(countTasks()).isEqualTo(before + SYNCED_TASKS);
+        reopen(false);
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.query_builder;
+
+import android.database.MatrixCursor;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class CursorReadPlanTest {
+
+    private static final int ROWS = 20000;
+
+    private static final int DUE_INDEX = Arrays.asList(Task.allColumns).indexOf(Task.DUE);
+
+    private static MatrixCursor createTaskCursor(final int rows) {
+        final MatrixCursor cursor = new MatrixCursor(Task.allColumns, rows);
+        for (int i = 0; i < rows; i++) {
+            final Object[] row = new Object[Task.allColumns.length];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = (long) (i + j);
+            }
+            if ((i % 2) == 0) {
+                row[DUE_INDEX] = null;
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    @Test
+    public void testResolve() {
+        final CursorReadPlan plan = new CursorReadPlan(Task.DUE, Task.NAME, "not_there");
+        final CursorGetter getter = new CursorGetter(createTaskCursor(1));
+        final int[] columns = getter.resolve(plan);
+        assertThat(columns[plan.indexOf(Task.DUE)]).isEqualTo(getter.getColumnIndex(Task.DUE));
+        assertThat(columns[plan.indexOf(Task.NAME)]).isEqualTo(getter.getColumnIndex(Task.NAME));
+        assertThat(columns[plan.indexOf("not_there")]).isEqualTo(-1);
+    }
+
+    @Test
+    public void testResolveOncePerCursor() {
+        final CursorReadPlan first = new CursorReadPlan(Task.allColumns);
+        final CursorReadPlan second = new CursorReadPlan(Task.ID);
+        final CursorGetter getter = new CursorGetter(createTaskCursor(1));
+        final int[] columns = getter.resolve(first);
+        assertThat(getter.resolve(first)).isSameAs(columns);
+        final int[] otherColumns = getter.resolve(second);
+        assertThat(getter.resolve(first)).isSameAs(columns);
+        assertThat(getter.resolve(second)).isSameAs(otherColumns);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumn() {
+        new CursorReadPlan(Task.ID).indexOf(Task.NAME);
+    }
+
+    @Test
+    public void testDateTimeOrNull() {
+        final CursorReadPlan plan = new CursorReadPlan(Task.DUE);
+        final CursorGetter getter = new CursorGetter(createTaskCursor(2));
+        final int due = getter.resolve(plan)[0];
+        assertThat(getter.moveToNext()).isTrue();
+        assertThat(getter.getDateTimeOrNull(due)).isNull();
+        assertThat(getter.moveToNext()).isTrue();
+        assertThat(getter.getDateTimeOrNull(due)).isEqualTo(new DateTime(1L + DUE_INDEX));
+    }
+
+    private static long sumByName(final MatrixCursor cursor) {
+        cursor.moveToPosition(-1);
+        final CursorGetter byName = new CursorGetter(cursor);
+        long sum = 0L;
+        while (byName.moveToNext()) {
+            for (final String column : Task.allColumns) {
+                if (Task.DUE.equals(column)) {
+                    sum += byName.getOptional(column, DateTime.class).isPresent() ? 1L : 0L;
+                } else {
+                    sum += byName.getLong(column);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static long sumByPlan(final MatrixCursor cursor) {
+        cursor.moveToPosition(-1);
+        final CursorReadPlan plan = new CursorReadPlan(Task.allColumns);
+        final int dueColumn = plan.indexOf(Task.DUE);
+        final CursorGetter byPlan = new CursorGetter(cursor);
+        long sum = 0L;
+        while (byPlan.moveToNext()) {
+            final int[] columns = byPlan.resolve(plan);
+            for (int i = 0; i < columns.length; i++) {
+                if (i == dueColumn) {
+                    sum += (byPlan.getDateTimeOrNull(columns[i]) != null) ? 1L : 0L;
+                } else {
+                    sum += byPlan.getLong(columns[i]);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Reading every task column by name and reading it through a resolved plan gives the same
+     * values, and the plan is not slower. The bound is generous since the timings depend on the
+     * machine, it only catches a plan that falls back to a lookup per field.
+     */
+    @Test
+    public void testHydrationBenchmark() {
+        final MatrixCursor cursor = createTaskCursor(ROWS);
+        // warm up both paths before measuring
+        final long nameSum = sumByName(cursor);
+        assertThat(sumByPlan(cursor)).isEqualTo(nameSum);
+
+        long start = System.nanoTime();
+        assertThat(sumByName(cursor)).isEqualTo(nameSum);
+        final long nameTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertThat(sumByPlan(cursor)).isEqualTo(nameSum);
+        final long planTime = System.nanoTime() - start;
+
+        assertThat(planTime).isLessThan(2L * nameTime);
+    }
+}
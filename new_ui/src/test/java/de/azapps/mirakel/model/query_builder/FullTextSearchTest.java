@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.query_builder;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Optional;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
+import de.azapps.mirakel.model.tags.Tag;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class FullTextSearchTest extends MirakelDatabaseTestCase {
+
+    private static List<Long> searchTasks(final String input) {
+        final MirakelQueryBuilder qb = new MirakelQueryBuilder(RuntimeEnvironment.application)
+        .select("docid").and(MirakelInternalContentProvider.TASK_SEARCH,
+                             MirakelQueryBuilder.Operation.MATCH, FullTextQuery.prefixQuery(input, null).get());
+        return qb.query(MirakelInternalContentProvider.TASK_SEARCH_URI).doWithCursor(
+        new CursorWrapper.CursorConverter<List<Long>>() {
+            @Override
+            public List<Long> convert(@NonNull final CursorGetter getter) {
+                final List<Long> ids = new ArrayList<>();
+                while (getter.moveToNext()) {
+                    ids.add(getter.getLong(0));
+                }
+                return ids;
+            }
+        });
+    }
+
+    private static List<String> autocomplete(final String input) {
+        final MirakelQueryBuilder qb = new MirakelQueryBuilder(RuntimeEnvironment.application)
+        .select(ModelBase.ID, "score + " + input.length() + " - length(name) AS score")
+        .sort("score", MirakelQueryBuilder.Sorting.DESC);
+        return qb.query(MirakelInternalContentProvider.getSearchUri(
+                            MirakelInternalContentProvider.AUTOCOMPLETE_URI,
+                            FullTextQuery.prefixQuery(input, ModelBase.NAME).get())).doWithCursor(
+        new CursorWrapper.CursorConverter<List<String>>() {
+            @Override
+            public List<String> convert(@NonNull final CursorGetter getter) {
+                final List<String> ids = new ArrayList<>();
+                while (getter.moveToNext()) {
+                    ids.add(getter.getString(0));
+                }
+                return ids;
+            }
+        });
+    }
+
+    @Test
+    public void testPrefixQuery() {
+        assertThat(FullTextQuery.prefixQuery("Buy  mi", ModelBase.NAME)).isEqualTo(
+            Optional.of("name:buy* name:mi*"));
+        assertThat(FullTextQuery.prefixQuery("milk OR -eggs", null)).isEqualTo(
+            Optional.of("milk* or* eggs*"));
+        assertThat(FullTextQuery.prefixQuery("Ärger", null)).isEqualTo(Optional.of("Ärger*"));
+        assertThat(FullTextQuery.prefixQuery(" - ", null).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testIndexFollowsTasks() {
+        final Task task = Task.newTask("Quarterly xyzzyreport", ListMirakel.safeFirst());
+        assertThat(searchTasks("xyzzyrep")).containsExactly(task.getId());
+
+        task.setName("Yearly plugh");
+        task.setContent("remember the xyzzynotes");
+        task.save();
+        assertThat(searchTasks("xyzzyrep")).isEmpty();
+        assertThat(searchTasks("plugh")).containsExactly(task.getId());
+        assertThat(searchTasks("xyzzynote")).containsExactly(task.getId());
+
+        final Tag tag = Tag.newTag("xyzzytag");
+        task.addTag(tag);
+        assertThat(searchTasks("xyzzyta")).containsExactly(task.getId());
+        task.removeTag(tag);
+        assertThat(searchTasks("xyzzyta")).isEmpty();
+
+        task.destroy(true);
+        assertThat(searchTasks("plugh")).isEmpty();
+    }
+
+    @Test
+    public void testAutocompleteRanking() {
+        final Task longTask = Task.newTask("xyzzy with a long name", ListMirakel.safeFirst());
+        final Task shortTask = Task.newTask("xyzzy short", ListMirakel.safeFirst());
+        final Task doneTask = Task.newTask("xyzzy done with an even longer name", ListMirakel.safeFirst());
+        doneTask.setDone(true);
+        doneTask.save();
+        final Tag tag = Tag.newTag("xyzzytag");
+        shortTask.addTag(tag);
+        Task.newTask("no match", ListMirakel.safeFirst());
+
+        assertThat(autocomplete("xyz")).containsExactly("tag" + tag.getId(),
+                "task" + shortTask.getId(), "task" + longTask.getId(),
+                "task" + doneTask.getId()).inOrder();
+    }
+}
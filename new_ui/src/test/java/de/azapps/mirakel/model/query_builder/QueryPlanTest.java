@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.query_builder;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.google.common.base.Optional;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.azapps.mirakel.model.DatabaseHelper;
+import de.azapps.mirakel.model.account.AccountMirakel;
+import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Sorting;
+import de.azapps.mirakel.model.recurring.Recurring;
+import de.azapps.mirakel.model.tags.Tag;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that the hot queries are answered by an index and not by a full table scan
+ */
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class QueryPlanTest extends MirakelDatabaseTestCase {
+
+    private static List<String> explain(final MirakelQueryBuilder qb, final Uri uri) {
+        final SQLiteDatabase db = DatabaseHelper.getDatabaseHelper(
+                                      RuntimeEnvironment.application).getReadableDatabase();
+        final List<String> args = qb.getSelectionArguments();
+        final Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + qb.getProviderQuery(uri),
+                                     args.toArray(new String[args.size()]));
+        final List<String> plan = new ArrayList<>();
+        try {
+            final int detail = c.getColumnIndex("detail");
+            while (c.moveToNext()) {
+                plan.add(c.getString(detail));
+            }
+        } finally {
+            c.close();
+        }
+        assertThat(plan).isNotEmpty();
+        return plan;
+    }
+
+    private static void assertNoFullScan(final List<String> plan, final String... tables) {
+        for (final String step : plan) {
+            for (final String table : tables) {
+                assertFalse("full scan of " + table + " in " + plan,
+                            step.trim().matches("SCAN (TABLE )?" + table + "( AS \\w+)?"));
+            }
+        }
+    }
+
+    @Test
+    public void testTasksOfList() {
+        final ListMirakel list = ListMirakel.safeFirst();
+        final MirakelQueryBuilder qb = Task.getMirakelQueryBuilder(Optional.of(list))
+                                       .and(Task.DONE, Operation.EQ, false).select(Task.allColumns);
+        assertNoFullScan(explain(qb, Task.URI), Task.TABLE);
+    }
+
+    @Test
+    public void testListsWithCount() {
+        final MirakelQueryBuilder qb = ListMirakel.allWithSpecialMQB(
+                                           Optional.<AccountMirakel>absent()).select(ListMirakel.allColumns);
+        assertNoFullScan(explain(qb, MirakelInternalContentProvider.LIST_WITH_COUNT_URI), Task.TABLE);
+    }
+
+    @Test
+    public void testTagsForTask() {
+        final MirakelQueryBuilder qb = new MirakelQueryBuilder(RuntimeEnvironment.application)
+        .select(ModelBase.addPrefix(Tag.allColumns, Tag.TABLE))
+        .and(Tag.TAG_CONNECTION_TABLE + ".task_id", Operation.EQ, 1);
+        assertNoFullScan(explain(qb, MirakelInternalContentProvider.TASK_TAG_JOIN_URI),
+                         Tag.TAG_CONNECTION_TABLE, Tag.TABLE);
+    }
+
+    @Test
+    public void testRecurrenceChilds() {
+        final MirakelQueryBuilder qb = new MirakelQueryBuilder(RuntimeEnvironment.application)
+        .select(ModelBase.addPrefix(Task.allColumns, Task.TABLE))
+        .and(Recurring.TW_TABLE + '.' + Recurring.PARENT, Operation.EQ, 1)
+        .sort(Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT, Sorting.ASC);
+        assertThat(qb.getProviderQuery(MirakelInternalContentProvider.TASK_RECURRING_TW_CHILD_URI))
+        .contains(Recurring.TW_TABLE + '.' + Recurring.CHILD);
+        assertNoFullScan(explain(qb, MirakelInternalContentProvider.TASK_RECURRING_TW_CHILD_URI),
+                         Task.TABLE, Recurring.TW_TABLE);
+    }
+
+    @Test
+    public void testRecurrenceSiblings() {
+        final MirakelQueryBuilder qb = new MirakelQueryBuilder(RuntimeEnvironment.application)
+        .select(ModelBase.addPrefix(Task.allColumns, Task.TABLE))
+        .and(Recurring.TW_TABLE + '.' + Recurring.PARENT, Operation.IN,
+             new MirakelQueryBuilder(RuntimeEnvironment.application).select(Recurring.PARENT)
+             .and(Recurring.CHILD, Operation.EQ, 1), MirakelInternalContentProvider.RECURRING_TW_URI)
+        .sort(Recurring.TW_TABLE + '.' + Recurring.OFFSET_COUNT, Sorting.ASC);
+        assertNoFullScan(explain(qb, MirakelInternalContentProvider.TASK_RECURRING_TW_CHILD_URI),
+                         Task.TABLE, Recurring.TW_TABLE);
+    }
+
+    @Test
+    public void testSubtasks() {
+        final MirakelQueryBuilder qb = new MirakelQueryBuilder(RuntimeEnvironment.application)
+        .select(ModelBase.addPrefix(Task.allColumns, Task.TABLE))
+        .and(Task.SUBTASK_TABLE + ".parent_id", Operation.EQ, 1);
+        assertNoFullScan(explain(qb, MirakelInternalContentProvider.TASK_SUBTASK_URI),
+                         Task.TABLE, Task.SUBTASK_TABLE);
+    }
+}
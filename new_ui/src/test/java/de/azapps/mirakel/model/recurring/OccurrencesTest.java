@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package de.azapps.mirakel.model.recurring;
+
+import com.google.common.base.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class OccurrencesTest {
+
+    private static final DateTimeZone ZONE = DateTimeZone.forID("Europe/Berlin");
+    private static final Optional<DateTime> NONE = Optional.absent();
+    private static final List<Integer> NO_WEEKDAYS = Collections.emptyList();
+
+    /**
+     * The intervals of the taskwarrior recurrences in RecurrenceTest
+     */
+    private static List<Period> getIntervals() {
+        final List<Period> intervals = new ArrayList<>();
+        for (final int n : new int[] {1, 2, 5, 6, 10}) {
+            intervals.add(new Period(0, 0, n, 0, 0, 0, 0, 0));
+            intervals.add(new Period(0, 3 * n, 0, 0, 0, 0, 0, 0).normalizedStandard());
+            intervals.add(new Period(0, 0, 0, 0, n, 0, 0, 0));
+            intervals.add(new Period(0, n, 0, 0, 0, 0, 0, 0).normalizedStandard());
+            intervals.add(new Period(n, 0, 0, 0, 0, 0, 0, 0));
+            intervals.add(new Period(0, 0, 0, n, 0, 0, 0, 0));
+            intervals.add(new Period(0, 0, 0, 0, 0, n, 0, 0));
+        }
+        return intervals;
+    }
+
+    private static DateTime getRandomAnchor(final Random random) {
+        // not after the 28th, adding months step by step would move later days, and not in the
+        // night, where a daylight saving gap would move the steps
+        return new DateTime(2010 + random.nextInt(10), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                            6 + random.nextInt(18), random.nextInt(60), ZONE);
+    }
+
+    @Test
+    public void testSameAsSteps() {
+        final Random random = new Random(42L);
+        for (final Period interval : getIntervals()) {
+            final DateTime anchor = getRandomAnchor(random);
+            final Occurrences occurrences = new Occurrences(interval, NO_WEEKDAYS, NONE, NONE, anchor);
+            DateTime step = anchor;
+            for (int k = 0; k < 100; k++) {
+                assertThat(occurrences.get(k).get()).isEqualTo(step);
+                step = step.plus(interval);
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOf() {
+        final Random random = new Random(42L);
+        for (final Period interval : getIntervals()) {
+            final DateTime anchor = getRandomAnchor(random);
+            final Occurrences occurrences = new Occurrences(interval, NO_WEEKDAYS, NONE, NONE, anchor);
+            for (int i = 0; i < 50; i++) {
+                final DateTime time = anchor.plusMinutes(random.nextInt(60 * 24 * 365 * 20));
+                final long k = occurrences.indexOf(time);
+                assertThat(occurrences.get(k).get().isBefore(time)).isFalse();
+                if (k > 0) {
+                    assertThat(occurrences.get(k - 1).get().isBefore(time)).isTrue();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBetween() {
+        final Random random = new Random(42L);
+        for (final Period interval : getIntervals()) {
+            final DateTime anchor = getRandomAnchor(random);
+            final Occurrences occurrences = new Occurrences(interval, NO_WEEKDAYS, NONE, NONE, anchor);
+            final DateTime from = anchor.plusDays(random.nextInt(100));
+            final DateTime to = from.plusDays(random.nextInt(100));
+            final List<DateTime> expected = new ArrayList<>();
+            for (DateTime step = anchor; step.isBefore(to); step = step.plus(interval)) {
+                if (!step.isBefore(from)) {
+                    expected.add(step);
+                }
+            }
+            final List<DateTime> actual = new ArrayList<>();
+            for (final DateTime occurrence : occurrences.between(from, to)) {
+                actual.add(occurrence);
+            }
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testWeekdays() {
+        final Random random = new Random(42L);
+        for (int i = 0; i < 100; i++) {
+            final List<Integer> weekdays = new ArrayList<>();
+            for (int day = DateTimeConstants.MONDAY; day <= DateTimeConstants.SUNDAY; day++) {
+                if (random.nextBoolean()) {
+                    weekdays.add(day);
+                }
+            }
+            if (weekdays.isEmpty()) {
+                weekdays.add(DateTimeConstants.FRIDAY);
+            }
+            final DateTime anchor = getRandomAnchor(random);
+            final Occurrences occurrences = new Occurrences(Period.ZERO, weekdays, NONE, NONE, anchor);
+            // every day in the mask after the anchor, nothing else
+            DateTime day = anchor;
+            for (int k = 1; k < 50; k++) {
+                do {
+                    day = day.plusDays(1);
+                } while (!weekdays.contains(day.getDayOfWeek()));
+                assertThat(occurrences.get(k).get()).isEqualTo(day);
+                assertThat(occurrences.indexOf(day)).isEqualTo(k);
+            }
+        }
+    }
+
+    @Test
+    public void testStartAndEnd() {
+        final DateTime anchor = new DateTime(2015, 1, 1, 10, 0, ZONE);
+        final Occurrences occurrences = new Occurrences(new Period(0, 0, 0, 1, 0, 0, 0, 0), NO_WEEKDAYS,
+                Optional.of(new DateTime(2015, 1, 10, 0, 0, ZONE)),
+                Optional.of(new DateTime(2015, 1, 20, 0, 0, ZONE)), anchor);
+        assertThat(occurrences.get(0).get()).isEqualTo(new DateTime(2015, 1, 10, 10, 0, ZONE));
+        assertThat(occurrences.get(9).get()).isEqualTo(new DateTime(2015, 1, 19, 10, 0, ZONE));
+        assertThat(occurrences.get(10)).isAbsent();
+        int count = 0;
+        for (final DateTime ignored : occurrences.between(anchor, anchor.plusYears(1))) {
+            count++;
+        }
+        assertThat(count).isEqualTo(10);
+    }
+
+    @Test
+    public void testEndOfMonth() {
+        final DateTime anchor = new DateTime(2015, 1, 31, 10, 0, ZONE);
+        final Occurrences occurrences = new Occurrences(new Period(0, 1, 0, 0, 0, 0, 0, 0), NO_WEEKDAYS,
+                NONE, NONE, anchor);
+        assertThat(occurrences.get(1).get()).isEqualTo(new DateTime(2015, 2, 28, 10, 0, ZONE));
+        assertThat(occurrences.get(2).get()).isEqualTo(new DateTime(2015, 3, 31, 10, 0, ZONE));
+    }
+
+    @Test
+    public void testDaylightSavingTime() {
+        // daily stays at the same local time, hourly stays at the same distance
+        final DateTime anchor = new DateTime(2015, 3, 28, 10, 0, ZONE);
+        final Occurrences daily = new Occurrences(new Period(0, 0, 0, 1, 0, 0, 0, 0), NO_WEEKDAYS,
+                NONE, NONE, anchor);
+        assertThat(daily.get(2).get().getHourOfDay()).isEqualTo(10);
+        final Occurrences hourly = new Occurrences(new Period(0, 0, 0, 0, 1, 0, 0, 0), NO_WEEKDAYS,
+                NONE, NONE, anchor);
+        assertThat(hourly.get(48).get().getMillis() - anchor.getMillis())
+        .isEqualTo(48L * DateTimeConstants.MILLIS_PER_HOUR);
+    }
+
+    @Test
+    public void testMinutesFarAhead() {
+        final DateTime anchor = new DateTime(2015, 1, 1, 0, 0, ZONE);
+        final Occurrences occurrences = new Occurrences(new Period(0, 0, 0, 0, 0, 1, 0, 0), NO_WEEKDAYS,
+                NONE, NONE, anchor);
+        final DateTime time = anchor.plusYears(100).plusSeconds(1);
+        final long k = occurrences.indexOf(time);
+        assertThat(occurrences.get(k).get()).isEqualTo(anchor.plusYears(100).plusMinutes(1));
+    }
+
+    @Test
+    public void testNotRepeating() {
+        final DateTime anchor = new DateTime(2015, 1, 1, 0, 0, ZONE);
+        final Occurrences occurrences = new Occurrences(Period.ZERO, NO_WEEKDAYS, NONE, NONE, anchor);
+        assertThat(occurrences.isRepeating()).isFalse();
+        assertThat(occurrences.get(0).get()).isEqualTo(anchor);
+        assertThat(occurrences.get(1)).isAbsent();
+        assertThat(occurrences.next(anchor)).isAbsent();
+        assertThat(occurrences.between(anchor, anchor.plusDays(1)).iterator().next()).isEqualTo(anchor);
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.task;
+
+import android.content.ContentValues;
+import android.util.SparseBooleanArray;
+
+import com.google.common.base.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
+import de.azapps.mirakel.model.recurring.Recurring;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+import de.azapps.mirakelandroid.test.RandomHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class RecurringChildsTest extends MirakelDatabaseTestCase {
+
+    private static final DateTime ANCHOR = new DateTime(2015, 3, 2, 10, 0);
+
+    private static Recurring newRecurring(final Period interval) {
+        return Recurring.newRecurring(RandomHelper.getRandomString(), interval, true,
+                                      Optional.<DateTime>absent(), Optional.<DateTime>absent(), false, false,
+                                      new SparseBooleanArray());
+    }
+
+    private static Task newTask(final DateTime due, final Recurring recurring) {
+        final Task task = Task.newTask(RandomHelper.getRandomString(), ListMirakel.safeFirst());
+        task.setDue(Optional.of(due));
+        task.setRecurrence(Optional.of(recurring));
+        // like a synced task, so no first child is inserted
+        task.save(false, true);
+        return task;
+    }
+
+    private static void addChild(final Task master, final Task child, final int offset) {
+        final ContentValues cv = new ContentValues();
+        cv.put(Recurring.PARENT, master.getId());
+        cv.put(Recurring.CHILD, child.getId());
+        cv.put(Recurring.OFFSET, offset);
+        cv.put(Recurring.OFFSET_COUNT, offset);
+        RuntimeEnvironment.application.getContentResolver().insert(
+            MirakelInternalContentProvider.RECURRING_TW_URI, cv);
+    }
+
+    private static long getDue(final Task task) {
+        return Task.get(task.getId(), true).get().getDue().get().getMillis();
+    }
+
+    @Test
+    public void testChangeRecurrenceMovesChilds() {
+        final Recurring daily = newRecurring(Period.days(1));
+        final Task master = newTask(ANCHOR, daily);
+        final List<Task> childs = new ArrayList<>(3);
+        for (int i = 0; i < 3; i++) {
+            final Task child = newTask(ANCHOR.plusDays(i), daily);
+            addChild(master, child, i);
+            childs.add(child);
+        }
+        assertThat(childs.get(0).getRecurrenceChilds()).isEmpty();
+        assertThat(master.getRecurrenceChilds()).hasSize(3);
+
+        final Recurring weekly = newRecurring(Period.weeks(1));
+        final Task edited = Task.get(childs.get(1).getId()).get();
+        edited.setRecurrence(Optional.of(weekly));
+        edited.save();
+
+        assertThat(edited.getDue().get().getMillis()).isEqualTo(ANCHOR.plusWeeks(1).getMillis());
+        for (int i = 0; i < 3; i++) {
+            final Task child = Task.get(childs.get(i).getId()).get();
+            assertThat(child.getDue().get().getMillis()).isEqualTo(ANCHOR.plusWeeks(i).getMillis());
+            assertThat(child.getRecurrenceId()).isEqualTo(weekly.getId());
+        }
+        assertThat(getDue(master)).isEqualTo(ANCHOR.getMillis());
+    }
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.task;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.azapps.mirakel.DefinitionsHelper;
+import de.azapps.mirakel.DefinitionsHelper.SYNC_STATE;
+import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.tags.Tag;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+import de.azapps.mirakelandroid.test.RandomHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TaskBulkOperationTest extends MirakelDatabaseTestCase {
+
+    private static final int SELECTED_TASKS = 500;
+
+    private static List<Task> newTasks(final int count) {
+        final List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(Task.newTask(RandomHelper.getRandomString(), ListMirakel.safeFirst()));
+        }
+        return tasks;
+    }
+
+    private static Task reload(final Task task) {
+        return Task.get(task.getId(), true).get();
+    }
+
+    @Test
+    public void testSetDoneAllWithSubtasks() {
+        final Task parent = newTasks(1).get(0);
+        final Task child = newTasks(1).get(0);
+        final Task grandChild = newTasks(1).get(0);
+        parent.addSubtask(child);
+        child.addSubtask(grandChild);
+        Task.setDoneAll(Arrays.asList(parent.getId()), true);
+        for (final Task task : Arrays.asList(parent, child, grandChild)) {
+            final Task saved = reload(task);
+            assertThat(saved.isDone()).isTrue();
+            assertThat(saved.getProgress()).isEqualTo(100);
+        }
+        Task.setDoneAll(Arrays.asList(parent.getId()), false);
+        assertThat(reload(parent).isDone()).isFalse();
+        assertThat(reload(parent).getProgress()).isEqualTo(0);
+        assertThat(reload(child).isDone()).isTrue();
+    }
+
+    @Test
+    public void testSetDoneAllSyncState() {
+        final List<Task> tasks = newTasks(2);
+        Task.resetSyncState(tasks);
+        Task.setDoneAll(ModelBase.getIds(tasks), true);
+        for (final Task task : tasks) {
+            assertThat(reload(task).getSyncState()).isEqualTo(SYNC_STATE.NEED_SYNC);
+        }
+    }
+
+    @Test
+    public void testSetPriorityAll() {
+        final List<Task> tasks = newTasks(10);
+        Task.setPriorityAll(ModelBase.getIds(tasks), 2);
+        for (final Task task : tasks) {
+            assertThat(reload(task).getPriority()).isEqualTo(2);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetPriorityAllOutOfRange() {
+        Task.setPriorityAll(ModelBase.getIds(newTasks(1)), 3);
+    }
+
+    @Test
+    public void testMoveAll() throws Exception {
+        final List<Task> tasks = newTasks(5);
+        final Task flagged = tasks.get(0);
+        flagged.addAdditionalEntry(DefinitionsHelper.TW_NO_PROJECT, "true");
+        flagged.save();
+        final ListMirakel target = ListMirakel.newList(RandomHelper.getRandomString(),
+                                   ListMirakel.SORT_BY.OPT, ListMirakel.safeFirst().getAccount());
+        Task.moveAll(ModelBase.getIds(tasks), target);
+        for (final Task task : tasks) {
+            assertThat(reload(task).getList().getId()).isEqualTo(target.getId());
+        }
+        assertThat(reload(flagged).existAdditional(DefinitionsHelper.TW_NO_PROJECT)).isFalse();
+    }
+
+    @Test
+    public void testDestroyAll() {
+        final List<Task> added = newTasks(3);
+        final List<Task> synced = newTasks(3);
+        Task.resetSyncState(synced);
+        final List<Task> all = new ArrayList<>(added);
+        all.addAll(synced);
+        Task.destroyAll(ModelBase.getIds(all));
+        for (final Task task : added) {
+            assertThat(Task.get(task.getId(), true).isPresent()).isFalse();
+        }
+        for (final Task task : synced) {
+            assertThat(reload(task).getSyncState()).isEqualTo(SYNC_STATE.DELETE);
+        }
+    }
+
+    @Test
+    public void testDestroyAllRemovesSubtaskLinks() {
+        final Task parent = newTasks(1).get(0);
+        final Task child = newTasks(1).get(0);
+        parent.addSubtask(child);
+        Task.resetSyncState(Arrays.asList(child));
+        Task.destroyAll(Arrays.asList(parent.getId()));
+        assertThat(Task.get(parent.getId(), true).isPresent()).isFalse();
+        assertThat(reload(child).isSubtaskOf(parent)).isFalse();
+    }
+
+    @Test
+    public void testDestroyAllTags() {
+        final List<Tag> tags = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tags.add(Tag.newTag(RandomHelper.getRandomString()));
+        }
+        Tag.destroyAll(tags);
+        for (final Tag tag : tags) {
+            assertThat(Tag.get(tag.getId()).isPresent()).isFalse();
+        }
+    }
+
+    @Test
+    public void testDestroyAllLists() throws Exception {
+        final List<ListMirakel> lists = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            lists.add(ListMirakel.newList(RandomHelper.getRandomString(), ListMirakel.SORT_BY.OPT,
+                                          ListMirakel.safeFirst().getAccount()));
+        }
+        ListMirakel.destroyAll(lists.subList(0, 2));
+        assertThat(ListMirakel.get(lists.get(0).getId()).isPresent()).isFalse();
+        assertThat(ListMirakel.get(lists.get(1).getId()).isPresent()).isFalse();
+        assertThat(ListMirakel.get(lists.get(2).getId()).isPresent()).isTrue();
+        final Set<Integer> lfts = new HashSet<>();
+        for (final ListMirakel list : ListMirakel.all()) {
+            assertThat(lfts.add(list.getLft())).isTrue();
+        }
+    }
+
+    @Test
+    public void testMarkSelectedDone() {
+        final List<Long> ids = ModelBase.getIds(newTasks(SELECTED_TASKS));
+        Task.setDoneAll(ids, true);
+        for (final Task task : Task.all()) {
+            if (ids.contains(task.getId())) {
+                assertThat(task.isDone()).isTrue();
+            }
+        }
+    }
+}
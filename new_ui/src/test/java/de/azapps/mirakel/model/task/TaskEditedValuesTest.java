@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.model.task;
+
+import android.content.ContentValues;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import de.azapps.mirakel.model.DatabaseHelper;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+import de.azapps.mirakelandroid.test.RandomHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TaskEditedValuesTest extends MirakelDatabaseTestCase {
+
+    private static Task newTask() {
+        return Task.newTask(RandomHelper.getRandomString(), ListMirakel.safeFirst());
+    }
+
+    @Test
+    public void testOnlyEditedColumns() {
+        final Task task = newTask();
+        task.setPriority(task.getPriority() == 2 ? 1 : 2);
+        final ContentValues values = task.getEditedContentValues();
+        assertThat(values.keySet()).containsExactly(TaskBase.PRIORITY,
+                DatabaseHelper.SYNC_STATE_FIELD, DatabaseHelper.UPDATED_AT);
+    }
+
+    @Test
+    public void testAdditionalEntriesOnlyIfTouched() {
+        final Task task = newTask();
+        task.setContent(RandomHelper.getRandomString());
+        assertThat(task.getEditedContentValues().containsKey(TaskBase.ADDITIONAL_ENTRIES)).isFalse();
+        task.addAdditionalEntry("foo", "\"bar\"");
+        assertThat(task.getEditedContentValues().containsKey(TaskBase.ADDITIONAL_ENTRIES)).isTrue();
+        task.save();
+        assertThat(Task.get(task.getId()).get().getAdditionalString("foo")).isEqualTo("bar");
+    }
+
+    @Test
+    public void testLoadedTaskIsNotEdited() {
+        final Task task = Task.get(newTask().getId()).get();
+        assertThat(task.isEdited()).isFalse();
+        task.setName(RandomHelper.getRandomString());
+        assertThat(task.getEditedContentValues().keySet()).containsExactly(TaskBase.NAME,
+                DatabaseHelper.SYNC_STATE_FIELD, DatabaseHelper.UPDATED_AT);
+        task.save();
+        assertThat(Task.get(task.getId()).get().getName()).isEqualTo(task.getName());
+    }
+
+    @Test
+    public void testSaveKeepsColumnsOfOtherInstances() {
+        final Task task = newTask();
+        final Task first = Task.get(task.getId()).get();
+        final Task second = Task.get(task.getId()).get();
+        final String name = RandomHelper.getRandomString();
+        first.setName(name);
+        second.setPriority(second.getPriority() == 2 ? 1 : 2);
+        first.save();
+        second.save();
+        final Task saved = Task.get(task.getId()).get();
+        assertThat(saved.getName()).isEqualTo(name);
+        assertThat(saved.getPriority()).isEqualTo(second.getPriority());
+    }
+
+    @Test
+    public void testToggleDoneRepeatedly() {
+        final Task task = newTask();
+        for (int i = 0; i < 20; i++) {
+            task.toggleDone();
+            task.save();
+            final Task saved = Task.get(task.getId()).get();
+            assertThat(saved.isDone()).isEqualTo(task.isDone());
+            assertThat(saved.getProgress()).isEqualTo(task.getProgress());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.reminders;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ReminderIndexTest {
+
+    @Test
+    public void testOrder() {
+        final ReminderIndex<String> index = new ReminderIndex<>();
+        index.put(1L, 300L, 300L, "a");
+        index.put(2L, 100L, 100L, "b");
+        index.put(3L, 100L, 100L, "c");
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.first().get().getTaskId()).isEqualTo(2L);
+        index.remove(2L);
+        assertThat(index.first().get().getTaskId()).isEqualTo(3L);
+        index.remove(3L);
+        assertThat(index.first().get().getValue()).isEqualTo("a");
+    }
+
+    @Test
+    public void testMove() {
+        final ReminderIndex<String> index = new ReminderIndex<>();
+        index.put(1L, 300L, 300L, "a");
+        index.put(2L, 200L, 200L, "b");
+        final ReminderIndex.Entry<String> old = index.put(2L, 400L, 400L, "b2").get();
+        assertThat(old.getTime()).isEqualTo(200L);
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.first().get().getTaskId()).isEqualTo(1L);
+        assertThat(index.get(2L).get().getReminder()).isEqualTo(400L);
+        assertThat(index.get(2L).get().getValue()).isEqualTo("b2");
+    }
+
+    @Test
+    public void testRemoveMissing() {
+        final ReminderIndex<String> index = new ReminderIndex<>();
+        assertThat(index.remove(1L)).isAbsent();
+        assertThat(index.first()).isAbsent();
+        assertThat(index.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testRandomChanges() {
+        final ReminderIndex<Long> index = new ReminderIndex<>();
+        final TreeMap<Long, Long> expected = new TreeMap<>();
+        final Random random = new Random(42L);
+        for (int i = 0; i < 10000; i++) {
+            final long id = random.nextInt(500);
+            if (random.nextInt(4) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                final long time = random.nextInt(100000);
+                index.put(id, time, time, id);
+                expected.put(id, time);
+            }
+        }
+        assertThat(index.size()).isEqualTo(expected.size());
+        assertThat(index.getTaskIds()).containsExactlyElementsIn(expected.keySet());
+        long min = Long.MAX_VALUE;
+        for (final Long time : expected.values()) {
+            min = Math.min(min, time);
+        }
+        assertThat(index.first().get().getTime()).isEqualTo(min);
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package de.azapps.mirakel.reminders;
+
+import android.content.Intent;
+
+import com.google.common.base.Optional;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import de.azapps.mirakel.DefinitionsHelper;
+import de.azapps.mirakel.helper.TaskHelper;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+import de.azapps.mirakelandroid.test.RandomHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ReminderPayloadTest extends MirakelDatabaseTestCase {
+
+    @Test
+    public void testRoundTrip() {
+        final ReminderPayload payload = new ReminderPayload(42L, 1234L);
+        final Intent intent = payload.writeTo(new Intent(DefinitionsHelper.SHOW_TASK_REMINDER));
+        assertThat(intent.hasExtra(DefinitionsHelper.EXTRA_TASK_REMINDER)).isFalse();
+        assertThat(intent.getBundleExtra(DefinitionsHelper.BUNDLE_WRAPPER)).isNull();
+        assertThat(ReminderPayload.fromIntent(intent)).hasValue(payload);
+    }
+
+    @Test
+    public void testDistinctUris() {
+        assertThat(new ReminderPayload(1L, 5L).getUri())
+        .isNotEqualTo(new ReminderPayload(2L, 5L).getUri());
+        // a new version replaces the extras of the same pending intent
+        assertThat(new ReminderPayload(1L, 5L).getUri())
+        .isEqualTo(new ReminderPayload(1L, 6L).getUri());
+    }
+
+    @Test
+    public void testNoPayload() {
+        assertThat(ReminderPayload.fromIntent(null)).isAbsent();
+        assertThat(ReminderPayload.fromIntent(new Intent(DefinitionsHelper.SHOW_TASK))).isAbsent();
+    }
+
+    @Test
+    public void testResolve() {
+        final Task task = RandomHelper.getRandomTask();
+        final ReminderPayload payload = ReminderPayload.of(task);
+        final Optional<Task> resolved = payload.resolve();
+        assertThat(resolved).isPresent();
+        assertThat(resolved.get().getId()).isEqualTo(task.getId());
+        assertThat(payload.isCurrent(resolved.get())).isTrue();
+    }
+
+    @Test
+    public void testChangedTaskIsNotCurrent() {
+        final Task task = RandomHelper.getRandomTask();
+        final ReminderPayload payload = ReminderPayload.of(task);
+        task.setUpdatedAt(task.getUpdatedAt().plusMinutes(1));
+        assertThat(payload.isCurrent(task)).isFalse();
+        assertThat(ReminderPayload.of(task).isCurrent(task)).isTrue();
+        assertThat(new ReminderPayload(task.getId(), ReminderPayload.NO_VERSION).isCurrent(task))
+        .isFalse();
+    }
+
+    @Test
+    public void testTaskFromIntent() {
+        final Task task = RandomHelper.getRandomTask();
+        final Intent intent = ReminderPayload.of(task).writeTo(new Intent(
+                                  DefinitionsHelper.SHOW_TASK_REMINDER));
+        final Optional<Task> fromIntent = TaskHelper.getTaskFromIntent(intent);
+        assertThat(fromIntent).isPresent();
+        assertThat(fromIntent.get().getName()).isEqualTo(task.getName());
+    }
+
+    @Test
+    public void testDeletedTask() {
+        final Task task = RandomHelper.getRandomTask();
+        final ReminderPayload payload = ReminderPayload.of(task);
+        task.destroy();
+        assertThat(payload.resolve()).isAbsent();
+    }
+}
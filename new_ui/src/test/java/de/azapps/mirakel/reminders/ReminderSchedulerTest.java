@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.reminders;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Drives the scheduler with a fake clock and records the alarms it registers
+ */
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ReminderSchedulerTest {
+
+    private static final long START = new DateTime(2015, 6, 1, 12, 0, DateTimeZone.UTC).getMillis();
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1L);
+
+    private long now;
+    private final List<Long> alarms = new ArrayList<>();
+    private int cancelled;
+    private ReminderScheduler<String> scheduler;
+
+    @Before
+    public void setUp() {
+        now = START;
+        alarms.clear();
+        cancelled = 0;
+        scheduler = new ReminderScheduler<>(new ReminderScheduler.Clock() {
+            @Override
+            public long now() {
+                return now;
+            }
+        }, new ReminderScheduler.Alarm() {
+            @Override
+            public void set(final long time) {
+                alarms.add(time);
+            }
+
+            @Override
+            public void cancel() {
+                cancelled++;
+            }
+        });
+    }
+
+    private static List<String> values(final List<ReminderIndex.Entry<String>> entries) {
+        final List<String> values = new ArrayList<>(entries.size());
+        for (final ReminderIndex.Entry<String> entry : entries) {
+            values.add(entry.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Moves the clock to the alarm and lets it fire
+     */
+    private List<String> fireAlarm() {
+        now = scheduler.getArmedAt();
+        return values(scheduler.fire());
+    }
+
+    @Test
+    public void testOnlyEarliestAlarmIsRegistered() {
+        for (int i = 10; i > 0; i--) {
+            scheduler.schedule(i, START + (i * 10 * MINUTE), "task" + i);
+        }
+        assertThat(scheduler.size()).isEqualTo(10);
+        assertThat(scheduler.getArmedAt()).isEqualTo(START + (10 * MINUTE));
+        // every new earlier reminder moved the one alarm, but no reminder got an alarm of its own
+        assertThat(alarms).hasSize(10);
+        assertThat(alarms.get(alarms.size() - 1)).isEqualTo(START + (10 * MINUTE));
+
+        scheduler.schedule(20L, START + (500 * MINUTE), "late");
+        assertThat(alarms).hasSize(10);
+    }
+
+    @Test
+    public void testOrdering() {
+        scheduler.schedule(1L, START + (30 * MINUTE), "c");
+        scheduler.schedule(2L, START + (10 * MINUTE), "a");
+        scheduler.schedule(3L, START + (20 * MINUTE), "b");
+        assertThat(fireAlarm()).containsExactly("a");
+        assertThat(fireAlarm()).containsExactly("b");
+        assertThat(fireAlarm()).containsExactly("c");
+        assertThat(scheduler.getArmedAt()).isEqualTo(ReminderScheduler.NOT_ARMED);
+        assertThat(scheduler.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCoalescing() {
+        scheduler.schedule(1L, START + (10 * MINUTE), "a");
+        scheduler.schedule(2L, START + (10 * MINUTE) + TimeUnit.SECONDS.toMillis(30L), "b");
+        scheduler.schedule(3L, START + (10 * MINUTE), "c");
+        scheduler.schedule(4L, START + (15 * MINUTE), "d");
+        assertThat(fireAlarm()).containsExactly("a", "c", "b").inOrder();
+        assertThat(scheduler.getArmedAt()).isEqualTo(START + (15 * MINUTE));
+        assertThat(fireAlarm()).containsExactly("d");
+    }
+
+    @Test
+    public void testLateAlarmDeliversEverythingDue() {
+        scheduler.schedule(1L, START + MINUTE, "a");
+        scheduler.schedule(2L, START + (2 * MINUTE), "b");
+        scheduler.schedule(3L, START + (60 * MINUTE), "c");
+        // the device slept through both reminders
+        now = START + (30 * MINUTE);
+        assertThat(values(scheduler.fire())).containsExactly("a", "b").inOrder();
+        assertThat(scheduler.getArmedAt()).isEqualTo(START + (60 * MINUTE));
+    }
+
+    @Test
+    public void testEarlyAlarmDeliversNothing() {
+        scheduler.schedule(1L, START + (10 * MINUTE), "a");
+        assertThat(scheduler.fire()).isEmpty();
+        assertThat(scheduler.getArmedAt()).isEqualTo(START + (10 * MINUTE));
+    }
+
+    @Test
+    public void testCancelAndMove() {
+        scheduler.schedule(1L, START + (10 * MINUTE), "a");
+        scheduler.schedule(2L, START + (20 * MINUTE), "b");
+        scheduler.cancel(1L);
+        assertThat(scheduler.getArmedAt()).isEqualTo(START + (20 * MINUTE));
+        scheduler.schedule(2L, START + (5 * MINUTE), "b");
+        assertThat(scheduler.size()).isEqualTo(1);
+        assertThat(scheduler.getArmedAt()).isEqualTo(START + (5 * MINUTE));
+        scheduler.cancel(2L);
+        assertThat(scheduler.getArmedAt()).isEqualTo(ReminderScheduler.NOT_ARMED);
+        assertThat(cancelled).isEqualTo(1);
+    }
+
+    @Test
+    public void testSpringForward() {
+        final DateTimeZone berlin = DateTimeZone.forID("Europe/Berlin");
+        // on 2015-03-29 the clocks jump from 02:00 to 03:00
+        final DateTime before = new DateTime(2015, 3, 29, 1, 30, berlin);
+        final DateTime after = new DateTime(2015, 3, 29, 3, 30, berlin);
+        now = before.minusHours(1).getMillis();
+        scheduler.schedule(1L, after.getMillis(), "after");
+        scheduler.schedule(2L, before.getMillis(), "before");
+        assertThat(fireAlarm()).containsExactly("before");
+        // only one real hour passed
+        assertThat(scheduler.getArmedAt() - now).isEqualTo(TimeUnit.HOURS.toMillis(1L));
+        assertThat(fireAlarm()).containsExactly("after");
+    }
+
+    @Test
+    public void testFallBack() {
+        final DateTimeZone berlin = DateTimeZone.forID("Europe/Berlin");
+        // on 2015-10-25 the clocks go back from 03:00 to 02:00, 02:30 happens twice
+        final DateTime first = new DateTime(2015, 10, 25, 2, 30, berlin).withEarlierOffsetAtOverlap();
+        final DateTime second = first.withLaterOffsetAtOverlap();
+        assertThat(second.getMillis() - first.getMillis()).isEqualTo(TimeUnit.HOURS.toMillis(1L));
+        now = first.minusHours(1).getMillis();
+        scheduler.schedule(1L, second.getMillis(), "second");
+        scheduler.schedule(2L, first.getMillis(), "first");
+        assertThat(fireAlarm()).containsExactly("first");
+        assertThat(scheduler.getArmedAt()).isEqualTo(second.getMillis());
+        assertThat(fireAlarm()).containsExactly("second");
+    }
+}
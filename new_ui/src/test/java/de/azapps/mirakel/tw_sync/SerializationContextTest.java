@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.tw_sync;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.azapps.mirakel.model.account.AccountMirakel;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.tags.Tag;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorSerializationContext;
+import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTaskSerializer;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SerializationContextTest extends MirakelDatabaseTestCase {
+
+    private static final int TASK_COUNT = 200;
+
+    private static Gson createGson(final TaskWarriorTaskSerializer serializer) {
+        return new GsonBuilder().registerTypeAdapter(Task.class, serializer).create();
+    }
+
+    private static Set<String> removeTags(final JsonObject json) {
+        final Set<String> tags = new HashSet<>();
+        final JsonElement array = json.remove("tags");
+        if (array != null) {
+            for (final JsonElement tag : (JsonArray) array) {
+                tags.add(tag.getAsString());
+            }
+        }
+        return tags;
+    }
+
+    private static Set<String> removeDepends(final JsonObject json) {
+        final Set<String> depends = new HashSet<>();
+        final JsonElement list = json.remove("depends");
+        if (list != null) {
+            depends.addAll(Arrays.asList(list.getAsString().split(",")));
+        }
+        return depends;
+    }
+
+    @Test
+    public void testPrefetchedMatchesSingleQueries() {
+        final ListMirakel list = ListMirakel.getInboxList(AccountMirakel.getLocal());
+        final List<Task> tasks = new ArrayList<>(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            final Task task = Task.newTask("task " + i, list);
+            task.addTag(Tag.newTag("tag " + (i % 5)));
+            if ((i % 3) == 0) {
+                task.addTag(Tag.newTag("other"));
+            }
+            tasks.add(task);
+        }
+        for (int i = 0; i < TASK_COUNT; i += 10) {
+            tasks.get(i).addSubtask(tasks.get(i + 1));
+            tasks.get(i).addSubtask(tasks.get(i + 2));
+        }
+        final List<Task> toSync = new ArrayList<>(TASK_COUNT);
+        for (final Task task : tasks) {
+            toSync.add(Task.get(task.getId()).get());
+        }
+
+        final Gson single = createGson(new TaskWarriorTaskSerializer(RuntimeEnvironment.application));
+        final Gson prefetched = createGson(new TaskWarriorTaskSerializer(
+                                               TaskWarriorSerializationContext.prefetch(RuntimeEnvironment.application, toSync)));
+        final JsonParser parser = new JsonParser();
+        for (final Task task : toSync) {
+            final JsonObject expected = (JsonObject) parser.parse(single.toJson(task));
+            final JsonObject actual = (JsonObject) parser.parse(prefetched.toJson(task));
+            assertThat(removeTags(actual)).isEqualTo(removeTags(expected));
+            assertThat(removeDepends(actual)).isEqualTo(removeDepends(expected));
+            assertThat(actual).isEqualTo(expected);
+        }
+        final JsonObject withSubtasks = (JsonObject) parser.parse(prefetched.toJson(toSync.get(0)));
+        assertThat(withSubtasks.get("depends").getAsString().split(",")).asList()
+        .containsExactly(tasks.get(1).getUUID(), tasks.get(2).getUUID());
+    }
+
+    @Test
+    public void testNotPrefetchedTaskFallsBack() {
+        final ListMirakel list = ListMirakel.getInboxList(AccountMirakel.getLocal());
+        final Task task = Task.newTask("task", list);
+        task.addTag(Tag.newTag("foo"));
+        final TaskWarriorSerializationContext context = TaskWarriorSerializationContext.prefetch(
+                    RuntimeEnvironment.application, new ArrayList<Task>(0));
+        assertThat(context.getTagNames(task)).containsExactly("foo");
+        assertThat(context.isRecurringMaster(task)).isFalse();
+    }
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.tw_sync;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Optional;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.azapps.mirakel.DefinitionsHelper;
+import de.azapps.mirakel.model.account.AccountMirakel;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakel.sync.taskwarrior.SyncCoordinator;
+import de.azapps.mirakel.sync.taskwarrior.SyncMetrics;
+import de.azapps.mirakel.sync.taskwarrior.TaskWarriorSync;
+import de.azapps.mirakel.sync.taskwarrior.network_helper.TLSClient;
+import de.azapps.mirakel.sync.taskwarrior.services.SyncAdapter;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TW_ERRORS;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorAccount;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorSyncFailedException;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Syncs several accounts against plain socket servers acting as taskd, which answer after a
+ * fixed latency.
+ */
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SyncCoordinatorTest extends MirakelDatabaseTestCase {
+
+    private static final String HEADER = "client: taskd 1.1.0\ncode: 200\nstatus: Ok\n\n";
+    private static final String SYNC_KEY = "2e4685f8-34bc-4f9b-b7ed-399388e182e1";
+    private static final long LATENCY = 1000L;
+    private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30L);
+
+    private final List<ServerSocket> servers = new ArrayList<>();
+    private final List<Thread> serverThreads = new ArrayList<>();
+    private final Map<String, Integer> ports = new HashMap<>();
+    private final AtomicReference<Throwable> serverError = new AtomicReference<>();
+
+    private final TaskWarriorSync.Connector connector = new TaskWarriorSync.Connector() {
+        @NonNull
+        @Override
+        public TLSClient connect(@NonNull final TaskWarriorAccount taskWarriorAccount) throws
+            TaskWarriorSyncFailedException {
+            try {
+                return new TLSClient(new Socket(InetAddress.getByName("127.0.0.1"),
+                                                ports.get(taskWarriorAccount.getUser())));
+            } catch (final IOException e) {
+                throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_CREATE_SOCKET, e);
+            }
+        }
+    };
+
+    @After
+    public void tearDown() throws Exception {
+        for (final ServerSocket server : servers) {
+            server.close();
+        }
+        for (final Thread thread : serverThreads) {
+            thread.interrupt();
+            thread.join();
+        }
+        if (serverError.get() != null) {
+            throw new AssertionError(serverError.get());
+        }
+    }
+
+    private static String uuid(final int i) {
+        return String.format("5e9682e0-4e1a-491a-a7cb-%012d", i);
+    }
+
+    /**
+     * Creates an account whose server answers with one task after the latency
+     */
+    private TaskWarriorAccount createAccount(final int i, final long latency) throws IOException {
+        return createAccount(i, latency, 0L);
+    }
+
+    /**
+     * Creates an account whose server answers with one task after the latency, the answer is
+     * sent in a few parts with a pause in between
+     */
+    private TaskWarriorAccount createAccount(final int i, final long latency, final long pause)
+    throws IOException {
+        final String name = "account" + i;
+        final Bundle b = new Bundle();
+        b.putString(SyncAdapter.BUNDLE_SERVER_TYPE, TaskWarriorSync.TYPE);
+        b.putString(SyncAdapter.BUNDLE_ORG, "org");
+        b.putString(SyncAdapter.BUNDLE_SERVER_URL, "server");
+        b.putString(DefinitionsHelper.BUNDLE_CERT, "cert");
+        b.putString(DefinitionsHelper.BUNDLE_CERT_CLIENT, "clientkey");
+        AccountManager.get(RuntimeEnvironment.application).addAccountExplicitly(new Account(name,
+                AccountMirakel.ACCOUNT_TYPE_MIRAKEL), "foo\n:barnentantcltbatcntalvinrecilceitrcp", b);
+        final AccountMirakel account = AccountMirakel.newAccount(name,
+                                       AccountMirakel.ACCOUNT_TYPES.TASKWARRIOR, true);
+        ports.put(name, serve(latency, pause, "{\"uuid\":\"" + uuid(i) + "\",\"status\":\"pending\"," +
+                              "\"entry\":\"20140312T123933Z\",\"description\":\"task " + i + "\"}\n"));
+        return new TaskWarriorAccount(account, RuntimeEnvironment.application);
+    }
+
+    /**
+     * @return the port of the new server
+     */
+    private int serve(final long latency, final long pause, final String taskLine) throws IOException {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        servers.add(server);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final byte[] request = new byte[in.readInt() - 4];
+                    in.readFully(request);
+                } catch (final IOException e) {
+                    serverError.set(e);
+                    return;
+                }
+                try {
+                    Thread.sleep(latency);
+                    final byte[] response = (HEADER + taskLine + SYNC_KEY + '\n').getBytes("UTF-8");
+                    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                socket.getOutputStream()));
+                    out.writeInt(4 + response.length);
+                    final int parts = (pause > 0L) ? 4 : 1;
+                    for (int part = 0; part < parts; part++) {
+                        if (part > 0) {
+                            Thread.sleep(pause);
+                        }
+                        out.write(response, (part * response.length) / parts,
+                                  (((part + 1) * response.length) / parts) - ((part * response.length) / parts));
+                        out.flush();
+                    }
+                    socket.close();
+                } catch (final InterruptedException | IOException ignored) {
+                    // the client gave up
+                }
+            }
+        });
+        serverThreads.add(thread);
+        thread.start();
+        return server.getLocalPort();
+    }
+
+    @Test
+    public void testParallelSync() throws Exception {
+        final List<TaskWarriorAccount> accounts = Arrays.asList(createAccount(1, LATENCY),
+                createAccount(2, LATENCY), createAccount(3, LATENCY));
+        final SyncCoordinator coordinator = new SyncCoordinator(RuntimeEnvironment.application,
+                connector, 3, TIMEOUT);
+        final long start = System.nanoTime();
+        final List<SyncCoordinator.Result> results = coordinator.syncAll(accounts);
+        final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the latencies overlap
+        assertThat(duration).isLessThan(3 * LATENCY);
+        assertThat(results).hasSize(3);
+        for (int i = 0; i < 3; i++) {
+            final SyncCoordinator.Result result = results.get(i);
+            assertThat(result.getAccount()).isSameAs(accounts.get(i));
+            assertThat(result.getError()).isEqualTo(TW_ERRORS.NO_ERROR);
+            assertThat(result.getStatistics()).isPresent();
+            assertThat(result.getStatistics().get().getInserted()).isEqualTo(1L);
+            assertThat(accounts.get(i).getSyncKey()).hasValue(SYNC_KEY);
+            final Optional<Task> task = Task.getByUUID(uuid(i + 1));
+            assertThat(task).isPresent();
+            assertThat(task.get().getName()).isEqualTo("task " + (i + 1));
+            assertThat(task.get().getList().getAccount().getName()).isEqualTo("account" + (i + 1));
+        }
+    }
+
+    @Test
+    public void testNetworkTimeoutIsPerAccount() throws Exception {
+        final TaskWarriorAccount slow = createAccount(1, 20 * LATENCY);
+        final TaskWarriorAccount fast = createAccount(2, LATENCY / 10);
+        final SyncCoordinator coordinator = new SyncCoordinator(RuntimeEnvironment.application,
+                connector, 2, (int) (2 * LATENCY));
+        final long start = System.nanoTime();
+        final List<SyncCoordinator.Result> results = coordinator.syncAll(Arrays.asList(slow, fast));
+        final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(duration).isLessThan(10 * LATENCY);
+        assertThat(results.get(0).getError()).isEqualTo(TW_ERRORS.TRY_LATER);
+        assertThat(results.get(0).getStatistics()).isAbsent();
+        assertThat(slow.getSyncKey()).isAbsent();
+        assertThat(Task.getByUUID(uuid(1))).isAbsent();
+
+        assertThat(results.get(1).getError()).isEqualTo(TW_ERRORS.NO_ERROR);
+        assertThat(fast.getSyncKey()).hasValue(SYNC_KEY);
+        assertThat(Task.getByUUID(uuid(2))).isPresent();
+    }
+
+    @Test
+    public void testNetworkTimeoutIsNotForTheWholeSync() throws Exception {
+        // the whole answer takes much longer than the timeout, but the server is never silent
+        // for so long
+        final TaskWarriorAccount slow = createAccount(1, LATENCY, LATENCY);
+        final SyncCoordinator coordinator = new SyncCoordinator(RuntimeEnvironment.application,
+                connector, 1, (int) (2 * LATENCY));
+        final SyncCoordinator.Result result = coordinator.sync(slow);
+
+        assertThat(result.getDurationMillis()).isAtLeast(3 * LATENCY);
+        assertThat(result.getError()).isEqualTo(TW_ERRORS.NO_ERROR);
+        assertThat(slow.getSyncKey()).hasValue(SYNC_KEY);
+        assertThat(Task.getByUUID(uuid(1))).isPresent();
+    }
+
+    @Test
+    public void testSyncMetrics() throws Exception {
+        SyncMetrics.clear(RuntimeEnvironment.application);
+        final List<TaskWarriorAccount> accounts = Arrays.asList(createAccount(1, LATENCY / 10),
+                createAccount(2, LATENCY / 10));
+        final SyncCoordinator coordinator = new SyncCoordinator(RuntimeEnvironment.application,
+                connector, 1, TIMEOUT);
+        coordinator.syncAll(accounts);
+
+        final List<SyncMetrics> metrics = SyncMetrics.getLast(RuntimeEnvironment.application);
+        assertThat(metrics).hasSize(2);
+        // the newest first
+        assertThat(metrics.get(0).getAccount()).isEqualTo("account2");
+        assertThat(metrics.get(1).getAccount()).isEqualTo("account1");
+        for (final SyncMetrics m : metrics) {
+            assertThat(m.getResult()).isEqualTo(TW_ERRORS.NO_ERROR.name());
+            assertThat(m.getBytesSent()).isGreaterThan(4L);
+            assertThat(m.getBytesReceived()).isGreaterThan(4L);
+            assertThat(m.getTransferTime()).isAtLeast(LATENCY / 10);
+            assertThat(m.getInserted()).isEqualTo(1L);
+            assertThat(m.getUpdated()).isEqualTo(0L);
+            assertThat(m.getTransactions()).isGreaterThan(0L);
+        }
+        assertThat(SyncMetrics.toJson(metrics)).contains("\"account\": \"account1\"");
+
+        for (int i = 0; i < SyncMetrics.MAX_STORED; i++) {
+            final SyncMetrics m = SyncMetrics.start("other");
+            m.finish(TW_ERRORS.TRY_LATER);
+            m.save(RuntimeEnvironment.application);
+        }
+        final List<SyncMetrics> trimmed = SyncMetrics.getLast(RuntimeEnvironment.application);
+        assertThat(trimmed).hasSize(SyncMetrics.MAX_STORED);
+        for (final SyncMetrics m : trimmed) {
+            assertThat(m.getAccount()).isEqualTo("other");
+        }
+    }
+}
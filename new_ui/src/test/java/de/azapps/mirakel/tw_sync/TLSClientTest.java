@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.tw_sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.azapps.mirakel.sync.taskwarrior.network_helper.Msg;
+import de.azapps.mirakel.sync.taskwarrior.network_helper.TLSClient;
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the framing of TLSClient against a plain socket server acting as taskd.
+ */
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TLSClientTest {
+
+    private static final String HEADER = "client: taskd 1.1.0\ncode: 200\nstatus: Ok\n\n";
+    private static final String SYNC_KEY = "2e4685f8-34bc-4f9b-b7ed-399388e182e1";
+    private static final String TASK_LINE =
+        "{\"uuid\":\"5e9682e0-4e1a-491a-a7cb-8097c9ed790b\",\"status\":\"pending\"," +
+        "\"entry\":\"20140312T123933Z\",\"description\":\"foo\"}\n";
+
+    private ServerSocket server;
+    private Thread serverThread;
+    private final AtomicReference<Throwable> serverError = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        if (serverThread != null) {
+            serverThread.join();
+        }
+        if (serverError.get() != null) {
+            throw new AssertionError(serverError.get());
+        }
+    }
+
+    /**
+     * Serve a single frame with the given header and the task line repeated taskCount times
+     */
+    private void serve(final int taskCount) {
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Socket socket = server.accept();
+                    final byte[] header = (HEADER + SYNC_KEY + '\n').getBytes("UTF-8");
+                    final byte[] task = TASK_LINE.getBytes("UTF-8");
+                    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                socket.getOutputStream()));
+                    out.writeInt(4 + header.length + (task.length * taskCount));
+                    out.write(header);
+                    for (int i = 0; i < taskCount; i++) {
+                        out.write(task);
+                    }
+                    out.flush();
+                    socket.close();
+                } catch (final IOException e) {
+                    serverError.set(e);
+                }
+            }
+        });
+        serverThread.start();
+    }
+
+    private TLSClient connect() throws IOException {
+        return new TLSClient(new Socket(server.getInetAddress(), server.getLocalPort()));
+    }
+
+    @Test
+    public void testRecvString() throws Exception {
+        serve(2);
+        final TLSClient client = connect();
+        final String response = client.recv();
+        client.close();
+        assertThat(response).isEqualTo(HEADER + SYNC_KEY + '\n' + TASK_LINE + TASK_LINE);
+    }
+
+    @Test
+    public void testRecvLargePayloadAsLines() throws Exception {
+        final int taskCount = (50 * 1024 * 1024) / TASK_LINE.length() + 1;
+        serve(taskCount);
+        final TLSClient client = connect();
+        final Msg msg = new Msg();
+        msg.parse(client.recvLines());
+        client.close();
+        assertThat(msg.getHeader("code")).hasValue("200");
+        assertThat(msg.getHeader("status")).hasValue("Ok");
+        assertThat(msg.hasPayload()).isTrue();
+
+        final BufferedReader payload = msg.getPayloadReader();
+        assertThat(payload.readLine()).isEqualTo(SYNC_KEY);
+        final String expected = TASK_LINE.trim();
+        int lines = 0;
+        String line;
+        while ((line = payload.readLine()) != null) {
+            if (!expected.equals(line)) {
+                fail("Unexpected line " + lines + ": " + line);
+            }
+            lines++;
+        }
+        assertThat(lines).isEqualTo(taskCount);
+    }
+
+    @Test
+    public void testPayloadAsString() throws Exception {
+        serve(1);
+        final TLSClient client = connect();
+        final Msg msg = new Msg();
+        msg.parse(client.recvLines());
+        client.close();
+        assertThat(msg.getPayload()).isEqualTo(SYNC_KEY + '\n' + TASK_LINE.trim());
+    }
+
+    @Test
+    public void testFrameExceedsMaximum() throws Exception {
+        serve(20);
+        final TLSClient client = connect();
+        client.setMaxFrameSize(1024);
+        try {
+            client.recvLines();
+            fail("A frame bigger than the maximum frame size was accepted");
+        } catch (final IOException ignored) {
+            // expected
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testSendStreamedMessage() throws Exception {
+        final int taskCount = 10000;
+        final AtomicReference<byte[]> received = new AtomicReference<>();
+        final AtomicReference<Integer> receivedLength = new AtomicReference<>();
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Socket socket = server.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final int length = in.readInt();
+                    final byte[] frame = new byte[length - 4];
+                    in.readFully(frame);
+                    receivedLength.set(length);
+                    received.set(frame);
+                    socket.close();
+                } catch (final IOException e) {
+                    serverError.set(e);
+                }
+            }
+        });
+        serverThread.start();
+
+        final Msg msg = new Msg();
+        msg.set("type", "sync");
+        msg.setPayload(new Msg.PayloadWriter() {
+            @Override
+            public void write(final Writer out) throws IOException {
+                out.write(SYNC_KEY);
+                out.write('\n');
+                for (int i = 0; i < taskCount; i++) {
+                    out.write(TASK_LINE);
+                }
+            }
+        });
+        final TLSClient client = connect();
+        client.send(msg);
+        serverThread.join();
+        client.close();
+
+        final byte[] expected = msg.serialize().getBytes("UTF-8");
+        assertThat(receivedLength.get()).isEqualTo(expected.length + 4);
+        assertThat(new String(received.get(), "UTF-8")).isEqualTo(msg.serialize());
+    }
+}
@@ -18,11 +18,11 @@
  ******************************************************************************/
 package de.azapps.mirakel.tw_sync;
 
-import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 
@@ -43,7 +43,7 @@ import de.azapps.mirakel.model.account.AccountMirakel;
 import de.azapps.mirakel.model.list.ListMirakel;
 import de.azapps.mirakel.model.task.Task;
 import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTask;
-import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTaskDeserializer;
+import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTaskReader;
 import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTaskSerializer;
 import de.azapps.mirakelandroid.BuildConfig;
 import de.azapps.mirakelandroid.test.MirakelDatabaseTestCase;
@@ -56,7 +56,7 @@ import static org.junit.Assert.fail;
 
 
 /**
- * This test cases tests if the Deserializer is working properly.
+ * This test cases tests if the TaskWarriorTaskReader is working properly.
  *
  * @author az
  *
@@ -201,12 +201,7 @@ public class TaskDeserializerTest extends MirakelDatabaseTestCase {
 
     private void testString(final String message, final String inputTask)
     throws Exception {
-        final Gson gson = new GsonBuilder().registerTypeAdapter(
-            TaskWarriorTask.class,
-            new TaskWarriorTaskDeserializer()).create();
-
-        final TaskWarriorTask task = gson.fromJson(inputTask, TaskWarriorTask.class);
-        assertTrue(message, compare(inputTask, task));
+        assertTrue(message, compare(inputTask, new TaskWarriorTaskReader().read(inputTask)));
     }
 
 
@@ -231,6 +226,29 @@ public class TaskDeserializerTest extends MirakelDatabaseTestCase {
         testString("Tasks are not equal", inputTask);
     }
 
+    @Test
+    public void testReaderMissingRequiredField() {
+        try {
+            new TaskWarriorTaskReader().read(
+                "{\"status\":\"pending\",\"entry\":\"20140312T123933Z\",\"description\":\"foo\"}");
+            fail("A task without uuid was parsed");
+        } catch (final JsonParseException ignored) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReaderInvalidTags() {
+        try {
+            new TaskWarriorTaskReader().read(
+                "{\"uuid\":\"5e9682e0-4e1a-491a-a7cb-8097c9ed790b\",\"status\":\"pending\"," +
+                "\"entry\":\"20140312T123933Z\",\"description\":\"foo\",\"tags\":\"bin\"}");
+            fail("Tags which are not an array were parsed");
+        } catch (final JsonParseException ignored) {
+            // expected
+        }
+    }
+
     @Test
     public void testSerialize1() {
         Task t = new Task();
@@ -33,14 +33,19 @@ import org.junit.runner.RunWith;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.io.BufferedReader;
+import java.io.StringReader;
 import java.nio.charset.MalformedInputException;
 import java.util.List;
 
 import de.azapps.mirakel.DefinitionsHelper;
 import de.azapps.mirakel.model.account.AccountMirakel;
 import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
 import de.azapps.mirakel.model.tags.Tag;
 import de.azapps.mirakel.model.task.Task;
+import de.azapps.mirakel.sync.taskwarrior.RemoteTaskPipeline;
 import de.azapps.mirakel.sync.taskwarrior.TaskWarriorSync;
 import de.azapps.mirakel.sync.taskwarrior.network_helper.Msg;
 import de.azapps.mirakel.sync.taskwarrior.services.SyncAdapter;
@@ -372,6 +377,159 @@ public class TaskwarriorSyncTest extends MirakelDatabaseTestCase {
         assertThat(t).isAbsent();
     }
 
+    @Test
+    public void chunkedInsertTest() throws Exception {
+        final int count = 250;
+        final StringBuilder input = new StringBuilder("type: sync\n" +
+                "client: task 2.3.0\n" +
+                "protocol: v1\n" +
+                '\n' +
+                "2e4685f8-34bc-4f9b-b7ed-399388e182e1\n");
+        for (int i = 0; i < count; i++) {
+            input.append("{\"uuid\":\"").append(uuid(i)).append("\",")
+            .append("\"status\":\"pending\",\"entry\":\"20140312T123933Z\",")
+            .append("\"description\":\"task ").append(i).append("\",")
+            .append("\"project\":\"chunked\",\"tags\":[\"tag").append(i % 3).append("\"]");
+            if (i == 0) {
+                // the dependency is only written in the last chunk
+                input.append(",\"depends\":\"").append(uuid(count - 1)).append('"');
+            }
+            input.append("}\n");
+        }
+        final Msg m = new Msg();
+        m.parse(new BufferedReader(new StringReader(input.toString())));
+        final TaskWarriorSync sync = new TaskWarriorSync(RuntimeEnvironment.application);
+        final TaskWarriorAccount tw_account = new TaskWarriorAccount(account,
+                RuntimeEnvironment.application);
+        sync.parseTasks(tw_account, m);
+
+        assertThat(tw_account.getSyncKey()).hasValue("2e4685f8-34bc-4f9b-b7ed-399388e182e1");
+        for (int i = 0; i < count; i++) {
+            final Optional<Task> t = Task.getByUUID(uuid(i));
+            assertThat(t).isPresent();
+            assertThat(t.get().getName()).isEqualTo("task " + i);
+            assertThat(t.get().getList().getName()).isEqualTo("chunked");
+            assertThat(t.get().getTags()).hasSize(1);
+            assertThat(t.get().getTags().get(0).getName()).isEqualTo("tag" + (i % 3));
+        }
+        final List<Task> subtasks = Task.getByUUID(uuid(0)).get().getSubtasks();
+        assertThat(subtasks).hasSize(1);
+        assertThat(subtasks.get(0).getUUID()).isEqualTo(uuid(count - 1));
+    }
+
+    @Test
+    public void pipelinedDuplicateTest() throws Exception {
+        final int count = 600;
+        final StringBuilder input = new StringBuilder("type: sync\n" +
+                "client: task 2.3.0\n" +
+                "protocol: v1\n" +
+                '\n');
+        for (int i = 0; i < count; i++) {
+            input.append("{\"uuid\":\"").append(uuid(i)).append("\",")
+            .append("\"status\":\"pending\",\"entry\":\"20140312T123933Z\",")
+            .append("\"description\":\"task ").append(i).append("\"}\n");
+        }
+        // the same task again, after the first version went through the pipeline
+        input.append("{\"uuid\":\"").append(uuid(0)).append("\",")
+        .append("\"status\":\"pending\",\"entry\":\"20140312T123933Z\",")
+        .append("\"description\":\"changed\"}\n");
+        input.append("2e4685f8-34bc-4f9b-b7ed-399388e182e1\n");
+        final Msg m = new Msg();
+        m.parse(new BufferedReader(new StringReader(input.toString())));
+        final TaskWarriorSync sync = new TaskWarriorSync(RuntimeEnvironment.application);
+        final TaskWarriorAccount tw_account = new TaskWarriorAccount(account,
+                RuntimeEnvironment.application);
+        sync.parseTasks(tw_account, m);
+
+        assertThat(tw_account.getSyncKey()).hasValue("2e4685f8-34bc-4f9b-b7ed-399388e182e1");
+        assertThat(Task.getByUUID(uuid(0)).get().getName()).isEqualTo("changed");
+        assertThat(Task.getByUUID(uuid(count - 1)).get().getName()).isEqualTo("task " + (count - 1));
+        assertThat(new MirakelQueryBuilder(RuntimeEnvironment.application).and(Task.UUID, Operation.EQ,
+                   uuid(0)).count(Task.URI)).isEqualTo(1L);
+        final Optional<RemoteTaskPipeline.Statistics> statistics = sync.getLastStatistics();
+        assertThat(statistics).isPresent();
+        assertThat(statistics.get().parse.getTasks()).isEqualTo(count + 1L);
+        assertThat(statistics.get().apply.getTasks()).isEqualTo(count + 1L);
+    }
+
+    @Test
+    public void unchangedTaskSkipTest() throws Exception {
+        final String input = "type: sync\n" +
+                             "client: task 2.3.0\n" +
+                             "protocol: v1\n" +
+                             '\n' +
+                             "{\"description\":\"remote\",\"entry\":\"20140312T123933Z\",\"modified\":\"20140313T101010Z\"," +
+                             "\"status\":\"pending\",\"tags\":[\"foo\"],\"uuid\":\"" + uuid(1) + "\"}\n" +
+                             "2e4685f8-34bc-4f9b-b7ed-399388e182e1\n";
+        final TaskWarriorSync sync = new TaskWarriorSync(RuntimeEnvironment.application);
+        final TaskWarriorAccount tw_account = new TaskWarriorAccount(account,
+                RuntimeEnvironment.application);
+        final Msg first = new Msg();
+        first.parse(input);
+        sync.parseTasks(tw_account, first);
+        assertThat(sync.getLastStatistics().get().getInserted()).isEqualTo(1L);
+        assertThat(sync.getLastStatistics().get().getSkipped()).isEqualTo(0L);
+
+        final Msg same = new Msg();
+        same.parse(input);
+        sync.parseTasks(tw_account, same);
+        assertThat(sync.getLastStatistics().get().getSkipped()).isEqualTo(1L);
+        assertThat(sync.getLastStatistics().get().getApplied()).isEqualTo(0L);
+        final Task task = Task.getByUUID(uuid(1)).get();
+        assertThat(task.getTags()).hasSize(1);
+
+        // a local change has to be overwritten, even if the remote task is the same
+        task.setName("local");
+        task.save();
+        final Msg again = new Msg();
+        again.parse(input);
+        sync.parseTasks(tw_account, again);
+        assertThat(sync.getLastStatistics().get().getSkipped()).isEqualTo(0L);
+        assertThat(sync.getLastStatistics().get().getUpdated()).isEqualTo(1L);
+        assertThat(Task.getByUUID(uuid(1)).get().getName()).isEqualTo("remote");
+        assertThat(Task.getByUUID(uuid(1)).get().getTags()).hasSize(1);
+    }
+
+    private static Msg referenceMessage(final String modified, final String tags,
+                                        final String depends) throws Exception {
+        final Msg m = new Msg();
+        m.parse("type: sync\n" +
+                "client: task 2.3.0\n" +
+                "protocol: v1\n" +
+                '\n' +
+                "{\"description\":\"child\",\"entry\":\"20140312T123933Z\",\"status\":\"pending\"," +
+                "\"uuid\":\"" + uuid(2) + "\"}\n" +
+                "{\"description\":\"parent\",\"entry\":\"20140312T123933Z\",\"modified\":\"" + modified +
+                "\",\"status\":\"pending\",\"tags\":[" + tags + "]," + depends +
+                "\"uuid\":\"" + uuid(1) + "\"}\n" +
+                "2e4685f8-34bc-4f9b-b7ed-399388e182e1\n");
+        return m;
+    }
+
+    @Test
+    public void referenceDiffTest() throws Exception {
+        final TaskWarriorSync sync = new TaskWarriorSync(RuntimeEnvironment.application);
+        final TaskWarriorAccount tw_account = new TaskWarriorAccount(account,
+                RuntimeEnvironment.application);
+        sync.parseTasks(tw_account, referenceMessage("20140313T101010Z", "\"a\",\"b\"",
+                        "\"depends\":\"" + uuid(2) + "\","));
+        Task parent = Task.getByUUID(uuid(1)).get();
+        assertThat(parent.getTags()).hasSize(2);
+        assertThat(parent.getSubtasks()).hasSize(1);
+
+        sync.parseTasks(tw_account, referenceMessage("20140314T101010Z", "\"b\",\"c\"", ""));
+        parent = Task.getByUUID(uuid(1)).get();
+        final List<Tag> tags = parent.getTags();
+        assertThat(tags).hasSize(2);
+        assertThat(tags.get(0).getName()).isAnyOf("b", "c");
+        assertThat(tags.get(1).getName()).isAnyOf("b", "c");
+        assertThat(parent.getSubtasks()).isEmpty();
+    }
+
+    private static String uuid(final int i) {
+        return String.format("5e9682e0-4e1a-491a-a7cb-%012d", i);
+    }
+
     @Test
     public void getAddedTasksTest1() {
         final Task task = Task.newTask("foo", list);
@@ -25,7 +25,11 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
     RecurrenceTest.class,
     TaskDeserializerTest.class,
-    TaskwarriorSyncTest.class
+    TaskwarriorSyncTest.class,
+    SerializationContextTest.class,
+    TLSClientTest.class,
+    SyncCoordinatorTest.class,
+    TLSSessionTest.class
 })
 public class TaskwarriorTestSuite {
 }
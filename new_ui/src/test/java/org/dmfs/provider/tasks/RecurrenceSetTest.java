@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.dmfs.provider.tasks;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import de.azapps.mirakelandroid.BuildConfig;
+import de.azapps.mirakelandroid.test.MultiApiRobolectricTestRunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(MultiApiRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class RecurrenceSetTest {
+
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+    // monday
+    private static final long START = new DateTime(2015, 1, 5, 10, 0, DateTimeZone.UTC).getMillis();
+    private static final long END = START + (365L * DAY);
+
+    private static RecurrenceSet create(final String rrule, final String rdate, final String exdate) {
+        return new RecurrenceSet(START, "UTC", false, rrule, rdate, exdate);
+    }
+
+    @Test
+    public void testNoRecurrence() {
+        final RecurrenceSet set = create(null, null, null);
+        assertThat(set.isRecurring()).isFalse();
+        assertThat(set.getInstances(START, END, 100)).containsExactly(START);
+        assertThat(set.getInstances(START + 1, END, 100)).isEmpty();
+    }
+
+    @Test
+    public void testCount() {
+        final RecurrenceSet set = create("FREQ=DAILY;COUNT=3", null, null);
+        assertThat(set.isRecurring()).isTrue();
+        assertThat(set.getInstances(START, END, 100)).containsExactly(START, START + DAY,
+                START + (2 * DAY)).inOrder();
+    }
+
+    @Test
+    public void testInterval() {
+        final RecurrenceSet set = create("FREQ=DAILY;INTERVAL=2;COUNT=3", null, null);
+        assertThat(set.getInstances(START, END, 100)).containsExactly(START, START + (2 * DAY),
+                START + (4 * DAY)).inOrder();
+    }
+
+    @Test
+    public void testUntil() {
+        final RecurrenceSet set = create("FREQ=DAILY;UNTIL=20150108T100000Z", null, null);
+        assertThat(set.getInstances(START, END, 100)).hasSize(4);
+        assertThat(set.getInstances(START + DAY, END, 100)).containsExactly(START + DAY,
+                START + (2 * DAY), START + (3 * DAY)).inOrder();
+    }
+
+    @Test
+    public void testWindow() {
+        final RecurrenceSet set = create("FREQ=DAILY", null, null);
+        // starts with the first instance after from, not with the start of the task
+        assertThat(set.getInstances(START + (DAY / 2) + (100L * DAY), START + (103L * DAY), 100))
+        .containsExactly(START + (101L * DAY), START + (102L * DAY)).inOrder();
+    }
+
+    @Test
+    public void testWeekdays() {
+        final RecurrenceSet set = create("FREQ=WEEKLY;BYDAY=MO,WE", null, null);
+        assertThat(set.getInstances(START, START + (14L * DAY), 100)).containsExactly(START,
+                START + (2 * DAY), START + (7 * DAY), START + (9 * DAY)).inOrder();
+    }
+
+    @Test
+    public void testUnsupportedRule() {
+        final RecurrenceSet set = create("FREQ=MONTHLY;BYMONTHDAY=1,15", null, null);
+        assertThat(set.isRecurring()).isFalse();
+        assertThat(set.getInstances(START, END, 100)).containsExactly(START);
+    }
+
+    @Test
+    public void testRdateAndExdate() {
+        final RecurrenceSet set = create("FREQ=DAILY;COUNT=3", "20150120T100000Z",
+                                         "20150106T100000Z");
+        assertThat(set.isExcluded(START + DAY)).isTrue();
+        assertThat(set.getInstances(START, END, 100)).containsExactly(START, START + (2 * DAY),
+                START + (15 * DAY)).inOrder();
+    }
+
+    @Test
+    public void testOnlyRdate() {
+        final RecurrenceSet set = create(null, "20150107T100000Z,20150109T100000Z", null);
+        assertThat(set.isRecurring()).isTrue();
+        assertThat(set.getInstances(START + 1, END, 100)).containsExactly(START + (2 * DAY),
+                START + (4 * DAY)).inOrder();
+    }
+
+    @Test
+    public void testLimit() {
+        final RecurrenceSet set = create("FREQ=MINUTELY", null, null);
+        assertThat(set.getInstances(START, END, 10)).hasSize(10);
+        assertThat(set.getInstances(START, END, 10).get(9)).isEqualTo(START + (9L * 60L * 1000L));
+    }
+
+    @Test
+    public void testAllDay() {
+        final long start = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        final RecurrenceSet set = new RecurrenceSet(start, "Europe/Berlin", true, "FREQ=WEEKLY;COUNT=3",
+                null, "20150108");
+        assertThat(set.getInstances(start, start + (30L * DAY), 100)).containsExactly(start,
+                start + (14L * DAY)).inOrder();
+        assertThat(set.isExcluded(start)).isFalse();
+        assertThat(set.isExcluded(start + (7L * DAY))).isTrue();
+    }
+}
@@ -30,6 +30,8 @@ import android.widget.Toast;
 import com.afollestad.materialdialogs.AlertDialogWrapper;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 import de.azapps.mirakel.helper.AnalyticsWrapperBase;
 import de.azapps.mirakel.helper.Helpers;
@@ -39,9 +41,13 @@ import de.azapps.mirakel.model.task.Task;
 import de.azapps.mirakel.settings.R;
 import de.azapps.mirakel.settings.custom_views.Settings;
 import de.azapps.mirakel.settings.model_settings.tag.TagSettingsActivity;
+import de.azapps.mirakel.sync.taskwarrior.SyncMetrics;
 import de.azapps.tools.FileUtils;
+import de.azapps.tools.Log;
 
 public class DevSettingsFragment extends MirakelPreferencesFragment<Settings> {
+    private static final String TAG = "DevSettingsFragment";
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -119,12 +125,55 @@ public class DevSettingsFragment extends MirakelPreferencesFragment<Settings> {
             }
         });
 
+        final Preference syncMetrics = findPreference("syncMetrics");
+        syncMetrics.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(final Preference preference) {
+                showSyncMetrics();
+                return true;
+            }
+        });
+
         final Intent startTagIntent = new Intent(getActivity(),
                 TagSettingsActivity.class);
         final Preference tag = findPreference("tags");
         tag.setIntent(startTagIntent);
     }
 
+    private void showSyncMetrics() {
+        final List<SyncMetrics> metrics = SyncMetrics.getLast(getActivity());
+        final AlertDialogWrapper.Builder dialog = new AlertDialogWrapper.Builder(getActivity())
+        .setTitle(R.string.settings_dev_sync_metrics)
+        .setNegativeButton(android.R.string.ok, null);
+        if (metrics.isEmpty()) {
+            dialog.setMessage(R.string.settings_dev_sync_metrics_empty).show();
+            return;
+        }
+        final StringBuilder message = new StringBuilder();
+        for (final SyncMetrics m : metrics) {
+            message.append(m).append("\n\n");
+        }
+        dialog.setMessage(message.toString().trim())
+        .setPositiveButton(R.string.settings_dev_sync_metrics_export,
+        new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(final DialogInterface dialogInterface, final int i) {
+                exportSyncMetrics(metrics);
+            }
+        }).show();
+    }
+
+    private void exportSyncMetrics(final List<SyncMetrics> metrics) {
+        final File file = new File(FileUtils.getLogDir(), "sync_metrics.json");
+        try {
+            FileUtils.writeToFile(file, SyncMetrics.toJson(metrics));
+            Toast.makeText(getActivity(), getString(R.string.settings_dev_sync_metrics_exported,
+                                                    file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        } catch (final IOException e) {
+            Log.e(TAG, "cannot export sync metrics", e);
+        }
+    }
+
     @Override
     public void onResume() {
         super.onResume();
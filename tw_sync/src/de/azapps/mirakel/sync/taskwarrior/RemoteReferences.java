@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.sync.taskwarrior;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
+import de.azapps.mirakel.model.task.Task;
+import de.azapps.tools.Log;
+
+/**
+ * Collects the tags, dependencies and recurrence children of the remote tasks by uuid and
+ * writes them in one go after all tasks of a sync are in the database. The collected pairs are
+ * staged in temporary tables and compared with the stored ones by a few set based statements,
+ * so only links which really changed are deleted or inserted.
+ *
+ * The remote task is the owner of its tags and dependencies and the recurring child is the
+ * owner of its link to the master, so only links of synced tasks are replaced.
+ *
+ * The sync fingerprints of the tasks are written in the same transaction as their links. A task
+ * with a fingerprint is skipped by the next sync, so this must not happen before its links are
+ * in the database.
+ *
+ * Not thread-safe, all calls have to come from the same thread.
+ */
+class RemoteReferences {
+
+    private static final String TAG = "RemoteReferences";
+
+    private static class Link {
+        @NonNull
+        final String from;
+        @NonNull
+        final String to;
+        final long value;
+
+        Link(final @NonNull String from, final @NonNull String to, final long value) {
+            this.from = from;
+            this.to = to;
+            this.value = value;
+        }
+    }
+
+    // resolves the uuid of a staged column to the id of the task
+    private static String taskId(final String uuidColumn) {
+        return "(SELECT _id FROM tasks WHERE uuid = " + uuidColumn + ')';
+    }
+
+    private static final String SYNCED_TASK_IDS = "SELECT tasks._id FROM tasks INNER JOIN sync_task "
+            + "ON tasks.uuid = sync_task.uuid";
+
+    private final Map<String, String> tasks = new LinkedHashMap<>();
+    private final List<Link> tags = new ArrayList<>();
+    private final List<Link> dependencies = new ArrayList<>();
+    private final List<Link> recurringChilds = new ArrayList<>();
+
+    /**
+     * Marks the links of this task as replaced by the ones added for it
+     *
+     * @param fingerprint the sync fingerprint of the remote task, may be null
+     */
+    void addTask(final @NonNull String uuid, final @Nullable String fingerprint) {
+        tasks.put(uuid, fingerprint);
+    }
+
+    void addTag(final @NonNull String uuid, final long tagId) {
+        tags.add(new Link(uuid, "", tagId));
+    }
+
+    void addDependency(final @NonNull String parent, final @NonNull String child) {
+        dependencies.add(new Link(parent, child, 0L));
+    }
+
+    void addRecurringChild(final @NonNull String master, final @NonNull String child,
+                           final int offset) {
+        recurringChilds.add(new Link(master, child, offset));
+    }
+
+    boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    /**
+     * Replaces the links of all added tasks in one transaction
+     */
+    void apply() {
+        if (isEmpty()) {
+            return;
+        }
+        MirakelInternalContentProvider.withDatabase(new MirakelInternalContentProvider.SQLTransaction() {
+            @Override
+            public void exec(@NonNull final SQLiteDatabase db) {
+                stage(db);
+                applyTags(db);
+                applyDependencies(db);
+                applyRecurringChilds(db);
+                applyFingerprints(db);
+                // temporary tables live as long as the connection, so do not leave them behind
+                db.execSQL("DROP TABLE sync_task");
+                db.execSQL("DROP TABLE sync_task_tag");
+                db.execSQL("DROP TABLE sync_subtask");
+                db.execSQL("DROP TABLE sync_recurring");
+            }
+        }, Task.URI, MirakelInternalContentProvider.TAG_CONNECTION_URI,
+        MirakelInternalContentProvider.SUBTASK_URI, MirakelInternalContentProvider.RECURRING_TW_URI);
+        Log.d(TAG, "replaced the links of " + tasks.size() + " tasks: " + tags.size() + " tags, "
+              + dependencies.size() + " dependencies, " + recurringChilds.size() + " recurring children");
+        tasks.clear();
+        tags.clear();
+        dependencies.clear();
+        recurringChilds.clear();
+    }
+
+    private void stage(final @NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE TEMP TABLE sync_task (uuid TEXT PRIMARY KEY, fingerprint TEXT)");
+        db.execSQL("CREATE TEMP TABLE sync_task_tag (uuid TEXT NOT NULL, tag_id INTEGER NOT NULL)");
+        db.execSQL("CREATE TEMP TABLE sync_subtask (parent_uuid TEXT NOT NULL, child_uuid TEXT NOT NULL)");
+        db.execSQL("CREATE TEMP TABLE sync_recurring (parent_uuid TEXT NOT NULL, "
+                   + "child_uuid TEXT NOT NULL, offset_count INTEGER NOT NULL)");
+
+        final SQLiteStatement insertTask = db.compileStatement("INSERT INTO sync_task VALUES (?, ?)");
+        for (final Map.Entry<String, String> task : tasks.entrySet()) {
+            insertTask.bindString(1, task.getKey());
+            if (task.getValue() == null) {
+                insertTask.bindNull(2);
+            } else {
+                insertTask.bindString(2, task.getValue());
+            }
+            insertTask.executeInsert();
+        }
+        insertTask.close();
+        final SQLiteStatement insertTag = db.compileStatement("INSERT INTO sync_task_tag VALUES (?, ?)");
+        for (final Link tag : tags) {
+            insertTag.bindString(1, tag.from);
+            insertTag.bindLong(2, tag.value);
+            insertTag.executeInsert();
+        }
+        insertTag.close();
+        final SQLiteStatement insertSubtask = db.compileStatement("INSERT INTO sync_subtask VALUES (?, ?)");
+        for (final Link dependency : dependencies) {
+            insertSubtask.bindString(1, dependency.from);
+            insertSubtask.bindString(2, dependency.to);
+            insertSubtask.executeInsert();
+        }
+        insertSubtask.close();
+        final SQLiteStatement insertRecurring = db.compileStatement(
+                "INSERT INTO sync_recurring VALUES (?, ?, ?)");
+        for (final Link recurringChild : recurringChilds) {
+            insertRecurring.bindString(1, recurringChild.from);
+            insertRecurring.bindString(2, recurringChild.to);
+            insertRecurring.bindLong(3, recurringChild.value);
+            insertRecurring.executeInsert();
+        }
+        insertRecurring.close();
+        db.execSQL("CREATE INDEX sync_task_tag_idx ON sync_task_tag (uuid, tag_id)");
+        db.execSQL("CREATE INDEX sync_subtask_idx ON sync_subtask (parent_uuid, child_uuid)");
+        db.execSQL("CREATE INDEX sync_recurring_idx ON sync_recurring (child_uuid, parent_uuid)");
+    }
+
+    private static void applyTags(final @NonNull SQLiteDatabase db) {
+        db.execSQL("DELETE FROM task_tag WHERE task_id IN (" + SYNCED_TASK_IDS + ") AND NOT EXISTS "
+                   + "(SELECT 1 FROM sync_task_tag INNER JOIN tasks ON tasks.uuid = sync_task_tag.uuid "
+                   + "WHERE tasks._id = task_tag.task_id AND sync_task_tag.tag_id = task_tag.tag_id)");
+        db.execSQL("INSERT INTO task_tag (task_id, tag_id) SELECT DISTINCT tasks._id, sync_task_tag.tag_id "
+                   + "FROM sync_task_tag INNER JOIN tasks ON tasks.uuid = sync_task_tag.uuid WHERE NOT EXISTS "
+                   + "(SELECT 1 FROM task_tag WHERE task_tag.task_id = tasks._id "
+                   + "AND task_tag.tag_id = sync_task_tag.tag_id)");
+    }
+
+    private static void applyDependencies(final @NonNull SQLiteDatabase db) {
+        db.execSQL("DELETE FROM subtasks WHERE parent_id IN (" + SYNCED_TASK_IDS + ") AND NOT EXISTS "
+                   + "(SELECT 1 FROM sync_subtask WHERE " + taskId("sync_subtask.parent_uuid")
+                   + " = subtasks.parent_id AND " + taskId("sync_subtask.child_uuid") + " = subtasks.child_id)");
+        final SQLiteStatement countUnknown = db.compileStatement("SELECT COUNT(*) FROM sync_subtask WHERE "
+                                             + taskId("child_uuid") + " IS NULL");
+        final long unknown = countUnknown.simpleQueryForLong();
+        countUnknown.close();
+        if (unknown > 0L) {
+            Log.w(TAG, "skipped " + unknown + " dependencies to unknown tasks");
+        }
+        db.execSQL("INSERT INTO subtasks (parent_id, child_id) SELECT DISTINCT parent._id, child._id "
+                   + "FROM sync_subtask INNER JOIN tasks AS parent ON parent.uuid = sync_subtask.parent_uuid "
+                   + "INNER JOIN tasks AS child ON child.uuid = sync_subtask.child_uuid WHERE NOT EXISTS "
+                   + "(SELECT 1 FROM subtasks WHERE subtasks.parent_id = parent._id "
+                   + "AND subtasks.child_id = child._id)");
+    }
+
+    private static void applyRecurringChilds(final @NonNull SQLiteDatabase db) {
+        db.execSQL("DELETE FROM recurring_tw_mask WHERE child IN (" + SYNCED_TASK_IDS + ") AND NOT EXISTS "
+                   + "(SELECT 1 FROM sync_recurring WHERE " + taskId("sync_recurring.child_uuid")
+                   + " = recurring_tw_mask.child AND " + taskId("sync_recurring.parent_uuid")
+                   + " = recurring_tw_mask.parent AND sync_recurring.offset_count = recurring_tw_mask.offsetCount)");
+        db.execSQL("INSERT INTO recurring_tw_mask (parent, child, offsetCount) "
+                   + "SELECT master._id, child._id, sync_recurring.offset_count FROM sync_recurring "
+                   + "INNER JOIN tasks AS master ON master.uuid = sync_recurring.parent_uuid "
+                   + "INNER JOIN tasks AS child ON child.uuid = sync_recurring.child_uuid WHERE NOT EXISTS "
+                   + "(SELECT 1 FROM recurring_tw_mask WHERE recurring_tw_mask.parent = master._id "
+                   + "AND recurring_tw_mask.child = child._id "
+                   + "AND recurring_tw_mask.offsetCount = sync_recurring.offset_count)");
+        // the children share the recurrence of their master
+        db.execSQL("UPDATE tasks SET recurring = (SELECT master.recurring FROM sync_recurring "
+                   + "INNER JOIN tasks AS master ON master.uuid = sync_recurring.parent_uuid "
+                   + "WHERE sync_recurring.child_uuid = tasks.uuid) "
+                   + "WHERE uuid IN (SELECT child_uuid FROM sync_recurring)");
+    }
+
+    private static void applyFingerprints(final @NonNull SQLiteDatabase db) {
+        db.execSQL("UPDATE tasks SET sync_fingerprint = (SELECT fingerprint FROM sync_task "
+                   + "WHERE sync_task.uuid = tasks.uuid) WHERE uuid IN (SELECT uuid FROM sync_task)");
+    }
+}
@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.sync.taskwarrior;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTask;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TW_ERRORS;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorSyncFailedException;
+import de.azapps.tools.Log;
+
+/**
+ * Applies the remote tasks of a sync in three stages which run concurrently:
+ * <ol>
+ * <li>parse: the caller offers the parsed tasks, they are grouped into batches</li>
+ * <li>resolve: find out which tasks exist already and build the operations</li>
+ * <li>apply: write the operations to the database</li>
+ * </ol>
+ * The stages are connected by bounded queues, so a slow stage blocks the ones before it.
+ * The batch size adapts to the measured duration of the apply stage.
+ *
+ * @param <R> the result of the resolve stage
+ */
+public abstract class RemoteTaskPipeline<R> {
+
+    private static final String TAG = "RemoteTaskPipeline";
+
+    @VisibleForTesting
+    static final int MIN_BATCH_SIZE = 25;
+    // the uuids of a batch are bound as query arguments, sqlite allows at most 999 of them
+    @VisibleForTesting
+    static final int MAX_BATCH_SIZE = 500;
+    private static final int INITIAL_BATCH_SIZE = 100;
+    // Long transactions block the UI, so aim for this duration of one apply
+    private static final long TARGET_APPLY_MILLIS = 250L;
+    private static final int QUEUE_CAPACITY = 2;
+    private static final long POLL_MILLIS = 100L;
+
+    private static final Object END = new Object();
+
+    /**
+     * Time and throughput of one stage
+     */
+    public static class StageStatistics {
+        @NonNull
+        private final String name;
+        private long tasks;
+        private long batches;
+        private long busyNanos;
+        private long blockedNanos;
+
+        StageStatistics(final @NonNull String name) {
+            this.name = name;
+        }
+
+        synchronized void add(final int taskCount, final long busy, final long blocked) {
+            tasks += taskCount;
+            batches++;
+            busyNanos += busy;
+            blockedNanos += blocked;
+        }
+
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        public synchronized long getTasks() {
+            return tasks;
+        }
+
+        public synchronized long getBatches() {
+            return batches;
+        }
+
+        public synchronized long getBusyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(busyNanos);
+        }
+
+        /**
+         * Time the stage waited for the next or the previous stage
+         */
+        public synchronized long getBlockedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(blockedNanos);
+        }
+
+        public synchronized double getTasksPerSecond() {
+            if (busyNanos == 0L) {
+                return 0.0;
+            }
+            return (tasks * (double) TimeUnit.SECONDS.toNanos(1L)) / busyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %d tasks in %d batches, busy %d ms (%.0f tasks/s), blocked %d ms",
+                                 name, getTasks(), getBatches(), getBusyMillis(), getTasksPerSecond(),
+                                 getBlockedMillis());
+        }
+    }
+
+    /**
+     * Statistics of all stages of one sync
+     */
+    public static class Statistics {
+        public final StageStatistics parse = new StageStatistics("parse");
+        public final StageStatistics resolve = new StageStatistics("resolve");
+        public final StageStatistics apply = new StageStatistics("apply");
+        private long inserted;
+        private long updated;
+        private long deleted;
+        private long skipped;
+
+        /**
+         * Count what the resolve stage decided to do with the tasks of one batch
+         */
+        public synchronized void addOutcome(final int insertedTasks, final int updatedTasks,
+                                            final int deletedTasks, final int skippedTasks) {
+            inserted += insertedTasks;
+            updated += updatedTasks;
+            deleted += deletedTasks;
+            skipped += skippedTasks;
+        }
+
+        public synchronized long getInserted() {
+            return inserted;
+        }
+
+        public synchronized long getUpdated() {
+            return updated;
+        }
+
+        public synchronized long getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * Tasks which were not written because they did not change since the last sync
+         */
+        public synchronized long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Tasks which were written to the database
+         */
+        public synchronized long getApplied() {
+            return inserted + updated + deleted;
+        }
+
+        @Override
+        public String toString() {
+            return parse + "\n" + resolve + "\n" + apply + '\n' + String.format(Locale.US,
+                    "applied %d tasks (%d inserted, %d updated, %d deleted), skipped %d unchanged tasks",
+                    getApplied(), getInserted(), getUpdated(), getDeleted(), getSkipped());
+        }
+    }
+
+    private static class Batch<T> {
+        @NonNull
+        final Set<String> uuids;
+        @NonNull
+        final T value;
+
+        Batch(final @NonNull Set<String> uuids, final @NonNull T value) {
+            this.uuids = uuids;
+            this.value = value;
+        }
+    }
+
+    private final Statistics statistics = new Statistics();
+    private final BlockingQueue<Object> parsed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Object> resolved = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // uuids which are resolved but not applied yet
+    private final Set<String> inFlight = new HashSet<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private volatile int batchSize = INITIAL_BATCH_SIZE;
+    private Map<String, TaskWarriorTask> currentBatch = new LinkedHashMap<>(INITIAL_BATCH_SIZE);
+    private long parseStart = System.nanoTime();
+    private long parseBlocked;
+    private boolean started;
+
+    /**
+     * The stages are started with the first batch, after the subclass is constructed
+     */
+    private void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runResolve();
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runApply();
+            }
+        });
+    }
+
+    /**
+     * Resolve one batch of remote tasks, runs on the resolve thread
+     */
+    @NonNull
+    protected abstract R resolve(@NonNull Map<String, TaskWarriorTask> remoteTasks) throws
+        TaskWarriorSyncFailedException;
+
+    /**
+     * Apply one resolved batch, runs on the apply thread
+     */
+    protected abstract void apply(@NonNull R resolvedTasks) throws TaskWarriorSyncFailedException;
+
+    @NonNull
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Add a parsed task, blocks if the later stages are behind
+     */
+    public void offer(final @NonNull TaskWarriorTask task) throws TaskWarriorSyncFailedException {
+        currentBatch.put(task.getUUID(), task);
+        if (currentBatch.size() >= batchSize) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Wait until all offered tasks are applied
+     */
+    @NonNull
+    public Statistics finish() throws TaskWarriorSyncFailedException {
+        try {
+            if (!currentBatch.isEmpty()) {
+                flushBatch();
+            }
+            start();
+            put(parsed, END);
+            executor.shutdown();
+            while (!executor.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (final InterruptedException e) {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_PARSE_MESSAGE,
+                    "interrupted while applying tasks", e);
+        }
+        checkFailure();
+        Log.i(TAG, statistics.toString());
+        return statistics;
+    }
+
+    /**
+     * Stop all stages, tasks which were not applied yet are dropped
+     */
+    public void abort() {
+        failure.compareAndSet(null, new InterruptedException("aborted"));
+        executor.shutdownNow();
+    }
+
+    private void flushBatch() throws TaskWarriorSyncFailedException {
+        start();
+        final Map<String, TaskWarriorTask> batch = currentBatch;
+        currentBatch = new LinkedHashMap<>(batchSize);
+        final long blocked;
+        try {
+            blocked = put(parsed, batch);
+        } catch (final InterruptedException e) {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_PARSE_MESSAGE,
+                    "interrupted while parsing tasks", e);
+        }
+        parseBlocked += blocked;
+        final long now = System.nanoTime();
+        statistics.parse.add(batch.size(), now - parseStart - parseBlocked, parseBlocked);
+        parseStart = now;
+        parseBlocked = 0L;
+    }
+
+    /**
+     * @return the time the put was blocked in nanoseconds
+     */
+    private long put(final @NonNull BlockingQueue<Object> queue,
+                     final @NonNull Object item) throws TaskWarriorSyncFailedException, InterruptedException {
+        final long start = System.nanoTime();
+        while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void checkFailure() throws TaskWarriorSyncFailedException {
+        final Throwable t = failure.get();
+        if (t == null) {
+            return;
+        }
+        if (t instanceof TaskWarriorSyncFailedException) {
+            throw (TaskWarriorSyncFailedException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_PARSE_MESSAGE, t);
+    }
+
+    private void fail(final @NonNull Throwable t) {
+        failure.compareAndSet(null, t);
+        executor.shutdownNow();
+        parsed.clear();
+        resolved.clear();
+        synchronized (inFlight) {
+            inFlight.notifyAll();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runResolve() {
+        try {
+            while (true) {
+                long blocked = System.nanoTime();
+                final Object item = parsed.take();
+                if (item == END) {
+                    put(resolved, END);
+                    return;
+                }
+                final Map<String, TaskWarriorTask> batch = (Map<String, TaskWarriorTask>) item;
+                // A task which is still on its way to the database would be inserted twice
+                synchronized (inFlight) {
+                    while (!disjoint(inFlight, batch.keySet())) {
+                        checkFailure();
+                        inFlight.wait(POLL_MILLIS);
+                    }
+                    inFlight.addAll(batch.keySet());
+                }
+                final long start = System.nanoTime();
+                blocked = start - blocked;
+                final Batch<R> result = new Batch<>(new HashSet<>(batch.keySet()), resolve(batch));
+                final long busy = System.nanoTime() - start;
+                blocked += put(resolved, result);
+                statistics.resolve.add(batch.size(), busy, blocked);
+            }
+        } catch (final Throwable t) {
+            fail(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runApply() {
+        try {
+            while (true) {
+                final long waitStart = System.nanoTime();
+                final Object item = resolved.take();
+                if (item == END) {
+                    return;
+                }
+                final Batch<R> batch = (Batch<R>) item;
+                final long start = System.nanoTime();
+                apply(batch.value);
+                final long busy = System.nanoTime() - start;
+                synchronized (inFlight) {
+                    inFlight.removeAll(batch.uuids);
+                    inFlight.notifyAll();
+                }
+                statistics.apply.add(batch.uuids.size(), busy, start - waitStart);
+                adaptBatchSize(batch.uuids.size(), busy);
+            }
+        } catch (final Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void adaptBatchSize(final int size, final long busyNanos) {
+        final long millis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(busyNanos));
+        final long target = (size * TARGET_APPLY_MILLIS) / millis;
+        // move only halfway to the target to smooth out outliers
+        final long next = (batchSize + target) / 2L;
+        batchSize = (int) Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, next));
+    }
+
+    private static boolean disjoint(final @NonNull Set<String> a, final @NonNull Set<String> b) {
+        for (final String s : b) {
+            if (a.contains(s)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.sync.taskwarrior;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Optional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.azapps.mirakel.sync.taskwarrior.network_helper.TLSClient;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TW_ERRORS;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorAccount;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorSyncFailedException;
+import de.azapps.tools.Log;
+
+/**
+ * Runs the syncs of several TaskWarrior accounts at the same time on a bounded pool, so one
+ * slow server does not delay the others. Only the network part overlaps, the tasks of the
+ * accounts are written one after another (see {@link TaskWarriorSync}).
+ *
+ * Every sync has its own network timeout. If a server stays silent for longer, its sync is
+ * aborted and reported as {@link TW_ERRORS#TRY_LATER}, the others are not affected. Waiting for
+ * the other accounts and writing the tasks is not limited, so big syncs are never aborted.
+ */
+public class SyncCoordinator {
+
+    private static final String TAG = "SyncCoordinator";
+
+    public static final int DEFAULT_MAX_PARALLEL_SYNCS = 3;
+    public static final int DEFAULT_NETWORK_TIMEOUT_MILLIS = TLSClient.DEFAULT_TIMEOUT_MILLIS;
+
+    private static SyncCoordinator instance;
+
+    /**
+     * The outcome of the sync of one account
+     */
+    public static class Result {
+        @NonNull
+        private final TaskWarriorAccount account;
+        @NonNull
+        private final TW_ERRORS error;
+        @NonNull
+        private final Optional<RemoteTaskPipeline.Statistics> statistics;
+        private final long durationMillis;
+
+        Result(final @NonNull TaskWarriorAccount account, final @NonNull TW_ERRORS error,
+               final @NonNull Optional<RemoteTaskPipeline.Statistics> statistics, final long durationMillis) {
+            this.account = account;
+            this.error = error;
+            this.statistics = statistics;
+            this.durationMillis = durationMillis;
+        }
+
+        @NonNull
+        public TaskWarriorAccount getAccount() {
+            return account;
+        }
+
+        @NonNull
+        public TW_ERRORS getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == TW_ERRORS.NO_ERROR;
+        }
+
+        @NonNull
+        public Optional<RemoteTaskPipeline.Statistics> getStatistics() {
+            return statistics;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+
+    private static class RunningSync {
+        @NonNull
+        final TaskWarriorAccount account;
+        @NonNull
+        final TaskWarriorSync sync;
+        @NonNull
+        final Future<TW_ERRORS> future;
+        final long start;
+
+        RunningSync(final @NonNull TaskWarriorAccount account, final @NonNull TaskWarriorSync sync,
+                    final @NonNull Future<TW_ERRORS> future, final long start) {
+            this.account = account;
+            this.sync = sync;
+            this.future = future;
+            this.start = start;
+        }
+    }
+
+    @NonNull
+    private final Context context;
+    @NonNull
+    private final TaskWarriorSync.Connector connector;
+    private final int networkTimeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, TaskWarriorSync> running = new ConcurrentHashMap<>();
+
+    @NonNull
+    public static synchronized SyncCoordinator getInstance(final @NonNull Context context) {
+        if (instance == null) {
+            instance = new SyncCoordinator(context.getApplicationContext(), null,
+                                           DEFAULT_MAX_PARALLEL_SYNCS, DEFAULT_NETWORK_TIMEOUT_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * @param connector opens the connections, null to connect to the configured servers
+     * @param networkTimeoutMillis how long a server may stay silent
+     */
+    @VisibleForTesting
+    public SyncCoordinator(final @NonNull Context context, final TaskWarriorSync.Connector connector,
+                           final int maxParallelSyncs, final int networkTimeoutMillis) {
+        this.context = context;
+        this.connector = connector;
+        this.networkTimeoutMillis = networkTimeoutMillis;
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxParallelSyncs, maxParallelSyncs, 30L, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                return new Thread(r, "TaskWarriorSync-" + threadCount.incrementAndGet());
+            }
+        });
+        // do not keep threads around between two periodic syncs
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Syncs one account and waits for it
+     */
+    @NonNull
+    public Result sync(final @NonNull TaskWarriorAccount account) {
+        final List<TaskWarriorAccount> accounts = new ArrayList<>(1);
+        accounts.add(account);
+        return syncAll(accounts).get(0);
+    }
+
+    /**
+     * Syncs all accounts in parallel and waits until every sync finished
+     *
+     * @return the results in the order of the accounts
+     */
+    @NonNull
+    public List<Result> syncAll(final @NonNull List<TaskWarriorAccount> accounts) {
+        final List<RunningSync> syncs = new ArrayList<>(accounts.size());
+        for (final TaskWarriorAccount account : accounts) {
+            final TaskWarriorSync sync = createSync();
+            final Future<TW_ERRORS> future = executor.submit(new Callable<TW_ERRORS>() {
+                @Override
+                public TW_ERRORS call() throws Exception {
+                    return runSync(account, sync);
+                }
+            });
+            syncs.add(new RunningSync(account, sync, future, System.nanoTime()));
+        }
+        final List<Result> results = new ArrayList<>(syncs.size());
+        for (final RunningSync sync : syncs) {
+            results.add(await(sync));
+        }
+        return results;
+    }
+
+    /**
+     * Cancels the sync of this account if it is running
+     */
+    public void cancel(final @NonNull TaskWarriorAccount account) {
+        final TaskWarriorSync sync = running.get(account.getAccountMirakel().getId());
+        if (sync != null) {
+            sync.cancel();
+        }
+    }
+
+    @NonNull
+    private TaskWarriorSync createSync() {
+        final TaskWarriorSync sync;
+        if (connector == null) {
+            sync = new TaskWarriorSync(context);
+        } else {
+            sync = new TaskWarriorSync(context, connector);
+        }
+        sync.setNetworkTimeout(networkTimeoutMillis);
+        return sync;
+    }
+
+    @NonNull
+    private TW_ERRORS runSync(final @NonNull TaskWarriorAccount account,
+                              final @NonNull TaskWarriorSync sync) {
+        final long id = account.getAccountMirakel().getId();
+        running.put(id, sync);
+        try {
+            sync.sync(account, false);
+            return TW_ERRORS.NO_ERROR;
+        } catch (final TaskWarriorSyncFailedException e) {
+            if (sync.isCancelled()) {
+                // the error is only a consequence of the closed connection
+                return TW_ERRORS.TRY_LATER;
+            }
+            Log.e(TAG, "SyncError", e);
+            return e.getError();
+        } finally {
+            running.remove(id);
+        }
+    }
+
+    @NonNull
+    private Result await(final @NonNull RunningSync sync) {
+        // a silent server is detected by the sync itself, see TaskWarriorSync#setNetworkTimeout
+        TW_ERRORS error;
+        try {
+            error = sync.future.get();
+        } catch (final InterruptedException e) {
+            sync.sync.cancel();
+            sync.future.cancel(true);
+            Thread.currentThread().interrupt();
+            error = TW_ERRORS.TRY_LATER;
+        } catch (final ExecutionException e) {
+            Log.wtf(TAG, "sync of " + sync.account.getAccountMirakel().getName() + " crashed", e.getCause());
+            error = TW_ERRORS.CANNOT_PARSE_MESSAGE;
+        }
+        final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sync.start);
+        final Optional<RemoteTaskPipeline.Statistics> statistics = (error == TW_ERRORS.NO_ERROR) ?
+                sync.sync.getLastStatistics() : Optional.<RemoteTaskPipeline.Statistics>absent();
+        return new Result(sync.account, error, statistics, duration);
+    }
+}
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.sync.taskwarrior;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
+import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorWrapper;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
+import de.azapps.mirakel.sync.taskwarrior.network_helper.TLSClient;
+import de.azapps.mirakel.sync.taskwarrior.utilities.TW_ERRORS;
+
+/**
+ * Measurements of one sync. The last {@link #MAX_STORED} results are kept in the database and
+ * shown in the debug menu.
+ *
+ * The transaction and notification counters are the difference of the process wide counters of
+ * {@link MirakelInternalContentProvider} over the sync, so they include the writes of syncs of
+ * other accounts running at the same time.
+ */
+public class SyncMetrics {
+
+    public static final int MAX_STORED = 20;
+
+    public static final String ID = "_id";
+    public static final String ACCOUNT = "account";
+    public static final String STARTED_AT = "started_at";
+    public static final String RESULT = "result";
+    public static final String BYTES_SENT = "bytes_sent";
+    public static final String BYTES_RECEIVED = "bytes_received";
+    public static final String SETUP_TIME = "setup_time";
+    public static final String CONNECT_TIME = "connect_time";
+    public static final String HANDSHAKE_TIME = "handshake_time";
+    public static final String TRANSFER_TIME = "transfer_time";
+    public static final String PARSE_TIME = "parse_time";
+    public static final String APPLY_TIME = "apply_time";
+    public static final String TOTAL_TIME = "total_time";
+    public static final String INSERTED = "inserted";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+    public static final String SKIPPED = "skipped";
+    public static final String TRANSACTIONS = "transactions";
+    public static final String NOTIFICATIONS = "notifications";
+
+    private static final String[] ALL_COLUMNS = {ACCOUNT, STARTED_AT, RESULT, BYTES_SENT,
+                                                 BYTES_RECEIVED, SETUP_TIME, CONNECT_TIME, HANDSHAKE_TIME, TRANSFER_TIME, PARSE_TIME,
+                                                 APPLY_TIME, TOTAL_TIME, INSERTED, UPDATED, DELETED, SKIPPED, TRANSACTIONS, NOTIFICATIONS
+                                                };
+
+    @NonNull
+    private final String account;
+    private final long startedAt;
+    @NonNull
+    private String result = TW_ERRORS.NO_ERROR.name();
+    private long bytesSent;
+    private long bytesReceived;
+    private long setupTime;
+    private long connectTime;
+    private long handshakeTime;
+    private long transferTime;
+    private long parseTime;
+    private long applyTime;
+    private long totalTime;
+    private long inserted;
+    private long updated;
+    private long deleted;
+    private long skipped;
+    private long transactions;
+    private long notifications;
+
+    // only used while the sync is running
+    private final long startNanos;
+    private final long startTransactions;
+    private final long startNotifications;
+
+    private SyncMetrics(final @NonNull String account, final long startedAt) {
+        this.account = account;
+        this.startedAt = startedAt;
+        this.startNanos = System.nanoTime();
+        this.startTransactions = MirakelInternalContentProvider.getTransactionCount();
+        this.startNotifications = MirakelInternalContentProvider.getNotificationCount();
+    }
+
+    /**
+     * Starts the measurement of a sync of this account
+     */
+    @NonNull
+    public static SyncMetrics start(final @NonNull String account) {
+        return new SyncMetrics(account, System.currentTimeMillis());
+    }
+
+    /**
+     * Takes the connection setup times of the client
+     */
+    public void onConnected(final @NonNull TLSClient client) {
+        setupTime = client.getSetupTime();
+        connectTime = client.getConnectTime();
+        handshakeTime = client.getHandshakeTime();
+    }
+
+    /**
+     * Sending the request and receiving the response took this time
+     */
+    public void onTransferred(final long transferNanos) {
+        transferTime = TimeUnit.NANOSECONDS.toMillis(transferNanos);
+    }
+
+    public void onParsed(final @NonNull RemoteTaskPipeline.Statistics statistics) {
+        parseTime = statistics.parse.getBusyMillis();
+        applyTime = statistics.resolve.getBusyMillis() + statistics.apply.getBusyMillis();
+        inserted = statistics.getInserted();
+        updated = statistics.getUpdated();
+        deleted = statistics.getDeleted();
+        skipped = statistics.getSkipped();
+    }
+
+    /**
+     * Takes the byte counters of the client, must be called before the next connection
+     */
+    public void onDisconnected(final @NonNull TLSClient client) {
+        bytesSent += client.getBytesSent();
+        bytesReceived += client.getBytesReceived();
+    }
+
+    /**
+     * Stops the measurement
+     */
+    public void finish(final @NonNull TW_ERRORS error) {
+        result = error.name();
+        totalTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        transactions = MirakelInternalContentProvider.getTransactionCount() - startTransactions;
+        notifications = MirakelInternalContentProvider.getNotificationCount() - startNotifications;
+    }
+
+    /**
+     * Stores the result and drops everything but the last {@link #MAX_STORED} results
+     */
+    public void save(final @NonNull Context context) {
+        final ContentValues cv = new ContentValues();
+        cv.put(ACCOUNT, account);
+        cv.put(STARTED_AT, startedAt);
+        cv.put(RESULT, result);
+        cv.put(BYTES_SENT, bytesSent);
+        cv.put(BYTES_RECEIVED, bytesReceived);
+        cv.put(SETUP_TIME, setupTime);
+        cv.put(CONNECT_TIME, connectTime);
+        cv.put(HANDSHAKE_TIME, handshakeTime);
+        cv.put(TRANSFER_TIME, transferTime);
+        cv.put(PARSE_TIME, parseTime);
+        cv.put(APPLY_TIME, applyTime);
+        cv.put(TOTAL_TIME, totalTime);
+        cv.put(INSERTED, inserted);
+        cv.put(UPDATED, updated);
+        cv.put(DELETED, deleted);
+        cv.put(SKIPPED, skipped);
+        cv.put(TRANSACTIONS, transactions);
+        cv.put(NOTIFICATIONS, notifications);
+        context.getContentResolver().insert(MirakelInternalContentProvider.SYNC_METRICS_URI, cv);
+        context.getContentResolver().delete(MirakelInternalContentProvider.SYNC_METRICS_URI,
+                                            ID + " NOT IN (SELECT " + ID + " FROM " + MirakelInternalContentProvider.SYNC_METRICS
+                                            + " ORDER BY " + ID + " DESC LIMIT " + MAX_STORED + ')', null);
+    }
+
+    private SyncMetrics(final @NonNull CursorGetter getter) {
+        account = getter.getString(ACCOUNT);
+        startedAt = getter.getLong(STARTED_AT);
+        result = getter.getString(RESULT);
+        bytesSent = getter.getLong(BYTES_SENT);
+        bytesReceived = getter.getLong(BYTES_RECEIVED);
+        setupTime = getter.getLong(SETUP_TIME);
+        connectTime = getter.getLong(CONNECT_TIME);
+        handshakeTime = getter.getLong(HANDSHAKE_TIME);
+        transferTime = getter.getLong(TRANSFER_TIME);
+        parseTime = getter.getLong(PARSE_TIME);
+        applyTime = getter.getLong(APPLY_TIME);
+        totalTime = getter.getLong(TOTAL_TIME);
+        inserted = getter.getLong(INSERTED);
+        updated = getter.getLong(UPDATED);
+        deleted = getter.getLong(DELETED);
+        skipped = getter.getLong(SKIPPED);
+        transactions = getter.getLong(TRANSACTIONS);
+        notifications = getter.getLong(NOTIFICATIONS);
+        startNanos = 0L;
+        startTransactions = 0L;
+        startNotifications = 0L;
+    }
+
+    /**
+     * @return the stored results, the newest first
+     */
+    @NonNull
+    public static List<SyncMetrics> getLast(final @NonNull Context context) {
+        return new MirakelQueryBuilder(context).select(ALL_COLUMNS).sort(ID,
+                MirakelQueryBuilder.Sorting.DESC).query(MirakelInternalContentProvider.SYNC_METRICS_URI)
+        .doWithCursor(new CursorWrapper.CursorConverter<List<SyncMetrics>>() {
+            @Override
+            public List<SyncMetrics> convert(@NonNull final CursorGetter getter) {
+                final List<SyncMetrics> metrics = new ArrayList<>(getter.getCount());
+                while (getter.moveToNext()) {
+                    metrics.add(new SyncMetrics(getter));
+                }
+                return metrics;
+            }
+        });
+    }
+
+    @VisibleForTesting
+    public static void clear(final @NonNull Context context) {
+        context.getContentResolver().delete(MirakelInternalContentProvider.SYNC_METRICS_URI, null,
+                                            null);
+    }
+
+    @NonNull
+    public String getAccount() {
+        return account;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    @NonNull
+    public String getResult() {
+        return result;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getSetupTime() {
+        return setupTime;
+    }
+
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    public long getHandshakeTime() {
+        return handshakeTime;
+    }
+
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    public long getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * The time spent looking up the local tasks and writing the remote tasks
+     */
+    public long getApplyTime() {
+        return applyTime;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public long getNotifications() {
+        return notifications;
+    }
+
+    @NonNull
+    public JsonObject toJson() {
+        final JsonObject json = new JsonObject();
+        json.addProperty(ACCOUNT, account);
+        json.addProperty(STARTED_AT, startedAt);
+        json.addProperty(RESULT, result);
+        json.addProperty(BYTES_SENT, bytesSent);
+        json.addProperty(BYTES_RECEIVED, bytesReceived);
+        json.addProperty(SETUP_TIME, setupTime);
+        json.addProperty(CONNECT_TIME, connectTime);
+        json.addProperty(HANDSHAKE_TIME, handshakeTime);
+        json.addProperty(TRANSFER_TIME, transferTime);
+        json.addProperty(PARSE_TIME, parseTime);
+        json.addProperty(APPLY_TIME, applyTime);
+        json.addProperty(TOTAL_TIME, totalTime);
+        json.addProperty(INSERTED, inserted);
+        json.addProperty(UPDATED, updated);
+        json.addProperty(DELETED, deleted);
+        json.addProperty(SKIPPED, skipped);
+        json.addProperty(TRANSACTIONS, transactions);
+        json.addProperty(NOTIFICATIONS, notifications);
+        return json;
+    }
+
+    @NonNull
+    public static String toJson(final @NonNull List<SyncMetrics> metrics) {
+        final JsonArray json = new JsonArray();
+        for (final SyncMetrics m : metrics) {
+            json.add(m.toJson());
+        }
+        return new GsonBuilder().setPrettyPrinting().create().toJson(json);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                             "%s %s: %s in %d ms\n" +
+                             "sent %d bytes, received %d bytes\n" +
+                             "setup %d ms, connect %d ms, handshake %d ms, transfer %d ms, parse %d ms, apply %d ms\n" +
+                             "%d inserted, %d updated, %d deleted, %d skipped\n" +
+                             "%d transactions, %d notifications",
+                             new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date(startedAt)),
+                             account, result, totalTime, bytesSent, bytesReceived, setupTime, connectTime,
+                             handshakeTime, transferTime, parseTime, applyTime, inserted, updated, deleted, skipped,
+                             transactions, notifications);
+    }
+}
@@ -25,52 +25,57 @@ import android.content.OperationApplicationException;
 import android.os.Looper;
 import android.os.RemoteException;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
+import com.google.common.io.CharStreams;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.nio.charset.MalformedInputException;
 import java.security.cert.CertificateException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.azapps.mirakel.DefinitionsHelper;
 import de.azapps.mirakel.helper.Helpers;
 import de.azapps.mirakel.helper.MirakelCommonPreferences;
 import de.azapps.mirakel.helper.export_import.ExportImport;
+import de.azapps.mirakel.model.DatabaseHelper;
 import de.azapps.mirakel.model.account.AccountMirakel;
 import de.azapps.mirakel.model.list.ListMirakel;
-import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
 import de.azapps.mirakel.model.query_builder.CursorGetter;
 import de.azapps.mirakel.model.query_builder.CursorWrapper;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
 import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
-import de.azapps.mirakel.model.recurring.Recurring;
 import de.azapps.mirakel.model.tags.Tag;
 import de.azapps.mirakel.model.task.Task;
 import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorRecurrence;
+import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorSerializationContext;
 import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTask;
-import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTaskDeserializer;
+import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTaskReader;
 import de.azapps.mirakel.sync.taskwarrior.model.TaskWarriorTaskSerializer;
 import de.azapps.mirakel.sync.taskwarrior.network_helper.Msg;
 import de.azapps.mirakel.sync.taskwarrior.network_helper.TLSClient;
+import de.azapps.mirakel.sync.taskwarrior.network_helper.TeeWriter;
 import de.azapps.mirakel.sync.taskwarrior.network_helper.TLSClient.NoSuchCertificateException;
 import de.azapps.mirakel.sync.taskwarrior.utilities.TW_ERRORS;
 import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorAccount;
@@ -78,7 +83,6 @@ import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorSyncFailedExcepti
 import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorTaskDeletedException;
 import de.azapps.tools.FileUtils;
 import de.azapps.tools.Log;
-import de.azapps.tools.OptionalUtils;
 
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.of;
@@ -90,97 +94,136 @@ public class TaskWarriorSync {
 
     private int clientSyncKeyFailResyncCount = 0;
 
-    private static final int MAX_TASKS_PER_TRANSACTION = 100;
-
     // Outgoing.
 
     private static final String TAG = "TaskWarriorSync";
     public static final String TYPE = "TaskWarrior";
 
 
+    /**
+     * Opens the connection to the taskd server of an account
+     */
+    public interface Connector {
+        @NonNull
+        TLSClient connect(@NonNull TaskWarriorAccount taskWarriorAccount) throws
+            TaskWarriorSyncFailedException;
+    }
+
+    private static final Connector DEFAULT_CONNECTOR = new Connector() {
+        @NonNull
+        @Override
+        public TLSClient connect(@NonNull final TaskWarriorAccount taskWarriorAccount) throws
+            TaskWarriorSyncFailedException {
+            return setupConnection(taskWarriorAccount);
+        }
+    };
+
+    // Syncs of several accounts talk to their servers in parallel, but write one after another
+    private static final Object APPLY_LOCK = new Object();
+
     private final Context mContext;
+    @NonNull
+    private final Connector connector;
+    @NonNull
+    private Optional<RemoteTaskPipeline.Statistics> lastStatistics = absent();
+    private volatile boolean cancelled;
+    private int networkTimeoutMillis = TLSClient.DEFAULT_TIMEOUT_MILLIS;
+    @Nullable
+    private volatile TLSClient currentClient;
+    // measures the outermost sync, the retries after a reset sync key are part of it
+    @Nullable
+    private SyncMetrics metrics;
 
     public TaskWarriorSync(final Context ctx) {
+        this(ctx, DEFAULT_CONNECTOR);
+    }
+
+    public TaskWarriorSync(final Context ctx, final @NonNull Connector connector) {
         this.mContext = ctx;
+        this.connector = connector;
     }
 
-    private void doSync(final TaskWarriorAccount taskWarriorAccount, final Msg syncMessage)
-    throws TaskWarriorSyncFailedException {
-        Log.longInfo(syncMessage.getPayload());
-        final TLSClient client = setupConnection(taskWarriorAccount);
-        final Msg remotes = queryServer(syncMessage, client);
+    /**
+     * Stops a running sync from another thread. A blocking network call fails because the
+     * connection is closed, the writing of tasks stops before the next batch.
+     */
+    public void cancel() {
+        cancelled = true;
+        final TLSClient client = currentClient;
+        if (client != null) {
+            client.close();
+        }
+    }
 
-        checkError(taskWarriorAccount, client, remotes);
-        // parse tasks
-        parseTasks(taskWarriorAccount, remotes);
-        client.close();
+    /**
+     * Limits how long the server may stay silent. Waiting for other syncs and writing the tasks
+     * is not limited, so a big sync which makes progress is never aborted.
+     */
+    public void setNetworkTimeout(final int timeoutMillis) {
+        this.networkTimeoutMillis = timeoutMillis;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void checkCancelled() throws TaskWarriorSyncFailedException {
+        if (cancelled) {
+            throw new TaskWarriorSyncFailedException(TW_ERRORS.TRY_LATER, "sync cancelled");
+        }
+    }
+
+    private void doSync(final TaskWarriorAccount taskWarriorAccount, final Msg syncMessage,
+                        final @NonNull List<Task> localTasks)
+    throws TaskWarriorSyncFailedException {
+        checkCancelled();
+        final TLSClient client = connector.connect(taskWarriorAccount);
+        currentClient = client;
+        if (metrics != null) {
+            metrics.onConnected(client);
+        }
+        try {
+            // cancel() may have missed the client
+            checkCancelled();
+            try {
+                client.setTimeout(networkTimeoutMillis);
+            } catch (final SocketException e) {
+                throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_CREATE_SOCKET, e);
+            }
+            final long transferStart = System.nanoTime();
+            final Msg remotes = queryServer(syncMessage, client);
+            if (metrics != null) {
+                metrics.onTransferred(System.nanoTime() - transferStart);
+            }
+            // the recovery of some errors syncs again, this must not block the other accounts
+            checkError(taskWarriorAccount, client, remotes);
+            synchronized (APPLY_LOCK) {
+                checkCancelled();
+                // parse tasks
+                parseTasks(taskWarriorAccount, remotes);
+                Log.w(TAG, "clear sync state");
+                Task.resetSyncState(localTasks);
+            }
+        } finally {
+            currentClient = null;
+            if (metrics != null) {
+                metrics.onDisconnected(client);
+            }
+            client.close();
+        }
     }
 
     @VisibleForTesting
     public void parseTasks(TaskWarriorAccount taskWarriorAccount,
                            Msg remotes) throws TaskWarriorSyncFailedException {
-        if ((remotes.getPayload() == null) || remotes.getPayload().isEmpty()) {
+        if (!hasPayload(remotes)) {
             Log.i(TAG, "there is no Payload");
         } else {
-            final Map<String, TaskWarriorTask> remoteTasks = new HashMap<>(0);
-
-            final Optional<String> newSyncKey = parseTasks(remotes, remoteTasks);
-
-            // lookup tables
-            final Map<String, Long> projectMapping = createProjects(taskWarriorAccount, remoteTasks);
-            final Map<String, Long> tagMapping = createTags(remoteTasks);
-            final Map<String, Long> idMapping = new HashMap<>(remoteTasks.size());
-
-            final ListMirakel inbox = ListMirakel.getInboxList(taskWarriorAccount.getAccountMirakel());
-
-            // lists for deletion
-            final List<Long> allUpdatedTasks = new ArrayList<>(remoteTasks.size());
-            final List<Long> allDeletedTasks = new ArrayList<>(remoteTasks.size());
-
-            final List<String> uuids = new ArrayList<>(remoteTasks.keySet());
-            if (!uuids.isEmpty()) {
-                for (int i = 0; i < ((remoteTasks.size() / MAX_TASKS_PER_TRANSACTION) + 1); i++) {
-                    int end = (i + 1) * MAX_TASKS_PER_TRANSACTION;
-                    if (end > uuids.size()) {
-                        end = uuids.size();
-                    }
-                    if (end <= i * MAX_TASKS_PER_TRANSACTION) {
-                        break;
-                    }
-                    final List<String> transactionUUIDS = uuids.subList(i * MAX_TASKS_PER_TRANSACTION, end);
-                    final List<String> newUUIDS = new ArrayList<>(0);
-
-                    // updated tasks
-                    final ArrayList<ContentProviderOperation> pendingOperations = handleUpdatedTasks(remoteTasks,
-                            projectMapping, inbox, allUpdatedTasks, allDeletedTasks, transactionUUIDS, idMapping);
-
-                    handleInsertNewTasks(remoteTasks, projectMapping, inbox, transactionUUIDS, newUUIDS,
-                                         pendingOperations);
-
-                    try {
-                        mContext.getContentResolver().applyBatch(DefinitionsHelper.AUTHORITY_INTERNAL, pendingOperations);
-                    } catch (RemoteException | OperationApplicationException e) {
-                        Log.wtf(TAG, "failed to execute sync operations", e);
-                        throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_PARSE_MESSAGE, e);
-                    }
-                    if (!newUUIDS.isEmpty()) {
-                        new MirakelQueryBuilder(mContext).select(Task.UUID, Task.ID).and(Task.UUID,
-                                Operation.IN,
-                        newUUIDS).query(Task.URI).doWithCursor(new CursorWrapper.WithCursor() {
-                            @Override
-                            public void withOpenCursor(@NonNull CursorGetter getter) {
-                                while (getter.moveToNext()) {
-                                    idMapping.put(getter.getString(Task.UUID), getter.getLong(Task.ID));
-                                }
-                            }
-                        });
-                    }
-                }
-                // delete deleted tasks
-                mContext.getContentResolver().delete(Task.URI, Task.ID + " IN (" + TextUtils.join(",",
-                                                     allDeletedTasks) + ')', null);
-                handleReferences(remoteTasks, tagMapping, allUpdatedTasks, idMapping);
-            }
+            final RemoteState state = new RemoteState(ListMirakel.getInboxList(
+                        taskWarriorAccount.getAccountMirakel()));
+            final Optional<String> newSyncKey = parseTasks(taskWarriorAccount, remotes, state);
+            // all tasks are in the database now, so every reference can be resolved
+            state.references.apply();
             taskWarriorAccount.setSyncKey(newSyncKey);
         }
         final Optional<String> message = remotes.getHeader("message");
@@ -200,8 +243,10 @@ public class TaskWarriorSync {
                 if (status.get().contains("Could not find common ancestor")) {
                     // Ok, lets backup, reset the sync key and sync with empty message
 
-                    // backup
-                    Looper.prepare();
+                    // backup, the sync threads are reused and may have a looper already
+                    if (Looper.myLooper() == null) {
+                        Looper.prepare();
+                    }
                     ExportImport.exportDB(mContext);
 
                     // reset sync key
@@ -244,32 +289,39 @@ public class TaskWarriorSync {
     @NonNull
     private Msg queryServer(final @NonNull Msg syncMessage,
                             final @NonNull TLSClient client) throws TaskWarriorSyncFailedException {
-        client.send(syncMessage.serialize());
-        final String response = client.recv();
-        if (MirakelCommonPreferences.isEnabledDebugMenu()
-            && MirakelCommonPreferences.isDumpTw()) {
-            Log.longInfo(response);
-            try {
-                FileUtils.writeToFile(new File(FileUtils.getLogDir(), getTime()
-                                               + ".tw_down.log"), response);
-            } catch (final IOException e) {
-                Log.e(TAG, "Error writing tw_down.log", e);
-            }
-        }
+        client.send(syncMessage);
         final Msg remotes = new Msg();
         try {
-            remotes.parse(response);
+            final BufferedReader response = client.recvLines();
+            if (MirakelCommonPreferences.isEnabledDebugMenu()
+                && MirakelCommonPreferences.isDumpTw()) {
+                final String dump = CharStreams.toString(response);
+                Log.longInfo(dump);
+                try {
+                    FileUtils.writeToFile(new File(FileUtils.getLogDir(), getTime()
+                                                   + ".tw_down.log"), dump);
+                } catch (final IOException e) {
+                    Log.e(TAG, "Error writing tw_down.log", e);
+                }
+                remotes.parse(dump);
+            } else {
+                remotes.parse(response);
+            }
         } catch (final MalformedInputException e) {
             Log.e(TAG, "cannot parse message", e);
             client.close();
             throw new TaskWarriorSyncFailedException(
                 TW_ERRORS.CANNOT_PARSE_MESSAGE, "cannot parse message", e);
-        } catch (final NullPointerException e) {
-            Log.wtf(TAG, "remotes.parse throwed NullPointer", e);
+        } catch (final SocketTimeoutException e) {
+            Log.w(TAG, "server did not answer", e);
+            client.close();
+            throw new TaskWarriorSyncFailedException(
+                TW_ERRORS.TRY_LATER, "server did not answer", e);
+        } catch (final IOException e) {
+            Log.e(TAG, "cannot receive message", e);
             client.close();
             throw new TaskWarriorSyncFailedException(
-                TW_ERRORS.CANNOT_PARSE_MESSAGE,
-                "remotes.parse throwed NullPointer", e);
+                TW_ERRORS.CANNOT_PARSE_MESSAGE, "cannot receive message", e);
         }
         return remotes;
     }
@@ -280,8 +332,8 @@ public class TaskWarriorSync {
         TaskWarriorSyncFailedException {
         final TLSClient client = new TLSClient();
         try {
-            client.init(taskWarriorAccount.getRootCert(), taskWarriorAccount.getUserCert(),
-                        taskWarriorAccount.getUserId());
+            client.init(taskWarriorAccount.getUser(), taskWarriorAccount.getRootCert(),
+                        taskWarriorAccount.getUserCert(), taskWarriorAccount.getUserId());
         } catch (final ParseException e) {
             Log.e(TAG, "cannot open certificate", e);
             throw new TaskWarriorSyncFailedException(
@@ -303,99 +355,151 @@ public class TaskWarriorSync {
             throw new TaskWarriorSyncFailedException(
                 TW_ERRORS.CANNOT_CREATE_SOCKET, "cannot create socket", e);
         }
+        Log.i(TAG, "connection setup: " + client.getSetupTime() + "ms" + (client.isContextCached() ?
+                " (cached)" : "") + ", connect: " + client.getConnectTime() + "ms, handshake: " +
+              client.getHandshakeTime() + "ms" + (client.isSessionResumed() ? " (resumed)" : ""));
         return client;
     }
 
+    private static boolean hasPayload(final @NonNull Msg remotes)
+    throws TaskWarriorSyncFailedException {
+        try {
+            return remotes.hasPayload();
+        } catch (final IOException e) {
+            throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_PARSE_MESSAGE,
+                    "cannot read payload", e);
+        }
+    }
+
+    /**
+     * Reads the payload line by line and hands the tasks to a {@link RemoteTaskPipeline}, so
+     * parsing, looking up the local tasks and writing to the database overlap.
+     *
+     * @return the new sync key
+     */
     @NonNull
-    private static Optional<String> parseTasks(final @NonNull Msg remotes,
-            final @NonNull Map<String, TaskWarriorTask> remoteTasks) {
+    private Optional<String> parseTasks(final @NonNull TaskWarriorAccount taskWarriorAccount,
+                                        final @NonNull Msg remotes, final @NonNull RemoteState state)
+    throws TaskWarriorSyncFailedException {
         Optional<String> newSyncKey = absent();
-        final String tasksString[] = remotes.getPayload().split("\n");
-        final Gson gson = new GsonBuilder().registerTypeAdapter(TaskWarriorTask.class,
-                new TaskWarriorTaskDeserializer()).create();
+        final BufferedReader tasks = remotes.getPayloadReader();
+        final TaskWarriorTaskReader taskReader = new TaskWarriorTaskReader();
+        final RemoteTaskPipeline<ResolvedTasks> pipeline = new RemoteTaskPipeline<ResolvedTasks>() {
+            @NonNull
+            @Override
+            protected ResolvedTasks resolve(final @NonNull Map<String, TaskWarriorTask> remoteTasks) {
+                return resolveRemoteTasks(taskWarriorAccount, remoteTasks, state, getStatistics());
+            }
+
+            @Override
+            protected void apply(final @NonNull ResolvedTasks resolvedTasks) throws
+                TaskWarriorSyncFailedException {
+                applyRemoteTasks(resolvedTasks, state);
+            }
+        };
 
         // parse tasks
-        for (final String taskString : tasksString) {
-            if (taskString.charAt(0) != '{') {
-                Log.d(TAG, "Key: " + taskString);
-                newSyncKey = of(taskString);
-                continue;
+        try {
+            String taskString;
+            while ((taskString = tasks.readLine()) != null) {
+                if (taskString.isEmpty()) {
+                    continue;
+                }
+                if (taskString.charAt(0) != '{') {
+                    Log.d(TAG, "Key: " + taskString);
+                    newSyncKey = of(taskString);
+                    continue;
+                }
+                if (cancelled) {
+                    pipeline.abort();
+                    checkCancelled();
+                }
+                pipeline.offer(taskReader.read(taskString));
             }
-            final TaskWarriorTask t = gson.fromJson(taskString, TaskWarriorTask.class);
-            remoteTasks.put(t.getUUID(), t);
+        } catch (final IOException e) {
+            pipeline.abort();
+            throw new TaskWarriorSyncFailedException(TW_ERRORS.CANNOT_PARSE_MESSAGE,
+                    "cannot read payload", e);
+        } catch (final RuntimeException | TaskWarriorSyncFailedException e) {
+            pipeline.abort();
+            throw e;
+        }
+        lastStatistics = Optional.of(pipeline.finish());
+        if (metrics != null) {
+            metrics.onParsed(lastStatistics.get());
         }
         return newSyncKey;
     }
 
-    private void handleReferences(final @NonNull Map<String, TaskWarriorTask> remoteTasks,
-                                  final @NonNull Map<String, Long> tagMapping, @NonNull final List<Long> allUpdatedTasks,
-                                  final @NonNull Map<String, Long> idMapping) throws TaskWarriorSyncFailedException {
-        final String taskList = TextUtils.join(",", allUpdatedTasks);
-        // delete all subtasks
-        mContext.getContentResolver().delete(MirakelInternalContentProvider.SUBTASK_URI,
-                                             "child_id IN(" + taskList + ')', null);
-        // delete all tags
-        mContext.getContentResolver().delete(MirakelInternalContentProvider.TAG_CONNECTION_URI,
-                                             "task_id IN(" + taskList + ')', null);
-        // delete recurring
-        mContext.getContentResolver().delete(MirakelInternalContentProvider.RECURRING_TW_URI,
-                                             Recurring.CHILD + " IN(" + taskList + ')', null);
+    /**
+     * Statistics of the stages of the last sync
+     */
+    @NonNull
+    public Optional<RemoteTaskPipeline.Statistics> getLastStatistics() {
+        return lastStatistics;
+    }
 
-        final ArrayList<ContentProviderOperation> pendingOperations = new ArrayList<>(remoteTasks.size());
-        final Map<String, Long> recurringMapping = new HashMap<>(0);
-        for (final TaskWarriorTask t : remoteTasks.values()) {
-            if (t.isNotDeleted()) {
-                for (final String tag : t.getTags()) {
-                    final ContentValues cv = new ContentValues();
-                    cv.put("task_id", idMapping.get(t.getUUID()));
-                    cv.put("tag_id", tagMapping.get(tag));
-                    pendingOperations.add(ContentProviderOperation.newInsert(
-                                              MirakelInternalContentProvider.TAG_CONNECTION_URI).withValues(cv).build());
-                }
-                for (final String child : t.getDependencies()) {
-                    final ContentValues cv = new ContentValues();
-                    cv.put("parent_id", idMapping.get(t.getUUID()));
-                    cv.put("child_id", idMapping.get(child));
-                    pendingOperations.add(ContentProviderOperation.newInsert(
-                                              MirakelInternalContentProvider.SUBTASK_URI).withValues(cv).build());
-                }
-                if (t.isRecurringMaster()) {
-                    try {
-                        final Optional<TaskWarriorRecurrence> r = t.getRecurrence();
-                        if (r.isPresent()) {
-                            r.get().create();
-                            recurringMapping.put(t.getUUID(), r.get().getId());
-                            final ContentValues cv = new ContentValues();
-                            cv.put(Task.RECURRING, r.get().getId());
-                            pendingOperations.add(ContentProviderOperation.newUpdate(Task.URI).withSelection(Task.UUID + "=?",
-                                                  new String[] {t.getUUID()}).withValues(cv).build());
-                        }
-                    } catch (final TaskWarriorRecurrence.NotSupportedRecurrenceException ignored) {
-                        // eat it for now
-                    }
+    /**
+     * Looks up which of the remote tasks exist already and builds the operations to write them.
+     * Runs on the resolve thread of the pipeline.
+     */
+    @NonNull
+    private ResolvedTasks resolveRemoteTasks(final @NonNull TaskWarriorAccount taskWarriorAccount,
+            final @NonNull Map<String, TaskWarriorTask> remoteTasks, final @NonNull RemoteState state,
+            final @NonNull RemoteTaskPipeline.Statistics statistics) {
+        // lookup tables
+        addProjects(taskWarriorAccount, remoteTasks, state.projectMapping);
+        addTags(remoteTasks, state.tagMapping);
+        final ResolvedTasks resolved = new ResolvedTasks(remoteTasks);
+
+        final List<String> uuids = new ArrayList<>(remoteTasks.keySet());
+        final List<String> unchanged = new ArrayList<>(0);
+        // updated tasks
+        resolved.pendingOperations.addAll(handleUpdatedTasks(remoteTasks, state.projectMapping,
+                                          state.inbox, resolved.updatedTasks, resolved.deletedTasks, uuids, unchanged,
+                                          resolved.idMapping));
+        final int updates = resolved.pendingOperations.size();
+        handleInsertNewTasks(remoteTasks, state.projectMapping, state.inbox, uuids, resolved.newUUIDS,
+                             resolved.pendingOperations);
+        // the references of unchanged tasks are still in the database
+        remoteTasks.keySet().removeAll(unchanged);
+        statistics.addOutcome(resolved.pendingOperations.size() - updates, resolved.updatedTasks.size(),
+                              resolved.deletedTasks.size(), unchanged.size());
+        return resolved;
+    }
 
+    /**
+     * Writes one resolved batch to the database. Runs on the apply thread of the pipeline.
+     */
+    private void applyRemoteTasks(final @NonNull ResolvedTasks resolved,
+                                  final @NonNull RemoteState state) throws TaskWarriorSyncFailedException {
+        applyOperations(resolved.pendingOperations);
+
+        final Map<String, Long> idMapping = resolved.idMapping;
+        if (!resolved.newUUIDS.isEmpty()) {
+            new MirakelQueryBuilder(mContext).select(Task.UUID, Task.ID).and(Task.UUID,
+                    Operation.IN,
+            resolved.newUUIDS).query(Task.URI).doWithCursor(new CursorWrapper.WithCursor() {
+                @Override
+                public void withOpenCursor(@NonNull CursorGetter getter) {
+                    while (getter.moveToNext()) {
+                        idMapping.put(getter.getString(Task.UUID), getter.getLong(Task.ID));
+                    }
                 }
-            }
+            });
         }
-        final Collection<TaskWarriorTask> recurringChilds = Collections2.filter(remoteTasks.values(),
-        new Predicate<TaskWarriorTask>() {
-            @Override
-            public boolean apply(TaskWarriorTask input) {
-                return input.isRecurringChild();
-            }
-        });
-        for (final TaskWarriorTask t : recurringChilds) {
-            final String parentUUID = t.getParent();
-            final ContentValues updateCV = new ContentValues();
-            updateCV.put(Task.RECURRING, recurringMapping.get(parentUUID));
-            pendingOperations.add(ContentProviderOperation.newUpdate(Task.URI).withSelection(Task.UUID + "=?",
-                                  new String[] {t.getUUID()}).withValues(updateCV).build());
-            final ContentValues insertCV = new ContentValues();
-            insertCV.put(Recurring.CHILD, idMapping.get(t.getUUID()));
-            insertCV.put(Recurring.PARENT, idMapping.get(parentUUID));
-            insertCV.put(Recurring.OFFSET_COUNT, t.getImask());
-            pendingOperations.add(ContentProviderOperation.newInsert(
-                                      MirakelInternalContentProvider.RECURRING_TW_URI).withValues(insertCV).build());
+        // delete deleted tasks
+        if (!resolved.deletedTasks.isEmpty()) {
+            mContext.getContentResolver().delete(Task.URI, Task.ID + " IN (" + TextUtils.join(",",
+                                                 resolved.deletedTasks) + ')', null);
+        }
+        handleReferences(resolved.remoteTasks, state, idMapping);
+    }
+
+    private void applyOperations(final @NonNull ArrayList<ContentProviderOperation> pendingOperations)
+    throws TaskWarriorSyncFailedException {
+        if (pendingOperations.isEmpty()) {
+            return;
         }
         try {
             mContext.getContentResolver().applyBatch(DefinitionsHelper.AUTHORITY_INTERNAL, pendingOperations);
@@ -405,6 +509,46 @@ public class TaskWarriorSync {
         }
     }
 
+    /**
+     * Writes the recurrence masters of one chunk. The tags, dependencies and recurring children
+     * may point to tasks of a later chunk, so they are only collected in the state.
+     */
+    private void handleReferences(final @NonNull Map<String, TaskWarriorTask> remoteTasks,
+                                  final @NonNull RemoteState state,
+                                  final @NonNull Map<String, Long> idMapping) throws TaskWarriorSyncFailedException {
+        final ArrayList<ContentProviderOperation> pendingOperations = new ArrayList<>(0);
+        for (final TaskWarriorTask t : remoteTasks.values()) {
+            if (!t.isNotDeleted() || !idMapping.containsKey(t.getUUID())) {
+                continue;
+            }
+            state.references.addTask(t.getUUID(), t.getFingerprint().orNull());
+            if (t.isRecurringChild()) {
+                state.references.addRecurringChild(t.getParent(), t.getUUID(), t.getImask());
+            }
+            for (final String tag : t.getTags()) {
+                state.references.addTag(t.getUUID(), state.tagMapping.get(tag));
+            }
+            for (final String child : t.getDependencies()) {
+                state.references.addDependency(t.getUUID(), child);
+            }
+            if (t.isRecurringMaster()) {
+                try {
+                    final Optional<TaskWarriorRecurrence> r = t.getRecurrence();
+                    if (r.isPresent()) {
+                        r.get().create();
+                        final ContentValues cv = new ContentValues();
+                        cv.put(Task.RECURRING, r.get().getId());
+                        pendingOperations.add(ContentProviderOperation.newUpdate(Task.URI).withSelection(Task.UUID + "=?",
+                                              new String[] {t.getUUID()}).withValues(cv).build());
+                    }
+                } catch (final TaskWarriorRecurrence.NotSupportedRecurrenceException ignored) {
+                    // eat it for now
+                }
+            }
+        }
+        applyOperations(pendingOperations);
+    }
+
     private void handleInsertNewTasks(final @NonNull Map<String, TaskWarriorTask> remoteTasks,
                                       final @NonNull Map<String, Long> projectMapping, final @NonNull ListMirakel inbox,
                                       final @NonNull List<String> uuids, final @NonNull List<String> newUUIDS,
@@ -424,10 +568,11 @@ public class TaskWarriorSync {
             Map<String, TaskWarriorTask> remoteTasks, final @NonNull Map<String, Long> projectMapping,
             final @NonNull ListMirakel inbox, final @NonNull List<Long> allUpdatedTasks,
             final @NonNull List<Long> allDeletedTasks, final @NonNull List<String> uuids,
-            final @NonNull Map<String, Long> idMapping) {
+            final @NonNull List<String> unchangedTasks, final @NonNull Map<String, Long> idMapping) {
         final ArrayList<ContentProviderOperation> pendingOperations = new ArrayList<>(remoteTasks.size());
         new MirakelQueryBuilder(mContext).select(Task.UUID, Task.ID,
-                Task.ADDITIONAL_ENTRIES).and(Task.UUID, Operation.IN,
+                Task.ADDITIONAL_ENTRIES, Task.SYNC_FINGERPRINT, DatabaseHelper.UPDATED_AT,
+                DatabaseHelper.SYNC_STATE_FIELD).and(Task.UUID, Operation.IN,
         uuids).query(Task.URI).doWithCursor(new CursorWrapper.WithCursor() {
             @Override
             public void withOpenCursor(@NonNull CursorGetter getter) {
@@ -436,7 +581,14 @@ public class TaskWarriorSync {
                     final long localId = getter.getLong(Task.ID);
                     final String additionals = getter.getString(Task.ADDITIONAL_ENTRIES);
                     final TaskWarriorTask remoteTask = remoteTasks.get(uuid);
-                    if (remoteTask.isNotDeleted()) {
+                    final int syncState = getter.getInt(DatabaseHelper.SYNC_STATE_FIELD);
+                    // local changes which are not synced yet must not be hidden by a skip
+                    final boolean changedLocally = (syncState == DefinitionsHelper.SYNC_STATE.NEED_SYNC.toInt())
+                                                   || (syncState == DefinitionsHelper.SYNC_STATE.DELETE.toInt());
+                    if (!changedLocally && remoteTask.isUnchanged(getter.getString(Task.SYNC_FINGERPRINT),
+                            getter.getLong(DatabaseHelper.UPDATED_AT))) {
+                        unchangedTasks.add(uuid);
+                    } else if (remoteTask.isNotDeleted()) {
                         try {
                             pendingOperations.add(remoteTask.getUpdate(localId, additionals, projectMapping, inbox.getId()));
                             allUpdatedTasks.add(localId);
@@ -455,15 +607,18 @@ public class TaskWarriorSync {
         return pendingOperations;
     }
 
-    private Map<String, Long> createProjects(final @NonNull TaskWarriorAccount taskWarriorAccount,
-            final @NonNull Map<String, TaskWarriorTask> remoteTasks) {
+    private void addProjects(final @NonNull TaskWarriorAccount taskWarriorAccount,
+                             final @NonNull Map<String, TaskWarriorTask> remoteTasks,
+                             final @NonNull Map<String, Long> projectMapping) {
         final Set<String> projects = new HashSet<>(0);
         for (final TaskWarriorTask t : remoteTasks.values()) {
-            if (t.hasProject()) {
+            if (t.hasProject() && !projectMapping.containsKey(t.getProject())) {
                 projects.add(t.getProject());
             }
         }
-        final Map<String, Long> projectMapping = new HashMap<>(projects.size());
+        if (projects.isEmpty()) {
+            return;
+        }
         new MirakelQueryBuilder(mContext).and(ListMirakel.NAME, Operation.IN,
                                               new ArrayList<>(projects))
         .and(ListMirakel.ACCOUNT_ID, Operation.EQ, taskWarriorAccount.getAccountMirakel().getId())
@@ -489,27 +644,30 @@ public class TaskWarriorSync {
                 throw new IllegalStateException("List wasn't there but here is this list???", e);
             }
         }
-        return projectMapping;
     }
 
-    private Map<String, Long> createTags(final @NonNull Map<String, TaskWarriorTask> remoteTasks) {
+    private void addTags(final @NonNull Map<String, TaskWarriorTask> remoteTasks,
+                         final @NonNull Map<String, Long> tagMapping) {
         final Set<String> tags = new HashSet<>();
-        for (TaskWarriorTask t : remoteTasks.values()) {
-            tags.addAll(t.getTags());
+        for (final TaskWarriorTask t : remoteTasks.values()) {
+            for (final String tag : t.getTags()) {
+                if (!tagMapping.containsKey(tag)) {
+                    tags.add(tag);
+                }
+            }
         }
-
-
-        final Map<String, Long> tagMapping = new HashMap<>(remoteTasks.size());
-        new MirakelQueryBuilder(mContext).and(ListMirakel.NAME, Operation.IN,
+        if (tags.isEmpty()) {
+            return;
+        }
+        new MirakelQueryBuilder(mContext).and(Tag.NAME, Operation.IN,
                                               new ArrayList<>(tags)).select(Arrays.asList(new String[] {Tag.ID, Tag.NAME})).query(Tag.URI)
         .doWithCursor(new CursorWrapper.WithCursor() {
             @Override
             public void withOpenCursor(@NonNull final CursorGetter getter) {
                 while (getter.moveToNext()) {
                     final String name = getter.getString(Tag.NAME);
-                    if (remoteTasks.containsKey(name)) {
-                        remoteTasks.remove(name);
-                    }
+                    tagMapping.put(name, getter.getLong(Tag.ID));
+                    tags.remove(name);
                 }
             }
         });
@@ -517,10 +675,47 @@ public class TaskWarriorSync {
             final Tag t = Tag.newTag(tag);
             tagMapping.put(t.getName(), t.getId());
         }
-        return tagMapping;
+    }
+
+    /**
+     * Everything that has to survive between two chunks of remote tasks. The mappings are
+     * shared by the resolve and the apply stage, the references are collected by the apply
+     * stage and written after the pipeline finished.
+     */
+    private static class RemoteState {
+        @NonNull
+        final ListMirakel inbox;
+        final Map<String, Long> projectMapping = new ConcurrentHashMap<>();
+        final Map<String, Long> tagMapping = new ConcurrentHashMap<>();
+        final RemoteReferences references = new RemoteReferences();
+
+        RemoteState(final @NonNull ListMirakel inbox) {
+            this.inbox = inbox;
+        }
+    }
+
+    /**
+     * One batch of remote tasks after the local tasks were looked up
+     */
+    private static class ResolvedTasks {
+        @NonNull
+        final Map<String, TaskWarriorTask> remoteTasks;
+        final ArrayList<ContentProviderOperation> pendingOperations;
+        final List<Long> updatedTasks;
+        final List<Long> deletedTasks = new ArrayList<>(0);
+        final List<String> newUUIDS = new ArrayList<>(0);
+        final Map<String, Long> idMapping;
+
+        ResolvedTasks(final @NonNull Map<String, TaskWarriorTask> remoteTasks) {
+            this.remoteTasks = remoteTasks;
+            this.pendingOperations = new ArrayList<>(remoteTasks.size());
+            this.updatedTasks = new ArrayList<>(remoteTasks.size());
+            this.idMapping = new HashMap<>(remoteTasks.size());
+        }
     }
 
 
+
     String getTime() {
         return new SimpleDateFormat("dd-MM-yyyy_hh-mm-ss",
                                     Helpers.getLocale(this.mContext)).format(new Date());
@@ -540,65 +735,104 @@ public class TaskWarriorSync {
             }
 
         }
-        final Msg sync = getMsg(taskWarriorAccount, localTasks);
+        final boolean measure = metrics == null;
+        if (measure) {
+            metrics = SyncMetrics.start(taskWarriorAccount.getAccountMirakel().getName());
+        }
+        // anything but a TaskWarriorSyncFailedException is a bug in the handling of the message
+        TW_ERRORS result = TW_ERRORS.CANNOT_PARSE_MESSAGE;
         try {
-            doSync(taskWarriorAccount, sync);
+            final Msg sync = getMsg(taskWarriorAccount, localTasks);
+            doSync(taskWarriorAccount, sync, localTasks);
+            result = TW_ERRORS.NO_ERROR;
         } catch (final TaskWarriorSyncFailedException e) {
             //setDependencies();
+            result = e.getError();
             throw new TaskWarriorSyncFailedException(e.getError(), e);
+        } finally {
+            if (measure) {
+                finishMetrics(result);
+            }
+        }
+    }
+
+    private void finishMetrics(final @NonNull TW_ERRORS result) {
+        final SyncMetrics finished = metrics;
+        metrics = null;
+        if (finished == null) {
+            return;
+        }
+        finished.finish(cancelled ? TW_ERRORS.TRY_LATER : result);
+        Log.i(TAG, finished.toString());
+        try {
+            finished.save(mContext);
+        } catch (final RuntimeException e) {
+            // the measurement must never break the sync
+            Log.e(TAG, "cannot store sync metrics", e);
         }
-        Log.w(TAG, "clear sync state");
-        Task.resetSyncState(localTasks);
     }
 
     @NonNull
     @VisibleForTesting
     public Msg getMsg(@NonNull TaskWarriorAccount taskWarriorAccount,
-                      List<Task> localTasks) throws TaskWarriorSyncFailedException {
+                      final List<Task> localTasks) throws TaskWarriorSyncFailedException {
         final Msg sync = new Msg();
         sync.set("protocol", TW_PROTOCOL_VERSION);
         sync.set("type", "sync");
         sync.set("org", taskWarriorAccount.getOrg());
         sync.set("user", taskWarriorAccount.getUser());
         sync.set("key", taskWarriorAccount.getUserPassword());
-        final StringBuilder payload = new StringBuilder();
-        OptionalUtils.withOptional(taskWarriorAccount.getSyncKey(), new OptionalUtils.Procedure<String>() {
+        final Optional<String> syncKey = taskWarriorAccount.getSyncKey();
+        final Gson gson = createTaskGson(TaskWarriorSerializationContext.prefetch(mContext,
+                                         localTasks));
+        // Build sync-request, the tasks are serialized while the message is sent
+        sync.setPayload(new Msg.PayloadWriter() {
             @Override
-            public void apply(final String input) {
-                payload.append(input).append('\n');
+            public void write(@NonNull final Writer out) throws IOException {
+                final Writer payload = openDump(out);
+                try {
+                    if (syncKey.isPresent()) {
+                        payload.append(syncKey.get()).append('\n');
+                    }
+                    for (final Task task : localTasks) {
+                        gson.toJson(task, payload);
+                        payload.append('\n');
+                    }
+                    payload.flush();
+                } finally {
+                    if (payload != out) {
+                        payload.close();
+                    }
+                }
             }
         });
+        return sync;
+    }
 
-        for (final Task task : localTasks) {
-            payload.append(taskToJson(task)).append('\n');
-        }
-        // Build sync-request
-        sync.setPayload(payload.toString());
+    /**
+     * Tees the upload into tw_up.log if dumping is enabled
+     */
+    @NonNull
+    private Writer openDump(final @NonNull Writer out) {
         if (MirakelCommonPreferences.isDumpTw()) {
             try {
-                final FileWriter fileWriter = new FileWriter(new File(
-                            FileUtils.getLogDir(), getTime() + ".tw_up.log"));
-                fileWriter.write(payload.toString());
-                fileWriter.close();
+                return new TeeWriter(out, new FileWriter(new File(
+                                         FileUtils.getLogDir(), getTime() + ".tw_up.log")));
             } catch (final IOException e) {
                 Log.e(TAG, "Eat it", e);
                 // eat it
             }
         }
-        return sync;
+        return out;
     }
 
     /**
-     * Converts a task to the json-format we need
-     *
-     * @param task Task
-     * @return Task as json
+     * Creates the Gson which converts tasks to the json-format we need
      */
     @NonNull
-    String taskToJson(@NonNull final Task task) {
+    private static Gson createTaskGson(final @NonNull TaskWarriorSerializationContext context) {
         return new GsonBuilder()
                .registerTypeAdapter(Task.class,
-                                    new TaskWarriorTaskSerializer(this.mContext)).create()
-               .toJson(task);
+                                    new TaskWarriorTaskSerializer(context)).create();
     }
 }
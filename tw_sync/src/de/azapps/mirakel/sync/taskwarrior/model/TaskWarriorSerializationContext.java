@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.sync.taskwarrior.model;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.util.Pair;
+
+import com.google.common.base.Optional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.azapps.mirakel.DefinitionsHelper.SYNC_STATE;
+import de.azapps.mirakel.model.DatabaseHelper;
+import de.azapps.mirakel.model.generic.ModelBase;
+import de.azapps.mirakel.model.list.ListMirakel;
+import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
+import de.azapps.mirakel.model.query_builder.CursorGetter;
+import de.azapps.mirakel.model.query_builder.CursorWrapper;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
+import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Sorting;
+import de.azapps.mirakel.model.recurring.Recurring;
+import de.azapps.mirakel.model.tags.Tag;
+import de.azapps.mirakel.model.task.Task;
+
+/**
+ * Holds everything the TaskWarriorTaskSerializer needs besides the task itself. Use
+ * {@link #prefetch(Context, Collection)} to load it for all tasks of a sync with a few
+ * set based queries. Tasks which were not prefetched are looked up one by one.
+ */
+public class TaskWarriorSerializationContext {
+
+    // Stay well below SQLITE_MAX_VARIABLE_NUMBER
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private final Context mContext;
+
+    private final Set<Long> prefetched = new HashSet<>();
+    private final Map<Long, Recurring> recurrences = new HashMap<>();
+    private final Map<Long, List<String>> tags = new HashMap<>();
+    private final Map<Long, List<String>> subtasks = new HashMap<>();
+    // child id -> (master id, offset)
+    private final Map<Long, Pair<Long, Integer>> masters = new HashMap<>();
+    private final Map<Long, String> masterUUIDs = new HashMap<>();
+    // master id -> (child id, offset) sorted by offset
+    private final Map<Long, List<Pair<Long, Integer>>> masks = new HashMap<>();
+    private final Map<Long, Task> maskChilds = new HashMap<>();
+
+    public TaskWarriorSerializationContext(final @NonNull Context ctx) {
+        this.mContext = ctx;
+    }
+
+    @NonNull
+    public static TaskWarriorSerializationContext prefetch(final @NonNull Context ctx,
+            final @NonNull Collection<Task> tasks) {
+        final TaskWarriorSerializationContext context = new TaskWarriorSerializationContext(ctx);
+        context.load(tasks);
+        return context;
+    }
+
+    private void load(final @NonNull Collection<Task> tasks) {
+        final Set<Long> recurrenceIds = new HashSet<>();
+        for (final Task task : tasks) {
+            prefetched.add(task.getId());
+            if (task.getRecurrenceId() > 0L) {
+                recurrenceIds.add(task.getRecurrenceId());
+            }
+        }
+        final List<Long> ids = new ArrayList<>(prefetched);
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (final List<Long> chunk : chunks(new ArrayList<>(recurrenceIds))) {
+            for (final Recurring recurring : new MirakelQueryBuilder(mContext).and(ModelBase.ID,
+                    Operation.IN, chunk).getList(Recurring.class)) {
+                recurrences.put(recurring.getId(), recurring);
+            }
+        }
+        for (final List<Long> chunk : chunks(ids)) {
+            loadTags(chunk);
+            loadMasters(chunk);
+        }
+        loadMasterUUIDs();
+
+        final Set<Long> subtaskParents = new HashSet<>(prefetched);
+        final List<Long> recurringMasters = new ArrayList<>();
+        for (final Task task : tasks) {
+            if (masters.containsKey(task.getId())) {
+                subtaskParents.add(masters.get(task.getId()).first);
+            } else if (recurrences.containsKey(task.getRecurrenceId())) {
+                recurringMasters.add(task.getId());
+            }
+        }
+        for (final List<Long> chunk : chunks(new ArrayList<>(subtaskParents))) {
+            loadSubtasks(chunk);
+        }
+        for (final List<Long> chunk : chunks(recurringMasters)) {
+            loadMasks(chunk);
+        }
+        final List<Long> childIds = new ArrayList<>();
+        for (final List<Pair<Long, Integer>> mask : masks.values()) {
+            for (final Pair<Long, Integer> entry : mask) {
+                childIds.add(entry.first);
+            }
+        }
+        for (final List<Long> chunk : chunks(childIds)) {
+            for (final Task child : new MirakelQueryBuilder(mContext).and(ModelBase.ID, Operation.IN,
+                    chunk).and(DatabaseHelper.SYNC_STATE_FIELD, Operation.NOT_EQ,
+                               SYNC_STATE.DELETE.toInt()).getList(Task.class)) {
+                maskChilds.put(child.getId(), child);
+            }
+        }
+    }
+
+    private void loadTags(final @NonNull List<Long> chunk) {
+        new MirakelQueryBuilder(mContext).select(Tag.TAG_CONNECTION_TABLE + ".task_id",
+                Tag.TABLE + '.' + Tag.NAME).and(Tag.TAG_CONNECTION_TABLE + ".task_id", Operation.IN,
+                        chunk).query(MirakelInternalContentProvider.TASK_TAG_JOIN_URI)
+        .doWithCursor(new CursorWrapper.WithCursor() {
+            @Override
+            public void withOpenCursor(@NonNull final CursorGetter getter) {
+                while (getter.moveToNext()) {
+                    getOrCreate(tags, getter.getLong(0)).add(getter.getString(1));
+                }
+            }
+        });
+    }
+
+    private void loadMasters(final @NonNull List<Long> chunk) {
+        new MirakelQueryBuilder(mContext).select(Recurring.CHILD, Recurring.PARENT,
+                Recurring.OFFSET_COUNT).and(Recurring.CHILD, Operation.IN, chunk)
+        .sort(Recurring.OFFSET_COUNT, Sorting.ASC).query(MirakelInternalContentProvider.RECURRING_TW_URI)
+        .doWithCursor(new CursorWrapper.WithCursor() {
+            @Override
+            public void withOpenCursor(@NonNull final CursorGetter getter) {
+                while (getter.moveToNext()) {
+                    final long child = getter.getLong(0);
+                    if (!masters.containsKey(child)) {
+                        masters.put(child, new Pair<>(getter.getLong(1), getter.getInt(2)));
+                    }
+                }
+            }
+        });
+    }
+
+    private void loadMasterUUIDs() {
+        final Set<Long> masterIds = new HashSet<>();
+        for (final Pair<Long, Integer> master : masters.values()) {
+            masterIds.add(master.first);
+        }
+        for (final List<Long> chunk : chunks(new ArrayList<>(masterIds))) {
+            new MirakelQueryBuilder(mContext).select(Task.ID, Task.UUID).and(Task.ID, Operation.IN,
+                    chunk).and(DatabaseHelper.SYNC_STATE_FIELD, Operation.NOT_EQ,
+                               SYNC_STATE.DELETE.toInt()).query(Task.URI)
+            .doWithCursor(new CursorWrapper.WithCursor() {
+                @Override
+                public void withOpenCursor(@NonNull final CursorGetter getter) {
+                    while (getter.moveToNext()) {
+                        masterUUIDs.put(getter.getLong(Task.ID), getter.getString(Task.UUID));
+                    }
+                }
+            });
+        }
+    }
+
+    private void loadSubtasks(final @NonNull List<Long> chunk) {
+        ListMirakel.addSortBy(new MirakelQueryBuilder(mContext).select(Task.SUBTASK_TABLE + ".parent_id",
+                              Task.TABLE + '.' + Task.UUID).and(Task.SUBTASK_TABLE + ".parent_id", Operation.IN, chunk),
+                              ListMirakel.SORT_BY.OPT, false).query(MirakelInternalContentProvider.TASK_SUBTASK_URI)
+        .doWithCursor(new CursorWrapper.WithCursor() {
+            @Override
+            public void withOpenCursor(@NonNull final CursorGetter getter) {
+                while (getter.moveToNext()) {
+                    getOrCreate(subtasks, getter.getLong(0)).add(getter.getString(1));
+                }
+            }
+        });
+    }
+
+    private void loadMasks(final @NonNull List<Long> chunk) {
+        new MirakelQueryBuilder(mContext).select(Recurring.PARENT, Recurring.CHILD,
+                Recurring.OFFSET_COUNT).and(Recurring.PARENT, Operation.IN, chunk)
+        .sort(Recurring.OFFSET_COUNT, Sorting.ASC).query(MirakelInternalContentProvider.RECURRING_TW_URI)
+        .doWithCursor(new CursorWrapper.WithCursor() {
+            @Override
+            public void withOpenCursor(@NonNull final CursorGetter getter) {
+                while (getter.moveToNext()) {
+                    getOrCreate(masks, getter.getLong(0)).add(new Pair<>(getter.getLong(1),
+                            getter.getInt(2)));
+                }
+            }
+        });
+        for (final Long master : chunk) {
+            getOrCreate(masks, master);
+        }
+    }
+
+    @NonNull
+    public Optional<Recurring> getRecurrence(final @NonNull Task task) {
+        if (prefetched.contains(task.getId())) {
+            return Optional.fromNullable(recurrences.get(task.getRecurrenceId()));
+        }
+        return task.getRecurrence();
+    }
+
+    public boolean isRecurringMaster(final @NonNull Task task) {
+        if (!getRecurrence(task).isPresent()) {
+            return false;
+        }
+        if (prefetched.contains(task.getId())) {
+            return !masters.containsKey(task.getId());
+        }
+        return new MirakelQueryBuilder(mContext).and(Recurring.CHILD, Operation.EQ,
+                task).count(MirakelInternalContentProvider.RECURRING_TW_URI) == 0;
+    }
+
+    @NonNull
+    public List<String> getTagNames(final @NonNull Task task) {
+        if (prefetched.contains(task.getId())) {
+            final List<String> names = tags.get(task.getId());
+            return (names == null) ? new ArrayList<String>(0) : names;
+        }
+        final List<Tag> taskTags = task.getTags();
+        final List<String> names = new ArrayList<>(taskTags.size());
+        for (final Tag tag : taskTags) {
+            names.add(tag.getName());
+        }
+        return names;
+    }
+
+    /**
+     * The uuids of the subtasks, for recurring childs including the subtasks of the master
+     */
+    @NonNull
+    public List<String> getSubtaskUUIDs(final @NonNull Task task) {
+        if (!prefetched.contains(task.getId())) {
+            if (task.countSubtasks() == 0L) {
+                return new ArrayList<>(0);
+            }
+            final List<Task> subtaskList = task.getSubtasks();
+            final List<String> uuids = new ArrayList<>(subtaskList.size());
+            for (final Task subtask : subtaskList) {
+                uuids.add(subtask.getUUID());
+            }
+            return uuids;
+        }
+        final List<String> own = subtasks.get(task.getId());
+        if (own == null) {
+            return new ArrayList<>(0);
+        }
+        final List<String> uuids = new ArrayList<>(own);
+        final Pair<Long, Integer> master = masters.get(task.getId());
+        if (getRecurrence(task).isPresent() && (master != null) && (master.first != task.getId())
+            && subtasks.containsKey(master.first)) {
+            uuids.addAll(subtasks.get(master.first));
+        }
+        return uuids;
+    }
+
+    /**
+     * @return the id of the master and the offset of this child
+     */
+    @NonNull
+    public Optional<Pair<Long, Integer>> getMaster(final @NonNull Task child) {
+        if (prefetched.contains(child.getId())) {
+            return Optional.fromNullable(masters.get(child.getId()));
+        }
+        final Cursor cursor = mContext.getContentResolver()
+                              .query(MirakelInternalContentProvider.RECURRING_TW_URI,
+                                     new String[] { "parent", "offsetCount" },
+                                     "child=?", new String[] {String.valueOf(child.getId())},
+                                     null);
+        try {
+            if (cursor.moveToFirst()) {
+                return Optional.of(new Pair<>(cursor.getLong(0), cursor.getInt(1)));
+            }
+            return Optional.absent();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    public Optional<String> getMasterUUID(final long masterId) {
+        if (masterUUIDs.containsKey(masterId)) {
+            return Optional.of(masterUUIDs.get(masterId));
+        }
+        final Optional<Task> master = Task.get(masterId);
+        if (master.isPresent()) {
+            return Optional.of(master.get().getUUID());
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * @return the ids and offsets of the childs of the master sorted by the offset
+     */
+    @NonNull
+    public List<Pair<Long, Integer>> getMask(final @NonNull Task master) {
+        if (prefetched.contains(master.getId())) {
+            final List<Pair<Long, Integer>> mask = masks.get(master.getId());
+            return (mask == null) ? new ArrayList<Pair<Long, Integer>>(0) : mask;
+        }
+        final Cursor cursor = mContext.getContentResolver()
+                              .query(MirakelInternalContentProvider.RECURRING_TW_URI,
+                                     new String[] { "child", "offsetCount" },
+                                     "parent=?", new String[] {String.valueOf(master.getId())},
+                                     "offsetCount ASC");
+        final List<Pair<Long, Integer>> mask = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            mask.add(new Pair<>(cursor.getLong(0), cursor.getInt(1)));
+        }
+        cursor.close();
+        return mask;
+    }
+
+    @NonNull
+    public Optional<Task> getMaskChild(final @NonNull Task master, final long childId) {
+        if (prefetched.contains(master.getId())) {
+            return Optional.fromNullable(maskChilds.get(childId));
+        }
+        return Task.get(childId);
+    }
+
+    @NonNull
+    private static <T> List<T> getOrCreate(final @NonNull Map<Long, List<T>> map, final long key) {
+        List<T> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        return list;
+    }
+
+    @NonNull
+    private static List<List<Long>> chunks(final @NonNull List<Long> ids) {
+        final List<List<Long>> chunks = new ArrayList<>((ids.size() / MAX_IDS_PER_QUERY) + 1);
+        for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + MAX_IDS_PER_QUERY)));
+        }
+        return chunks;
+    }
+}
@@ -179,6 +179,10 @@ public class TaskWarriorTask {
     @NonNull
     private final Map<String, String> uda = new HashMap<>();
 
+    // hash of the json this task was read from
+    @NonNull
+    private Optional<String> fingerprint = absent();
+
     public TaskWarriorTask(@NonNull final String uuid, @NonNull final String status,
                            final @NonNull DateTime entry,
                            @NonNull final String description) {
@@ -281,6 +285,27 @@ public class TaskWarriorTask {
         return UUID;
     }
 
+    public void setFingerprint(final @NonNull String fingerprint) {
+        this.fingerprint = of(fingerprint);
+    }
+
+    @NonNull
+    public Optional<String> getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Checks if the local task is still exactly what the sync wrote for this remote version.
+     * A local change sets a new updated_at, so the task is only skipped if it was not touched.
+     *
+     * @param localFingerprint the fingerprint stored with the local task, may be null
+     * @param localUpdatedAt   the updated_at of the local task
+     */
+    public boolean isUnchanged(final @Nullable String localFingerprint, final long localUpdatedAt) {
+        return fingerprint.isPresent() && modified.isPresent() && fingerprint.get().equals(localFingerprint)
+               && (modified.get().getMillis() == localUpdatedAt);
+    }
+
     @NonNull
     public ContentProviderOperation getUpdate(final long localId,
             final @NonNull String additionalColumn, final @NonNull Map<String, Long> projectMapping,
@@ -385,6 +410,9 @@ public class TaskWarriorTask {
         handleAdditionalEntries(additionalEntries);
 
         cv.put(Task.ADDITIONAL_ENTRIES, Task.serializeAdditionalEntries(additionalEntries));
+        // the fingerprint is stored together with the links of the task, see RemoteReferences,
+        // until then the task must not be skipped by the next sync
+        cv.putNull(Task.SYNC_FINGERPRINT);
         return cv;
     }
 
@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.sync.taskwarrior.model;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the tasks sent by taskd. It decodes the fields of a task directly from a JsonReader
+ * without building a JsonElement tree first.
+ *
+ * The reader keeps scratch state between the fields of one task, so an instance must not be
+ * shared between threads.
+ */
+public class TaskWarriorTaskReader {
+
+    private static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat.basicDateTimeNoMillis();
+
+    // Taskd sorts the keys, so the required fields may come after the optional ones
+    private String uuid;
+    private String status;
+    private String entry;
+    private String description;
+    private String priority;
+    private String project;
+    private String modified;
+    private String due;
+    private String reminder;
+    private String depends;
+    private String recur;
+    private String parent;
+    private String mask;
+    private String until;
+    private Integer priorityNumber;
+    private Integer progress;
+    private Integer imask;
+    private final List<String> tags = new ArrayList<>();
+    private final List<String> annotationDescriptions = new ArrayList<>();
+    private final List<String> annotationEntries = new ArrayList<>();
+    private final List<String> udaKeys = new ArrayList<>();
+    private final List<String> udaValues = new ArrayList<>();
+
+    @NonNull
+    public TaskWarriorTask read(final @NonNull String json) throws JsonParseException {
+        final JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            final TaskWarriorTask task = read(reader);
+            task.setFingerprint(fingerprint(json));
+            return task;
+        } catch (final IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException("Invalid syntax", e);
+        }
+    }
+
+    /**
+     * Taskd writes the attributes of a task in a fixed order, so the same version of a task
+     * always has the same json and the same fingerprint
+     */
+    @NonNull
+    public static String fingerprint(final @NonNull String json) {
+        return Hashing.murmur3_128().hashString(json, Charsets.UTF_8).toString();
+    }
+
+    @NonNull
+    public TaskWarriorTask read(final @NonNull JsonReader reader) throws IOException,
+        JsonParseException {
+        clear();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String key = reader.nextName();
+            switch (key) {
+            case "uuid":
+                uuid = nextString(reader, key);
+                break;
+            case "status":
+                status = nextString(reader, key);
+                break;
+            case "entry":
+                entry = nextString(reader, key);
+                break;
+            case "description":
+                description = nextString(reader, key);
+                break;
+            case "priority":
+                priority = nextString(reader, key);
+                break;
+            case "priorityNumber":
+                priorityNumber = nextInt(reader, key);
+                break;
+            case "progress":
+                progress = nextInt(reader, key);
+                break;
+            case "project":
+                project = nextString(reader, key);
+                break;
+            case "modification":
+            case "modified":
+                modified = nextString(reader, key);
+                break;
+            case "due":
+                due = nextString(reader, key);
+                break;
+            case "reminder":
+                reminder = nextString(reader, key);
+                break;
+            case "annotations":
+                readAnnotations(reader);
+                break;
+            case "depends":
+                depends = nextString(reader, key);
+                break;
+            case "tags":
+                readTags(reader);
+                break;
+            case "recur":
+                recur = nextString(reader, key);
+                break;
+            case "imask":
+                imask = nextInt(reader, key);
+                break;
+            case "parent":
+                parent = nextString(reader, key);
+                break;
+            case "mask":
+                mask = nextString(reader, key);
+                break;
+            case "until":
+                until = nextString(reader, key);
+                break;
+            default:
+                udaKeys.add(key);
+                udaValues.add(nextPrimitive(reader, key));
+                break;
+            }
+        }
+        reader.endObject();
+        if (uuid == null || status == null || entry == null || description == null) {
+            throw new JsonParseException("Invalid syntax, missing required field");
+        }
+        final TaskWarriorTask task = new TaskWarriorTask(uuid, status, parseDate(entry), description);
+        if (priority != null) {
+            task.setPriority(priority);
+        }
+        if (priorityNumber != null) {
+            task.setPriorityNumber(priorityNumber);
+        }
+        if (progress != null) {
+            task.setProgress(progress);
+        }
+        if (project != null) {
+            task.setProject(project);
+        }
+        if (modified != null) {
+            task.setModified(parseDate(modified));
+        }
+        if (due != null) {
+            task.setDue(parseDate(due));
+        }
+        if (reminder != null) {
+            task.setReminder(parseDate(reminder));
+        }
+        for (int i = 0; i < annotationDescriptions.size(); i++) {
+            task.addAnnotation(annotationDescriptions.get(i), parseDate(annotationEntries.get(i)));
+        }
+        if (depends != null) {
+            task.addDepends(depends.split(","));
+        }
+        for (final String tag : tags) {
+            task.addTags(tag);
+        }
+        if (recur != null) {
+            task.setRecur(recur);
+        }
+        if (imask != null) {
+            task.setImask(imask);
+        }
+        if (parent != null) {
+            task.setParent(parent);
+        }
+        if (mask != null) {
+            task.setMask(mask);
+        }
+        if (until != null) {
+            task.setUntil(parseDate(until));
+        }
+        for (int i = 0; i < udaKeys.size(); i++) {
+            task.addUDA(udaKeys.get(i), udaValues.get(i));
+        }
+        return task;
+    }
+
+    private void clear() {
+        uuid = null;
+        status = null;
+        entry = null;
+        description = null;
+        priority = null;
+        project = null;
+        modified = null;
+        due = null;
+        reminder = null;
+        depends = null;
+        recur = null;
+        parent = null;
+        mask = null;
+        until = null;
+        priorityNumber = null;
+        progress = null;
+        imask = null;
+        tags.clear();
+        annotationDescriptions.clear();
+        annotationEntries.clear();
+        udaKeys.clear();
+        udaValues.clear();
+    }
+
+    private void readTags(final @NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new JsonParseException("tags is not a json array");
+        }
+        tags.clear();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.STRING) {
+                throw new JsonParseException("tag is not a string");
+            }
+            tags.add(reader.nextString());
+        }
+        reader.endArray();
+    }
+
+    private void readAnnotations(final @NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new JsonParseException("annotations is not a json array");
+        }
+        annotationDescriptions.clear();
+        annotationEntries.clear();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new JsonParseException("Annotation is not a json object");
+            }
+            String annotationDescription = null;
+            String annotationEntry = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String key = reader.nextName();
+                if ("description".equals(key)) {
+                    annotationDescription = nextString(reader, key);
+                } else if ("entry".equals(key)) {
+                    annotationEntry = nextString(reader, key);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (annotationDescription == null || annotationEntry == null) {
+                throw new JsonParseException("Annotation is not valid");
+            }
+            annotationDescriptions.add(annotationDescription);
+            annotationEntries.add(annotationEntry);
+        }
+        reader.endArray();
+    }
+
+    @NonNull
+    private static String nextString(final @NonNull JsonReader reader,
+                                     final @NonNull String key) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            throw new JsonParseException(key + " is not a json primitive");
+        }
+        return reader.nextString();
+    }
+
+    // taskd does not handle numbers in the right way
+    private static int nextInt(final @NonNull JsonReader reader,
+                               final @NonNull String key) throws IOException {
+        final JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            throw new JsonParseException(key + " is not a json primitive");
+        }
+        return (int) reader.nextDouble();
+    }
+
+    @NonNull
+    private static String nextPrimitive(final @NonNull JsonReader reader,
+                                        final @NonNull String key) throws IOException {
+        switch (reader.peek()) {
+        case STRING:
+        case NUMBER:
+            return reader.nextString();
+        case BOOLEAN:
+            return String.valueOf(reader.nextBoolean());
+        default:
+            throw new JsonParseException(key + " is not a json primitive");
+        }
+    }
+
+    @NonNull
+    private static DateTime parseDate(final @NonNull String date) {
+        return DATE_FORMAT.parseDateTime(date);
+    }
+}
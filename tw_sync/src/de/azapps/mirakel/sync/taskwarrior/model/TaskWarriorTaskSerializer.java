@@ -19,7 +19,8 @@
 package de.azapps.mirakel.sync.taskwarrior.model;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
 import android.util.Pair;
 
 import com.google.common.base.Optional;
@@ -40,21 +41,26 @@ import java.util.List;
 import java.util.Map;
 
 import de.azapps.mirakel.DefinitionsHelper.SYNC_STATE;
-import de.azapps.mirakel.model.provider.MirakelInternalContentProvider;
-import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder;
-import de.azapps.mirakel.model.query_builder.MirakelQueryBuilder.Operation;
 import de.azapps.mirakel.model.recurring.Recurring;
-import de.azapps.mirakel.model.tags.Tag;
 import de.azapps.mirakel.model.task.Task;
 import de.azapps.tools.Log;
 
 public class TaskWarriorTaskSerializer implements JsonSerializer<Task> {
 
     private static final String TAG = "TaskWarriorTaskSerializer";
-    private final Context mContext;
+    private final TaskWarriorSerializationContext serializationContext;
 
     public TaskWarriorTaskSerializer(final Context ctx) {
-        this.mContext = ctx;
+        this(new TaskWarriorSerializationContext(ctx));
+    }
+
+    /**
+     * @param serializationContext use {@link TaskWarriorSerializationContext#prefetch} to avoid
+     *                             queries per task
+     */
+    public TaskWarriorTaskSerializer(final @NonNull TaskWarriorSerializationContext
+                                     serializationContext) {
+        this.serializationContext = serializationContext;
     }
 
     private String formatCal(final DateTime calendar) {
@@ -82,13 +88,7 @@ public class TaskWarriorTaskSerializer implements JsonSerializer<Task> {
                                  final JsonSerializationContext context) {
         final JsonObject json = new JsonObject();
         final Map<String, String> additionals = src.getAdditionalEntries();
-        boolean isMaster = false;
-        if (src.getRecurrence().isPresent()) {
-            if (new MirakelQueryBuilder(mContext).and(Recurring.CHILD, Operation.EQ,
-                    src).count(MirakelInternalContentProvider.RECURRING_TW_URI) == 0) {
-                isMaster = true;
-            }
-        }
+        final boolean isMaster = serializationContext.isRecurringMaster(src);
         final Pair<String, String> statusEnd = getStatus(src, isMaster);
         final String status = statusEnd.second;
         final String end = statusEnd.first;
@@ -140,11 +140,12 @@ public class TaskWarriorTaskSerializer implements JsonSerializer<Task> {
             json.addProperty("progress", src.getProgress());
         }
         // Tags
-        if (!src.getTags().isEmpty()) {
+        final List<String> tagNames = serializationContext.getTagNames(src);
+        if (!tagNames.isEmpty()) {
             final JsonArray tags = new JsonArray();
-            for (final Tag t : src.getTags()) {
+            for (final String t : tagNames) {
                 // taskwarrior does not like whitespaces
-                tags.add(new JsonPrimitive(t.getName().trim().replace(" ", "_")));
+                tags.add(new JsonPrimitive(t.trim().replace(" ", "_")));
             }
             json.add("tags", tags);
         }
@@ -169,83 +170,61 @@ public class TaskWarriorTaskSerializer implements JsonSerializer<Task> {
         // Anotations end
         // TW.depends==Mirakel.subtasks!
         // Dependencies
-        if (src.countSubtasks() > 0L) {
-            boolean first1 = true;
-            final List<Task> subTasks = src.getSubtasks();
-            final StringBuilder depends = new StringBuilder(subTasks.size() * 10);
-            for (final Task subtask : subTasks) {
-                if (first1) {
-                    first1 = false;
-                } else {
-                    depends.append(',');
-                }
-                depends.append(subtask.getUUID());
-            }
-            json.addProperty("depends", depends.toString());
+        final List<String> subtasks = serializationContext.getSubtaskUUIDs(src);
+        if (!subtasks.isEmpty()) {
+            json.addProperty("depends", TextUtils.join(",", subtasks));
         }
         // recurring tasks must have a due
-        if (src.getRecurrence().isPresent() && src.getDue().isPresent()) {
-            handleRecurrence(json, src.getRecurrence().get());
+        final Optional<Recurring> recurrence = serializationContext.getRecurrence(src);
+        if (recurrence.isPresent() && src.getDue().isPresent()) {
+            handleRecurrence(json, recurrence.get());
             if (isMaster) {
-                final Cursor cursor = mContext.getContentResolver()
-                                      .query(MirakelInternalContentProvider.RECURRING_TW_URI,
-                                             new String[] { "child", "offsetCount" },
-                                             "parent=?", new String[] {String.valueOf(src.getId())},
-                                             "offsetCount ASC");
-                final StringBuilder mask = new StringBuilder(cursor.getCount());
-                cursor.moveToFirst();
-                if (cursor.getCount() > 0) {
-                    int oldOffset = -1;
-                    do {
-                        final int currentOffset = cursor.getInt(1);
-                        if (currentOffset <= oldOffset) {
-                            final long childId = cursor.getLong(0);
-                            // This should not happen – it means that one offset is twice in the DB
-                            final Optional<Task> child = Task.get(childId, true);
-                            if (child.isPresent()) {
-                                child.get().destroy(true);
-                            } else {
-                                // Whoa there is some garbage which we should destroy!
-                                Task.destroyRecurrenceGarbageForTask(childId);
-                            }
-                            continue;
-                        }
-                        while (++oldOffset < currentOffset) {
-                            mask.append('X');
-                        }
-                        final Optional<Task> child = Task.get(cursor.getLong(0));
-                        if (!child.isPresent()) {
-                            Log.wtf(TAG, "childtask is null");
-                            mask.append('X');
+                final List<Pair<Long, Integer>> children = serializationContext.getMask(src);
+                final StringBuilder mask = new StringBuilder(children.size());
+                int oldOffset = -1;
+                for (final Pair<Long, Integer> entry : children) {
+                    final int currentOffset = entry.second;
+                    if (currentOffset <= oldOffset) {
+                        final long childId = entry.first;
+                        // This should not happen – it means that one offset is twice in the DB
+                        final Optional<Task> child = Task.get(childId, true);
+                        if (child.isPresent()) {
+                            child.get().destroy(true);
                         } else {
-                            mask.append(getRecurrenceStatus(getStatus(child.get(),
-                                                            false).second));
+                            // Whoa there is some garbage which we should destroy!
+                            Task.destroyRecurrenceGarbageForTask(childId);
                         }
-                    } while (cursor.moveToNext());
+                        continue;
+                    }
+                    while (++oldOffset < currentOffset) {
+                        mask.append('X');
+                    }
+                    final Optional<Task> child = serializationContext.getMaskChild(src, entry.first);
+                    if (!child.isPresent()) {
+                        Log.wtf(TAG, "childtask is null");
+                        mask.append('X');
+                    } else {
+                        mask.append(getRecurrenceStatus(getStatus(child.get(),
+                                                        false).second));
+                    }
                 }
-                cursor.close();
                 json.addProperty("mask", mask.toString());
             } else {
-                final Cursor cursor = mContext.getContentResolver()
-                                      .query(MirakelInternalContentProvider.RECURRING_TW_URI,
-                                             new String[] { "parent", "offsetCount" },
-                                             "child=?", new String[] {String.valueOf(src.getId())},
-                                             null);
-                cursor.moveToFirst();
-                if (cursor.getCount() > 0) {
-                    final Optional<Task> master = Task.get(cursor.getLong(0));
-                    if (!master.isPresent()) {
+                final Optional<Pair<Long, Integer>> master = serializationContext.getMaster(src);
+                if (master.isPresent()) {
+                    final Optional<String> masterUUID = serializationContext.getMasterUUID(
+                                                            master.get().first);
+                    if (!masterUUID.isPresent()) {
                         // The parent is gone. This should not happen and we
                         // should delete the child then
                         src.destroy();
                     } else {
-                        json.addProperty("parent", master.get().getUUID());
-                        json.addProperty("imask", cursor.getInt(1));
+                        json.addProperty("parent", masterUUID.get());
+                        json.addProperty("imask", master.get().second);
                     }
                 } else {
                     Log.wtf(TAG, "no master found, but there must be a master");
                 }
-                cursor.close();
             }
         }
         // end Dependencies
@@ -340,7 +319,7 @@ public class TaskWarriorTaskSerializer implements JsonSerializer<Task> {
             } else {
                 end = formatCal(now);
             }
-        } else if (task.getRecurrence().isPresent() && isMaster) {
+        } else if (isMaster) {
             status = "recurring";
         } else if (task.containsAdditional("status")) {
             status = cleanQuotes(task.getAdditionalString("status"));
@@ -19,8 +19,16 @@
 
 package de.azapps.mirakel.sync.taskwarrior.network_helper;
 
+import android.support.annotation.NonNull;
+
 import com.google.common.base.Optional;
+import com.google.common.io.CharStreams;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.MalformedInputException;
 import java.util.HashMap;
 import java.util.Map;
@@ -28,8 +36,19 @@ import java.util.Map;
 import de.azapps.mirakel.DefinitionsHelper;
 
 public class Msg {
+
+    /**
+     * Writes the payload when the message is written, so it does not need to be built in memory
+     */
+    public interface PayloadWriter {
+        void write(@NonNull Writer out) throws IOException;
+    }
+
     private final Map<String, String> _header = new HashMap<>(5);
     private String _payload;
+    // Set if the payload was not read yet, see parse(BufferedReader)
+    private BufferedReader _payloadReader;
+    private PayloadWriter _payloadWriter;
 
     public Msg() {
         this._payload = "";
@@ -41,6 +60,8 @@ public class Msg {
     public void clear() {
         this._header.clear();
         this._payload = "";
+        this._payloadReader = null;
+        this._payloadWriter = null;
     }
 
     public void set(final String key, final int value) {
@@ -57,6 +78,14 @@ public class Msg {
 
     public void setPayload(final String payload) {
         this._payload = payload;
+        this._payloadReader = null;
+        this._payloadWriter = null;
+    }
+
+    public void setPayload(final @NonNull PayloadWriter payload) {
+        this._payload = "";
+        this._payloadReader = null;
+        this._payloadWriter = payload;
     }
 
 
@@ -69,22 +98,85 @@ public class Msg {
     }
 
     public String getPayload() {
+        if (this._payloadWriter != null) {
+            final StringWriter payload = new StringWriter();
+            try {
+                this._payloadWriter.write(payload);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Cannot write payload", e);
+            }
+            return payload.toString();
+        }
+        if (this._payloadReader != null) {
+            try {
+                this._payload = CharStreams.toString(this._payloadReader).trim();
+            } catch (final IOException e) {
+                throw new IllegalStateException("Cannot read payload", e);
+            }
+            this._payloadReader = null;
+        }
         return this._payload;
     }
 
+    /**
+     * Returns the payload line by line. If the message was parsed from a reader the
+     * lines are read directly from it, so they can only be consumed once.
+     */
+    @NonNull
+    public BufferedReader getPayloadReader() {
+        if (this._payloadReader != null) {
+            final BufferedReader reader = this._payloadReader;
+            this._payloadReader = null;
+            this._payload = "";
+            return reader;
+        }
+        final String payload = getPayload();
+        return new BufferedReader(new StringReader((payload == null) ? "" : payload));
+    }
+
+    public boolean hasPayload() throws IOException {
+        if (this._payloadReader != null) {
+            this._payloadReader.mark(1);
+            final boolean hasPayload = this._payloadReader.read() != -1;
+            this._payloadReader.reset();
+            return hasPayload;
+        }
+        final String payload = getPayload();
+        return (payload != null) && !payload.isEmpty();
+    }
+
 
     public String serialize() {
-        final StringBuilder output = new StringBuilder();
-        for (final Map.Entry<String, String> entry : this._header.entrySet()) {
-            output.append(entry.getKey() + ": " + entry.getValue() + '\n');
+        final StringWriter output = new StringWriter();
+        try {
+            writeTo(output);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot serialize message", e);
         }
-        output.append('\n' + this._payload + '\n');
         return output.toString();
     }
 
+    public void writeTo(final @NonNull Writer out) throws IOException {
+        for (final Map.Entry<String, String> entry : this._header.entrySet()) {
+            out.write(entry.getKey());
+            out.write(": ");
+            out.write(entry.getValue());
+            out.write('\n');
+        }
+        out.write('\n');
+        if (this._payloadWriter != null) {
+            this._payloadWriter.write(out);
+        } else {
+            out.write(this._payload);
+        }
+        out.write('\n');
+    }
+
     public void parse(final String input) throws MalformedInputException {
         this._header.clear();
         this._payload = "";
+        this._payloadReader = null;
+        this._payloadWriter = null;
         final int separator = input.indexOf("\n\n");
         if (separator == -1) {
             throw new MalformedInputException(input.length());
@@ -92,14 +184,50 @@ public class Msg {
         // Parse header.
         final String[] a = input.substring(0, separator).split("\n");
         for (final String s : a) {
-            final int delimiter = s.indexOf(':');
-            if (delimiter == -1) {
-                throw new MalformedInputException(s.length());
-            }
-            this._header.put(s.substring(0, delimiter)
-                             .trim(), s.substring(delimiter + 1).trim());
+            parseHeader(s);
         }
         this._payload = input.substring(separator + 2).trim();
     }
 
+    /**
+     * Parse the header from the reader, the payload is not read until it is requested
+     * via getPayloadReader() or getPayload()
+     */
+    public void parse(final @NonNull BufferedReader input) throws MalformedInputException,
+        IOException {
+        this._header.clear();
+        this._payload = "";
+        this._payloadReader = null;
+        this._payloadWriter = null;
+        String line = input.readLine();
+        int read = 0;
+        while ((line != null) && !line.isEmpty()) {
+            read += line.length() + 1;
+            parseHeader(line);
+            line = input.readLine();
+        }
+        if (line == null) {
+            throw new MalformedInputException(read);
+        }
+        // Skip leading whitespace like parse(String) does
+        int c;
+        do {
+            input.mark(1);
+            c = input.read();
+        } while ((c != -1) && Character.isWhitespace(c));
+        if (c != -1) {
+            input.reset();
+        }
+        this._payloadReader = input;
+    }
+
+    private void parseHeader(final @NonNull String line) throws MalformedInputException {
+        final int delimiter = line.indexOf(':');
+        if (delimiter == -1) {
+            throw new MalformedInputException(line.length());
+        }
+        this._header.put(line.substring(0, delimiter)
+                         .trim(), line.substring(delimiter + 1).trim());
+    }
+
 }
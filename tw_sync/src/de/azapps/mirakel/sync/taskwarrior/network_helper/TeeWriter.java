@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Mirakel is an Android App for managing your ToDo-Lists
+ *
+ *   Copyright (c) 2013-2015 Anatolij Zelenin, Georg Semmler.
+ *
+ *       This program is free software: you can redistribute it and/or modify
+ *       it under the terms of the GNU General Public License as published by
+ *       the Free Software Foundation, either version 3 of the License, or
+ *       any later version.
+ *
+ *       This program is distributed in the hope that it will be useful,
+ *       but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *       MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *       GNU General Public License for more details.
+ *
+ *       You should have received a copy of the GNU General Public License
+ *       along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.azapps.mirakel.sync.taskwarrior.network_helper;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes everything to the target and to a copy, e.g. a debug dump
+ */
+public class TeeWriter extends Writer {
+    @NonNull
+    private final Writer target;
+    @NonNull
+    private final Writer copy;
+
+    public TeeWriter(final @NonNull Writer target, final @NonNull Writer copy) {
+        this.target = target;
+        this.copy = copy;
+    }
+
+    @Override
+    public void write(final @NonNull char[] buffer, final int offset, final int count)
+    throws IOException {
+        target.write(buffer, offset, count);
+        copy.write(buffer, offset, count);
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        target.write(c);
+        copy.write(c);
+    }
+
+    @Override
+    public void write(final @NonNull String str, final int offset, final int count)
+    throws IOException {
+        target.write(str, offset, count);
+        copy.write(str, offset, count);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+        copy.flush();
+    }
+
+    /**
+     * Closes only the copy, the target belongs to the caller
+     */
+    @Override
+    public void close() throws IOException {
+        copy.close();
+    }
+}
@@ -37,14 +37,18 @@ import android.support.v4.app.NotificationCompat;
 
 import com.google.common.base.Optional;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import de.azapps.mirakel.DefinitionsHelper;
 import de.azapps.mirakel.helper.MirakelCommonPreferences;
 import de.azapps.mirakel.model.account.AccountMirakel;
 import de.azapps.mirakel.sync.R;
+import de.azapps.mirakel.sync.taskwarrior.RemoteTaskPipeline;
+import de.azapps.mirakel.sync.taskwarrior.SyncCoordinator;
 import de.azapps.mirakel.sync.taskwarrior.TaskWarriorSync;
 import de.azapps.mirakel.sync.taskwarrior.utilities.TW_ERRORS;
 import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorAccount;
-import de.azapps.mirakel.sync.taskwarrior.utilities.TaskWarriorSyncFailedException;
 import de.azapps.tools.Log;
 
 public class SyncAdapter extends AbstractThreadedSyncAdapter {
@@ -58,6 +62,8 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     private final Context mContext;
     private final NotificationManager mNotificationManager;
     private static final int NOTIFY_ID = 1;
+    // the syncs of different accounts run in parallel, each on its own thread
+    private final Map<Thread, TaskWarriorAccount> runningSyncs = new ConcurrentHashMap<>();
 
     public SyncAdapter(final Context context, final boolean autoInitialize) {
         super(context, autoInitialize);
@@ -108,16 +114,28 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         // Handle Error
         if (type.equals(TaskWarriorSync.TYPE)) {
             TW_ERRORS error = TW_ERRORS.NO_ERROR;
-            try {
-                final Optional<AccountMirakel> accountMirakel = AccountMirakel.get(account);
-                if (accountMirakel.isPresent()) {
-                    final TaskWarriorAccount taskWarriorAccount = new TaskWarriorAccount(accountMirakel.get(),
-                            getContext());
-                    new TaskWarriorSync(this.mContext).sync(taskWarriorAccount, false);
+            final Optional<AccountMirakel> accountMirakel = AccountMirakel.get(account);
+            if (accountMirakel.isPresent()) {
+                final TaskWarriorAccount taskWarriorAccount = new TaskWarriorAccount(accountMirakel.get(),
+                        getContext());
+                runningSyncs.put(Thread.currentThread(), taskWarriorAccount);
+                final SyncCoordinator.Result result;
+                try {
+                    result = SyncCoordinator.getInstance(mContext).sync(taskWarriorAccount);
+                } finally {
+                    runningSyncs.remove(Thread.currentThread());
+                }
+                error = result.getError();
+                final Optional<RemoteTaskPipeline.Statistics> statistics = result.getStatistics();
+                if (statistics.isPresent()) {
+                    syncResult.stats.numInserts += statistics.get().getInserted();
+                    syncResult.stats.numUpdates += statistics.get().getUpdated();
+                    syncResult.stats.numDeletes += statistics.get().getDeleted();
+                    syncResult.stats.numSkippedEntries += statistics.get().getSkipped();
+                }
+                if (error == TW_ERRORS.TRY_LATER) {
+                    syncResult.stats.numIoExceptions++;
                 }
-            } catch (final TaskWarriorSyncFailedException e) {
-                Log.e(TAG, "SyncError", e);
-                error = e.getError();
             }
             success = setLastMessage(success, error);
         } else {
@@ -131,6 +149,15 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    @Override
+    public void onSyncCanceled(final Thread thread) {
+        final TaskWarriorAccount account = runningSyncs.get(thread);
+        if (account != null) {
+            SyncCoordinator.getInstance(mContext).cancel(account);
+        }
+        super.onSyncCanceled(thread);
+    }
+
     private void showSyncNotification(final boolean showNotification) throws ClassNotFoundException {
         final Intent intent = new Intent(this.mContext,
                                          Class.forName(DefinitionsHelper.MIRAKEL_ACTIVITY_CLASS));
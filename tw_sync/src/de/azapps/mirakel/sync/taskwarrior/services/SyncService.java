@@ -39,7 +39,8 @@ public class SyncService extends Service {
     public void onCreate() {
         synchronized (sSyncAdapterLock) {
             if (sSyncAdapter == null) {
-                sSyncAdapter = new SyncAdapter(getApplicationContext(), true);
+                // the accounts are synced in parallel, see SyncCoordinator
+                sSyncAdapter = new SyncAdapter(getApplicationContext(), true, true);
             }
         }
     }